@@ -0,0 +1,253 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.ServiceLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.se.SeContainer;
+import javax.enterprise.inject.se.SeContainerInitializer;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.airepublic.tobi.core.ServerContext;
+import com.airepublic.tobi.core.TobiServer;
+import com.airepublic.tobi.core.spi.ICDIServiceProvider;
+import com.airepublic.tobi.module.http.HttpModule;
+import com.airepublic.tobi.plugin.http.staticfiles.StaticFilePlugin;
+
+/**
+ * The loopback server shared by the benchmarks of one JVM. On first use it creates a temporary
+ * directory with a self-signed keystore and the static files, configures the server via system
+ * properties on free ports and boots the CDI container. The {@link TobiServer} itself is only
+ * started by {@link #start()}, benchmarks which only need CDI beans use {@link #container()}.
+ * <p>
+ * Static files served under <code>/static</code>:
+ * <ul>
+ * <li><code>small.txt</code> - 1 KiB (cached in memory)</li>
+ * <li><code>large.bin</code> - 1 MiB (sent as file region)</li>
+ * </ul>
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class BenchmarkServer {
+    public final static String HOST = "localhost";
+    public final static String PASSWORD = "changeit";
+    private static BenchmarkServer instance;
+    private final Path directory;
+    private final Path keystore;
+    private final int port;
+    private final int sslPort;
+    private SeContainer container;
+    private boolean started = false;
+
+    /**
+     * Constructor.
+     *
+     * @throws IOException if the files could not be created
+     */
+    private BenchmarkServer() throws IOException {
+        directory = Files.createTempDirectory("tobi-benchmarks");
+        keystore = createKeystore(directory.resolve("keystore.jks"));
+
+        final Path root = Files.createDirectories(directory.resolve("www"));
+        final byte[] small = new byte[1024];
+        Arrays.fill(small, (byte) 'a');
+        Files.write(root.resolve("small.txt"), small);
+        Files.write(root.resolve("large.bin"), new byte[1024 * 1024]);
+
+        port = findFreePort();
+        sslPort = findFreePort();
+
+        System.setProperty(ServerContext.HOST, HOST);
+        System.setProperty(ServerContext.WORKER_COUNT, System.getProperty(ServerContext.WORKER_COUNT, String.valueOf(Runtime.getRuntime().availableProcessors())));
+        System.setProperty(HttpModule.PORT, String.valueOf(port));
+        System.setProperty(HttpModule.SSL_PORT, String.valueOf(sslPort));
+        System.setProperty(HttpModule.KEYSTORE_FILE, keystore.toString());
+        System.setProperty(HttpModule.KEYSTORE_PASSWORD, PASSWORD);
+        System.setProperty(HttpModule.TRUSTSTORE_FILE, keystore.toString());
+        System.setProperty(HttpModule.TRUSTSTORE_PASSWORD, PASSWORD);
+        // the benchmarks reuse their connections for all invocations
+        System.setProperty(HttpModule.KEEPALIVE_MAX_REQUESTS, "0");
+        System.setProperty(StaticFilePlugin.ROOT, root.toString());
+        System.setProperty(StaticFilePlugin.PATH, "/static");
+    }
+
+
+    /**
+     * Gets the CDI {@link SeContainer} which is booted on first use.
+     *
+     * @return the {@link SeContainer}
+     * @throws IOException if the files could not be created
+     */
+    public static synchronized SeContainer container() throws IOException {
+        if (instance == null) {
+            instance = new BenchmarkServer();
+        }
+
+        if (instance.container == null) {
+            final ServiceLoader<ICDIServiceProvider> providers = ServiceLoader.load(ICDIServiceProvider.class);
+            instance.container = providers.findFirst().map(ICDIServiceProvider::getSeContainer).orElseGet(() -> SeContainerInitializer.newInstance().initialize());
+        }
+
+        return instance.container;
+    }
+
+
+    /**
+     * Starts the {@link TobiServer} if not already started and waits until it accepts
+     * connections.
+     *
+     * @return the {@link BenchmarkServer}
+     * @throws IOException if the server could not be started
+     */
+    public static synchronized BenchmarkServer start() throws IOException {
+        final SeContainer container = container();
+
+        if (!instance.started) {
+            final TobiServer server = container.select(TobiServer.class).get();
+            final CountDownLatch latch = new CountDownLatch(1);
+            final Thread thread = new Thread(() -> {
+                try {
+                    server.start(latch::countDown);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }, "benchmark-server");
+            thread.setDaemon(true);
+            thread.start();
+
+            try {
+                if (!latch.await(30, TimeUnit.SECONDS)) {
+                    throw new IOException("Server did not start in time!");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting the server!", e);
+            }
+
+            instance.started = true;
+        }
+
+        return instance;
+    }
+
+
+    /**
+     * Gets the plain HTTP port.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+
+    /**
+     * Gets the HTTPS port.
+     *
+     * @return the port
+     */
+    public int getSslPort() {
+        return sslPort;
+    }
+
+
+    /**
+     * Gets the temporary directory holding the keystore and the static files.
+     *
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+
+    /**
+     * Gets the self-signed keystore which is also used as truststore.
+     *
+     * @return the keystore file
+     * @throws IOException if the files could not be created
+     */
+    public static Path getKeystore() throws IOException {
+        container();
+        return instance.keystore;
+    }
+
+
+    /**
+     * Creates a client {@link SSLContext} trusting the self-signed certificate of the server.
+     *
+     * @return the {@link SSLContext}
+     * @throws IOException if the {@link SSLContext} could not be created
+     */
+    public static SSLContext createClientSslContext() throws IOException {
+        try (InputStream in = Files.newInputStream(getKeystore())) {
+            final KeyStore trustStore = KeyStore.getInstance("JKS");
+            trustStore.load(in, PASSWORD.toCharArray());
+
+            final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(trustStore);
+
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, tmf.getTrustManagers(), null);
+
+            return sslContext;
+        } catch (final IOException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException("Could not create client SSL context!", e);
+        }
+    }
+
+
+    /**
+     * Creates a keystore with a self-signed certificate for <code>localhost</code> using the
+     * <code>keytool</code> of the running JDK.
+     *
+     * @param file the keystore file
+     * @return the keystore file
+     * @throws IOException if the keystore could not be created
+     */
+    static Path createKeystore(final Path file) throws IOException {
+        final String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        final Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "tobi", "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=" + HOST, "-validity", "365", "-storetype", "JKS", "-keystore", file.toString(), "-storepass", PASSWORD, "-keypass", PASSWORD).redirectErrorStream(true).start();
+
+        try {
+            final String output = new String(process.getInputStream().readAllBytes());
+
+            if (process.waitFor() != 0) {
+                throw new IOException("Could not create keystore: " + output);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating the keystore!", e);
+        }
+
+        return file;
+    }
+
+
+    /**
+     * Finds a free port on the loopback interface.
+     *
+     * @return the port
+     * @throws IOException if no port could be found
+     */
+    static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(HOST, 0));
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.core.ChannelProcessor;
+
+/**
+ * Measures complete read/flush cycles of the {@link ChannelProcessor} over a persistent loopback
+ * connection to the running server: the request is read, decoded and dispatched on the event loop
+ * and the response is flushed back to the client. The paths select the handler and the flush path:
+ * <ul>
+ * <li><code>/static/small.txt</code> - cached static file (heap buffer flush)</li>
+ * <li><code>/static/large.bin</code> - 1 MiB static file (file region transfer)</li>
+ * <li><code>/api/bench/hello</code> - JAX-RS resource</li>
+ * </ul>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelProcessorBenchmark {
+    @Param({ "/static/small.txt", "/static/large.bin", "/api/bench/hello" })
+    private String path;
+    private LoopbackClient client;
+    private ByteBuffer request;
+
+
+    /**
+     * Starts the server and opens the persistent connection.
+     *
+     * @throws IOException if the connection could not be opened
+     */
+    @Setup
+    public void setup() throws IOException {
+        final BenchmarkServer server = BenchmarkServer.start();
+        client = new LoopbackClient(server.getPort());
+        request = LoopbackClient.get(path, "");
+
+        if (client.exchange(request) != 200) {
+            throw new IllegalStateException("Unexpected response for " + path);
+        }
+    }
+
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if closing fails
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+    }
+
+
+    /**
+     * Sends the request and reads the complete response.
+     *
+     * @return the status code
+     * @throws IOException if the exchange fails
+     */
+    @Benchmark
+    public int exchange() throws IOException {
+        return client.exchange(request);
+    }
+
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(ChannelProcessorBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
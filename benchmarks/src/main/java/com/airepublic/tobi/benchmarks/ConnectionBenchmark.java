@@ -0,0 +1,86 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.core.ServerContext;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
+
+/**
+ * Measures the connections per second of the running server: each invocation opens a new
+ * loopback connection, sends <code>GET /static/small.txt</code> with <code>Connection: close</code>
+ * and reads the response. The pool size selects whether closed {@link IChannelProcessor}s are
+ * reused (0 creates a new processor for every connection). As the server reads its configuration
+ * on startup every pool size runs in its own fork.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionBenchmark {
+    @Param({ "0", "1024" })
+    private int poolSize;
+    private int port;
+    private ByteBuffer request;
+
+
+    /**
+     * Configures the pool and starts the server.
+     *
+     * @throws IOException if the server could not be started
+     */
+    @Setup
+    public void setup() throws IOException {
+        System.setProperty(ServerContext.POOL_CHANNEL_PROCESSORS, String.valueOf(poolSize));
+        port = BenchmarkServer.start().getPort();
+        request = LoopbackClient.get("/static/small.txt", "Connection: close\r\n");
+    }
+
+
+    /**
+     * Opens a connection, performs one exchange and closes the connection.
+     *
+     * @return the status code
+     * @throws IOException if the exchange fails
+     */
+    @Benchmark
+    public int connect() throws IOException {
+        try (LoopbackClient client = new LoopbackClient(port)) {
+            return client.exchange(request);
+        }
+    }
+
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(ConnectionBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
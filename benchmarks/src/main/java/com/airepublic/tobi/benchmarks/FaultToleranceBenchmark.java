@@ -0,0 +1,128 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.benchmarks.app.FaultToleranceService;
+
+/**
+ * Measures the overhead of the fault tolerance interceptors on the successful path compared to
+ * invoking the plain method through the CDI proxy.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FaultToleranceBenchmark {
+    private FaultToleranceService service;
+
+
+    /**
+     * Boots the CDI container and looks up the {@link FaultToleranceService}.
+     *
+     * @throws IOException if the container could not be booted
+     */
+    @Setup
+    public void setup() throws IOException {
+        service = BenchmarkServer.container().select(FaultToleranceService.class).get();
+    }
+
+
+    /**
+     * Invokes the method without fault tolerance.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int plain() {
+        return service.plain();
+    }
+
+
+    /**
+     * Invokes the method with retry.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int retry() {
+        return service.retry();
+    }
+
+
+    /**
+     * Invokes the method with timeout.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int timeout() {
+        return service.timeout();
+    }
+
+
+    /**
+     * Invokes the method with circuit breaker.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int circuitBreaker() {
+        return service.circuitBreaker();
+    }
+
+
+    /**
+     * Invokes the method with bulkhead.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int bulkhead() {
+        return service.bulkhead();
+    }
+
+
+    /**
+     * Invokes the method with fallback.
+     *
+     * @return the result
+     */
+    @Benchmark
+    public int fallback() {
+        return service.fallback();
+    }
+
+
+    /**
+     * Runs the benchmark with the GC profiler to report the allocations per operation.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(FaultToleranceBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,236 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.spi.CDI;
+import javax.net.ssl.SSLContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.http.common.SslSupport;
+import com.airepublic.tobi.core.ServerSession;
+import com.airepublic.tobi.core.spi.IChannelEncoder.Status;
+import com.airepublic.tobi.core.spi.IRequest;
+import com.airepublic.tobi.core.spi.Pair;
+import com.airepublic.tobi.module.http.HttpChannelEncoder;
+
+/**
+ * Measures {@link HttpChannelEncoder#decode(ByteBuffer)} and
+ * {@link HttpChannelEncoder#encode(ByteBuffer...)} for plain and TLS connections. The encoder is
+ * bound to a loopback connection whose TLS handshake is performed once per trial by feeding the
+ * received handshake messages to the encoder. The TLS records
+ * for the decode benchmark are produced by the client {@link javax.net.ssl.SSLEngine} in the same
+ * invocation, so <code>decode</code> with <code>secure=true</code> includes the client wrap which
+ * is measured separately by <code>clientWrap</code>.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpChannelEncoderBenchmark {
+    private static final byte[] REQUEST = ("GET /api/bench/hello?name=tobi HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:68.0) Gecko/20100101 Firefox/68.0\r\n"
+            + "Accept: application/json\r\n"
+            + "Accept-Encoding: gzip, deflate\r\n"
+            + "Connection: keep-alive\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    @Param({ "false", "true" })
+    private boolean secure;
+    @Param({ "1024" })
+    private int responseSize;
+    private ServerSocketChannel serverSocket;
+    private SocketChannel clientChannel;
+    private SocketChannel serverChannel;
+    private HttpChannelEncoder encoder;
+    private TlsClient tlsClient;
+    private ByteBuffer request;
+    private ByteBuffer response;
+
+
+    /**
+     * Opens the loopback connection and initializes the encoder (including the TLS handshake).
+     *
+     * @throws Exception if the setup fails
+     */
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkServer.container();
+
+        serverSocket = ServerSocketChannel.open();
+        serverSocket.bind(new InetSocketAddress(BenchmarkServer.HOST, 0));
+        clientChannel = SocketChannel.open(serverSocket.getLocalAddress());
+        serverChannel = serverSocket.accept();
+        serverChannel.configureBlocking(false);
+
+        final SocketChannel channel = serverChannel;
+        final ServerSession session = new ServerSession() {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            public SocketChannel getChannel() {
+                return channel;
+            }
+        };
+        session.setId("benchmark");
+
+        encoder = CDI.current().select(HttpChannelEncoder.class).get();
+
+        if (secure) {
+            final String keystore = BenchmarkServer.getKeystore().toString();
+            final SSLContext serverSslContext = SslSupport.createServerSSLContext(keystore, BenchmarkServer.PASSWORD, keystore, BenchmarkServer.PASSWORD);
+            final SSLContext clientSslContext = BenchmarkServer.createClientSslContext();
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+            try {
+                final Future<TlsClient> client = executor.submit(() -> new TlsClient(clientSslContext, clientChannel));
+                encoder.init(session, serverSslContext, true);
+                handshake(client);
+                tlsClient = client.get(30, TimeUnit.SECONDS);
+            } finally {
+                executor.shutdownNow();
+            }
+        } else {
+            encoder.init(session, null, false);
+        }
+
+        request = ByteBuffer.wrap(REQUEST);
+
+        final byte[] body = new byte[responseSize];
+        Arrays.fill(body, (byte) 'a');
+        final byte[] head = ("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + responseSize + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        response = ByteBuffer.allocate(head.length + body.length).put(head).put(body).flip();
+    }
+
+
+    /**
+     * Drives the non-blocking server side of the TLS handshake by passing the received bytes to
+     * the encoder until the handshake has been completed.
+     *
+     * @param client the client performing its side of the handshake
+     * @throws Exception if the handshake fails or does not complete in time
+     */
+    private void handshake(final Future<TlsClient> client) throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+
+        while (encoder.isHandshaking()) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("TLS handshake did not complete in time!");
+            }
+
+            // surface a failed client handshake
+            if (client.isDone()) {
+                client.get();
+            }
+
+            buffer.clear();
+            serverChannel.read(buffer);
+            buffer.flip();
+            encoder.decode(buffer);
+        }
+    }
+
+
+    /**
+     * Closes the encoder and the loopback connection.
+     *
+     * @throws IOException if closing fails
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        encoder.close();
+        clientChannel.close();
+        serverChannel.close();
+        serverSocket.close();
+    }
+
+
+    /**
+     * Decodes a complete request (for TLS including the client wrap of the request).
+     *
+     * @return the decoded request
+     * @throws IOException if decoding fails
+     */
+    @Benchmark
+    public IRequest decode() throws IOException {
+        final ByteBuffer buffer = secure ? tlsClient.wrap(request.duplicate()) : request.duplicate();
+        final Pair<Status, IRequest> result = encoder.decode(buffer);
+
+        if (result.getValue1() != Status.FULLY_READ) {
+            throw new IllegalStateException("Request has not been decoded: " + result.getValue1());
+        }
+
+        return result.getValue2();
+    }
+
+
+    /**
+     * The client wrap of the request included in {@link #decode()} for TLS connections.
+     *
+     * @return the wrapped request
+     * @throws IOException if wrapping fails
+     */
+    @Benchmark
+    public ByteBuffer clientWrap() throws IOException {
+        return secure ? tlsClient.wrap(request.duplicate()) : request.duplicate();
+    }
+
+
+    /**
+     * Encodes a response and releases the encoded buffers.
+     *
+     * @param blackhole the {@link Blackhole}
+     * @throws IOException if encoding fails
+     */
+    @Benchmark
+    public void encode(final Blackhole blackhole) throws IOException {
+        final ByteBuffer[] buffers = encoder.encode(response.duplicate());
+        blackhole.consume(buffers);
+        encoder.release(buffers);
+    }
+
+
+    /**
+     * Runs the benchmark with the GC profiler to report the allocations per operation.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(HttpChannelEncoderBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,273 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback load generator starting the benchmark server in the same JVM and driving each plugin
+ * over persistent connections, one blocking client thread per connection. For each plugin the
+ * throughput and the latency percentiles of the measured operations are reported:
+ * <ul>
+ * <li><code>jaxrs</code> - request/response of <code>GET /api/bench/hello</code></li>
+ * <li><code>static</code> - request/response of <code>GET /static/small.txt</code></li>
+ * <li><code>sse</code> - time between two events of the endless stream <code>/bench/sse</code></li>
+ * <li><code>websocket</code> - round trip of a text message echoed by <code>/bench/ws</code></li>
+ * </ul>
+ * The load generator can be configured with following system properties:
+ * <ul>
+ * <li><code>bench.plugins</code> - comma-separated plugins to drive (default all)</li>
+ * <li><code>bench.connections</code> - the number of concurrent connections (default 16)</li>
+ * <li><code>bench.warmup</code> - the warmup time in seconds which is not measured (default 5)</li>
+ * <li><code>bench.duration</code> - the measured time in seconds (default 10)</li>
+ * </ul>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class LoadGenerator {
+    public final static String PLUGINS = "bench.plugins";
+    public final static String CONNECTIONS = "bench.connections";
+    public final static String WARMUP = "bench.warmup";
+    public final static String DURATION = "bench.duration";
+
+    /**
+     * The operation driven on each connection of a plugin.
+     */
+    private interface Scenario {
+
+        /**
+         * Prepares the connection.
+         *
+         * @param client the {@link LoopbackClient}
+         * @return the request sent by each operation or null
+         * @throws IOException if preparing fails
+         */
+        ByteBuffer open(LoopbackClient client) throws IOException;
+
+
+        /**
+         * Performs one measured operation.
+         *
+         * @param client the {@link LoopbackClient}
+         * @param request the request returned by {@link #open(LoopbackClient)}
+         * @return true if the operation was successful
+         * @throws IOException if the operation fails
+         */
+        boolean run(LoopbackClient client, ByteBuffer request) throws IOException;
+    }
+
+    /**
+     * The samples recorded by one connection.
+     */
+    private static class Recorder {
+        private long[] latencies = new long[64 * 1024];
+        private int count = 0;
+        private long errors = 0;
+
+
+        /**
+         * Records the latency of a measured operation.
+         *
+         * @param latency the latency in nanoseconds
+         */
+        void record(final long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+
+            latencies[count++] = latency;
+        }
+    }
+
+
+    /**
+     * Gets the {@link Scenario} for the plugin.
+     *
+     * @param plugin the plugin name
+     * @return the {@link Scenario}
+     */
+    static Scenario scenario(final String plugin) {
+        switch (plugin) {
+            case "jaxrs":
+                return http("/api/bench/hello");
+            case "static":
+                return http("/static/small.txt");
+            case "sse":
+                return new Scenario() {
+                    @Override
+                    public ByteBuffer open(final LoopbackClient client) throws IOException {
+                        client.send(LoopbackClient.get("/bench/sse", "Accept: text/event-stream\r\n"));
+                        client.readHead();
+                        return null;
+                    }
+
+
+                    @Override
+                    public boolean run(final LoopbackClient client, final ByteBuffer request) throws IOException {
+                        return client.readEvent() > 0;
+                    }
+                };
+            case "websocket":
+                return new Scenario() {
+                    @Override
+                    public ByteBuffer open(final LoopbackClient client) throws IOException {
+                        if (client.upgrade("/bench/ws") != 101) {
+                            throw new IOException("Websocket upgrade failed!");
+                        }
+
+                        return LoopbackClient.textFrame("Hello websocket");
+                    }
+
+
+                    @Override
+                    public boolean run(final LoopbackClient client, final ByteBuffer request) throws IOException {
+                        client.send(request);
+                        return client.readFrame() == request.remaining() - 6;
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown plugin: " + plugin);
+        }
+    }
+
+
+    /**
+     * Creates a {@link Scenario} sending GET requests for the path on a persistent connection.
+     *
+     * @param path the path
+     * @return the {@link Scenario}
+     */
+    static Scenario http(final String path) {
+        return new Scenario() {
+            @Override
+            public ByteBuffer open(final LoopbackClient client) {
+                return LoopbackClient.get(path, "");
+            }
+
+
+            @Override
+            public boolean run(final LoopbackClient client, final ByteBuffer request) throws IOException {
+                return client.exchange(request) == 200;
+            }
+        };
+    }
+
+
+    /**
+     * Drives the plugin with the specified number of connections and prints the result.
+     *
+     * @param server the {@link BenchmarkServer}
+     * @param plugin the plugin name
+     * @param connections the number of connections
+     * @param warmup the warmup time in seconds
+     * @param duration the measured time in seconds
+     * @throws InterruptedException if interrupted while waiting for the connections
+     */
+    static void run(final BenchmarkServer server, final String plugin, final int connections, final int warmup, final int duration) throws InterruptedException {
+        final Scenario scenario = scenario(plugin);
+        final long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmup);
+        final long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(duration);
+        final List<Recorder> recorders = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < connections; i++) {
+            final Recorder recorder = new Recorder();
+            final Thread thread = new Thread(() -> {
+                try (LoopbackClient client = new LoopbackClient(server.getPort())) {
+                    final ByteBuffer request = scenario.open(client);
+                    long now = System.nanoTime();
+
+                    while (now < measureEnd) {
+                        final boolean success = scenario.run(client, request);
+                        final long end = System.nanoTime();
+
+                        if (now >= measureStart) {
+                            if (success) {
+                                recorder.record(end - now);
+                            } else {
+                                recorder.errors++;
+                            }
+                        }
+
+                        now = end;
+                    }
+                } catch (final IOException e) {
+                    recorder.errors++;
+                }
+            }, "load-" + plugin + "-" + i);
+
+            recorders.add(recorder);
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        long errors = 0;
+
+        for (final Recorder recorder : recorders) {
+            total += recorder.count;
+            errors += recorder.errors;
+        }
+
+        final long[] latencies = new long[total];
+        int offset = 0;
+
+        for (final Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, latencies, offset, recorder.count);
+            offset += recorder.count;
+        }
+
+        Arrays.sort(latencies);
+
+        System.out.printf("%-10s %6d %12d %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d%n", plugin, connections, total, (double) total / duration, percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99), percentile(latencies, 0.999), percentile(latencies, 1.0), errors);
+    }
+
+
+    /**
+     * Gets the percentile of the sorted latencies in microseconds.
+     *
+     * @param latencies the sorted latencies in nanoseconds
+     * @param percentile the percentile between 0 and 1
+     * @return the latency in microseconds or 0 if there are no latencies
+     */
+    static double percentile(final long[] latencies, final double percentile) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+
+        final int index = (int) Math.ceil(percentile * latencies.length) - 1;
+
+        return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1000.0;
+    }
+
+
+    /**
+     * Starts the server and drives the configured plugins one after the other.
+     *
+     * @param args the arguments (ignored)
+     * @throws Exception if the server could not be started
+     */
+    public static void main(final String[] args) throws Exception {
+        final String[] plugins = System.getProperty(PLUGINS, "jaxrs,static,sse,websocket").split(",");
+        final int connections = Integer.getInteger(CONNECTIONS, 16);
+        final int warmup = Integer.getInteger(WARMUP, 5);
+        final int duration = Integer.getInteger(DURATION, 10);
+        final BenchmarkServer server = BenchmarkServer.start();
+
+        System.out.printf("%-10s %6s %12s %12s %10s %10s %10s %10s %10s %8s%n", "plugin", "conns", "ops", "ops/s", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)", "errors");
+
+        for (final String plugin : plugins) {
+            run(server, plugin.trim(), connections, warmup, duration);
+        }
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,306 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Minimal blocking client for the loopback benchmarks speaking just enough HTTP/1.1, SSE and
+ * websocket to drive the server: persistent request/response exchanges with a
+ * <code>Content-Length</code> body, SSE event streams and websocket text frames. Received bytes
+ * are only framed, not interpreted.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+class LoopbackClient implements AutoCloseable {
+    private static final byte[] HEAD_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.US_ASCII);
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(64 * 1024).flip();
+
+    /**
+     * Opens a blocking connection to the server.
+     *
+     * @param port the port
+     * @throws IOException if connecting fails
+     */
+    LoopbackClient(final int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(BenchmarkServer.HOST, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    }
+
+
+    /**
+     * Creates a GET request.
+     *
+     * @param path the path
+     * @param headers additional header lines each terminated by CRLF
+     * @return the request
+     */
+    static ByteBuffer get(final String path, final String headers) {
+        return ByteBuffer.wrap(("GET " + path + " HTTP/1.1\r\nHost: " + BenchmarkServer.HOST + "\r\n" + headers + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+
+    /**
+     * Creates a masked websocket text frame.
+     *
+     * @param text the text
+     * @return the frame
+     */
+    static ByteBuffer textFrame(final String text) {
+        final byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer frame = ByteBuffer.allocate(payload.length + 14);
+        frame.put((byte) 0x81);
+
+        if (payload.length < 126) {
+            frame.put((byte) (0x80 | payload.length));
+        } else if (payload.length < 65536) {
+            frame.put((byte) (0x80 | 126)).putShort((short) payload.length);
+        } else {
+            frame.put((byte) (0x80 | 127)).putLong(payload.length);
+        }
+
+        final byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        frame.put(mask);
+
+        for (int i = 0; i < payload.length; i++) {
+            frame.put((byte) (payload[i] ^ mask[i & 3]));
+        }
+
+        return frame.flip();
+    }
+
+
+    /**
+     * Writes the request completely.
+     *
+     * @param request the request (not modified)
+     * @throws IOException if writing fails
+     */
+    void send(final ByteBuffer request) throws IOException {
+        final ByteBuffer buffer = request.duplicate();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Sends the request and reads the response.
+     *
+     * @param request the request (not modified)
+     * @return the response status code
+     * @throws IOException if the exchange fails
+     */
+    int exchange(final ByteBuffer request) throws IOException {
+        send(request);
+        return readResponse();
+    }
+
+
+    /**
+     * Reads a response with a <code>Content-Length</code> body.
+     *
+     * @return the response status code
+     * @throws IOException if reading fails
+     */
+    int readResponse() throws IOException {
+        final String head = readHead();
+        final int status = parseStatus(head);
+        long contentLength = 0;
+
+        for (final String line : head.split("\r\n")) {
+            final int colon = line.indexOf(':');
+
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(line.substring(colon + 1).trim());
+            }
+        }
+
+        skip(contentLength);
+
+        return status;
+    }
+
+
+    /**
+     * Sends the websocket upgrade request and reads the handshake response.
+     *
+     * @param path the websocket path
+     * @return the response status code (101 if upgraded)
+     * @throws IOException if the handshake fails
+     */
+    int upgrade(final String path) throws IOException {
+        final byte[] key = new byte[16];
+        ThreadLocalRandom.current().nextBytes(key);
+        send(get(path, "Upgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Version: 13\r\nSec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\n"));
+
+        return parseStatus(readHead());
+    }
+
+
+    /**
+     * Reads the head of a response up to the empty line.
+     *
+     * @return the head
+     * @throws IOException if reading fails
+     */
+    String readHead() throws IOException {
+        final int end = readUntil(HEAD_END);
+        final byte[] head = new byte[end];
+        in.get(in.position() - end - HEAD_END.length, head);
+
+        return new String(head, StandardCharsets.ISO_8859_1);
+    }
+
+
+    /**
+     * Reads the next SSE event.
+     *
+     * @return the size of the event in bytes
+     * @throws IOException if reading fails
+     */
+    int readEvent() throws IOException {
+        return readUntil(EVENT_END);
+    }
+
+
+    /**
+     * Reads the next unmasked websocket frame sent by the server.
+     *
+     * @return the payload length
+     * @throws IOException if reading fails
+     */
+    long readFrame() throws IOException {
+        require(2);
+        in.get();
+        long length = in.get() & 0x7F;
+
+        if (length == 126) {
+            require(2);
+            length = in.getShort() & 0xFFFF;
+        } else if (length == 127) {
+            require(8);
+            length = in.getLong();
+        }
+
+        skip(length);
+
+        return length;
+    }
+
+
+    /**
+     * Consumes the received bytes including the next occurrence of the delimiter.
+     *
+     * @param delimiter the delimiter
+     * @return the number of bytes before the delimiter
+     * @throws IOException if reading fails
+     */
+    private int readUntil(final byte[] delimiter) throws IOException {
+        // offset relative to the position up to which the bytes have already been scanned
+        int scanned = 0;
+
+        while (true) {
+            for (int i = in.position() + scanned; i <= in.limit() - delimiter.length; i++) {
+                int j = 0;
+
+                while (j < delimiter.length && in.get(i + j) == delimiter[j]) {
+                    j++;
+                }
+
+                if (j == delimiter.length) {
+                    final int length = i - in.position();
+                    in.position(i + delimiter.length);
+                    return length;
+                }
+            }
+
+            scanned = Math.max(0, in.remaining() - delimiter.length + 1);
+            fill();
+        }
+    }
+
+
+    /**
+     * Skips the specified number of bytes.
+     *
+     * @param count the number of bytes
+     * @throws IOException if reading fails
+     */
+    private void skip(long count) throws IOException {
+        while (count > 0) {
+            if (!in.hasRemaining()) {
+                fill();
+            }
+
+            final int n = (int) Math.min(count, in.remaining());
+            in.position(in.position() + n);
+            count -= n;
+        }
+    }
+
+
+    /**
+     * Reads until at least the specified number of bytes has been received.
+     *
+     * @param count the number of bytes
+     * @throws IOException if reading fails
+     */
+    private void require(final int count) throws IOException {
+        while (in.remaining() < count) {
+            fill();
+        }
+    }
+
+
+    /**
+     * Reads more bytes from the channel, compacting or growing the receive buffer if necessary.
+     *
+     * @throws IOException if reading fails or the connection has been closed
+     */
+    private void fill() throws IOException {
+        in.compact();
+
+        if (!in.hasRemaining()) {
+            final ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            in = bigger.put(in);
+        }
+
+        final int read = channel.read(in);
+        in.flip();
+
+        if (read < 0) {
+            throw new EOFException("Connection closed by server!");
+        }
+    }
+
+
+    /**
+     * Parses the status code from the status line of the response head.
+     *
+     * @param head the response head
+     * @return the status code
+     */
+    private static int parseStatus(final String head) {
+        final int start = head.indexOf(' ') + 1;
+        return Integer.parseInt(head.substring(start, start + 3));
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.RemoteEndpoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.plugin.http.websocket.PerMessageDeflate;
+import com.airepublic.tobi.plugin.http.websocket.Transformation;
+
+/**
+ * Measures sending text messages through the {@link RemoteEndpoint.Basic} of a session with and
+ * without compression by {@link PerMessageDeflate}. The frames are discarded instead of being
+ * written to a connection. The inflation of incoming messages is covered by the
+ * {@link WsFrameBenchmark} with <code>deflate=true</code>.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PerMessageDeflateBenchmark {
+    @Param({ "125", "4096", "65536" })
+    private int payloadSize;
+    @Param({ "false", "true" })
+    private boolean deflate;
+    private Transformation transformation;
+    private WsBenchmarkSession session;
+    private RemoteEndpoint.Basic remote;
+    private String text;
+
+
+    /**
+     * Creates the session with the server side {@link PerMessageDeflate} negotiated with the
+     * default parameters.
+     *
+     * @throws Exception if the setup fails
+     */
+    @Setup
+    public void setup() throws Exception {
+        transformation = deflate ? WsBenchmarkSession.deflate() : null;
+        session = new WsBenchmarkSession(transformation, payloadSize);
+        remote = session.getSession().getBasicRemote();
+        text = new String(WsFrameBenchmark.text(payloadSize), StandardCharsets.US_ASCII);
+    }
+
+
+    /**
+     * Releases the deflater.
+     */
+    @TearDown
+    public void tearDown() {
+        if (transformation != null) {
+            transformation.close();
+        }
+    }
+
+
+    /**
+     * Sends a text message.
+     *
+     * @return the number of bytes written so far
+     * @throws IOException if sending fails
+     */
+    @Benchmark
+    public long send() throws IOException {
+        remote.sendText(text);
+
+        return session.getWritten();
+    }
+
+
+    /**
+     * Runs the benchmark with the GC profiler to report the allocations per operation.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(PerMessageDeflateBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
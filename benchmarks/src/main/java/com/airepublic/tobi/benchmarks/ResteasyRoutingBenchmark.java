@@ -0,0 +1,112 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.spi.CDI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.http.common.Headers;
+import com.airepublic.tobi.core.ServerSession;
+import com.airepublic.tobi.core.spi.IIOHandler;
+import com.airepublic.tobi.core.spi.IServicePlugin;
+import com.airepublic.tobi.module.http.HttpModule;
+import com.airepublic.tobi.module.http.HttpRequest;
+import com.airepublic.tobi.plugin.http.jaxrs.resteasy.ResteasyPlugin;
+
+/**
+ * Measures the routing of requests by {@link ResteasyPlugin#determineIoHandler} which is invoked
+ * for every request that is not claimed by a plugin with a higher priority, i.e. a miss is paid by
+ * all requests to static files.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResteasyRoutingBenchmark {
+    private IServicePlugin plugin;
+    private HttpRequest matched;
+    private HttpRequest unmatched;
+
+
+    /**
+     * Starts the server to get the initialized {@link ResteasyPlugin} and creates the requests.
+     *
+     * @throws IOException if the server could not be started
+     */
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkServer.start();
+
+        plugin = CDI.current().select(HttpModule.class).get().getServicePlugins().stream().filter(p -> p instanceof ResteasyPlugin).findFirst().orElseThrow(() -> new IllegalStateException(ResteasyPlugin.class.getSimpleName() + " is not installed!"));
+
+        final ServerSession session = new ServerSession();
+        session.setId("benchmark");
+
+        final Headers headers = new Headers(new HashMap<>());
+        headers.add("Host", BenchmarkServer.HOST);
+        headers.add("Accept", "text/plain");
+
+        matched = new HttpRequest(session, "GET /api/bench/hello HTTP/1.1", headers);
+        unmatched = new HttpRequest(session, "GET /static/small.txt HTTP/1.1", headers);
+
+        if (plugin.determineIoHandler(matched) == null) {
+            throw new IllegalStateException("Request is not routed: " + matched.getRequestLine());
+        }
+    }
+
+
+    /**
+     * Routes a request to a resource method.
+     *
+     * @return the {@link IIOHandler}
+     */
+    @Benchmark
+    public IIOHandler matched() {
+        return plugin.determineIoHandler(matched);
+    }
+
+
+    /**
+     * Routes a request which is not mapped to a resource.
+     *
+     * @return null
+     */
+    @Benchmark
+    public IIOHandler unmatched() {
+        return plugin.determineIoHandler(unmatched);
+    }
+
+
+    /**
+     * Runs the benchmark with the GC profiler to report the allocations per operation.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(ResteasyRoutingBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,126 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Client side of a TLS connection driven by an {@link SSLEngine} over a blocking
+ * {@link SocketChannel}. After the handshake the application data is only wrapped into TLS records
+ * which the benchmarks hand directly to the server side decoder.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+class TlsClient {
+    private final SSLEngine sslEngine;
+    private ByteBuffer netOut;
+
+    /**
+     * Performs the client handshake on the blocking channel.
+     *
+     * @param sslContext the client {@link SSLContext}
+     * @param channel the connected blocking {@link SocketChannel}
+     * @throws IOException if the handshake fails
+     */
+    TlsClient(final SSLContext sslContext, final SocketChannel channel) throws IOException {
+        sslEngine = sslContext.createSSLEngine(BenchmarkServer.HOST, channel.socket().getPort());
+        sslEngine.setUseClientMode(true);
+
+        final ByteBuffer empty = ByteBuffer.allocate(0);
+        final ByteBuffer appIn = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
+        final ByteBuffer netIn = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+        netOut = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
+
+        sslEngine.beginHandshake();
+        HandshakeStatus status = sslEngine.getHandshakeStatus();
+
+        while (status != HandshakeStatus.FINISHED && status != HandshakeStatus.NOT_HANDSHAKING) {
+            switch (status) {
+                case NEED_WRAP: {
+                    netOut.clear();
+                    final SSLEngineResult result = sslEngine.wrap(empty, netOut);
+                    netOut.flip();
+
+                    while (netOut.hasRemaining()) {
+                        channel.write(netOut);
+                    }
+
+                    status = result.getHandshakeStatus();
+                }
+                break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN: {
+                    netIn.flip();
+                    final SSLEngineResult result = sslEngine.unwrap(netIn, appIn);
+                    netIn.compact();
+                    appIn.clear();
+
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW && channel.read(netIn) < 0) {
+                        throw new EOFException("Connection closed during handshake!");
+                    }
+
+                    status = result.getHandshakeStatus();
+                }
+                break;
+                case NEED_TASK: {
+                    Runnable task;
+
+                    while ((task = sslEngine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+
+                    status = sslEngine.getHandshakeStatus();
+                }
+                break;
+                default:
+                    throw new SSLException("Unexpected handshake status: " + status);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the negotiated {@link SSLSession}.
+     *
+     * @return the {@link SSLSession}
+     */
+    SSLSession getSession() {
+        return sslEngine.getSession();
+    }
+
+
+    /**
+     * Wraps the application data into TLS records.
+     *
+     * @param data the application data (consumed)
+     * @return the flipped buffer with the TLS records, only valid until the next call
+     * @throws IOException if wrapping fails
+     */
+    ByteBuffer wrap(final ByteBuffer data) throws IOException {
+        netOut.clear();
+
+        while (data.hasRemaining()) {
+            final SSLEngineResult result = sslEngine.wrap(data, netOut);
+
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                final ByteBuffer bigger = ByteBuffer.allocate(netOut.capacity() * 2);
+                netOut.flip();
+                netOut = bigger.put(netOut);
+            } else if (result.getStatus() != SSLEngineResult.Status.OK) {
+                throw new SSLException("Unexpected wrap status: " + result.getStatus());
+            }
+        }
+
+        netOut.flip();
+        return netOut;
+    }
+}
@@ -0,0 +1,106 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.spi.CDI;
+import javax.net.ssl.SSLContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.module.http.HttpModule;
+import com.airepublic.tobi.module.http.TlsStatistics;
+
+/**
+ * Measures the TLS handshakes per second of the running server: each invocation opens a new
+ * loopback connection to the HTTPS port, performs the handshake and closes the connection. With
+ * <code>resume=false</code> the client invalidates its session after each handshake, so every
+ * handshake is a full handshake, otherwise the client resumes the session of the previous
+ * connection. The {@link TlsStatistics} of the server are printed after each trial.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsHandshakeBenchmark {
+    @Param({ "false", "true" })
+    private boolean resume;
+    private InetSocketAddress address;
+    private SSLContext clientSslContext;
+
+
+    /**
+     * Starts the server and creates the client {@link SSLContext}.
+     *
+     * @throws IOException if the server could not be started
+     */
+    @Setup
+    public void setup() throws IOException {
+        address = new InetSocketAddress(BenchmarkServer.HOST, BenchmarkServer.start().getSslPort());
+        clientSslContext = BenchmarkServer.createClientSslContext();
+    }
+
+
+    /**
+     * Prints the handshake counters of the server.
+     */
+    @TearDown
+    public void tearDown() {
+        final TlsStatistics statistics = CDI.current().select(HttpModule.class).get().getTlsStatistics();
+        System.out.println("TLS handshakes: full=" + statistics.getFullHandshakes() + " resumed=" + statistics.getResumedHandshakes() + " failed=" + statistics.getFailedHandshakes() + " resumption-rate=" + statistics.getResumptionRate() + " average=" + statistics.getAverageHandshakeTime(TimeUnit.MICROSECONDS) + "us");
+    }
+
+
+    /**
+     * Opens a connection, performs the TLS handshake and closes the connection.
+     *
+     * @return the negotiated protocol
+     * @throws IOException if the handshake fails
+     */
+    @Benchmark
+    public String handshake() throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            final TlsClient client = new TlsClient(clientSslContext, channel);
+
+            if (!resume) {
+                client.getSession().invalidate();
+            }
+
+            return client.getSession().getProtocol();
+        }
+    }
+
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(TlsHandshakeBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,154 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.core.spi.WireTrace;
+import com.airepublic.tobi.core.spi.WireTrace.Direction;
+
+/**
+ * Measures the cost of the {@link WireTrace} on the read/write path compared to the previous raw
+ * string logging. Run with the GC profiler (see {@link #main(String[])}): the
+ * <code>gc.alloc.rate.norm</code> of the <code>disabled</code> and <code>levelOff</code>
+ * benchmarks must be 0 B/op like the <code>baseline</code>, i.e. no copies or strings are created
+ * while tracing is off.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireTraceBenchmark {
+    private static final String REQUEST = "GET /api/users/42?expand=roles HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:68.0) Gecko/20100101 Firefox/68.0\r\n"
+            + "Accept: application/json\r\n"
+            + "Accept-Encoding: gzip, deflate\r\n"
+            + "Connection: keep-alive\r\n\r\n";
+    private final Logger logger = Logger.getLogger(WireTraceBenchmark.class.getName());
+    private ByteBuffer buffer;
+    private WireTrace levelOff;
+    private WireTrace sampledOut;
+    private final String sessionId = "42";
+
+
+    /**
+     * Creates the request buffer and the {@link WireTrace}s.
+     */
+    @Setup
+    public void setup() {
+        buffer = ByteBuffer.wrap(REQUEST.getBytes(StandardCharsets.US_ASCII));
+
+        // enabled for the module, but the logger does not accept the trace level
+        final Logger offLogger = Logger.getLogger(WireTraceBenchmark.class.getName() + ".off");
+        offLogger.setUseParentHandlers(false);
+        offLogger.setLevel(Level.OFF);
+        levelOff = new WireTrace(offLogger, "http", 1, 256);
+
+        // enabled for the module, but the messages are not sampled (except the very first)
+        sampledOut = new WireTrace(offLogger, "http", Integer.MAX_VALUE, 256);
+
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.OFF);
+    }
+
+
+    /**
+     * The read path without any tracing.
+     *
+     * @param blackhole the {@link Blackhole}
+     */
+    @Benchmark
+    public void baseline(final Blackhole blackhole) {
+        blackhole.consume(buffer);
+    }
+
+
+    /**
+     * The read path with tracing disabled for the module (the default).
+     *
+     * @param blackhole the {@link Blackhole}
+     */
+    @Benchmark
+    public void disabled(final Blackhole blackhole) {
+        WireTrace.DISABLED.trace(Direction.READ, sessionId, buffer);
+        blackhole.consume(buffer);
+    }
+
+
+    /**
+     * The read path with tracing enabled but the logger level turned off.
+     *
+     * @param blackhole the {@link Blackhole}
+     */
+    @Benchmark
+    public void levelOff(final Blackhole blackhole) {
+        levelOff.trace(Direction.READ, sessionId, buffer);
+        blackhole.consume(buffer);
+    }
+
+
+    /**
+     * The read path with tracing enabled but the message not being sampled.
+     *
+     * @param blackhole the {@link Blackhole}
+     */
+    @Benchmark
+    public void sampledOut(final Blackhole blackhole) {
+        sampledOut.trace(Direction.READ, sessionId, buffer);
+        blackhole.consume(buffer);
+    }
+
+
+    /**
+     * The previous read path which copied every buffer into a string for an INFO log message,
+     * even when the message was discarded by the logger.
+     *
+     * @param blackhole the {@link Blackhole}
+     */
+    @Benchmark
+    public void rawStringLogging(final Blackhole blackhole) {
+        buffer.mark();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        logger.info("read raw --> " + new String(bytes));
+        buffer.reset();
+        blackhole.consume(buffer);
+    }
+
+
+    /**
+     * Runs the benchmark with the GC profiler to report the allocations per operation.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(WireTraceBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
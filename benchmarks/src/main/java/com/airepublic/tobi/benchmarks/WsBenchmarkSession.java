@@ -0,0 +1,168 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.Extension;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpointConfig;
+
+import com.airepublic.tobi.plugin.http.websocket.PerMessageDeflate;
+import com.airepublic.tobi.plugin.http.websocket.Transformation;
+import com.airepublic.tobi.plugin.http.websocket.TransformationFactory;
+import com.airepublic.tobi.plugin.http.websocket.WsSession;
+import com.airepublic.tobi.plugin.http.websocket.server.WsFrameServer;
+import com.airepublic.tobi.plugin.http.websocket.server.WsRemoteEndpointImplServer;
+import com.airepublic.tobi.plugin.http.websocket.server.WsSci;
+import com.airepublic.tobi.plugin.http.websocket.server.WsServerContainer;
+
+/**
+ * A server side {@link WsSession} without a connection for the websocket benchmarks. Incoming
+ * frames are fed to the {@link WsFrameServer} and text and binary messages are delivered to an
+ * endpoint counting the characters and bytes. Outgoing frames are discarded and completed
+ * immediately.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+class WsBenchmarkSession {
+    private final WsSession session;
+    private final WsFrameServer frame;
+    private long written = 0;
+
+    /**
+     * Endpoint counting the characters of the received text messages and the bytes of the received
+     * binary messages.
+     */
+    public static class CountingEndpoint extends Endpoint {
+        private long received = 0;
+
+
+        @Override
+        public void onOpen(final Session session, final EndpointConfig config) {
+            session.addMessageHandler(String.class, message -> received += message.length());
+            session.addMessageHandler(ByteBuffer.class, message -> received += message.remaining());
+        }
+
+
+        /**
+         * Gets the number of received characters and bytes.
+         *
+         * @return the number of characters and bytes
+         */
+        public long getReceived() {
+            return received;
+        }
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param transformation the negotiated {@link Transformation} or null
+     * @param maxMessageSize the maximum size of a text or binary message
+     * @throws Exception if the session could not be created
+     */
+    WsBenchmarkSession(final Transformation transformation, final int maxMessageSize) throws Exception {
+        final WsServerContainer container = WsSci.onStartup(Collections.emptySet());
+        container.setDefaultMaxTextMessageBufferSize(maxMessageSize);
+        container.setDefaultMaxBinaryMessageBufferSize(maxMessageSize);
+
+        final CountingEndpoint endpoint = new CountingEndpoint();
+        final ServerEndpointConfig config = ServerEndpointConfig.Builder.create(CountingEndpoint.class, "/bench").build();
+        final WsRemoteEndpointImplServer remoteEndpoint = new WsRemoteEndpointImplServer(container) {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void write(final boolean block, final long timeout, final TimeUnit unit, final CompletionHandler<?, ?> handler, final ByteBuffer... buffers) {
+                long length = 0;
+
+                for (final ByteBuffer buffer : buffers) {
+                    length += buffer.remaining();
+                    buffer.position(buffer.limit());
+                }
+
+                written += length;
+
+                if (handler != null) {
+                    ((CompletionHandler<Long, Void>) handler).completed(length, null);
+                }
+            }
+        };
+
+        final List<Extension> extensions = new ArrayList<>();
+
+        if (transformation != null) {
+            extensions.add(transformation.getExtensionResponse());
+        }
+
+        session = new WsSession(endpoint, remoteEndpoint, container, new URI("/bench"), null, null, null, "benchmark", extensions, null, Collections.emptyMap(), false, config);
+        frame = new WsFrameServer(session, transformation, Thread.currentThread().getContextClassLoader());
+        remoteEndpoint.setTransformation(frame.getTransformation());
+        endpoint.onOpen(session, config);
+    }
+
+
+    /**
+     * Negotiates the server side <code>permessage-deflate</code> {@link Transformation}.
+     *
+     * @param parameters the names of the parameters offered by the client
+     * @return the {@link Transformation}
+     */
+    static Transformation deflate(final String... parameters) {
+        final List<Extension.Parameter> offer = new ArrayList<>();
+
+        for (final String name : parameters) {
+            offer.add(new Extension.Parameter() {
+                @Override
+                public String getName() {
+                    return name;
+                }
+
+
+                @Override
+                public String getValue() {
+                    return null;
+                }
+            });
+        }
+
+        return TransformationFactory.getInstance().create(PerMessageDeflate.NAME, List.of(offer), true);
+    }
+
+
+    /**
+     * Gets the {@link WsSession}.
+     *
+     * @return the {@link WsSession}
+     */
+    WsSession getSession() {
+        return session;
+    }
+
+
+    /**
+     * Gets the {@link WsFrameServer} parsing the incoming frames.
+     *
+     * @return the {@link WsFrameServer}
+     */
+    WsFrameServer getFrame() {
+        return frame;
+    }
+
+
+    /**
+     * Gets the number of bytes written by the session.
+     *
+     * @return the number of bytes
+     */
+    long getWritten() {
+        return written;
+    }
+}
@@ -0,0 +1,169 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.plugin.http.websocket.Transformation;
+import com.airepublic.tobi.plugin.http.websocket.WsFrameBase;
+import com.airepublic.tobi.plugin.http.websocket.WsSession;
+import com.airepublic.tobi.plugin.http.websocket.server.WsFrameServer;
+
+/**
+ * Measures the parsing of masked client text or binary frames by the {@link WsFrameBase} up to the
+ * delivery of the message to the endpoint, optionally inflating <code>permessage-deflate</code>
+ * compressed frames. The compressed frames are negotiated with
+ * <code>client_no_context_takeover</code> so the same frame can be replayed for every invocation.
+ * As the frames are unmasked in place, every invocation first copies the frame to a direct read
+ * buffer like a socket read would.
+ * <p>
+ * Run with <code>-Dwebsocket.read.zeroCopy=true</code> to measure the delivery of single frame
+ * binary messages as views of the read buffer.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsFrameBenchmark {
+    @Param({ "125", "4096", "65536" })
+    private int payloadSize;
+    @Param({ "false", "true" })
+    private boolean deflate;
+    @Param({ "false", "true" })
+    private boolean binary;
+    private WsFrameServer wsFrame;
+    private ByteBuffer frame;
+    private ByteBuffer readBuffer;
+
+    /**
+     * Creates the {@link WsSession} with the {@link WsFrameServer} and the frame to parse.
+     *
+     * @throws Exception if the setup fails
+     */
+    @Setup
+    public void setup() throws Exception {
+        final Transformation transformation = deflate ? WsBenchmarkSession.deflate("client_no_context_takeover") : null;
+        // one spare byte as the end of an inflated binary message is only detected with room left
+        wsFrame = new WsBenchmarkSession(transformation, payloadSize + 1).getFrame();
+        frame = createFrame(payloadSize, deflate, binary);
+        readBuffer = ByteBuffer.allocateDirect(frame.remaining());
+    }
+
+
+    /**
+     * Parses one frame.
+     *
+     * @return the number of bytes consumed
+     * @throws IOException if parsing fails
+     */
+    @Benchmark
+    public int parse() throws IOException {
+        readBuffer.clear();
+        readBuffer.put(frame.duplicate()).flip();
+        wsFrame.onDataAvailable(readBuffer);
+
+        return readBuffer.position();
+    }
+
+
+    /**
+     * Creates a masked final text or binary frame with the specified payload size.
+     *
+     * @param payloadSize the size of the uncompressed payload
+     * @param deflate whether to compress the payload
+     * @param binary whether to create a binary instead of a text frame
+     * @return the frame
+     */
+    static ByteBuffer createFrame(final int payloadSize, final boolean deflate, final boolean binary) {
+        final byte[] text = text(payloadSize);
+        byte[] payload = text;
+
+        if (deflate) {
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(text);
+            final byte[] compressed = new byte[payloadSize + 64];
+            final int length = deflater.deflate(compressed, 0, compressed.length, Deflater.SYNC_FLUSH);
+            deflater.end();
+
+            // strip the 0x00 0x00 0xFF 0xFF tail of the sync flush (RFC 7692)
+            payload = new byte[length - 4];
+            System.arraycopy(compressed, 0, payload, 0, payload.length);
+        }
+
+        final ByteBuffer frame = ByteBuffer.allocate(payload.length + 14);
+        // FIN and text or binary opcode, RSV1 marks a compressed message
+        frame.put((byte) ((deflate ? 0xC0 : 0x80) | (binary ? 0x02 : 0x01)));
+
+        if (payload.length < 126) {
+            frame.put((byte) (0x80 | payload.length));
+        } else if (payload.length < 65536) {
+            frame.put((byte) (0x80 | 126)).putShort((short) payload.length);
+        } else {
+            frame.put((byte) (0x80 | 127)).putLong(payload.length);
+        }
+
+        final byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        frame.put(mask);
+
+        for (int i = 0; i < payload.length; i++) {
+            frame.put((byte) (payload[i] ^ mask[i & 3]));
+        }
+
+        return frame.flip();
+    }
+
+
+    /**
+     * Creates an ASCII text of the specified size.
+     *
+     * @param size the size in bytes
+     * @return the text
+     */
+    static byte[] text(final int size) {
+        final byte[] text = new byte[size];
+
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) ('a' + i % 26);
+        }
+
+        return text;
+    }
+
+
+    /**
+     * Runs the benchmark with the GC profiler to report the allocations per operation.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(WsFrameBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,100 @@
+package com.airepublic.tobi.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.airepublic.tobi.plugin.http.websocket.Util;
+
+/**
+ * Compares unmasking a websocket payload one byte at a time with the long-at-a-time
+ * {@link Util#unmask(ByteBuffer, int, int, byte[], int)} on heap and direct buffers. The payload
+ * starts at an odd mask index to include the rotation of the mask.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WsUnmaskBenchmark {
+    @Param({ "125", "4096", "65536" })
+    private int payloadSize;
+    @Param({ "false", "true" })
+    private boolean direct;
+    private ByteBuffer payload;
+    private final byte[] mask = new byte[4];
+
+    /**
+     * Creates the payload and the mask.
+     */
+    @Setup
+    public void setup() {
+        final byte[] bytes = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        ThreadLocalRandom.current().nextBytes(mask);
+
+        payload = direct ? ByteBuffer.allocateDirect(payloadSize) : ByteBuffer.allocate(payloadSize);
+        payload.put(bytes).flip();
+    }
+
+
+    /**
+     * Unmasks the payload one byte at a time.
+     *
+     * @return the next mask index
+     */
+    @Benchmark
+    public int bytewise() {
+        int maskIndex = 1;
+
+        for (int i = 0; i < payloadSize; i++) {
+            payload.put(i, (byte) (payload.get(i) ^ mask[maskIndex]));
+            maskIndex = maskIndex + 1 & 3;
+        }
+
+        return maskIndex;
+    }
+
+
+    /**
+     * Unmasks the payload eight bytes at a time.
+     *
+     * @return the next mask index
+     */
+    @Benchmark
+    public int longwise() {
+        return Util.unmask(payload, 0, payloadSize, mask, 1);
+    }
+
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the arguments (ignored)
+     * @throws RunnerException if the benchmark fails
+     */
+    public static void main(final String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder().include(WsUnmaskBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
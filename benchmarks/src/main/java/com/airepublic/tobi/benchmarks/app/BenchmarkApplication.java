@@ -0,0 +1,22 @@
+package com.airepublic.tobi.benchmarks.app;
+
+import java.util.Set;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.core.Application;
+
+/**
+ * The JAX-RS {@link Application} served by the benchmark server.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ApplicationPath("/api")
+public class BenchmarkApplication extends Application {
+
+    @Override
+    public Set<Class<?>> getClasses() {
+        return Set.of(BenchmarkResource.class);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.airepublic.tobi.benchmarks.app;
+
+import java.io.IOException;
+
+import com.airepublic.tobi.core.spi.IServerSession;
+import com.airepublic.tobi.module.http.IHttpAuthorizationProvider;
+
+/**
+ * {@link IHttpAuthorizationProvider} accepting all sessions so that the benchmarks measure the
+ * request pipeline and not the authorization.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class BenchmarkAuthorizationProvider implements IHttpAuthorizationProvider {
+
+    @Override
+    public void accept(final IServerSession session) throws IOException {
+    }
+
+}
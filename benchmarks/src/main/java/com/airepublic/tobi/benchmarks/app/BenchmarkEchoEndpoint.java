@@ -0,0 +1,27 @@
+package com.airepublic.tobi.benchmarks.app;
+
+import javax.websocket.OnMessage;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+/**
+ * Websocket server endpoint echoing the client messages for the load generator.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ServerEndpoint(value = "/bench/ws")
+public class BenchmarkEchoEndpoint {
+
+    /**
+     * Echoes the text message.
+     *
+     * @param message the message
+     * @param session the {@link Session}
+     * @return the message
+     */
+    @OnMessage
+    public String onMessage(final String message, final Session session) {
+        return message;
+    }
+}
@@ -0,0 +1,44 @@
+package com.airepublic.tobi.benchmarks.app;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * JAX-RS resource used by the routing benchmark and the load generator.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@Path("/bench")
+public class BenchmarkResource {
+
+    /**
+     * Returns a constant plain text.
+     *
+     * @return the text
+     */
+    @GET
+    @Path("hello")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String hello() {
+        return "Hello world";
+    }
+
+
+    /**
+     * Echoes the request body.
+     *
+     * @param body the request body
+     * @return the request body
+     */
+    @POST
+    @Path("echo")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String echo(final String body) {
+        return body;
+    }
+
+}
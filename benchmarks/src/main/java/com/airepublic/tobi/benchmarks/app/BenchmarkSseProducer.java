@@ -0,0 +1,28 @@
+package com.airepublic.tobi.benchmarks.app;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.airepublic.http.sse.api.SseEvent;
+import com.airepublic.http.sse.api.SseProducer;
+
+/**
+ * SSE resource producing an endless stream of events without delay for the load generator.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class BenchmarkSseProducer {
+    private final AtomicLong counter = new AtomicLong();
+
+
+    /**
+     * Produces the next event.
+     *
+     * @return the {@link SseEvent}
+     */
+    @SseProducer(path = "/bench/sse", maxTimes = -1, delay = 0, unit = TimeUnit.MILLISECONDS)
+    public SseEvent produce() {
+        return new SseEvent.Builder().withData("event " + counter.incrementAndGet()).build();
+    }
+}
@@ -0,0 +1,96 @@
+package com.airepublic.tobi.benchmarks.app;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.faulttolerance.Bulkhead;
+import org.eclipse.microprofile.faulttolerance.CircuitBreaker;
+import org.eclipse.microprofile.faulttolerance.Fallback;
+import org.eclipse.microprofile.faulttolerance.Retry;
+import org.eclipse.microprofile.faulttolerance.Timeout;
+
+/**
+ * Bean with one method per fault tolerance annotation to measure the overhead of the interceptors
+ * on the successful path compared to the plain method.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ApplicationScoped
+public class FaultToleranceService {
+    private int counter = 0;
+
+
+    /**
+     * Method without fault tolerance.
+     *
+     * @return the counter
+     */
+    public int plain() {
+        return counter++;
+    }
+
+
+    /**
+     * Method intercepted by the {@link Retry} interceptor.
+     *
+     * @return the counter
+     */
+    @Retry(maxRetries = 3)
+    public int retry() {
+        return counter++;
+    }
+
+
+    /**
+     * Method intercepted by the {@link Timeout} interceptor.
+     *
+     * @return the counter
+     */
+    @Timeout(1000)
+    public int timeout() {
+        return counter++;
+    }
+
+
+    /**
+     * Method intercepted by the {@link CircuitBreaker} interceptor.
+     *
+     * @return the counter
+     */
+    @CircuitBreaker
+    public int circuitBreaker() {
+        return counter++;
+    }
+
+
+    /**
+     * Method intercepted by the {@link Bulkhead} interceptor.
+     *
+     * @return the counter
+     */
+    @Bulkhead(10)
+    public int bulkhead() {
+        return counter++;
+    }
+
+
+    /**
+     * Method intercepted by the {@link Fallback} interceptor.
+     *
+     * @return the counter
+     */
+    @Fallback(fallbackMethod = "fallbackValue")
+    public int fallback() {
+        return counter++;
+    }
+
+
+    /**
+     * The fallback method for {@link #fallback()}.
+     *
+     * @return -1
+     */
+    public int fallbackValue() {
+        return -1;
+    }
+}
@@ -151,6 +151,10 @@ public class ConfigImpl implements Config {
             convertedValue = (T) Long.valueOf(propertyValue);
         }
 
+        if (propertyType == Boolean.class || propertyType == boolean.class) {
+            convertedValue = (T) Boolean.valueOf(propertyValue);
+        }
+
         if (propertyType == Float.class || propertyType == float.class) {
             convertedValue = (T) Double.valueOf(propertyValue);
         }
@@ -105,6 +105,32 @@ public class ConfigPropertyProducer {
     }
 
 
+    /**
+     * Produces a {@link Long} value for the {@link ConfigProperty} for the injection point.
+     * 
+     * @param ip the {@link InjectionPoint}
+     * @return the resolved value
+     */
+    @Produces
+    @ConfigProperty
+    public Long produceConfigPropertyLong(final InjectionPoint ip) {
+        return produceConfigProperty(ip);
+    }
+
+
+    /**
+     * Produces a {@link Boolean} value for the {@link ConfigProperty} for the injection point.
+     * 
+     * @param ip the {@link InjectionPoint}
+     * @return the resolved value
+     */
+    @Produces
+    @ConfigProperty
+    public Boolean produceConfigPropertyBoolean(final InjectionPoint ip) {
+        return produceConfigProperty(ip);
+    }
+
+
     /**
      * Produces a {@link Float} value for the {@link ConfigProperty} for the injection point.
      * 
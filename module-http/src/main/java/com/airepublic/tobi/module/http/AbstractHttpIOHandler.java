@@ -1,20 +1,38 @@
 package com.airepublic.tobi.module.http;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.SelectionKey;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
+import com.airepublic.http.common.Headers;
 import com.airepublic.http.common.HttpStatus;
+import com.airepublic.logging.java.LogLevel;
+import com.airepublic.logging.java.LoggerConfig;
 import com.airepublic.tobi.core.spi.ChannelAction;
-import com.airepublic.tobi.core.spi.ContextActivator;
+import com.airepublic.tobi.core.spi.ConnectionContext;
 import com.airepublic.tobi.core.spi.IAuthenticationService;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
 import com.airepublic.tobi.core.spi.IIOHandler;
 import com.airepublic.tobi.core.spi.IRequest;
 import com.airepublic.tobi.core.spi.IResponse;
+import com.airepublic.tobi.core.spi.IServerContext;
 import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.Pair;
 
@@ -22,6 +40,19 @@ import com.airepublic.tobi.core.spi.Pair;
  * A base implementation of the {@link IIOHandler} for all HTTP IO handlers. For responses that send
  * a HTTP 401 (Unauthorized) it will also delegate the call to the
  * {@link IHttpAuthorizationProvider} to request a login.
+ * <p>
+ * Handlers supporting persistent connections (see {@link #supportsKeepAlive()}) keep the
+ * connection open after the response has been written if the client and the {@link HttpModule}
+ * configuration allow it.
+ * </p>
+ * <p>
+ * Handlers which might block (see {@link #isBlocking()}) produce their response on the handler
+ * executor of the {@link IServerContext}. The connection is suspended meanwhile and resumed on its
+ * event-loop once the response is available. All other handlers run on the event-loop and must not
+ * block. Blocking handlers can stream large bodies with a {@link ChunkedOutputStream}: its chunks
+ * are queued as responses which the event-loop writes when the connection is writable, while the
+ * handler thread waits for each chunk to be written.
+ * </p>
  * 
  * @author Torsten Oltmanns
  *
@@ -29,34 +60,104 @@ import com.airepublic.tobi.core.spi.Pair;
 public abstract class AbstractHttpIOHandler implements IIOHandler {
     private static final long serialVersionUID = 1L;
     @Inject
+    @LoggerConfig(level = LogLevel.INFO)
+    private Logger logger;
+    @Inject
     private IServerSession session;
     @Inject
     private IAuthenticationService authorizationService;
     private HttpRequest request;
-    private String sessionId;
+    // the context of the connection the handler was created for
+    private ConnectionContext connectionContext;
+    @Inject
+    private HttpModule httpModule;
     @Inject
-    private ContextActivator sessionActivator;
+    private IServerContext serverContext;
+    private boolean keepAlive;
+    // the response of a blocking handler produced on the handler executor
+    private volatile CompletableFuture<Pair<HttpResponse, CompletionHandler<?, ?>>> dispatched;
+    private boolean dispatchedTaken;
+    // chunks of a streamed response queued by the handler thread and the chunk being written
+    private final Queue<ResponseChunk> chunks = new ConcurrentLinkedQueue<>();
+    private ResponseChunk writingChunk;
 
     @PostConstruct
     public void init() {
-        sessionId = session.getId();
+        connectionContext = ConnectionContext.current();
     }
 
 
     /**
-     * The default implementation will just return a {@link ChannelAction#CLOSE_INPUT}.
+     * The default implementation will return a {@link ChannelAction#CLOSE_INPUT} unless the
+     * connection is kept alive. For persistent connections reading is suspended until the
+     * response has been written, so pipelined requests are processed in order.
      * 
      * @param request the {@link Request} read from the incoming stream
-     * @return {@link ChannelAction#CLOSE_INPUT}
+     * @return {@link ChannelAction#CLOSE_INPUT} or {@link ChannelAction#KEEP_OPEN} for persistent
+     *         connections
      * @throws IOException if something goes wrong during processing
      */
     @Override
     public ChannelAction consume(final IRequest request) throws IOException {
+        releaseRequestBody();
         this.request = (HttpRequest) request;
+        dispatched = null;
+        dispatchedTaken = false;
+
+        final IChannelProcessor processor = session.getChannelProcessor();
+        httpModule.cancelIdleTimeout(processor);
+
+        if (supportsKeepAlive()) {
+            Integer requestCount = session.getAttribute(SessionConstants.SESSION_REQUEST_COUNT, Integer.class);
+            requestCount = requestCount == null ? 1 : requestCount + 1;
+            session.setAttribute(SessionConstants.SESSION_REQUEST_COUNT, requestCount);
+
+            keepAlive = httpModule.isKeepAlive(this.request, requestCount);
+
+            if (keepAlive) {
+                processor.getChannel().keyFor(processor.getSelector()).interestOps(SelectionKey.OP_WRITE);
+                return ChannelAction.KEEP_OPEN;
+            }
+        }
+
         return ChannelAction.CLOSE_INPUT;
     }
 
 
+    /**
+     * Whether this handler supports persistent connections, i.e. the connection can serve further
+     * requests after the response has been written. Handlers which keep the connection for a
+     * stream or protocol upgrade must return false.
+     * 
+     * @return true by default
+     */
+    protected boolean supportsKeepAlive() {
+        return true;
+    }
+
+
+    /**
+     * Whether this handler might block while producing the response, e.g. because it invokes
+     * application code. The response of a blocking handler is produced on the handler executor of
+     * the {@link IServerContext} instead of the event-loop.
+     * 
+     * @return false by default
+     */
+    protected boolean isBlocking() {
+        return false;
+    }
+
+
+    /**
+     * Checks whether the connection will be kept alive after the response.
+     * 
+     * @return true if the connection is persistent
+     */
+    protected boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+
     /**
      * The implementation tries to generate a {@link HttpResponse} by calling
      * {@link AbstractHttpIOHandler#getHttpResponse()} and writing the header- and body
@@ -72,18 +173,261 @@ public abstract class AbstractHttpIOHandler implements IIOHandler {
      */
     @Override
     public Pair<? extends IResponse, CompletionHandler<?, ?>> produce() throws IOException {
-        final Pair<HttpResponse, CompletionHandler<?, ?>> response = getHttpResponse();
+        final ResponseChunk chunk = chunks.poll();
+
+        if (chunk != null) {
+            writingChunk = chunk;
+            return new Pair<>(chunk, chunk);
+        }
+
+        final Pair<HttpResponse, CompletionHandler<?, ?>> response;
+
+        if (isBlocking()) {
+            if (dispatched == null) {
+                dispatch();
+            }
+
+            if (!dispatched.isDone()) {
+                return null;
+            }
+
+            dispatchedTaken = true;
+            response = getDispatchedResponse();
+        } else {
+            response = getHttpResponse();
+        }
 
         if (response != null && response.getValue1() != null) {
             if (response.getValue1().getStatus() == HttpStatus.UNAUTHORIZED && session.getPrincipal() == null) {
-                return authorizationService.login(session, response.getValue1());
+                final Pair<IResponse, CompletionHandler<?, ?>> login = authorizationService.login(session, response.getValue1());
+
+                if (login != null && login.getValue1() instanceof HttpResponse) {
+                    addConnectionHeaders((HttpResponse) login.getValue1());
+                }
+
+                return login;
             }
+
+            addConnectionHeaders(response.getValue1());
         }
 
         return response;
     }
 
 
+    /**
+     * Dispatches producing the response to the handler executor. Once the response has been
+     * produced the connection is registered for writing on its event-loop. If the executor is
+     * saturated the request is answered with <code>HTTP 503 (Service Unavailable)</code>.
+     */
+    private void dispatch() {
+        final IChannelProcessor processor = session.getChannelProcessor();
+        final long generation = processor.getGeneration();
+        final CompletableFuture<Pair<HttpResponse, CompletionHandler<?, ?>>> future = new CompletableFuture<>();
+        dispatched = future;
+
+        try {
+            serverContext.getHandlerExecutor().execute(() -> {
+                connectionContext.activate();
+
+                try {
+                    future.complete(getHttpResponse());
+                } catch (final Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    ConnectionContext.deactivate();
+                }
+
+                try {
+                    resume(processor, generation);
+                } catch (final RejectedExecutionException e) {
+                    // the event-loop has been stopped and closes its connections
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.complete(new Pair<>(new HttpResponse(HttpStatus.SERVICE_UNAVAILABLE), null));
+        }
+    }
+
+
+    /**
+     * Gets the response produced on the handler executor.
+     * 
+     * @return the response
+     * @throws IOException if producing the response failed
+     */
+    private Pair<HttpResponse, CompletionHandler<?, ?>> getDispatchedResponse() throws IOException {
+        try {
+            return dispatched.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Error producing response!", e.getCause());
+        }
+    }
+
+
+    /**
+     * Registers the connection for writing on its event-loop to write a response produced by
+     * another thread. If the connection has been closed meanwhile the queued chunks are failed.
+     * 
+     * @param processor the {@link IChannelProcessor}
+     * @param generation the generation of the connection
+     * @throws RejectedExecutionException if the event-loop has been stopped
+     */
+    private void resume(final IChannelProcessor processor, final long generation) {
+        processor.execute(() -> {
+            if (processor.getGeneration() == generation && !processor.isClosed()) {
+                final SelectionKey key = processor.getChannel().keyFor(processor.getSelector());
+
+                if (key != null && key.isValid()) {
+                    key.interestOpsOr(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+
+            failChunks(new ClosedChannelException());
+        });
+    }
+
+
+    /**
+     * Queues the chunk of a streamed response to be written by the event-loop and waits until it
+     * has been written. As a partially written chunked response cannot be recovered the connection
+     * is closed if the write timeout elapses.
+     * 
+     * @param processor the {@link IChannelProcessor}
+     * @param generation the generation of the connection
+     * @param buffers the buffers of the chunk
+     * @throws IOException if the chunk could not be written in time
+     */
+    private void writeChunk(final IChannelProcessor processor, final long generation, final ByteBuffer... buffers) throws IOException {
+        if (processor.inEventLoop()) {
+            throw new IOException("Chunked responses can only be streamed by blocking handlers!");
+        }
+
+        final ResponseChunk chunk = new ResponseChunk(buffers);
+        chunks.add(chunk);
+
+        try {
+            resume(processor, generation);
+        } catch (final RejectedExecutionException e) {
+            chunks.remove(chunk);
+            throw new ClosedChannelException();
+        }
+
+        final long timeout = httpModule.getResponseWriteTimeout();
+
+        try {
+            if (timeout > 0) {
+                chunk.get(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                chunk.get();
+            }
+        } catch (final TimeoutException e) {
+            processor.close(generation);
+            throw new IOException("Timeout writing chunked response after " + timeout + "ms!");
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+
+    /**
+     * Fails the queued chunks and the chunk being written.
+     * 
+     * @param t the cause
+     */
+    private void failChunks(final Throwable t) {
+        if (writingChunk != null) {
+            writingChunk.failed(t, null);
+            writingChunk = null;
+        }
+
+        ResponseChunk chunk;
+
+        while ((chunk = chunks.poll()) != null) {
+            chunk.failed(t, null);
+        }
+    }
+
+
+    @Override
+    public boolean isProcessing() {
+        final CompletableFuture<?> future = dispatched;
+        return future != null && !future.isDone();
+    }
+
+
+    @Override
+    public boolean hasPendingResponses() {
+        if (!chunks.isEmpty()) {
+            return true;
+        }
+
+        final CompletableFuture<?> future = dispatched;
+        return future != null && future.isDone() && !dispatchedTaken;
+    }
+
+
+    /**
+     * Adds the <code>Connection</code> header and for persistent connections the
+     * <code>Content-Length</code> header if they have not been set.
+     * 
+     * @param response the {@link HttpResponse}
+     */
+    private void addConnectionHeaders(final HttpResponse response) {
+        if (!supportsKeepAlive()) {
+            return;
+        }
+
+        final String contentType = response.getHeader(Headers.CONTENT_TYPE);
+
+        // event-streams are terminated by closing the connection
+        if (contentType != null && contentType.startsWith("text/event-stream")) {
+            keepAlive = false;
+        }
+
+        if (response.getHeader(Headers.CONNECTION) == null) {
+            response.withHeader(Headers.CONNECTION, keepAlive ? "keep-alive" : "close");
+        }
+
+        if (keepAlive && response.getHeader("Content-Length") == null && response.getHeader("Transfer-Encoding") == null) {
+            response.withHeader("Content-Length", String.valueOf(response.getBody() != null ? response.getBody().remaining() : 0));
+        }
+    }
+
+
+    /**
+     * Creates a {@link ChunkedOutputStream} for a response body of unknown length. When the body
+     * exceeds the configured response buffer size the header of the response returned by the
+     * supplier is sent with <code>Transfer-Encoding: chunked</code> and the connection header.
+     * Chunks can only be written by blocking handlers (see {@link #isBlocking()}).
+     * 
+     * @param header supplies the {@link HttpResponse} with the status and headers when the
+     *        response is committed
+     * @return the {@link ChunkedOutputStream}
+     */
+    public ChunkedOutputStream createChunkedOutputStream(final Supplier<HttpResponse> header) {
+        final IChannelProcessor processor = getSession().getChannelProcessor();
+        final long generation = processor.getGeneration();
+
+        return new ChunkedOutputStream(buffers -> writeChunk(processor, generation, buffers), serverContext.getBufferPool(), httpModule.getResponseBufferSize(), () -> {
+            final HttpResponse response = header.get();
+            response.getHeaders().keySet().removeIf(name -> name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding"));
+            response.withHeader("Transfer-Encoding", "chunked");
+            addConnectionHeaders(response);
+
+            return response.getHeaderBuffer();
+        });
+    }
+
+
     /**
      * Gets the current consumed {@link HttpRequest}.
      * 
@@ -106,14 +450,29 @@ public abstract class AbstractHttpIOHandler implements IIOHandler {
 
     /**
      * The default implementation ignores the {@link CompletionHandler} and signals to close the
-     * connection.
+     * connection or, for persistent connections, to wait for the next request.
      * 
      * @param handler a handler (ignored)
      * @param length the amount of bytes written
-     * @return {@link ChannelAction#CLOSE_ALL}
+     * @return {@link ChannelAction#KEEP_ALIVE} for persistent connections, otherwise
+     *         {@link ChannelAction#CLOSE_ALL}
      */
     @Override
     public ChannelAction writeSuccessful(final CompletionHandler<?, ?> handler, final long length) {
+        // the handler thread continues with the next chunk
+        if (handler instanceof ResponseChunk) {
+            writingChunk = null;
+            ((ResponseChunk) handler).completed(length, null);
+            return ChannelAction.KEEP_OPEN;
+        }
+
+        releaseRequestBody();
+
+        if (keepAlive) {
+            httpModule.scheduleIdleTimeout(session.getChannelProcessor());
+            return ChannelAction.KEEP_ALIVE;
+        }
+
         return ChannelAction.CLOSE_ALL;
     }
 
@@ -128,10 +487,23 @@ public abstract class AbstractHttpIOHandler implements IIOHandler {
      */
     @Override
     public ChannelAction writeFailed(final CompletionHandler<?, ?> handler, final Throwable t) {
+        failChunks(t);
+        releaseRequestBody();
         return ChannelAction.CLOSE_ALL;
     }
 
 
+    /**
+     * Releases the body of the current request as it is not needed anymore once the response has
+     * been written. Spilled bodies delete their temporary file.
+     */
+    protected void releaseRequestBody() {
+        if (request != null) {
+            request.closeRequestBody();
+        }
+    }
+
+
     /**
      * The default implementation signals to close the connection.
      * 
@@ -141,7 +513,7 @@ public abstract class AbstractHttpIOHandler implements IIOHandler {
     @Override
     public ChannelAction onReadError(final Throwable t) {
         if (t instanceof SecurityException) {
-            System.out.println(t);
+            logger.log(Level.WARNING, "Security violation reading from session #" + session.getId(), t);
         }
         return ChannelAction.CLOSE_ALL;
     }
@@ -160,14 +532,77 @@ public abstract class AbstractHttpIOHandler implements IIOHandler {
 
     @Override
     public void onSessionClose(final IServerSession session) {
+        failChunks(new ClosedChannelException());
+        releaseRequestBody();
         this.session = null;
     }
 
 
     @Override
     public IServerSession getSession() {
-        sessionActivator.activate(sessionId);
+        // only needed if called from a thread other than the event-loop, e.g. a worker
+        if (session != null && connectionContext != null) {
+            connectionContext.activate();
+        }
 
         return session;
     }
+
+    /**
+     * A chunk of a streamed response which completes once it has been written.
+     */
+    private static class ResponseChunk extends CompletableFuture<Long> implements IResponse, CompletionHandler<Long, Void> {
+        private final ByteBuffer[] buffers;
+
+
+        /**
+         * Constructor.
+         * 
+         * @param buffers the buffers of the chunk
+         */
+        ResponseChunk(final ByteBuffer[] buffers) {
+            this.buffers = buffers;
+        }
+
+
+        @Override
+        public <T> T getAttribute(final String key) {
+            return null;
+        }
+
+
+        @Override
+        public <T> void setAttribute(final String key, final T value) {
+        }
+
+
+        @Override
+        public ByteBuffer getAttributesBuffer() {
+            return null;
+        }
+
+
+        @Override
+        public ByteBuffer getPayload() {
+            return null;
+        }
+
+
+        @Override
+        public ByteBuffer[] getBuffers() {
+            return buffers;
+        }
+
+
+        @Override
+        public void completed(final Long length, final Void attachment) {
+            complete(length);
+        }
+
+
+        @Override
+        public void failed(final Throwable t, final Void attachment) {
+            completeExceptionally(t);
+        }
+    }
 }
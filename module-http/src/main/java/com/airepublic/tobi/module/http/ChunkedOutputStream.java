@@ -0,0 +1,203 @@
+package com.airepublic.tobi.module.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+import com.airepublic.tobi.core.spi.BufferPool;
+import com.airepublic.tobi.core.spi.IChannelEncoder;
+
+/**
+ * An {@link OutputStream} for response bodies of unknown length. The bytes are collected in a
+ * buffer from the {@link BufferPool}. If the body fits into the buffer it is sent as normal
+ * response body with a <code>Content-Length</code> (see {@link #toBuffer()}). Otherwise the
+ * response is committed when the buffer is full: the header provided by the header supplier is
+ * written followed by each full buffer as a chunk with <code>Transfer-Encoding: chunked</code>
+ * through the {@link IChannelEncoder} of the connection. The last chunk and the terminating chunk
+ * are returned by {@link #finish()} to be written as the response body.
+ * <p>
+ * The chunks are handed to a {@link ChunkWriter} which writes them on the event-loop of the
+ * connection and returns once the chunk has been written. The producer running on a handler
+ * thread is therefore held back by the client instead of buffering the whole body.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private final ChunkWriter chunkWriter;
+    private final BufferPool bufferPool;
+    private final Supplier<ByteBuffer> headerSupplier;
+    private ByteBuffer buffer;
+    private boolean committed = false;
+    private boolean closed = false;
+
+
+    /**
+     * Constructor.
+     *
+     * @param chunkWriter the {@link ChunkWriter} writing the chunks to the connection
+     * @param bufferPool the {@link BufferPool}
+     * @param bufferSize the size of the buffer and therefore the maximum chunk size
+     * @param headerSupplier supplies the header of the chunked response when it is committed
+     */
+    public ChunkedOutputStream(final ChunkWriter chunkWriter, final BufferPool bufferPool, final int bufferSize, final Supplier<ByteBuffer> headerSupplier) {
+        this.chunkWriter = chunkWriter;
+        this.bufferPool = bufferPool;
+        this.headerSupplier = headerSupplier;
+        buffer = bufferPool.acquire(bufferSize);
+    }
+
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+
+        if (!buffer.hasRemaining()) {
+            writeChunk();
+        }
+
+        buffer.put((byte) b);
+    }
+
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+
+        while (len > 0) {
+            if (!buffer.hasRemaining()) {
+                writeChunk();
+            }
+
+            final int length = Math.min(len, buffer.remaining());
+            buffer.put(b, off, length);
+            off += length;
+            len -= length;
+        }
+    }
+
+
+    /**
+     * Checks whether the header and chunks have already been written to the connection.
+     *
+     * @return true if the response has been committed
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+
+    /**
+     * Gets the body if the response has not been committed.
+     *
+     * @return a {@link ByteBuffer} containing the body
+     * @throws IOException if the stream has been closed
+     */
+    public ByteBuffer toBuffer() throws IOException {
+        ensureOpen();
+        final ByteBuffer body = ByteBuffer.allocate(buffer.position());
+        body.put(buffer.flip()).flip();
+        release();
+
+        return body;
+    }
+
+
+    /**
+     * Gets the remaining bytes as last chunk followed by the terminating chunk of a committed
+     * response.
+     *
+     * @return a {@link ByteBuffer} containing the rest of the chunked body
+     * @throws IOException if the stream has been closed
+     */
+    public ByteBuffer finish() throws IOException {
+        ensureOpen();
+        final ByteBuffer rest;
+
+        if (buffer.position() > 0) {
+            final byte[] size = Integer.toHexString(buffer.position()).getBytes(StandardCharsets.ISO_8859_1);
+            rest = ByteBuffer.allocate(size.length + CRLF.length + buffer.position() + CRLF.length + LAST_CHUNK.length);
+            rest.put(size).put(CRLF).put(buffer.flip()).put(CRLF);
+        } else {
+            rest = ByteBuffer.allocate(LAST_CHUNK.length);
+        }
+
+        rest.put(LAST_CHUNK).flip();
+        release();
+
+        return rest;
+    }
+
+
+    /**
+     * Writes the buffered bytes as chunk and commits the response with the first chunk.
+     *
+     * @throws IOException if writing fails or the write timeout elapses
+     */
+    private void writeChunk() throws IOException {
+        final ByteBuffer size = ByteBuffer.wrap((Integer.toHexString(buffer.position()) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        if (!committed) {
+            committed = true;
+            chunkWriter.write(headerSupplier.get(), size, buffer.flip(), ByteBuffer.wrap(CRLF));
+        } else {
+            chunkWriter.write(size, buffer.flip(), ByteBuffer.wrap(CRLF));
+        }
+
+        buffer.clear();
+    }
+
+
+    /**
+     * Checks that the stream has not been released.
+     *
+     * @throws IOException if the stream has been released
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+
+    /**
+     * Closing the stream does not end the response as message body writers might close the stream
+     * before the response is completed by {@link #toBuffer()} or {@link #finish()}.
+     */
+    @Override
+    public void close() {
+    }
+
+
+    /**
+     * Releases the buffer. The bytes written so far are only available through {@link #toBuffer()}
+     * or {@link #finish()} before the stream is released.
+     */
+    public void release() {
+        if (!closed) {
+            closed = true;
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Writes the buffers of a chunk to the connection.
+     */
+    public interface ChunkWriter {
+
+        /**
+         * Writes the buffers completely and returns once they have been written.
+         *
+         * @param buffers the buffers
+         * @throws IOException if writing fails or the write timeout elapses
+         */
+        void write(ByteBuffer... buffers) throws IOException;
+    }
+}
@@ -0,0 +1,113 @@
+package com.airepublic.tobi.module.http;
+
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * An {@link SSLContext} which applies the configured {@link SSLParameters} (protocols, cipher
+ * suites, application protocols) to every {@link SSLEngine} it creates. All other calls are
+ * delegated to an initialized {@link SSLContext}, so the session caches are shared with it.
+ * 
+ * @author Torsten Oltmanns
+ *
+ */
+public class ConfiguredSslContext extends SSLContext {
+
+    /**
+     * Constructor.
+     * 
+     * @param delegate the initialized {@link SSLContext}
+     * @param parameters the {@link SSLParameters} to apply to created {@link SSLEngine}s
+     */
+    public ConfiguredSslContext(final SSLContext delegate, final SSLParameters parameters) {
+        super(new Spi(delegate, parameters), delegate.getProvider(), delegate.getProtocol());
+    }
+
+    /**
+     * The {@link SSLContextSpi} delegating to the initialized {@link SSLContext}.
+     */
+    private static class Spi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final SSLParameters parameters;
+
+
+        /**
+         * Constructor.
+         * 
+         * @param delegate the initialized {@link SSLContext}
+         * @param parameters the {@link SSLParameters} to apply to created {@link SSLEngine}s
+         */
+        Spi(final SSLContext delegate, final SSLParameters parameters) {
+            this.delegate = delegate;
+            this.parameters = parameters;
+        }
+
+
+        @Override
+        protected void engineInit(final KeyManager[] km, final TrustManager[] tm, final SecureRandom sr) throws KeyManagementException {
+            delegate.init(km, tm, sr);
+        }
+
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            final SSLEngine engine = delegate.createSSLEngine();
+            engine.setSSLParameters(parameters);
+            return engine;
+        }
+
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(final String host, final int port) {
+            final SSLEngine engine = delegate.createSSLEngine(host, port);
+            engine.setSSLParameters(parameters);
+            return engine;
+        }
+
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
@@ -2,6 +2,11 @@ package com.airepublic.tobi.module.http;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,19 +14,33 @@ import javax.inject.Inject;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 
-import com.airepublic.http.common.AsyncHttpReader;
 import com.airepublic.http.common.SslSupport;
 import com.airepublic.logging.java.LogLevel;
 import com.airepublic.logging.java.LoggerConfig;
-import com.airepublic.tobi.core.spi.Attributes;
 import com.airepublic.tobi.core.spi.IChannelEncoder;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
 import com.airepublic.tobi.core.spi.IRequest;
+import com.airepublic.tobi.core.spi.IServerContext;
 import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.Pair;
+import com.airepublic.tobi.core.spi.TimingWheel;
 
 /**
  * Encodes/Decodes {@link ByteBuffer} of incoming/outgoing HTTP responses/requests. This includes
- * SSL processing.
+ * SSL processing. Closed encoders are returned to the pool of the {@link HttpModule} and
+ * initialized again for the next connection.
+ * <p>
+ * The TLS handshake of a secure connection is performed by a {@link SslHandshake} driven by the
+ * read and write events of the connection, so that a slow client does not block the event-loop.
+ * Its delegated tasks run on the handshake executor of the {@link HttpModule} and the connection
+ * is closed if the handshake does not complete within the handshake timeout. Encoders which are
+ * not attached to an {@link IChannelProcessor} run the tasks themselves without a timeout.
+ * </p>
+ * <p>
+ * Request bodies spilled to a temporary file are written on the handler executor of the
+ * {@link IServerContext}. Reading is suspended while the writes are pending and resumed through
+ * the write event of the connection once they have completed.
+ * </p>
  * 
  * @author Torsten Oltmanns
  *
@@ -29,14 +48,24 @@ import com.airepublic.tobi.core.spi.Pair;
 public class HttpChannelEncoder implements AutoCloseable, IChannelEncoder {
     public static final String HEADERS = "http.headers";
     public static final String REQUEST_LINE = "http.request.requestLine";
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
 
     @Inject
     @LoggerConfig(level = LogLevel.INFO)
     private Logger logger;
+    @Inject
+    private IServerContext serverContext;
+    @Inject
+    private HttpModule httpModule;
     private SSLEngine sslEngine;
+    private SslCodec sslCodec;
     private boolean isSecure;
     private IServerSession session;
-    private final AsyncHttpReader httpReader = new AsyncHttpReader();
+    private HttpRequestParser requestParser;
+    private SslHandshake handshake;
+    private SelectionKey selectionKey;
+    private TimingWheel.Timeout handshakeTimeout;
+    private long handshakeStart;
 
     /**
      * Initializes this encoder with the specified {@link IServerSession} and {@link SSLContext}.
@@ -44,16 +73,168 @@ public class HttpChannelEncoder implements AutoCloseable, IChannelEncoder {
      * @param session the {@link IServerSession}
      * @param sslContext the {@link SSLContext}
      * @param isSecure whether the connection is secure
-     * @throws IOException if SSL handshaking fails
+     * @throws IOException if the SSL handshake cannot be started
      */
     public void init(final IServerSession session, final SSLContext sslContext, final boolean isSecure) throws IOException {
         this.session = session;
         this.isSecure = isSecure;
 
+        // the parser is reset when the encoder is closed
+        if (requestParser == null) {
+            requestParser = new HttpRequestParser(serverContext.getBufferPool(), httpModule.getMaxHeaderSize(), httpModule.getMaxInMemoryBodySize());
+        }
+
+        // keep disk I/O off the event-loop of attached encoders
+        requestParser.setBodyWriter(session.getChannelProcessor() != null ? serverContext.getHandlerExecutor() : null);
+
         // create SSL engine if necessary
         if (isSecure) {
-            sslEngine = SslSupport.serverSSLHandshake(sslContext, session.getChannel());
+            final SocketChannel channel = session.getChannel();
+            final IChannelProcessor processor = session.getChannelProcessor();
+
+            handshakeStart = System.nanoTime();
+            sslEngine = sslContext.createSSLEngine();
+            sslEngine.setUseClientMode(false);
+            sslEngine.beginHandshake();
+            sslCodec = new SslCodec(sslEngine, channel, serverContext.getBufferPool());
+
+            if (processor != null) {
+                final Selector selector = processor.getSelector();
+                final long generation = processor.getGeneration();
+
+                // continue the handshake on the event-loop once the delegated tasks have completed
+                handshake = new SslHandshake(sslEngine, channel, serverContext.getBufferPool(), httpModule.getHandshakeExecutor(), () -> executeOnEventLoop(processor, generation, () -> {
+                    final SelectionKey key = channel.keyFor(selector);
+
+                    if (key != null && key.isValid()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                }));
+                handshakeTimeout = serverContext.getTimer().schedule(() -> executeOnEventLoop(processor, generation, () -> {
+                    if (isHandshaking()) {
+                        logger.fine("Closing connection as the TLS handshake has not been completed in time");
+                        httpModule.getTlsStatistics().handshakeFailed(sslEngine);
+                        processor.close(generation);
+                    }
+                }), httpModule.getHandshakeTimeout(), TimeUnit.MILLISECONDS);
+            } else {
+                handshake = new SslHandshake(sslEngine, channel, serverContext.getBufferPool(), null, null);
+            }
+        }
+    }
+
+
+    /**
+     * Queues the task to the event-loop of the connection. The task is only run if the connection
+     * of the specified generation is still open, i.e. the processor has not been closed or reused.
+     * 
+     * @param processor the {@link IChannelProcessor}
+     * @param generation the generation of the connection
+     * @param task the task
+     */
+    private static void executeOnEventLoop(final IChannelProcessor processor, final long generation, final Runnable task) {
+        try {
+            processor.execute(() -> {
+                if (processor.getGeneration() == generation && !processor.isClosed()) {
+                    task.run();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // the event-loop has been stopped and closes its connections
+        }
+    }
+
+
+    /**
+     * Checks whether the TLS handshake is still in progress.
+     * 
+     * @return true if the handshake has not been completed yet
+     */
+    public boolean isHandshaking() {
+        return handshake != null;
+    }
+
+
+    /**
+     * Handles the {@link SslHandshake.State} after the handshake has been advanced by setting the
+     * interest of the connection in the event the handshake waits for.
+     * 
+     * @param state the {@link SslHandshake.State}
+     * @return true if the handshake has been completed
+     */
+    private boolean handleHandshakeState(final SslHandshake.State state) {
+        if (state == SslHandshake.State.FINISHED) {
+            if (handshakeTimeout != null) {
+                handshakeTimeout.cancel();
+                handshakeTimeout = null;
+            }
+
+            httpModule.getTlsStatistics().handshakeCompleted(sslEngine, System.nanoTime() - handshakeStart);
+
+            // bytes received after the handshake are application data
+            final ByteBuffer leftover = handshake.takeLeftover();
+
+            if (leftover != null) {
+                sslCodec.keep(leftover);
+            }
+
+            handshake.close();
+            handshake = null;
+        }
+
+        final SelectionKey key = getSelectionKey();
+
+        if (key != null && key.isValid()) {
+            switch (state) {
+                case NEED_WRITE:
+                    key.interestOps(SelectionKey.OP_WRITE);
+                break;
+                case NEED_TASK:
+                    // the executor requests the write event when the tasks have completed
+                    key.interestOps(0);
+
+                    if (!handshake.isTaskRunning()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                break;
+                default:
+                    key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        return state == SslHandshake.State.FINISHED;
+    }
+
+
+    /**
+     * Gets the {@link SelectionKey} of the connection.
+     * 
+     * @return the {@link SelectionKey} or null if the encoder is not attached to an
+     *         {@link IChannelProcessor}
+     */
+    private SelectionKey getSelectionKey() {
+        if (selectionKey == null) {
+            final IChannelProcessor processor = session.getChannelProcessor();
+
+            if (processor != null) {
+                selectionKey = processor.getChannel().keyFor(processor.getSelector());
+            }
         }
+
+        return selectionKey;
+    }
+
+
+    /**
+     * Records a failed handshake.
+     */
+    private void handshakeFailed() {
+        if (handshakeTimeout != null) {
+            handshakeTimeout.cancel();
+            handshakeTimeout = null;
+        }
+
+        httpModule.getTlsStatistics().handshakeFailed(sslEngine);
     }
 
 
@@ -67,50 +248,184 @@ public class HttpChannelEncoder implements AutoCloseable, IChannelEncoder {
     }
 
 
+    /**
+     * Gets the {@link SslCodec} used to wrap and unwrap with pooled buffers.
+     * 
+     * @return the {@link SslCodec} or null if the connection is not secure
+     */
+    public SslCodec getSslCodec() {
+        return sslCodec;
+    }
+
+
     @Override
     public Pair<Status, IRequest> decode(ByteBuffer buffer) throws IOException {
+        if (handshake != null) {
+            try {
+                if (!handleHandshakeState(handshake.receive(buffer))) {
+                    return new Pair<>(Status.NEED_MORE_DATA, null);
+                }
+            } catch (final IOException e) {
+                handshakeFailed();
+                throw e;
+            }
+
+            // the received bytes have been consumed by the handshake
+            buffer = EMPTY_BUFFER;
+        }
+
         if (isSecure) {
-            buffer = SslSupport.unwrap(sslEngine, session.getChannel(), buffer);
+            buffer = sslCodec.unwrap(buffer);
         }
 
         if (buffer == null) {
             return new Pair<>(Status.CLOSED, null);
         }
 
-        if (httpReader.receiveBuffer(buffer)) {
-            final com.airepublic.http.common.HttpRequest request = httpReader.getHttpRequest();
-            httpReader.clear();
+        try {
+            requestParser.receive(buffer);
+        } finally {
+            if (isSecure) {
+                sslCodec.release(buffer);
+            }
+        }
+
+        // pipelined requests remain in the parser until the previous request has been answered
+        HttpRequest request = requestParser.parse(session);
+
+        if (request == null) {
+            final IChannelProcessor processor = session.getChannelProcessor();
+
+            if (processor != null) {
+                final long generation = processor.getGeneration();
 
-            logger.log(Level.INFO, "Processing session #" + session.getId() + " HTTP request: " + request.getRequestLine());
+                // suspend reading until the body has been written to its temporary file
+                if (requestParser.awaitBody(() -> executeOnEventLoop(processor, generation, this::resumeDecoding))) {
+                    getSelectionKey().interestOps(0);
+                    return new Pair<>(Status.NEED_MORE_DATA, null);
+                }
 
-            final Attributes attributes = new Attributes();
-            attributes.setAttribute(REQUEST_LINE, request.getRequestLine());
-            attributes.setAttribute(HEADERS, request.getHeaders());
-            final IRequest wrapped = new HttpRequest(session, request.getRequestLine(), request.getHeaders(), request.getBody());
-            return new Pair<>(Status.FULLY_READ, wrapped);
+                // the body might have been written in the meantime
+                request = requestParser.parse(session);
+            }
+        }
+
+        if (request != null) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Processing session #" + session.getId() + " HTTP request: " + request.getRequestLine());
+            }
+
+            return new Pair<>(Status.FULLY_READ, request);
         }
 
         return new Pair<>(Status.NEED_MORE_DATA, null);
     }
 
 
+    /**
+     * Resumes decoding through the write event of the connection once the pending writes of a
+     * request body have completed.
+     */
+    private void resumeDecoding() {
+        final SelectionKey key = getSelectionKey();
+
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+
+    /**
+     * Continues the TLS handshake when the connection becomes writable or the delegated tasks have
+     * completed, or continues decoding once the pending writes of a request body have completed.
+     */
+    @Override
+    public Pair<Status, IRequest> onWritable() throws IOException {
+        if (handshake == null) {
+            final SelectionKey key = getSelectionKey();
+
+            if (key == null) {
+                return null;
+            }
+
+            key.interestOps(SelectionKey.OP_READ);
+            return decode(EMPTY_BUFFER);
+        }
+
+        try {
+            if (!handleHandshakeState(handshake.advance())) {
+                return new Pair<>(Status.NEED_MORE_DATA, null);
+            }
+        } catch (final IOException e) {
+            handshakeFailed();
+            throw e;
+        }
+
+        // decode a request received together with the last handshake message
+        return decode(EMPTY_BUFFER);
+    }
+
+
     @Override
     public ByteBuffer[] encode(ByteBuffer... buffers) throws IOException {
         if (isSecure) {
-            buffers = SslSupport.wrap(sslEngine, session.getChannel(), buffers);
+            buffers = sslCodec.wrap(buffers);
         }
 
         return buffers;
     }
 
 
+    @Override
+    public void release(final ByteBuffer... buffers) {
+        if (isSecure) {
+            sslCodec.release(buffers);
+        }
+    }
+
+
+    @Override
+    public boolean isPassThrough() {
+        return !isSecure;
+    }
+
+
     @Override
     public void close() {
-        if (sslEngine != null) {
+        // already closed and possibly reused by another connection
+        if (session == null) {
+            return;
+        }
+
+        if (handshakeTimeout != null) {
+            handshakeTimeout.cancel();
+            handshakeTimeout = null;
+        }
+
+        if (handshake != null) {
+            // the connection is closed without close_notify as the handshake is incomplete
+            handshake.close();
+            handshake = null;
+        } else if (sslEngine != null) {
             try {
                 SslSupport.closeConnection(session.getChannel(), sslEngine);
             } catch (final Exception e) {
             }
         }
+
+        if (sslCodec != null) {
+            sslCodec.close();
+        }
+
+        if (requestParser != null) {
+            requestParser.close();
+        }
+
+        sslEngine = null;
+        sslCodec = null;
+        selectionKey = null;
+        isSecure = false;
+        session = null;
+        httpModule.releaseChannelEncoder(this);
     }
 }
@@ -1,31 +1,56 @@
 package com.airepublic.tobi.module.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.airepublic.http.common.Headers;
 import com.airepublic.http.common.SslSupport;
 import com.airepublic.logging.java.LogLevel;
 import com.airepublic.logging.java.LoggerConfig;
 import com.airepublic.tobi.core.spi.IChannelProcessor;
 import com.airepublic.tobi.core.spi.IIOHandler;
 import com.airepublic.tobi.core.spi.IRequest;
+import com.airepublic.tobi.core.spi.IServerContext;
 import com.airepublic.tobi.core.spi.IServerModule;
 import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.IServicePlugin;
+import com.airepublic.tobi.core.spi.ObjectPool;
+import com.airepublic.tobi.core.spi.TimingWheel;
 
 /**
  * The module for handling HTTP/S requests and responses. The module can be configured with
@@ -37,7 +62,50 @@ import com.airepublic.tobi.core.spi.IServicePlugin;
  * <li><code>http.keystore.password</code> - the password to the keystore file</li>
  * <li><code>http.truststore.file</code> - the path to the truststore file</li>
  * <li><code>http.truststore.password</code> - the password to the truststore file</li>
+ * <li><code>http.ssl.protocols</code> - the comma separated TLS protocols enabled in the order of
+ * preference (default TLSv1.3,TLSv1.2)</li>
+ * <li><code>http.ssl.cipherSuites</code> - the comma separated cipher suites enabled in the order
+ * of preference (default the cipher suites enabled by the JDK)</li>
+ * <li><code>http.ssl.applicationProtocols</code> - the comma separated ALPN protocols (default
+ * http/1.1)</li>
+ * <li><code>http.ssl.sessionCacheSize</code> - the maximum number of TLS sessions cached for
+ * resumption (default 20480, 0 for unlimited)</li>
+ * <li><code>http.ssl.sessionTimeout</code> - the time in seconds a cached TLS session can be
+ * resumed (default 86400)</li>
+ * <li><code>http.ssl.sessionTickets</code> - whether TLS sessions are expected to be resumed from
+ * stateless session tickets instead of the server side cache (default true). The JDK only allows
+ * to enable session tickets for the whole JVM, so they must be configured by starting the JVM with
+ * <code>-Djdk.tls.server.enableSessionTicketExtension=true|false</code>. A warning is logged if
+ * the JVM setting does not match this property.</li>
+ * <li><code>http.ssl.handshakeTimeout</code> - the time in milliseconds after which a connection
+ * is closed if the TLS handshake has not been completed (default 10000)</li>
+ * <li><code>http.ssl.handshakeThreads</code> - the number of threads running the CPU intensive
+ * tasks of TLS handshakes (default 0 for the number of processors)</li>
+ * <li><code>http.ssl.handshakeQueueSize</code> - the maximum number of handshake tasks waiting for
+ * a thread, further handshakes are refused by closing their connection (default 1024)</li>
+ * <li><code>http.keepalive.timeout</code> - the time in milliseconds an idle persistent connection
+ * is kept open (default 15000, 0 disables persistent connections)</li>
+ * <li><code>http.keepalive.maxRequests</code> - the maximum number of requests served on one
+ * connection (default 100, 0 for unlimited)</li>
+ * <li><code>http.maxHeaderSize</code> - the maximum size in bytes of the request line and headers
+ * (default 8192)</li>
+ * <li><code>http.body.maxInMemorySize</code> - the maximum size in bytes of a request body kept in
+ * memory, larger bodies are spilled to a temporary file written off the event-loop. Bodies are
+ * received completely before the request is processed (default 1048576)</li>
+ * <li><code>http.response.bufferSize</code> - the size in bytes up to which streamed response
+ * bodies are sent with a <code>Content-Length</code>, larger bodies are sent in chunks of this size
+ * (default 16384)</li>
+ * <li><code>http.encoder.poolSize</code> - the maximum number of idle channel encoders kept for
+ * reuse (default 256)</li>
+ * <li><code>http.response.writeTimeout</code> - the time in milliseconds a handler waits for a
+ * chunk of a chunked response to be written to the connection (default 30000)</li>
  * </ul>
+ * Connections and requests which are not admitted by the server are answered with a HTTP 503. For
+ * connections to the HTTPS port the connection is closed without a response.
+ * <p>
+ * TLS handshakes do not block the event-loop (see {@link SslHandshake}). The number of full and
+ * resumed TLS handshakes and the handshake time are counted in the {@link TlsStatistics}.
+ * </p>
  * 
  * @author Torsten Oltmanns
  *
@@ -50,6 +118,24 @@ public class HttpModule implements IServerModule {
     public final static String KEYSTORE_PASSWORD = "http.keystore.password";
     public final static String TRUSTSTORE_FILE = "http.truststore.file";
     public final static String TRUSTSTORE_PASSWORD = "http.truststore.password";
+    public final static String SSL_PROTOCOLS = "http.ssl.protocols";
+    public final static String SSL_CIPHER_SUITES = "http.ssl.cipherSuites";
+    public final static String SSL_APPLICATION_PROTOCOLS = "http.ssl.applicationProtocols";
+    public final static String SSL_SESSION_CACHE_SIZE = "http.ssl.sessionCacheSize";
+    public final static String SSL_SESSION_TIMEOUT = "http.ssl.sessionTimeout";
+    public final static String SSL_SESSION_TICKETS = "http.ssl.sessionTickets";
+    public final static String SSL_HANDSHAKE_TIMEOUT = "http.ssl.handshakeTimeout";
+    public final static String SSL_HANDSHAKE_THREADS = "http.ssl.handshakeThreads";
+    public final static String SSL_HANDSHAKE_QUEUE_SIZE = "http.ssl.handshakeQueueSize";
+    public final static String KEEPALIVE_TIMEOUT = "http.keepalive.timeout";
+    public final static String KEEPALIVE_MAX_REQUESTS = "http.keepalive.maxRequests";
+    public final static String MAX_HEADER_SIZE = "http.maxHeaderSize";
+    public final static String MAX_IN_MEMORY_BODY_SIZE = "http.body.maxInMemorySize";
+    public final static String RESPONSE_BUFFER_SIZE = "http.response.bufferSize";
+    public final static String RESPONSE_WRITE_TIMEOUT = "http.response.writeTimeout";
+    public final static String ENCODER_POOL_SIZE = "http.encoder.poolSize";
+    private final static String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+    private final static ByteBuffer REJECT_RESPONSE = ByteBuffer.wrap("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\nRetry-After: 1\r\n\r\n".getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
     @Inject
     @LoggerConfig(level = LogLevel.FINE)
     private Logger logger;
@@ -72,26 +158,210 @@ public class HttpModule implements IServerModule {
     @Inject
     @ConfigProperty(name = TRUSTSTORE_PASSWORD, defaultValue = "changeit")
     private String truststorePassword;
+    @Inject
+    @ConfigProperty(name = SSL_PROTOCOLS, defaultValue = "TLSv1.3,TLSv1.2")
+    private String sslProtocols;
+    @Inject
+    @ConfigProperty(name = SSL_CIPHER_SUITES, defaultValue = "")
+    private String sslCipherSuites;
+    @Inject
+    @ConfigProperty(name = SSL_APPLICATION_PROTOCOLS, defaultValue = "http/1.1")
+    private String sslApplicationProtocols;
+    @Inject
+    @ConfigProperty(name = SSL_SESSION_CACHE_SIZE, defaultValue = "20480")
+    private int sslSessionCacheSize;
+    @Inject
+    @ConfigProperty(name = SSL_SESSION_TIMEOUT, defaultValue = "86400")
+    private int sslSessionTimeout;
+    @Inject
+    @ConfigProperty(name = SSL_SESSION_TICKETS, defaultValue = "true")
+    private boolean sslSessionTickets;
+    @Inject
+    @ConfigProperty(name = SSL_HANDSHAKE_TIMEOUT, defaultValue = "10000")
+    private long sslHandshakeTimeout;
+    @Inject
+    @ConfigProperty(name = SSL_HANDSHAKE_THREADS, defaultValue = "0")
+    private int sslHandshakeThreads;
+    @Inject
+    @ConfigProperty(name = SSL_HANDSHAKE_QUEUE_SIZE, defaultValue = "1024")
+    private int sslHandshakeQueueSize;
+    @Inject
+    @ConfigProperty(name = KEEPALIVE_TIMEOUT, defaultValue = "15000")
+    private long keepAliveTimeout;
+    @Inject
+    @ConfigProperty(name = KEEPALIVE_MAX_REQUESTS, defaultValue = "100")
+    private int keepAliveMaxRequests;
+    @Inject
+    @ConfigProperty(name = MAX_HEADER_SIZE, defaultValue = "8192")
+    private int maxHeaderSize;
+    @Inject
+    @ConfigProperty(name = MAX_IN_MEMORY_BODY_SIZE, defaultValue = "1048576")
+    private int maxInMemoryBodySize;
+    @Inject
+    @ConfigProperty(name = RESPONSE_BUFFER_SIZE, defaultValue = "16384")
+    private int responseBufferSize;
+    @Inject
+    @ConfigProperty(name = RESPONSE_WRITE_TIMEOUT, defaultValue = "30000")
+    private long responseWriteTimeout;
+    @Inject
+    @ConfigProperty(name = ENCODER_POOL_SIZE, defaultValue = "256")
+    private int encoderPoolSize;
+    @Inject
+    private IServerContext serverContext;
+    private final Map<IChannelProcessor, TimingWheel.Timeout> idleTimeouts = new ConcurrentHashMap<>();
+    private ObjectPool<HttpChannelEncoder> channelEncoderPool;
     private SSLContext clientSslContext;
     private SSLContext serverSslContext;
+    private final TlsStatistics tlsStatistics = new TlsStatistics();
+    private ExecutorService handshakeExecutor;
     private int readBufferSize = 16 * 1024;
     @Inject
     private IHttpAuthorizationProvider authorizationProvider;
 
     /**
-     * Initializes the {@link SSLContext}s.
+     * Initializes the {@link SSLContext}s, the executor for the TLS handshake tasks and the pool of
+     * {@link HttpChannelEncoder}s.
      */
     @PostConstruct
     public void init() {
+        channelEncoderPool = new ObjectPool<>(() -> CDI.current().select(HttpChannelEncoder.class).get(), encoderPoolSize);
+
+        // a JVM-wide setting which is read when TLS is used for the first time (enabled by default since Java 14)
+        final boolean sessionTickets = Boolean.parseBoolean(System.getProperty(SESSION_TICKETS_PROPERTY, String.valueOf(Runtime.version().feature() >= 14)));
+
+        if (sessionTickets != sslSessionTickets) {
+            logger.warning(SSL_SESSION_TICKETS + "=" + sslSessionTickets + " does not match the JVM setting. Start the JVM with -D" + SESSION_TICKETS_PROPERTY + "=" + sslSessionTickets + " to change it.");
+        }
 
         try {
-            serverSslContext = SslSupport.createServerSSLContext(keystoreFile, keystorePassword, truststoreFile, truststorePassword);
+            serverSslContext = configureServerSslContext(createServerSslContext());
             clientSslContext = SslSupport.createClientSSLContext();
 
             readBufferSize = SslSupport.getPacketBufferSize();
         } catch (final IOException e) {
             throw new RuntimeException("Could not create SSL context:", e);
         }
+
+        final int threads = sslHandshakeThreads > 0 ? sslHandshakeThreads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, sslHandshakeQueueSize)), r -> {
+            final Thread thread = new Thread(r, "tls-handshake-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        handshakeExecutor = executor;
+    }
+
+
+    /**
+     * Creates the server {@link SSLContext} from the keystore and the truststore. Its key managers
+     * are wrapped to count the full handshakes in the {@link TlsStatistics}.
+     * 
+     * @return the initialized {@link SSLContext}
+     * @throws IOException if the stores cannot be loaded or the context cannot be initialized
+     */
+    private SSLContext createServerSslContext() throws IOException {
+        try {
+            final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(loadKeyStore(keystoreFile, keystorePassword), keystorePassword.toCharArray());
+            final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagerFactory.init(loadKeyStore(truststoreFile, truststorePassword));
+
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(tlsStatistics.trackFullHandshakes(keyManagerFactory.getKeyManagers()), trustManagerFactory.getTrustManagers(), null);
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            throw new IOException("Could not initialize the server SSL context!", e);
+        }
+    }
+
+
+    /**
+     * Loads the key- or truststore. A leading <code>~</code> in the path is replaced with the home
+     * directory of the user.
+     * 
+     * @param file the path to the store
+     * @param password the password of the store
+     * @return the {@link KeyStore}
+     * @throws IOException if the store cannot be read
+     * @throws GeneralSecurityException if the store cannot be loaded
+     */
+    private static KeyStore loadKeyStore(final String file, final String password) throws IOException, GeneralSecurityException {
+        final String path = file.startsWith("~") ? System.getProperty("user.home") + file.substring(1) : file;
+        final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+
+        try (final InputStream in = Files.newInputStream(Paths.get(path))) {
+            keyStore.load(in, password.toCharArray());
+        }
+
+        return keyStore;
+    }
+
+
+    /**
+     * Configures the session cache of the server {@link SSLContext} and wraps it to apply the
+     * configured protocols, cipher suites and application protocols to each connection. Protocols
+     * and cipher suites not supported by the JDK are ignored.
+     * 
+     * @param sslContext the initialized server {@link SSLContext}
+     * @return the configured {@link SSLContext}
+     */
+    private SSLContext configureServerSslContext(final SSLContext sslContext) {
+        final SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+        sessionContext.setSessionCacheSize(sslSessionCacheSize);
+        sessionContext.setSessionTimeout(sslSessionTimeout);
+
+        final SSLParameters supported = sslContext.getSupportedSSLParameters();
+        final SSLParameters parameters = sslContext.getDefaultSSLParameters();
+        final String[] protocols = select(sslProtocols, supported.getProtocols());
+        final String[] cipherSuites = select(sslCipherSuites, supported.getCipherSuites());
+
+        if (protocols.length > 0) {
+            parameters.setProtocols(protocols);
+        }
+
+        if (cipherSuites.length > 0) {
+            parameters.setCipherSuites(cipherSuites);
+        }
+
+        parameters.setUseCipherSuitesOrder(true);
+        parameters.setApplicationProtocols(split(sslApplicationProtocols));
+
+        logger.info("TLS protocols: " + Arrays.toString(parameters.getProtocols()) + ", application protocols: " + Arrays.toString(parameters.getApplicationProtocols()));
+
+        return new ConfiguredSslContext(sslContext, parameters);
+    }
+
+
+    /**
+     * Selects the configured values which are supported keeping the configured order.
+     * 
+     * @param configured the comma separated configured values
+     * @param supported the supported values
+     * @return the selected values
+     */
+    private String[] select(final String configured, final String[] supported) {
+        final List<String> supportedList = Arrays.asList(supported);
+        return Arrays.stream(split(configured)).filter(value -> {
+            if (!supportedList.contains(value)) {
+                logger.warning("Ignoring unsupported TLS setting: " + value);
+                return false;
+            }
+
+            return true;
+        }).toArray(String[]::new);
+    }
+
+
+    /**
+     * Splits the comma separated value.
+     * 
+     * @param value the comma separated value
+     * @return the trimmed non-empty values
+     */
+    private static String[] split(final String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new);
     }
 
 
@@ -160,13 +430,35 @@ public class HttpModule implements IServerModule {
             isSecure = true;
         }
 
-        final HttpChannelEncoder channelEncoder = CDI.current().select(HttpChannelEncoder.class).get();
+        final HttpChannelEncoder channelEncoder = channelEncoderPool.acquire();
         channelEncoder.init(processor.getSession(), getServerSslContext(), isSecure);
 
         processor.getSession().setAttribute(SessionConstants.SESSION_SSL_ENGINE, channelEncoder.getSslEngine());
+        processor.getSession().setAttribute(SessionConstants.SESSION_SSL_CODEC, channelEncoder.getSslCodec());
         processor.setChannelEncoder(channelEncoder);
         processor.getChannel().getRemoteAddress();
-        processor.getChannel().register(processor.getSelector(), SelectionKey.OP_READ);
+        processor.getChannel().register(processor.getSelector(), SelectionKey.OP_READ, processor);
+    }
+
+
+    /**
+     * Cancels the idle timeout of the closed connection.
+     * 
+     * @param processor the {@link IChannelProcessor} of the connection
+     */
+    @Override
+    public void onChannelClose(final IChannelProcessor processor) {
+        cancelIdleTimeout(processor);
+    }
+
+
+    /**
+     * Returns the closed {@link HttpChannelEncoder} to the pool.
+     * 
+     * @param channelEncoder the {@link HttpChannelEncoder}
+     */
+    void releaseChannelEncoder(final HttpChannelEncoder channelEncoder) {
+        channelEncoderPool.release(channelEncoder);
     }
 
 
@@ -178,6 +470,8 @@ public class HttpModule implements IServerModule {
             } catch (final Exception e) {
             }
         }
+
+        handshakeExecutor.shutdownNow();
     }
 
 
@@ -200,6 +494,184 @@ public class HttpModule implements IServerModule {
     }
 
 
+    @Override
+    public ByteBuffer getRejectResponse(final int port) {
+        // a plain response cannot be sent before the TLS handshake
+        if (sslPort != null && sslPort.intValue() == port) {
+            return null;
+        }
+
+        return REJECT_RESPONSE.duplicate();
+    }
+
+
+    @Override
+    public IIOHandler getRejectHandler(final IRequest request) throws IOException {
+        return CDI.current().select(ServiceUnavailableIOHandler.class).get();
+    }
+
+
+    /**
+     * Checks whether the connection may be kept open after the response for the specified request
+     * has been sent. HTTP/1.1 connections are persistent unless the client sends
+     * <code>Connection: close</code>, HTTP/1.0 connections only if the client sends
+     * <code>Connection: keep-alive</code>.
+     * 
+     * @param request the {@link HttpRequest}
+     * @param requestCount the number of requests served on the connection including this one
+     * @return true if the connection should be kept open
+     */
+    public boolean isKeepAlive(final HttpRequest request, final int requestCount) {
+        if (keepAliveTimeout <= 0 || keepAliveMaxRequests > 0 && requestCount >= keepAliveMaxRequests) {
+            return false;
+        }
+
+        final String connection = request.getHeader(Headers.CONNECTION);
+        final String requestLine = request.getRequestLine();
+
+        if (requestLine != null && requestLine.endsWith("HTTP/1.1")) {
+            return connection == null || !connection.equalsIgnoreCase("close");
+        }
+
+        return connection != null && connection.equalsIgnoreCase("keep-alive");
+    }
+
+
+    /**
+     * Schedules the idle timeout for a persistent connection waiting for its next request. The
+     * connection will be closed if no request has been received when the timeout elapses. The
+     * timeout is scheduled on the shared {@link TimingWheel} of the server and the connection is
+     * closed on its event-loop.
+     * 
+     * @param processor the {@link IChannelProcessor} of the connection
+     */
+    public void scheduleIdleTimeout(final IChannelProcessor processor) {
+        if (keepAliveTimeout <= 0) {
+            return;
+        }
+
+        final long generation = processor.getGeneration();
+        // the expired timeout is only read on the event-loop which scheduled it
+        final TimingWheel.Timeout[] timeout = new TimingWheel.Timeout[1];
+        timeout[0] = serverContext.getTimer().schedule(() -> {
+            try {
+                processor.execute(() -> closeIdleConnection(processor, generation, timeout[0]));
+            } catch (final RejectedExecutionException e) {
+                // the event-loop has been stopped and closes its connections
+            }
+        }, keepAliveTimeout, TimeUnit.MILLISECONDS);
+
+        final TimingWheel.Timeout previous = idleTimeouts.put(processor, timeout[0]);
+
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+
+    /**
+     * Closes the idle connection if the expired timeout is still the current idle timeout of the
+     * connection, i.e. no request has been received meanwhile and the processor has not been
+     * reused for another connection.
+     * 
+     * @param processor the {@link IChannelProcessor} of the connection
+     * @param generation the generation of the connection
+     * @param timeout the expired {@link TimingWheel.Timeout}
+     */
+    private void closeIdleConnection(final IChannelProcessor processor, final long generation, final TimingWheel.Timeout timeout) {
+        if (processor.getGeneration() == generation && idleTimeouts.remove(processor, timeout) && !processor.isClosed()) {
+            logger.fine("Closing idle persistent connection");
+            processor.close(generation);
+        }
+    }
+
+
+    /**
+     * Cancels the idle timeout of the connection as a new request has been received.
+     * 
+     * @param processor the {@link IChannelProcessor} of the connection
+     */
+    public void cancelIdleTimeout(final IChannelProcessor processor) {
+        final TimingWheel.Timeout timeout = idleTimeouts.remove(processor);
+
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+
+    /**
+     * Gets the maximum size in bytes of the request line and headers.
+     * 
+     * @return the maximum header size
+     */
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+
+    /**
+     * Gets the maximum size in bytes of a request body kept in memory.
+     * 
+     * @return the maximum in-memory body size
+     */
+    public int getMaxInMemoryBodySize() {
+        return maxInMemoryBodySize;
+    }
+
+
+    /**
+     * Gets the size in bytes up to which streamed response bodies are buffered.
+     * 
+     * @return the response buffer size
+     */
+    public int getResponseBufferSize() {
+        return responseBufferSize;
+    }
+
+
+    /**
+     * Gets the time in milliseconds to wait for a connection to accept more bytes of a chunked
+     * response.
+     * 
+     * @return the response write timeout
+     */
+    public long getResponseWriteTimeout() {
+        return responseWriteTimeout;
+    }
+
+
+    /**
+     * Gets the executor running the delegated tasks of the TLS handshakes. If it is saturated it
+     * rejects the tasks and the handshake fails, so that the event-loop never runs them.
+     * 
+     * @return the {@link ExecutorService}
+     */
+    ExecutorService getHandshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+
+    /**
+     * Gets the time in milliseconds after which an incomplete TLS handshake is aborted.
+     * 
+     * @return the handshake timeout
+     */
+    long getHandshakeTimeout() {
+        return sslHandshakeTimeout;
+    }
+
+
+    /**
+     * Gets the counters of the TLS handshakes.
+     * 
+     * @return the {@link TlsStatistics}
+     */
+    public TlsStatistics getTlsStatistics() {
+        return tlsStatistics;
+    }
+
+
     /**
      * Gets the {@link SSLContext} initialized for server connections.
      * 
@@ -1,7 +1,10 @@
 package com.airepublic.tobi.module.http;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map.Entry;
 
 import com.airepublic.http.common.Headers;
 import com.airepublic.tobi.core.spi.IRequest;
@@ -16,6 +19,7 @@ import com.airepublic.tobi.core.spi.IServerSession;
 public class HttpRequest extends com.airepublic.http.common.HttpRequest implements IRequest {
     private static final long serialVersionUID = 1L;
     private final IServerSession session;
+    private transient HttpRequestBody requestBody;
 
 
     /**
@@ -99,6 +103,27 @@ public class HttpRequest extends com.airepublic.http.common.HttpRequest implemen
      * 
      * @return the {@link ByteBuffer} containing the body
      */
+    /**
+     * Gets the first value of the header with the specified name ignoring the case of the name.
+     * 
+     * @param name the header name
+     * @return the value or null if the header does not exist
+     */
+    public String getHeader(final String name) {
+        if (getHeaders() == null) {
+            return null;
+        }
+
+        for (final Entry<String, List<String>> entry : getHeaders().entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name) && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+
+        return null;
+    }
+
+
     @Override
     public ByteBuffer getPayload() {
         return getBody();
@@ -113,5 +138,53 @@ public class HttpRequest extends com.airepublic.http.common.HttpRequest implemen
     @Override
     public void setPayload(final ByteBuffer payload) {
         setBody(payload);
+        requestBody = null;
+    }
+
+
+    /**
+     * Gets the {@link HttpRequestBody} as received by the {@link HttpRequestParser}. Bodies which
+     * exceed the configured in-memory size are only available through the
+     * {@link HttpRequestBody} as {@link #getBody()} returns null for them.
+     * 
+     * @return the {@link HttpRequestBody} or null if the request has no body
+     */
+    public HttpRequestBody getRequestBody() {
+        if (requestBody == null && getBody() != null) {
+            requestBody = HttpRequestBody.wrap(getBody());
+        }
+
+        return requestBody;
+    }
+
+
+    /**
+     * Sets the {@link HttpRequestBody}.
+     * 
+     * @param requestBody the {@link HttpRequestBody}
+     */
+    public void setRequestBody(final HttpRequestBody requestBody) {
+        this.requestBody = requestBody;
+    }
+
+
+    /**
+     * Gets an {@link InputStream} reading the body from the start without copying it.
+     * 
+     * @return the {@link InputStream} which is empty if the request has no body
+     */
+    public InputStream getBodyInputStream() {
+        final HttpRequestBody body = getRequestBody();
+        return body != null ? body.getInputStream() : InputStream.nullInputStream();
+    }
+
+
+    /**
+     * Releases the {@link HttpRequestBody} and deletes its temporary file if it has been spilled.
+     */
+    public void closeRequestBody() {
+        if (requestBody != null) {
+            requestBody.close();
+        }
     }
 }
@@ -0,0 +1,482 @@
+package com.airepublic.tobi.module.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The body of a {@link HttpRequest} which is written while the request is being received. Bodies
+ * up to the configured in-memory size are kept in a heap buffer of the exact size, larger bodies
+ * (or chunked bodies growing beyond that size) are spilled to a temporary file which is deleted
+ * when the body is closed. The body can be read any number of times through
+ * {@link #getChannel()} or {@link #getInputStream()} without copying it.
+ * <p>
+ * If a writer {@link Executor} is specified the temporary file is created and written by the writer
+ * so that the receiving event-loop does not perform disk I/O. The received bytes are copied and
+ * queued until they have been written. The receiver should suspend reading while the body
+ * {@link #isSaturated() is saturated} and must not read the body before it
+ * {@link #isWritten() has been written}, see {@link #onWritten(Runnable)}. The body is still
+ * received completely before the request is processed, i.e. it is not streamed to the handler.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class HttpRequestBody implements AutoCloseable {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private final int maxInMemorySize;
+    private final Executor writer;
+    private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private long pendingSize;
+    private boolean writing = false;
+    private IOException writeFailure;
+    private Runnable writtenListener;
+    private ByteBuffer memory;
+    private boolean spilled = false;
+    private FileChannel file;
+    private long size;
+    private boolean closed = false;
+
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize the size announced by the <code>Content-Length</code> header or -1 if
+     *        unknown
+     * @param maxInMemorySize the maximum size kept in memory before the body is spilled to a file
+     * @param writer the {@link Executor} writing the temporary file or null to write it on the
+     *        calling thread
+     * @throws IOException if the temporary file could not be created
+     */
+    public HttpRequestBody(final long expectedSize, final int maxInMemorySize, final Executor writer) throws IOException {
+        this.maxInMemorySize = maxInMemorySize;
+        this.writer = writer;
+
+        if (expectedSize > maxInMemorySize) {
+            spill();
+        } else if (expectedSize >= 0) {
+            memory = ByteBuffer.allocate((int) expectedSize);
+        } else {
+            memory = ByteBuffer.allocate(Math.min(INITIAL_CAPACITY, maxInMemorySize));
+        }
+    }
+
+
+    /**
+     * Creates a body for the specified buffer, e.g. for requests which are not received by the
+     * {@link HttpRequestParser}.
+     *
+     * @param buffer the body {@link ByteBuffer}
+     * @return the {@link HttpRequestBody}
+     */
+    public static HttpRequestBody wrap(final ByteBuffer buffer) {
+        return new HttpRequestBody(buffer);
+    }
+
+
+    /**
+     * Constructor for an in-memory body.
+     *
+     * @param buffer the body {@link ByteBuffer}
+     */
+    private HttpRequestBody(final ByteBuffer buffer) {
+        maxInMemorySize = buffer.remaining();
+        writer = null;
+        memory = buffer.slice().position(buffer.remaining());
+        size = buffer.remaining();
+    }
+
+
+    /**
+     * Appends the remaining bytes of the buffer to the body.
+     *
+     * @param buffer the received bytes
+     * @throws IOException if the bytes could not be written to the temporary file
+     */
+    public void write(final ByteBuffer buffer) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+
+        final int length = buffer.remaining();
+
+        if (!spilled && memory.remaining() < length) {
+            if (size + length > maxInMemorySize) {
+                spill();
+            } else {
+                final ByteBuffer grown = ByteBuffer.allocate((int) Math.min(maxInMemorySize, Math.max(memory.capacity() * 2L, size + length)));
+                grown.put(memory.flip());
+                memory = grown;
+            }
+        }
+
+        if (spilled) {
+            if (writer == null) {
+                writeFile(buffer);
+            } else {
+                queue(ByteBuffer.allocate(length).put(buffer).flip());
+            }
+        } else {
+            memory.put(buffer);
+        }
+
+        size += length;
+    }
+
+
+    /**
+     * Moves the body to a temporary file.
+     *
+     * @throws IOException if the temporary file could not be created
+     */
+    private void spill() throws IOException {
+        spilled = true;
+
+        if (memory != null) {
+            final ByteBuffer buffer = memory.flip();
+            memory = null;
+
+            if (writer == null) {
+                writeFile(buffer);
+            } else {
+                queue(buffer);
+            }
+        } else if (writer == null) {
+            openFile();
+        }
+    }
+
+
+    /**
+     * Creates the temporary file if it has not been created yet.
+     *
+     * @throws IOException if the temporary file could not be created
+     */
+    private void openFile() throws IOException {
+        if (file == null) {
+            final Path path = Files.createTempFile("tobi-body-", ".tmp");
+            file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+    }
+
+
+    /**
+     * Writes the buffer to the temporary file.
+     *
+     * @param buffer the {@link ByteBuffer}
+     * @throws IOException if the temporary file could not be created or written
+     */
+    private void writeFile(final ByteBuffer buffer) throws IOException {
+        openFile();
+
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+
+    /**
+     * Queues the buffer to be written to the temporary file by the writer.
+     *
+     * @param buffer the {@link ByteBuffer}
+     * @throws IOException if a previous write has failed or the writer rejected the task
+     */
+    private void queue(final ByteBuffer buffer) throws IOException {
+        synchronized (this) {
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+
+            pendingWrites.add(buffer);
+            pendingSize += buffer.remaining();
+
+            if (writing) {
+                return;
+            }
+
+            writing = true;
+        }
+
+        try {
+            writer.execute(this::writePending);
+        } catch (final RejectedExecutionException e) {
+            synchronized (this) {
+                writing = false;
+                writeFailure = new IOException("Request body could not be written!", e);
+                throw writeFailure;
+            }
+        }
+    }
+
+
+    /**
+     * Writes the queued buffers to the temporary file on the writer and notifies the listener once
+     * all of them have been written.
+     */
+    private void writePending() {
+        Runnable listener = null;
+        boolean closeFile = false;
+
+        while (true) {
+            final ByteBuffer buffer;
+
+            synchronized (this) {
+                buffer = closed ? null : pendingWrites.poll();
+
+                if (buffer == null) {
+                    writing = false;
+                    closeFile = closed;
+                    listener = writtenListener;
+                    writtenListener = null;
+                    notifyAll();
+                    break;
+                }
+            }
+
+            final int length = buffer.remaining();
+
+            try {
+                writeFile(buffer);
+            } catch (final IOException e) {
+                synchronized (this) {
+                    writeFailure = e;
+                    pendingWrites.clear();
+                    pendingSize = 0;
+                }
+
+                continue;
+            }
+
+            synchronized (this) {
+                pendingSize -= length;
+            }
+        }
+
+        // the body has been closed while it was written
+        if (closeFile) {
+            closeFile();
+        }
+
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+
+    /**
+     * Checks whether more bytes than the in-memory size wait to be written to the temporary file.
+     * Reading should be suspended until the body {@link #isWritten() has been written}.
+     *
+     * @return true if the body is saturated
+     */
+    public synchronized boolean isSaturated() {
+        return pendingSize > maxInMemorySize;
+    }
+
+
+    /**
+     * Checks whether all received bytes have been written.
+     *
+     * @return true if no bytes wait to be written to the temporary file
+     * @throws IOException if the body could not be written to the temporary file
+     */
+    public synchronized boolean isWritten() throws IOException {
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+
+        return !writing;
+    }
+
+
+    /**
+     * Registers the listener to be called by the writer once all received bytes have been written.
+     * Only one listener is kept.
+     *
+     * @param listener the listener
+     * @return true if the listener has been registered or false if no bytes wait to be written
+     */
+    public synchronized boolean onWritten(final Runnable listener) {
+        if (!writing) {
+            return false;
+        }
+
+        writtenListener = listener;
+        return true;
+    }
+
+
+    /**
+     * Gets the number of bytes written to the body.
+     *
+     * @return the size
+     */
+    public long size() {
+        return size;
+    }
+
+
+    /**
+     * Checks whether the body is kept in memory.
+     *
+     * @return true if the body has not been spilled to a file
+     */
+    public boolean isInMemory() {
+        return !spilled;
+    }
+
+
+    /**
+     * Gets the body as {@link ByteBuffer} if it is kept in memory.
+     *
+     * @return a {@link ByteBuffer} containing the body or null if the body has been spilled to a
+     *         file
+     */
+    public ByteBuffer getBuffer() {
+        return memory != null ? memory.duplicate().flip() : null;
+    }
+
+
+    /**
+     * Gets a new {@link ReadableByteChannel} reading the body from the start.
+     *
+     * @return the {@link ReadableByteChannel}
+     */
+    public ReadableByteChannel getChannel() {
+        if (!spilled) {
+            return new BodyChannel(null, getBuffer());
+        }
+
+        return new BodyChannel(file, null);
+    }
+
+
+    /**
+     * Gets a new {@link InputStream} reading the body from the start.
+     *
+     * @return the {@link InputStream}
+     */
+    public InputStream getInputStream() {
+        return Channels.newInputStream(getChannel());
+    }
+
+
+    /**
+     * Releases the body and deletes the temporary file.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            memory = null;
+            pendingWrites.clear();
+            pendingSize = 0;
+            writtenListener = null;
+
+            // the writer closes the file once the current write has completed
+            if (writing) {
+                return;
+            }
+        }
+
+        if (file == null) {
+            return;
+        }
+
+        if (writer == null) {
+            closeFile();
+        } else {
+            try {
+                writer.execute(this::closeFile);
+            } catch (final RejectedExecutionException e) {
+                closeFile();
+            }
+        }
+    }
+
+
+    /**
+     * Closes and thereby deletes the temporary file.
+     */
+    private void closeFile() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (final IOException e) {
+            }
+        }
+    }
+
+    /**
+     * A {@link ReadableByteChannel} with its own position reading either from the in-memory buffer
+     * or the temporary file of the body.
+     */
+    private class BodyChannel implements ReadableByteChannel {
+        private final FileChannel source;
+        private final ByteBuffer buffer;
+        private long position = 0;
+        private boolean open = true;
+
+
+        /**
+         * Constructor.
+         *
+         * @param source the {@link FileChannel} or null
+         * @param buffer the in-memory {@link ByteBuffer} or null
+         */
+        BodyChannel(final FileChannel source, final ByteBuffer buffer) {
+            this.source = source;
+            this.buffer = buffer;
+        }
+
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (!open || closed) {
+                throw new ClosedChannelException();
+            }
+
+            if (position >= size) {
+                return -1;
+            }
+
+            if (source != null) {
+                final int read = source.read(dst, position);
+                position += Math.max(read, 0);
+                return read;
+            }
+
+            final int length = (int) Math.min(dst.remaining(), size - position);
+            dst.put(buffer.duplicate().position((int) position).limit((int) position + length));
+            position += length;
+            return length;
+        }
+
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
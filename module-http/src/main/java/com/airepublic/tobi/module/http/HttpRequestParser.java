@@ -0,0 +1,467 @@
+package com.airepublic.tobi.module.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+import com.airepublic.http.common.Headers;
+import com.airepublic.tobi.core.spi.BufferPool;
+import com.airepublic.tobi.core.spi.IServerSession;
+
+/**
+ * Frames HTTP/1.x requests from the received bytes of a connection. Bytes following a complete
+ * request are kept so that pipelined requests can be parsed one after the other in the order they
+ * have been received. The received bytes are accumulated in a buffer from the {@link BufferPool}
+ * which is released as soon as all bytes have been consumed.
+ * <p>
+ * Once the head of a request has been parsed the body is moved to a {@link HttpRequestBody} as it
+ * is received, so the pooled buffer only holds the unparsed bytes and bodies larger than the
+ * configured in-memory size are spilled to a temporary file instead of being held in memory.
+ * </p>
+ * <p>
+ * If a body writer is set the temporary file is written by the writer instead of the receiving
+ * thread. A request is only returned once its body has been written and the receiver is expected
+ * to suspend reading while {@link #awaitBody(Runnable)} reports pending writes.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+class HttpRequestParser implements AutoCloseable {
+    private static final String CONTENT_LENGTH = "content-length";
+    private static final String TRANSFER_ENCODING = "transfer-encoding";
+    private final BufferPool bufferPool;
+    private final int maxHeaderSize;
+    private final int maxInMemoryBodySize;
+    private Executor bodyWriter;
+    private ByteBuffer data;
+    private int scanIndex;
+    // state of the parsed head of the current request
+    private String requestLine;
+    private Headers headers;
+    private long contentLength;
+    private boolean chunked;
+    // state of the body of the current request
+    private HttpRequestBody body;
+    private boolean bodyReceived;
+    private long remaining;
+    private ChunkState chunkState;
+
+    /**
+     * The parts of a chunked body.
+     */
+    private enum ChunkState {
+        SIZE, DATA, DATA_END, TRAILER
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param bufferPool the {@link BufferPool}
+     * @param maxHeaderSize the maximum size of the request line and headers
+     * @param maxInMemoryBodySize the maximum size of a request body kept in memory
+     */
+    HttpRequestParser(final BufferPool bufferPool, final int maxHeaderSize, final int maxInMemoryBodySize) {
+        this.bufferPool = bufferPool;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxInMemoryBodySize = maxInMemoryBodySize;
+    }
+
+
+    /**
+     * Sets the {@link Executor} writing bodies which are spilled to a temporary file.
+     *
+     * @param bodyWriter the {@link Executor} or null to write them on the receiving thread
+     */
+    void setBodyWriter(final Executor bodyWriter) {
+        this.bodyWriter = bodyWriter;
+    }
+
+
+    /**
+     * Adds the received bytes to the unparsed bytes. While the body of a request is expected and no
+     * unparsed bytes are pending the bytes are written to the {@link HttpRequestBody} directly.
+     *
+     * @param buffer the received {@link ByteBuffer}
+     * @throws IOException if the body could not be written
+     */
+    void receive(final ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+
+        if (remaining > 0 && (!chunked || chunkState == ChunkState.DATA) && !hasRemaining()) {
+            final int length = (int) Math.min(remaining, buffer.remaining());
+            body.write(buffer.duplicate().limit(buffer.position() + length));
+            buffer.position(buffer.position() + length);
+            remaining -= length;
+
+            if (!buffer.hasRemaining()) {
+                return;
+            }
+        }
+
+        if (data == null) {
+            data = bufferPool.acquire(buffer.remaining());
+            data.flip();
+        }
+
+        if (data.capacity() - data.limit() < buffer.remaining()) {
+            final int offset = data.position();
+            final ByteBuffer newData = bufferPool.acquire(data.remaining() + buffer.remaining());
+            newData.put(data).flip();
+            bufferPool.release(data);
+            data = newData;
+            scanIndex -= offset;
+        }
+
+        final int position = data.position();
+        data.position(data.limit()).limit(data.capacity());
+        data.put(buffer);
+        data.limit(data.position()).position(position);
+    }
+
+
+    /**
+     * Checks whether there are unparsed bytes.
+     *
+     * @return true if unparsed bytes exist
+     */
+    boolean hasRemaining() {
+        return data != null && data.hasRemaining();
+    }
+
+
+    /**
+     * Parses the next complete request from the received bytes.
+     *
+     * @param session the {@link IServerSession} the request belongs to
+     * @return the {@link HttpRequest} or null if more data is needed or the body has not been
+     *         written yet
+     * @throws IOException if the request is malformed, the header is too large or the body could
+     *         not be written
+     */
+    HttpRequest parse(final IServerSession session) throws IOException {
+        if (requestLine == null && (data == null || !parseHead())) {
+            return null;
+        }
+
+        if (!bodyReceived && (chunked ? !parseChunkedBody() : !parseBody())) {
+            return null;
+        }
+
+        bodyReceived = true;
+
+        if (body != null && !body.isWritten()) {
+            return null;
+        }
+
+        final HttpRequest request = new HttpRequest(session, requestLine, headers, body != null ? body.getBuffer() : null);
+        request.setRequestBody(body);
+        body = null;
+        reset();
+
+        return request;
+    }
+
+
+    /**
+     * Registers the listener to be called once the pending writes of the body have completed if
+     * reading should be suspended until then, i.e. the body has been received completely or more
+     * than the in-memory size waits to be written. The listener is called by the body writer.
+     *
+     * @param listener the listener
+     * @return true if the listener has been registered
+     */
+    boolean awaitBody(final Runnable listener) {
+        if (body == null || !bodyReceived && !body.isSaturated()) {
+            return false;
+        }
+
+        return body.onWritten(listener);
+    }
+
+
+    /**
+     * Parses the request line and headers if they have been received completely.
+     *
+     * @return true if the head has been parsed
+     * @throws IOException if the head is malformed or too large
+     */
+    private boolean parseHead() throws IOException {
+        // skip empty lines preceding a request
+        while (data.hasRemaining() && (data.get(data.position()) == '\r' || data.get(data.position()) == '\n')) {
+            data.position(data.position() + 1);
+        }
+
+        scanIndex = Math.max(scanIndex, data.position());
+        int headEnd = -1;
+
+        for (int i = scanIndex; i + 3 < data.limit(); i++) {
+            if (data.get(i) == '\r' && data.get(i + 1) == '\n' && data.get(i + 2) == '\r' && data.get(i + 3) == '\n') {
+                headEnd = i;
+                break;
+            }
+        }
+
+        if (headEnd < 0) {
+            scanIndex = Math.max(data.position(), data.limit() - 3);
+
+            if (data.remaining() > maxHeaderSize) {
+                throw new IOException("HTTP request header exceeds " + maxHeaderSize + " bytes!");
+            }
+
+            return false;
+        }
+
+        if (headEnd - data.position() > maxHeaderSize) {
+            throw new IOException("HTTP request header exceeds " + maxHeaderSize + " bytes!");
+        }
+
+        final String head = new String(copy(data.position(), headEnd - data.position()).array(), StandardCharsets.ISO_8859_1);
+        final String[] lines = head.split("\r\n");
+
+        requestLine = lines[0];
+        headers = new Headers();
+        contentLength = 0;
+        chunked = false;
+
+        for (int i = 1; i < lines.length; i++) {
+            final int colon = lines[i].indexOf(':');
+
+            if (colon <= 0) {
+                throw new IOException("Malformed HTTP header line: " + lines[i]);
+            }
+
+            final String name = lines[i].substring(0, colon).strip();
+            final String value = lines[i].substring(colon + 1).strip();
+            headers.add(name, value);
+
+            if (name.equalsIgnoreCase(CONTENT_LENGTH)) {
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Invalid Content-Length: " + value);
+                }
+
+                if (contentLength < 0) {
+                    throw new IOException("Invalid Content-Length: " + value);
+                }
+            } else if (name.equalsIgnoreCase(TRANSFER_ENCODING) && value.toLowerCase().endsWith("chunked")) {
+                chunked = true;
+            }
+        }
+
+        data.position(headEnd + 4);
+
+        if (chunked || contentLength > 0) {
+            body = new HttpRequestBody(chunked ? -1 : contentLength, maxInMemoryBodySize, bodyWriter);
+            remaining = chunked ? 0 : contentLength;
+            chunkState = ChunkState.SIZE;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Moves the received bytes of a body with a <code>Content-Length</code> to the
+     * {@link HttpRequestBody}.
+     *
+     * @return true if the body has been received completely
+     * @throws IOException if the body could not be written
+     */
+    private boolean parseBody() throws IOException {
+        if (remaining > 0 && hasRemaining()) {
+            remaining -= transfer(remaining);
+        }
+
+        return remaining == 0;
+    }
+
+
+
+
+    /**
+     * Moves the received bytes of a chunked body to the {@link HttpRequestBody} and skips the chunk
+     * sizes, extensions and trailer headers.
+     *
+     * @return true if the body has been received completely
+     * @throws IOException if the chunk encoding is malformed or the body could not be written
+     */
+    private boolean parseChunkedBody() throws IOException {
+        while (true) {
+            switch (chunkState) {
+                case SIZE: {
+                    String sizeLine = readLine();
+
+                    if (sizeLine == null) {
+                        return false;
+                    }
+
+                    final int extension = sizeLine.indexOf(';');
+
+                    if (extension >= 0) {
+                        sizeLine = sizeLine.substring(0, extension);
+                    }
+
+                    try {
+                        remaining = Long.parseLong(sizeLine.strip(), 16);
+                    } catch (final NumberFormatException e) {
+                        throw new IOException("Invalid chunk size: " + sizeLine);
+                    }
+
+                    if (remaining < 0) {
+                        throw new IOException("Invalid chunk size: " + sizeLine);
+                    }
+
+                    chunkState = remaining == 0 ? ChunkState.TRAILER : ChunkState.DATA;
+                }
+                break;
+                case DATA:
+                    if (remaining > 0 && hasRemaining()) {
+                        remaining -= transfer(remaining);
+                    }
+
+                    if (remaining > 0) {
+                        return false;
+                    }
+
+                    chunkState = ChunkState.DATA_END;
+                break;
+                case DATA_END: {
+                    final String line = readLine();
+
+                    if (line == null) {
+                        return false;
+                    }
+
+                    if (!line.isEmpty()) {
+                        throw new IOException("Missing CRLF after chunk data!");
+                    }
+
+                    chunkState = ChunkState.SIZE;
+                }
+                break;
+                case TRAILER: {
+                    // skip trailer headers up to the terminating empty line
+                    final String line = readLine();
+
+                    if (line == null) {
+                        return false;
+                    }
+
+                    if (line.isEmpty()) {
+                        return true;
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Writes up to the specified number of unparsed bytes to the {@link HttpRequestBody}.
+     *
+     * @param max the maximum number of bytes
+     * @return the number of bytes written
+     * @throws IOException if the body could not be written
+     */
+    private int transfer(final long max) throws IOException {
+        final int length = (int) Math.min(max, data.remaining());
+        body.write(data.duplicate().limit(data.position() + length));
+        data.position(data.position() + length);
+
+        return length;
+    }
+
+
+    /**
+     * Reads the next line terminated by CRLF from the unparsed bytes.
+     *
+     * @return the line without CRLF or null if more data is needed
+     * @throws IOException if the line exceeds the maximum header size
+     */
+    private String readLine() throws IOException {
+        if (!hasRemaining()) {
+            return null;
+        }
+
+        for (int i = data.position(); i + 1 < data.limit(); i++) {
+            if (data.get(i) == '\r' && data.get(i + 1) == '\n') {
+                final String line = new String(copy(data.position(), i - data.position()).array(), StandardCharsets.ISO_8859_1);
+                data.position(i + 2);
+
+                return line;
+            }
+        }
+
+        if (data.remaining() > maxHeaderSize) {
+            throw new IOException("HTTP chunk header exceeds " + maxHeaderSize + " bytes!");
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Copies the bytes at the absolute index to a new heap buffer.
+     *
+     * @param index the absolute index
+     * @param length the number of bytes
+     * @return the new {@link ByteBuffer}
+     */
+    private ByteBuffer copy(final int index, final int length) {
+        final ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(data.duplicate().limit(index + length).position(index)).flip();
+        return copy;
+    }
+
+
+    /**
+     * Resets the state of the current request and releases the buffer if all bytes have been
+     * consumed.
+     */
+    private void reset() {
+        requestLine = null;
+        headers = null;
+        contentLength = 0;
+        chunked = false;
+        bodyReceived = false;
+        remaining = 0;
+        chunkState = null;
+
+        if (data != null) {
+            scanIndex = data.position();
+
+            if (!data.hasRemaining()) {
+                bufferPool.release(data);
+                data = null;
+                scanIndex = 0;
+            }
+        }
+    }
+
+
+    /**
+     * Releases the received bytes and the body of an incompletely received request.
+     */
+    @Override
+    public void close() {
+        if (body != null) {
+            body.close();
+            body = null;
+        }
+
+        reset();
+
+        if (data != null) {
+            bufferPool.release(data);
+            data = null;
+            scanIndex = 0;
+        }
+    }
+}
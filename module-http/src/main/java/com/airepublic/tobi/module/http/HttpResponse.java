@@ -1,9 +1,12 @@
 package com.airepublic.tobi.module.http;
 
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map.Entry;
 
 import com.airepublic.http.common.Headers;
 import com.airepublic.http.common.HttpStatus;
+import com.airepublic.tobi.core.spi.FileRegion;
 import com.airepublic.tobi.core.spi.IResponse;
 
 /**
@@ -13,6 +16,8 @@ import com.airepublic.tobi.core.spi.IResponse;
  *
  */
 public class HttpResponse extends com.airepublic.http.common.HttpResponse implements IResponse {
+    private FileRegion fileRegion;
+    private boolean headerSent = false;
 
     /**
      * Constructor.
@@ -69,7 +74,52 @@ public class HttpResponse extends com.airepublic.http.common.HttpResponse implem
 
     @Override
     public ByteBuffer getAttributesBuffer() {
-        return getHeaderBuffer();
+        return headerSent ? null : getHeaderBuffer();
+    }
+
+
+    /**
+     * Marks the status line and headers as already written to the connection, e.g. by a
+     * {@link ChunkedOutputStream}, so that only the body is written.
+     * 
+     * @param headerSent whether the header has already been sent
+     * @return this {@link HttpResponse}
+     */
+    public HttpResponse withHeaderSent(final boolean headerSent) {
+        this.headerSent = headerSent;
+
+        return this;
+    }
+
+
+    /**
+     * Checks whether the status line and headers have already been written to the connection.
+     * 
+     * @return true if the header has already been sent
+     */
+    public boolean isHeaderSent() {
+        return headerSent;
+    }
+
+
+    /**
+     * Gets the first value of the header with the specified name ignoring the case of the name.
+     * 
+     * @param name the header name
+     * @return the value or null if the header does not exist
+     */
+    public String getHeader(final String name) {
+        if (getHeaders() == null) {
+            return null;
+        }
+
+        for (final Entry<String, List<String>> entry : getHeaders().entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name) && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                return entry.getValue().get(0);
+            }
+        }
+
+        return null;
     }
 
 
@@ -79,6 +129,25 @@ public class HttpResponse extends com.airepublic.http.common.HttpResponse implem
     }
 
 
+    @Override
+    public FileRegion getFileRegion() {
+        return fileRegion;
+    }
+
+
+    /**
+     * Sets the {@link FileRegion} to be written after the body.
+     * 
+     * @param fileRegion the {@link FileRegion}
+     * @return this {@link HttpResponse}
+     */
+    public HttpResponse withFileRegion(final FileRegion fileRegion) {
+        this.fileRegion = fileRegion;
+
+        return this;
+    }
+
+
     /**
      * Sets the body fluently.
      * 
@@ -0,0 +1,44 @@
+package com.airepublic.tobi.module.http;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+
+import com.airepublic.http.common.Headers;
+import com.airepublic.http.common.HttpStatus;
+import com.airepublic.tobi.core.spi.IIOHandler;
+import com.airepublic.tobi.core.spi.Pair;
+
+/**
+ * The {@link IIOHandler} for requests which have not been admitted, e.g. because the client
+ * exceeded the request rate. It returns a HTTP 503 and closes the connection.
+ * 
+ * @author Torsten Oltmanns
+ *
+ */
+public class ServiceUnavailableIOHandler extends AbstractHttpIOHandler {
+    private static final long serialVersionUID = 1L;
+
+
+    @Override
+    protected boolean supportsKeepAlive() {
+        return false;
+    }
+
+
+    /**
+     * Returns a HTTP 503 {@link HttpResponse} asking the client to retry later.
+     * 
+     * @return a HTTP 503 {@link HttpResponse}
+     */
+    @Override
+    protected Pair<HttpResponse, CompletionHandler<?, ?>> getHttpResponse() {
+        final Headers headers = new Headers();
+        headers.add(Headers.CONTENT_TYPE, "text/plain");
+        headers.add(Headers.CONNECTION, "close");
+        headers.add("Retry-After", "1");
+        final ByteBuffer buffer = ByteBuffer.wrap("The server is currently unable to handle the request.".getBytes());
+        final HttpResponse response = new HttpResponse(HttpStatus.SERVICE_UNAVAILABLE, headers, buffer);
+
+        return new Pair<>(response, null);
+    }
+}
@@ -11,4 +11,12 @@ public interface SessionConstants {
      * Key for SSL engine.
      */
     String SESSION_SSL_ENGINE = "session.ssl.engine";
+    /**
+     * Key for the {@link SslCodec} of a secure connection.
+     */
+    String SESSION_SSL_CODEC = "session.ssl.codec";
+    /**
+     * Key for the number of requests served on the connection.
+     */
+    String SESSION_REQUEST_COUNT = "session.request.count";
 }
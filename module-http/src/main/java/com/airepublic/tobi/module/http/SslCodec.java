@@ -0,0 +1,299 @@
+package com.airepublic.tobi.module.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import com.airepublic.tobi.core.spi.BufferPool;
+
+/**
+ * Wraps and unwraps application data with an already handshaked {@link SSLEngine} using buffers
+ * from the {@link BufferPool}. Encrypted bytes of an incomplete TLS record are kept until the next
+ * read completes the record.
+ * <p>
+ * All buffers returned by {@link #unwrap(ByteBuffer)} and {@link #wrap(ByteBuffer...)} are pooled
+ * and must be returned with {@link #release(ByteBuffer...)}.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class SslCodec implements AutoCloseable {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private final SSLEngine sslEngine;
+    private final SocketChannel channel;
+    private final BufferPool bufferPool;
+    private ByteBuffer leftover;
+
+    /**
+     * Constructor.
+     *
+     * @param sslEngine the {@link SSLEngine}
+     * @param channel the {@link SocketChannel} used to send handshake messages during unwrapping
+     * @param bufferPool the {@link BufferPool}
+     */
+    public SslCodec(final SSLEngine sslEngine, final SocketChannel channel, final BufferPool bufferPool) {
+        this.sslEngine = sslEngine;
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+    }
+
+
+    /**
+     * Gets the {@link SSLEngine}.
+     *
+     * @return the {@link SSLEngine}
+     */
+    public SSLEngine getSslEngine() {
+        return sslEngine;
+    }
+
+
+    /**
+     * Unwraps the encrypted bytes of the buffer together with any bytes left over from the
+     * previous call.
+     *
+     * @param buffer the encrypted {@link ByteBuffer}
+     * @return the decrypted (flipped) {@link ByteBuffer} or null if the {@link SSLEngine} has been
+     *         closed
+     * @throws IOException if unwrapping fails
+     */
+    public ByteBuffer unwrap(final ByteBuffer buffer) throws IOException {
+        ByteBuffer in = buffer;
+
+        if (leftover != null) {
+            in = bufferPool.acquire(leftover.remaining() + buffer.remaining());
+            in.put(leftover).put(buffer).flip();
+            bufferPool.release(leftover);
+            leftover = in;
+        }
+
+        ByteBuffer out = bufferPool.acquire(sslEngine.getSession().getApplicationBufferSize());
+        boolean closed = false;
+
+        try {
+            loop: while (in.hasRemaining()) {
+                final SSLEngineResult result = sslEngine.unwrap(in, out);
+
+                switch (result.getStatus()) {
+                    case OK:
+                        handleHandshakeStatus(result.getHandshakeStatus());
+                    break;
+                    case BUFFER_OVERFLOW:
+                        out = grow(out, sslEngine.getSession().getApplicationBufferSize());
+                    break;
+                    case BUFFER_UNDERFLOW:
+                        break loop;
+                    case CLOSED:
+                        closed = true;
+                        break loop;
+                }
+            }
+        } catch (final IOException e) {
+            bufferPool.release(out);
+            throw e;
+        }
+
+        // keep bytes of an incomplete record for the next read
+        if (in.hasRemaining()) {
+            if (in != leftover) {
+                leftover = bufferPool.acquire(in.remaining());
+                leftover.put(in).flip();
+            } else {
+                leftover.compact().flip();
+            }
+        } else if (leftover != null) {
+            bufferPool.release(leftover);
+            leftover = null;
+        }
+
+        out.flip();
+
+        if (closed && !out.hasRemaining()) {
+            bufferPool.release(out);
+            return null;
+        }
+
+        return out;
+    }
+
+
+    /**
+     * Keeps the encrypted bytes which have been received together with the last handshake
+     * message. They are unwrapped with the next call of {@link #unwrap(ByteBuffer)}.
+     *
+     * @param buffer the (flipped) pooled {@link ByteBuffer} which is released by this codec
+     */
+    public void keep(final ByteBuffer buffer) {
+        close();
+        leftover = buffer;
+    }
+
+
+    /**
+     * Wraps the application data into TLS records.
+     *
+     * @param buffers the application data {@link ByteBuffer}s
+     * @return the encrypted (flipped) {@link ByteBuffer}s
+     * @throws IOException if wrapping fails or the {@link SSLEngine} has been closed
+     */
+    public ByteBuffer[] wrap(final ByteBuffer... buffers) throws IOException {
+        final List<ByteBuffer> result = new ArrayList<>();
+        final int packetSize = sslEngine.getSession().getPacketBufferSize();
+        ByteBuffer out = bufferPool.acquire(packetSize);
+
+        try {
+            do {
+                final SSLEngineResult wrapResult = sslEngine.wrap(buffers, out);
+
+                switch (wrapResult.getStatus()) {
+                    case OK:
+                        handleHandshakeStatus(wrapResult.getHandshakeStatus());
+                    break;
+                    case BUFFER_OVERFLOW:
+                        out.flip();
+
+                        if (out.hasRemaining()) {
+                            result.add(out);
+                            out = bufferPool.acquire(packetSize);
+                        } else {
+                            bufferPool.release(out);
+                            out = bufferPool.acquire(Math.max(sslEngine.getSession().getPacketBufferSize(), out.capacity() * 2));
+                        }
+                    break;
+                    case BUFFER_UNDERFLOW:
+                        throw new SSLException("Unexpected buffer underflow during wrap!");
+                    case CLOSED:
+                        throw new SSLException("SSLEngine has been closed!");
+                }
+            } while (hasRemaining(buffers));
+        } catch (final IOException e) {
+            bufferPool.release(out);
+            result.forEach(bufferPool::release);
+            throw e;
+        }
+
+        out.flip();
+        result.add(out);
+
+        return result.toArray(new ByteBuffer[result.size()]);
+    }
+
+
+    /**
+     * Releases the buffers returned by {@link #wrap(ByteBuffer...)} or {@link #unwrap(ByteBuffer)}
+     * back to the {@link BufferPool}.
+     *
+     * @param buffers the {@link ByteBuffer}s
+     */
+    public void release(final ByteBuffer... buffers) {
+        bufferPool.release(buffers);
+    }
+
+
+    /**
+     * Handles handshake steps triggered by wrapping or unwrapping, e.g. post-handshake messages or
+     * renegotiation.
+     *
+     * @param status the {@link HandshakeStatus}
+     * @throws IOException if writing a handshake message fails
+     */
+    private void handleHandshakeStatus(HandshakeStatus status) throws IOException {
+        while (true) {
+            switch (status) {
+                case NEED_TASK:
+                    Runnable task;
+
+                    while ((task = sslEngine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+
+                    status = sslEngine.getHandshakeStatus();
+                break;
+                case NEED_WRAP:
+                    status = writeHandshakeMessage();
+                break;
+                default:
+                    return;
+            }
+        }
+    }
+
+
+    /**
+     * Wraps and writes a handshake message to the channel.
+     *
+     * @return the resulting {@link HandshakeStatus}
+     * @throws IOException if writing fails
+     */
+    private HandshakeStatus writeHandshakeMessage() throws IOException {
+        final ByteBuffer out = bufferPool.acquire(sslEngine.getSession().getPacketBufferSize());
+
+        try {
+            final SSLEngineResult result = sslEngine.wrap(EMPTY, out);
+            out.flip();
+
+            while (out.hasRemaining() && channel.isOpen()) {
+                if (channel.write(out) == 0) {
+                    Thread.onSpinWait();
+                }
+            }
+
+            return result.getStatus() == SSLEngineResult.Status.CLOSED ? HandshakeStatus.NOT_HANDSHAKING : result.getHandshakeStatus();
+        } finally {
+            bufferPool.release(out);
+        }
+    }
+
+
+    /**
+     * Replaces the (partially filled) buffer with a larger one.
+     *
+     * @param buffer the buffer to grow
+     * @param minGrowth the minimum number of bytes to add
+     * @return the new buffer
+     */
+    private ByteBuffer grow(final ByteBuffer buffer, final int minGrowth) {
+        final ByteBuffer newBuffer = bufferPool.acquire(buffer.capacity() + minGrowth);
+        buffer.flip();
+        newBuffer.put(buffer);
+        bufferPool.release(buffer);
+        return newBuffer;
+    }
+
+
+    /**
+     * Checks whether any of the buffers has remaining bytes.
+     *
+     * @param buffers the buffers
+     * @return true if there are remaining bytes
+     */
+    private static boolean hasRemaining(final ByteBuffer[] buffers) {
+        for (final ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Releases the bytes kept from an incomplete record.
+     */
+    @Override
+    public void close() {
+        if (leftover != null) {
+            bufferPool.release(leftover);
+            leftover = null;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.airepublic.tobi.module.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import com.airepublic.tobi.core.spi.BufferPool;
+
+/**
+ * Performs the TLS handshake of an {@link SSLEngine} on a non-blocking {@link SocketChannel}. The
+ * handshake is a state machine which is advanced whenever bytes have been received or the channel
+ * became writable and tells the caller which event it waits for next (see {@link State}). It never
+ * blocks: handshake messages which cannot be written completely are kept until the channel is
+ * writable again and the delegated tasks of the {@link SSLEngine} (e.g. the key exchange) are run
+ * on an {@link Executor}. When the tasks have completed the callback is notified from the executor
+ * thread to continue the handshake. If the executor rejects the tasks, e.g. during a flood of
+ * handshakes, the handshake fails instead of running them on the calling event-loop.
+ * <p>
+ * Bytes received after the last handshake message, e.g. a request sent together with the
+ * <code>Finished</code> message, are kept and can be handed to the {@link SslCodec} with
+ * {@link #takeLeftover()}.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class SslHandshake implements AutoCloseable {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    // the maximum number of bytes buffered which have not been processed by the SSLEngine
+    private static final int MAX_PACKETS_BUFFERED = 4;
+    private final SSLEngine sslEngine;
+    private final SocketChannel channel;
+    private final BufferPool bufferPool;
+    private final Executor executor;
+    private final Runnable onTasksCompleted;
+    // received bytes in write mode
+    private ByteBuffer netIn;
+    // handshake message not yet written in read mode
+    private ByteBuffer netOut;
+    private volatile boolean tasksRunning = false;
+
+    /**
+     * The event the handshake waits for.
+     */
+    public enum State {
+        /**
+         * More bytes need to be received.
+         */
+        NEED_READ,
+        /**
+         * The channel needs to become writable to write the rest of a handshake message.
+         */
+        NEED_WRITE,
+        /**
+         * The delegated tasks are running on the executor.
+         */
+        NEED_TASK,
+        /**
+         * The handshake has been completed.
+         */
+        FINISHED;
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param sslEngine the {@link SSLEngine} in server mode whose handshake has been started
+     * @param channel the non-blocking {@link SocketChannel}
+     * @param bufferPool the {@link BufferPool}
+     * @param executor the {@link Executor} for the delegated tasks or null to run them on the
+     *        calling thread
+     * @param onTasksCompleted the callback to continue the handshake after the delegated tasks have
+     *        completed
+     */
+    public SslHandshake(final SSLEngine sslEngine, final SocketChannel channel, final BufferPool bufferPool, final Executor executor, final Runnable onTasksCompleted) {
+        this.sslEngine = sslEngine;
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        this.onTasksCompleted = onTasksCompleted;
+    }
+
+
+    /**
+     * Adds the received bytes and advances the handshake.
+     *
+     * @param buffer the received bytes (consumed)
+     * @return the {@link State} of the handshake
+     * @throws IOException if the handshake fails
+     */
+    public State receive(final ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            final int packetSize = sslEngine.getSession().getPacketBufferSize();
+
+            if (netIn == null) {
+                netIn = bufferPool.acquire(Math.max(packetSize, buffer.remaining()));
+            } else if (netIn.remaining() < buffer.remaining()) {
+                if (netIn.position() + buffer.remaining() > MAX_PACKETS_BUFFERED * packetSize) {
+                    throw new SSLException("Too many bytes received during handshake!");
+                }
+
+                final ByteBuffer newBuffer = bufferPool.acquire(netIn.position() + buffer.remaining());
+                netIn.flip();
+                newBuffer.put(netIn);
+                bufferPool.release(netIn);
+                netIn = newBuffer;
+            }
+
+            netIn.put(buffer);
+        }
+
+        return advance();
+    }
+
+
+    /**
+     * Advances the handshake as far as possible without blocking.
+     *
+     * @return the {@link State} of the handshake
+     * @throws IOException if the handshake fails
+     */
+    public State advance() throws IOException {
+        if (tasksRunning) {
+            return State.NEED_TASK;
+        }
+
+        if (!flush()) {
+            return State.NEED_WRITE;
+        }
+
+        while (true) {
+            switch (sslEngine.getHandshakeStatus()) {
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    if (!unwrap()) {
+                        return State.NEED_READ;
+                    }
+                break;
+                case NEED_WRAP:
+                    wrap();
+
+                    if (!flush()) {
+                        return State.NEED_WRITE;
+                    }
+                break;
+                case NEED_TASK:
+                    if (runTasks()) {
+                        return State.NEED_TASK;
+                    }
+                break;
+                default:
+                    return State.FINISHED;
+            }
+        }
+    }
+
+
+    /**
+     * Checks whether the delegated tasks are running on the executor.
+     *
+     * @return true if the tasks have not completed yet
+     */
+    public boolean isTaskRunning() {
+        return tasksRunning;
+    }
+
+
+    /**
+     * Unwraps a handshake message from the received bytes.
+     *
+     * @return true if a message has been unwrapped, false if more bytes need to be received
+     * @throws IOException if unwrapping fails
+     */
+    private boolean unwrap() throws IOException {
+        if (netIn == null) {
+            return false;
+        }
+
+        final ByteBuffer out = bufferPool.acquire(sslEngine.getSession().getApplicationBufferSize());
+
+        try {
+            netIn.flip();
+            final SSLEngineResult result = sslEngine.unwrap(netIn, out);
+            netIn.compact();
+
+            switch (result.getStatus()) {
+                case OK:
+                    return result.bytesConsumed() > 0 || result.getHandshakeStatus() != HandshakeStatus.NEED_UNWRAP;
+                case BUFFER_UNDERFLOW:
+                    return false;
+                case BUFFER_OVERFLOW:
+                    throw new SSLException("Unexpected application data during handshake!");
+                default:
+                    throw new SSLException("SSLEngine has been closed during handshake!");
+            }
+        } finally {
+            bufferPool.release(out);
+        }
+    }
+
+
+    /**
+     * Wraps the next handshake message.
+     *
+     * @throws IOException if wrapping fails
+     */
+    private void wrap() throws IOException {
+        ByteBuffer out = bufferPool.acquire(sslEngine.getSession().getPacketBufferSize());
+
+        try {
+            while (true) {
+                final SSLEngineResult result = sslEngine.wrap(EMPTY, out);
+
+                if (result.getStatus() == SSLEngineResult.Status.OK) {
+                    break;
+                } else if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    final ByteBuffer newBuffer = bufferPool.acquire(out.capacity() * 2);
+                    out.flip();
+                    newBuffer.put(out);
+                    bufferPool.release(out);
+                    out = newBuffer;
+                } else {
+                    throw new SSLException("SSLEngine has been closed during handshake!");
+                }
+            }
+        } catch (final IOException e) {
+            bufferPool.release(out);
+            throw e;
+        }
+
+        out.flip();
+        netOut = out;
+    }
+
+
+    /**
+     * Writes the pending handshake message as far as the channel accepts it.
+     *
+     * @return true if nothing is pending anymore
+     * @throws IOException if writing fails
+     */
+    private boolean flush() throws IOException {
+        if (netOut == null) {
+            return true;
+        }
+
+        channel.write(netOut);
+
+        if (netOut.hasRemaining()) {
+            return false;
+        }
+
+        bufferPool.release(netOut);
+        netOut = null;
+
+        return true;
+    }
+
+
+    /**
+     * Runs the delegated tasks of the {@link SSLEngine} on the executor or, if there is none, on
+     * the calling thread.
+     *
+     * @return true if the tasks are running on the executor
+     * @throws SSLException if the executor rejects the tasks
+     */
+    private boolean runTasks() throws SSLException {
+        if (executor == null) {
+            runDelegatedTasks();
+            return false;
+        }
+
+        tasksRunning = true;
+
+        try {
+            executor.execute(() -> {
+                try {
+                    runDelegatedTasks();
+                } finally {
+                    tasksRunning = false;
+                    onTasksCompleted.run();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            tasksRunning = false;
+            throw new SSLException("TLS handshake refused as the handshake executor is saturated!", e);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Runs the delegated tasks of the {@link SSLEngine}.
+     */
+    private void runDelegatedTasks() {
+        Runnable task;
+
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+
+    /**
+     * Takes the bytes received after the handshake has been completed.
+     *
+     * @return the (flipped) pooled buffer or null if no bytes are left
+     */
+    public ByteBuffer takeLeftover() {
+        final ByteBuffer leftover = netIn;
+        netIn = null;
+
+        if (leftover != null) {
+            leftover.flip();
+
+            if (!leftover.hasRemaining()) {
+                bufferPool.release(leftover);
+                return null;
+            }
+        }
+
+        return leftover;
+    }
+
+
+    /**
+     * Releases the buffers.
+     */
+    @Override
+    public void close() {
+        if (netIn != null) {
+            bufferPool.release(netIn);
+            netIn = null;
+        }
+
+        if (netOut != null) {
+            bufferPool.release(netOut);
+            netOut = null;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.airepublic.tobi.module.http;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+/**
+ * Counters of the TLS handshakes of the {@link HttpModule}. The server certificate is only chosen
+ * during a full handshake, so the key managers of the server {@link javax.net.ssl.SSLContext} are
+ * wrapped with {@link #trackFullHandshakes(KeyManager[])} to record the {@link SSLEngine}s which
+ * performed one. Any other completed handshake has resumed a session from the session cache or a
+ * session ticket.
+ * 
+ * @author Torsten Oltmanns
+ *
+ */
+public class TlsStatistics {
+    private final LongAdder fullHandshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+    private final LongAdder failedHandshakes = new LongAdder();
+    private final LongAdder handshakeNanos = new LongAdder();
+    private final Set<SSLEngine> fullHandshakeEngines = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * Records the {@link SSLEngine}s for which the server certificate is chosen.
+     */
+    private class FullHandshakeKeyManager extends X509ExtendedKeyManager {
+        private final X509ExtendedKeyManager delegate;
+
+
+        /**
+         * Constructor.
+         * 
+         * @param delegate the {@link X509ExtendedKeyManager} to delegate to
+         */
+        FullHandshakeKeyManager(final X509ExtendedKeyManager delegate) {
+            this.delegate = delegate;
+        }
+
+
+        @Override
+        public String chooseEngineServerAlias(final String keyType, final Principal[] issuers, final SSLEngine engine) {
+            final String alias = delegate.chooseEngineServerAlias(keyType, issuers, engine);
+
+            if (alias != null && engine != null) {
+                fullHandshakeEngines.add(engine);
+            }
+
+            return alias;
+        }
+
+
+        @Override
+        public String chooseEngineClientAlias(final String[] keyType, final Principal[] issuers, final SSLEngine engine) {
+            return delegate.chooseEngineClientAlias(keyType, issuers, engine);
+        }
+
+
+        @Override
+        public String[] getClientAliases(final String keyType, final Principal[] issuers) {
+            return delegate.getClientAliases(keyType, issuers);
+        }
+
+
+        @Override
+        public String chooseClientAlias(final String[] keyType, final Principal[] issuers, final Socket socket) {
+            return delegate.chooseClientAlias(keyType, issuers, socket);
+        }
+
+
+        @Override
+        public String[] getServerAliases(final String keyType, final Principal[] issuers) {
+            return delegate.getServerAliases(keyType, issuers);
+        }
+
+
+        @Override
+        public String chooseServerAlias(final String keyType, final Principal[] issuers, final Socket socket) {
+            return delegate.chooseServerAlias(keyType, issuers, socket);
+        }
+
+
+        @Override
+        public X509Certificate[] getCertificateChain(final String alias) {
+            return delegate.getCertificateChain(alias);
+        }
+
+
+        @Override
+        public PrivateKey getPrivateKey(final String alias) {
+            return delegate.getPrivateKey(alias);
+        }
+    }
+
+
+    /**
+     * Wraps the key managers of the server {@link javax.net.ssl.SSLContext} to record the
+     * {@link SSLEngine}s performing a full handshake.
+     * 
+     * @param keyManagers the {@link KeyManager}s
+     * @return the wrapped {@link KeyManager}s
+     */
+    KeyManager[] trackFullHandshakes(final KeyManager[] keyManagers) {
+        final KeyManager[] wrapped = new KeyManager[keyManagers.length];
+
+        for (int i = 0; i < keyManagers.length; i++) {
+            wrapped[i] = keyManagers[i] instanceof X509ExtendedKeyManager ? new FullHandshakeKeyManager((X509ExtendedKeyManager) keyManagers[i]) : keyManagers[i];
+        }
+
+        return wrapped;
+    }
+
+
+    /**
+     * Records a completed handshake.
+     * 
+     * @param engine the {@link SSLEngine} which performed the handshake
+     * @param duration the duration of the handshake in nanoseconds
+     */
+    public void handshakeCompleted(final SSLEngine engine, final long duration) {
+        if (fullHandshakeEngines.remove(engine)) {
+            fullHandshakes.increment();
+        } else {
+            resumedHandshakes.increment();
+        }
+
+        handshakeNanos.add(duration);
+    }
+
+
+    /**
+     * Records a failed handshake.
+     * 
+     * @param engine the {@link SSLEngine} which performed the handshake
+     */
+    public void handshakeFailed(final SSLEngine engine) {
+        fullHandshakeEngines.remove(engine);
+        failedHandshakes.increment();
+    }
+
+
+    /**
+     * Gets the number of full handshakes.
+     * 
+     * @return the number of full handshakes
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+
+    /**
+     * Gets the number of handshakes which resumed a previous session.
+     * 
+     * @return the number of resumed handshakes
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+
+    /**
+     * Gets the number of failed handshakes.
+     * 
+     * @return the number of failed handshakes
+     */
+    public long getFailedHandshakes() {
+        return failedHandshakes.sum();
+    }
+
+
+    /**
+     * Gets the share of the completed handshakes which resumed a previous session.
+     * 
+     * @return the resumption rate between 0 and 1
+     */
+    public double getResumptionRate() {
+        final long resumed = resumedHandshakes.sum();
+        final long total = resumed + fullHandshakes.sum();
+
+        return total > 0 ? (double) resumed / total : 0d;
+    }
+
+
+    /**
+     * Gets the average duration of the completed handshakes.
+     * 
+     * @param unit the {@link TimeUnit}
+     * @return the average handshake time in the specified unit
+     */
+    public long getAverageHandshakeTime(final TimeUnit unit) {
+        final long total = resumedHandshakes.sum() + fullHandshakes.sum();
+
+        return total > 0 ? unit.convert(handshakeNanos.sum() / total, TimeUnit.NANOSECONDS) : 0L;
+    }
+}
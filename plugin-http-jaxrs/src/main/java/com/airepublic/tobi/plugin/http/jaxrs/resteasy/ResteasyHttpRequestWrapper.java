@@ -1,6 +1,5 @@
 package com.airepublic.tobi.plugin.http.jaxrs.resteasy;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -24,7 +23,7 @@ import org.jboss.resteasy.spi.ResteasyAsynchronousContext;
 import org.jboss.resteasy.spi.ResteasyUriInfo;
 import org.jboss.resteasy.util.PathHelper;
 
-import com.airepublic.http.common.HttpRequest;
+import com.airepublic.tobi.module.http.HttpRequest;
 
 /**
  * Wrapper for the {@link HttpRequest} as a {@link org.jboss.resteasy.spi.HttpRequest}.
@@ -79,13 +78,8 @@ public class ResteasyHttpRequestWrapper implements org.jboss.resteasy.spi.HttpRe
     @Override
     public InputStream getInputStream() {
         if (is == null) {
-            final byte[] buf = new byte[request.getBody().remaining()];
-
-            request.getBody().mark();
-            request.getBody().get(buf);
-            request.getBody().reset();
-
-            is = new ByteArrayInputStream(buf);
+            // read the body in place or from its temporary file if it has been spilled
+            is = request.getBodyInputStream();
         }
 
         return is;
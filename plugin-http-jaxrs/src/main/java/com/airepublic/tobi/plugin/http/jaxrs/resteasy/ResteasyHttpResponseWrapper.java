@@ -1,6 +1,5 @@
 package com.airepublic.tobi.plugin.http.jaxrs.resteasy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
@@ -11,10 +10,13 @@ import javax.ws.rs.core.NewCookie;
 
 import com.airepublic.http.common.Headers;
 import com.airepublic.http.common.HttpStatus;
+import com.airepublic.tobi.module.http.ChunkedOutputStream;
 import com.airepublic.tobi.module.http.HttpResponse;
 
 /**
- * The wrapper for the {@link HttpResponse} to a {@link org.jboss.resteasy.spi.HttpResponse}.
+ * The wrapper for the {@link HttpResponse} to a {@link org.jboss.resteasy.spi.HttpResponse}. The
+ * entity is written to a {@link ChunkedOutputStream} so that large entities are sent in chunks
+ * while they are written instead of being buffered completely.
  * 
  * @author Torsten Oltmanns
  *
@@ -22,8 +24,8 @@ import com.airepublic.tobi.module.http.HttpResponse;
 public class ResteasyHttpResponseWrapper implements org.jboss.resteasy.spi.HttpResponse {
     private final HttpResponse response;
     private final MultivaluedHashMap<String, Object> responseHeaders = new MultivaluedHashMap<>();
-    private final ByteArrayOutputStream rawOutputStream = new ByteArrayOutputStream();
-    private OutputStream outputStream = rawOutputStream;
+    private ChunkedOutputStream chunkedOutputStream;
+    private OutputStream outputStream;
     private boolean committed = false;
     private final ResteasyIOHandler handler;
 
@@ -61,12 +63,19 @@ public class ResteasyHttpResponseWrapper implements org.jboss.resteasy.spi.HttpR
 
     @Override
     public OutputStream getOutputStream() throws IOException {
-        return outputStream;
-    }
-
+        if (outputStream == null) {
+            if (handler != null) {
+                chunkedOutputStream = handler.createChunkedOutputStream(() -> {
+                    mergeHeaders();
+                    return response;
+                });
+                outputStream = chunkedOutputStream;
+            } else {
+                outputStream = OutputStream.nullOutputStream();
+            }
+        }
 
-    public ByteArrayOutputStream getRawOutputStream() {
-        return rawOutputStream;
+        return outputStream;
     }
 
 
@@ -110,19 +119,55 @@ public class ResteasyHttpResponseWrapper implements org.jboss.resteasy.spi.HttpR
 
     @Override
     public void flushBuffer() throws IOException {
-        outputStream.flush();
+        getOutputStream().flush();
+    }
+
+
+    /**
+     * Checks whether the entity is being sent in chunks, i.e. the header has already been written
+     * to the connection.
+     * 
+     * @return true if the response is streamed
+     */
+    public boolean isStreaming() {
+        return chunkedOutputStream != null && chunkedOutputStream.isCommitted();
     }
 
 
     /**
-     * Merges the {@link org.jboss.resteasy.spi.HttpResponse} to the {@link HttpResponse}.
+     * Merges the {@link org.jboss.resteasy.spi.HttpResponse} to the {@link HttpResponse}. If the
+     * entity is streamed the body contains the rest of the chunks, otherwise the complete entity.
+     * 
+     * @throws IOException if the rest of the entity could not be written
+     */
+    public void mergeToResponse() throws IOException {
+        if (isStreaming()) {
+            response.withHeaderSent(true).withBody(chunkedOutputStream.finish());
+            return;
+        }
+
+        mergeHeaders();
+        response.withBody(chunkedOutputStream != null ? chunkedOutputStream.toBuffer() : ByteBuffer.allocate(0));
+    }
+
+
+    /**
+     * Merges the headers of the {@link org.jboss.resteasy.spi.HttpResponse} to the
+     * {@link HttpResponse}.
      */
-    public void mergeToResponse() {
+    private void mergeHeaders() {
         response.withHeaders(new Headers());
         responseHeaders.keySet().stream().forEach(key -> responseHeaders.get(key).stream().forEach(value -> response.getHeaders().add(key, value.toString())));
+    }
+
 
-        final byte[] bytes = getRawOutputStream().toByteArray();
-        response.withBody(ByteBuffer.wrap(bytes));
+    /**
+     * Releases the buffer of the entity.
+     */
+    public void release() {
+        if (chunkedOutputStream != null) {
+            chunkedOutputStream.release();
+        }
     }
 
 }
\ No newline at end of file
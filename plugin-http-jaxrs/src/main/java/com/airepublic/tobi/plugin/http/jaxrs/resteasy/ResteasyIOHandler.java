@@ -9,21 +9,16 @@ import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.sse.SseEventSink;
 
-import org.jboss.resteasy.core.ResourceInvoker;
-import org.jboss.resteasy.core.ResourceMethodInvoker;
-import org.jboss.resteasy.core.ResourceMethodRegistry;
 import org.jboss.resteasy.core.SynchronousDispatcher;
 import org.jboss.resteasy.core.ThreadLocalResteasyProviderFactory;
 import org.jboss.resteasy.plugins.providers.sse.SseEventOutputImpl;
 import org.jboss.resteasy.plugins.providers.sse.SseEventProvider;
-import org.jboss.resteasy.plugins.server.resourcefactory.POJOResourceFactory;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
-import org.jboss.resteasy.spi.metadata.DefaultResourceClass;
-import org.jboss.resteasy.spi.metadata.DefaultResourceMethod;
-import org.jboss.resteasy.spi.metadata.ResourceClass;
 
 import com.airepublic.http.common.HttpStatus;
 import com.airepublic.logging.java.LogLevel;
@@ -35,7 +30,8 @@ import com.airepublic.tobi.module.http.AbstractHttpIOHandler;
 import com.airepublic.tobi.module.http.HttpResponse;
 
 /**
- * The {@link IIOHandler} implementation for JAX-RS using resteasy.
+ * The {@link IIOHandler} implementation for JAX-RS using resteasy. As resource methods might block
+ * the response is produced on the handler executor of the {@link IServerContext}.
  * 
  * @author Torsten Oltmanns
  *
@@ -50,6 +46,7 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
     private ResteasyHttpContextBuilder contextBuilder;
     private String contextPath;
     private HttpResponse response;
+    private ResteasyRoute route;
 
     /**
      * Initializes this handler.
@@ -69,6 +66,12 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
     }
 
 
+    @Override
+    protected boolean isBlocking() {
+        return true;
+    }
+
+
     /**
      * Determine the content-type of the content of the body.
      * 
@@ -83,6 +86,12 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
 
     @Override
     public Pair<HttpResponse, CompletionHandler<?, ?>> getHttpResponse() throws IOException {
+        if (response == null && route != null && route.getInvoker() == null) {
+            // the path matches a resource but none of its resource methods serves the HTTP method
+            response = new HttpResponse("OPTIONS".equals(getHttpRequest().getMethod()) ? HttpStatus.OK : HttpStatus.forCode(405));
+            response.withHeader(HttpHeaders.ALLOW, String.join(", ", route.getAllowedMethods()));
+        }
+
         if (response == null) {
             try {
                 final ResteasyProviderFactory defaultInstance = ResteasyProviderFactory.getInstance();
@@ -92,10 +101,11 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
                 }
 
                 response = new HttpResponse(HttpStatus.OK);
+                final ResteasyHttpResponseWrapper restEasyHttpResponse = new ResteasyHttpResponseWrapper(response, this);
 
                 try {
-                    final ResteasyHttpResponseWrapper restEasyHttpResponse = new ResteasyHttpResponseWrapper(response, this);
-                    final ResteasyHttpRequestWrapper restEasyHttpRequest = new ResteasyHttpRequestWrapper(getHttpRequest(), restEasyHttpResponse, (SynchronousDispatcher) contextBuilder.getDeployment().getDispatcher(), contextPath);
+                    final SynchronousDispatcher dispatcher = (SynchronousDispatcher) contextBuilder.getDeployment().getDispatcher();
+                    final ResteasyHttpRequestWrapper restEasyHttpRequest = new ResteasyHttpRequestWrapper(getHttpRequest(), restEasyHttpResponse, dispatcher, contextPath);
 
                     // add them to the context
                     ResteasyProviderFactory.getContextDataMap().put(org.jboss.resteasy.spi.HttpRequest.class, restEasyHttpRequest);
@@ -105,28 +115,28 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
                     final SseEventSink sseEventSink = new SseEventOutputImpl(new SseEventProvider());
                     ResteasyProviderFactory.getContextDataMap().put(SseEventSink.class, sseEventSink);
 
-                    final ResourceInvoker invoker = ((ResourceMethodRegistry) contextBuilder.getDeployment().getRegistry()).getResourceInvoker(restEasyHttpRequest);
-
-                    if (invoker != null) {
-                        restEasyHttpRequest.setAttribute(invoker.getClass().getName(), invoker);
-
-                        // set path parameters and query parameters on resteasyrequest uriinfo
-                        ParamsParser.parse(restEasyHttpRequest, invoker.getMethod(), contextBuilder.getPath());
-
-                        final ResourceClass resourceClass = new DefaultResourceClass(invoker.getMethod().getDeclaringClass(), restEasyHttpRequest.getUri().getPath());
-                        final POJOResourceFactory rf = new POJOResourceFactory(resourceClass);
-                        final ResourceMethodInvoker methodInvoker = new ResourceMethodInvoker(new DefaultResourceMethod(resourceClass, invoker.getMethod(), invoker.getMethod()), contextBuilder.getDeployment().getInjectorFactory(), rf, contextBuilder.getDeployment().getProviderFactory());
-                        restEasyHttpRequest.setAttribute(ResourceMethodInvoker.class.getName(), methodInvoker);
+                    if (route != null) {
+                        // invoke the resource method resolved during routing instead of matching
+                        // the request again in the registry
+                        route.applyTo(restEasyHttpRequest);
+                        dispatcher.pushContextObjects(restEasyHttpRequest, restEasyHttpResponse);
+                        final Response aborted = dispatcher.preprocess(restEasyHttpRequest);
+
+                        if (aborted != null) {
+                            dispatcher.writeException(restEasyHttpRequest, restEasyHttpResponse, new WebApplicationException(aborted));
+                        } else {
+                            dispatcher.invoke(restEasyHttpRequest, restEasyHttpResponse, route.getInvoker());
+                        }
+                    } else {
+                        dispatcher.invoke(restEasyHttpRequest, restEasyHttpResponse);
                     }
 
-                    contextBuilder.getDeployment().getDispatcher().invoke(restEasyHttpRequest, restEasyHttpResponse);
-
                     // write headers and body to HttpResponse
                     restEasyHttpResponse.mergeToResponse();
 
                     String contentType = response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
 
-                    if (contentType == null) {
+                    if (contentType == null && !response.isHeaderSent()) {
                         contentType = determineContentType(response.getBody());
                         response.getHeaders().add(HttpHeaders.CONTENT_TYPE, contentType);
                     }
@@ -136,22 +146,21 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
                         response.withStatus(HttpStatus.SUCCESS);
                     }
 
-                    final ByteBuffer buffer = response.getBody();
-                    buffer.mark();
-                    final byte[] bytes = new byte[buffer.remaining()];
-                    buffer.get(bytes);
-                    buffer.reset();
-
-                    logger.info(getHttpRequest().getRequestLine() + " -> " + response + " body: " + new String(bytes));
-
                 } catch (final Exception ex) {
                     logger.log(Level.SEVERE, "Error submitting JAX-RS response!", ex);
 
+                    // a partially written chunked response can only be aborted by closing the
+                    // connection
+                    if (restEasyHttpResponse.isStreaming()) {
+                        throw new IOException("Error writing chunked JAX-RS response!", ex);
+                    }
+
                     try {
                         response = new HttpResponse(HttpStatus.INTERNAL_SERVER_ERROR);
                     } catch (final Exception e) {
                     }
                 } finally {
+                    restEasyHttpResponse.release();
                     ResteasyProviderFactory.clearContextData();
                 }
             } finally {
@@ -174,4 +183,14 @@ public class ResteasyIOHandler extends AbstractHttpIOHandler {
     public void setHttpResponse(final HttpResponse response) {
         this.response = response;
     }
+
+
+    /**
+     * Sets the {@link ResteasyRoute} resolved by the {@link ResteasyPlugin} for the request.
+     * 
+     * @param route the {@link ResteasyRoute}
+     */
+    public void setRoute(final ResteasyRoute route) {
+        this.route = route;
+    }
 }
@@ -14,18 +14,15 @@ import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Application;
 
 import org.jboss.resteasy.cdi.CdiInjectorFactory;
 import org.jboss.resteasy.core.ResourceInvoker;
-import org.jboss.resteasy.core.ResourceMethodInvoker;
 import org.jboss.resteasy.core.ResourceMethodRegistry;
 import org.jboss.resteasy.core.SynchronousDispatcher;
-import org.jboss.resteasy.plugins.server.resourcefactory.POJOResourceFactory;
 import org.jboss.resteasy.spi.ResteasyProviderFactory;
-import org.jboss.resteasy.spi.metadata.DefaultResourceClass;
-import org.jboss.resteasy.spi.metadata.DefaultResourceMethod;
-import org.jboss.resteasy.spi.metadata.ResourceClass;
+import org.jboss.resteasy.util.PathHelper;
 
 import com.airepublic.http.common.HttpStatus;
 import com.airepublic.logging.java.LogLevel;
@@ -54,6 +51,7 @@ public class ResteasyPlugin implements IServicePlugin {
     private IServerContext serverContext;
     private String contextPath;
     private ResteasyHttpContextBuilder contextBuilder;
+    private ResteasyRouteIndex routeIndex;
 
 
     @Override
@@ -77,22 +75,12 @@ public class ResteasyPlugin implements IServicePlugin {
     @Override
     public IIOHandler determineIoHandler(final IRequest request) {
         try {
-            final HttpResponse response = new HttpResponse(HttpStatus.OK);
-            final ResteasyHttpResponseWrapper restEasyHttpResponse = new ResteasyHttpResponseWrapper(response, null);
-            final HttpRequest httpRequest = (HttpRequest) request;
-            final ResteasyHttpRequestWrapper restEasyHttpRequest = new ResteasyHttpRequestWrapper(httpRequest, restEasyHttpResponse, (SynchronousDispatcher) contextBuilder.getDeployment().getDispatcher(), contextPath);
-            final ResourceInvoker invoker = ((ResourceMethodRegistry) contextBuilder.getDeployment().getRegistry()).getResourceInvoker(restEasyHttpRequest);
-
-            if (invoker != null) {
-                restEasyHttpRequest.setAttribute(invoker.getClass().getName(), invoker);
-
-                final ResourceClass resourceClass = new DefaultResourceClass(invoker.getMethod().getDeclaringClass(), restEasyHttpRequest.getUri().getPath());
-                final POJOResourceFactory rf = new POJOResourceFactory(resourceClass);
-                final ResourceMethodInvoker methodInvoker = new ResourceMethodInvoker(new DefaultResourceMethod(resourceClass, invoker.getMethod(), invoker.getMethod()), contextBuilder.getDeployment().getInjectorFactory(), rf, contextBuilder.getDeployment().getProviderFactory());
-                restEasyHttpRequest.setAttribute(ResourceMethodInvoker.class.getName(), methodInvoker);
+            final ResteasyRoute route = resolveRoute((HttpRequest) request);
 
+            if (route != null) {
                 try {
                     final ResteasyIOHandler handler = CDI.current().select(ResteasyIOHandler.class).get();
+                    handler.setRoute(route);
                     return handler;
                 } catch (final Exception e) {
                     logger.log(Level.SEVERE, "Could not instantiate handler: " + ResteasyIOHandler.class, e);
@@ -105,6 +93,47 @@ public class ResteasyPlugin implements IServicePlugin {
     }
 
 
+    /**
+     * Resolves the resource method for the request using the {@link ResteasyRouteIndex}. Only if
+     * the index does not match and the registry contains routes which could not be indexed the
+     * request is resolved by the registry.
+     * 
+     * @param httpRequest the {@link HttpRequest}
+     * @return the {@link ResteasyRoute} or null if no resource method matches
+     * @throws Exception if the request could not be resolved
+     */
+    ResteasyRoute resolveRoute(final HttpRequest httpRequest) throws Exception {
+        String path = PathHelper.getEncodedPathInfo(httpRequest.getUri().getRawPath(), contextPath);
+
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+
+        final ResteasyRoute route = routeIndex.match(httpRequest.getMethod(), path);
+
+        if (route != null && route.getInvoker() != null || !routeIndex.hasUnindexedRoutes()) {
+            return route;
+        }
+
+        try {
+            final ResteasyHttpResponseWrapper restEasyHttpResponse = new ResteasyHttpResponseWrapper(new HttpResponse(HttpStatus.OK), null);
+            final ResteasyHttpRequestWrapper restEasyHttpRequest = new ResteasyHttpRequestWrapper(httpRequest, restEasyHttpResponse, (SynchronousDispatcher) contextBuilder.getDeployment().getDispatcher(), contextPath);
+            final ResourceInvoker invoker = ((ResourceMethodRegistry) contextBuilder.getDeployment().getRegistry()).getResourceInvoker(restEasyHttpRequest);
+
+            if (invoker != null) {
+                return new ResteasyRoute(invoker, restEasyHttpRequest.getUri().getPathParameters(false), path);
+            }
+        } catch (final WebApplicationException e) {
+            // neither does an unindexed route serve the HTTP method of an indexed path
+            if (route == null) {
+                throw e;
+            }
+        }
+
+        return route;
+    }
+
+
     @Override
     public void initPlugin(final IServerModule module) {
 
@@ -190,6 +219,9 @@ public class ResteasyPlugin implements IServicePlugin {
 
         contextBuilder.bind();
         serverContext.setAttribute(CONTEXT_BUILDER, contextBuilder);
+
+        routeIndex = new ResteasyRouteIndex((ResourceMethodRegistry) contextBuilder.getDeployment().getRegistry());
+        logger.info("Indexed " + routeIndex.size() + " JAX-RS resource methods" + (routeIndex.hasUnindexedRoutes() ? " (some routes are resolved by the registry)" : ""));
         logger.info("Finished configuring JAX-RS server!");
     }
 
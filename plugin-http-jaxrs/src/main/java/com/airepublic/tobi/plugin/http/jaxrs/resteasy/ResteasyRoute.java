@@ -0,0 +1,122 @@
+package com.airepublic.tobi.plugin.http.jaxrs.resteasy;
+
+import java.util.Set;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.core.ResourceInvoker;
+import org.jboss.resteasy.spi.HttpRequest;
+import org.jboss.resteasy.spi.ResteasyUriInfo;
+
+/**
+ * The result of resolving a request against the {@link ResteasyRouteIndex}. It is handed from the
+ * {@link ResteasyPlugin} to the {@link ResteasyIOHandler} so that the resource method is only
+ * resolved once per request. If the path matches a resource but none of its resource methods
+ * serves the HTTP method, the route has no {@link ResourceInvoker} but the allowed HTTP methods.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class ResteasyRoute {
+    private final ResourceInvoker invoker;
+    private final MultivaluedMap<String, String> pathParameters;
+    private final String matchedPath;
+    private final Set<String> allowedMethods;
+
+
+    /**
+     * Constructor.
+     *
+     * @param invoker the cached {@link ResourceInvoker} of the resource method
+     * @param pathParameters the encoded path parameters extracted from the request path
+     * @param matchedPath the request path relative to the application path
+     */
+    public ResteasyRoute(final ResourceInvoker invoker, final MultivaluedMap<String, String> pathParameters, final String matchedPath) {
+        this(invoker, pathParameters, matchedPath, null);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param invoker the cached {@link ResourceInvoker} of the resource method or null
+     * @param pathParameters the encoded path parameters extracted from the request path
+     * @param matchedPath the request path relative to the application path
+     * @param allowedMethods the HTTP methods of the resource if there is no invoker
+     */
+    private ResteasyRoute(final ResourceInvoker invoker, final MultivaluedMap<String, String> pathParameters, final String matchedPath, final Set<String> allowedMethods) {
+        this.invoker = invoker;
+        this.pathParameters = pathParameters;
+        this.matchedPath = matchedPath;
+        this.allowedMethods = allowedMethods;
+    }
+
+
+    /**
+     * Creates a route for a path which matches a resource none of whose resource methods serves
+     * the HTTP method of the request.
+     *
+     * @param allowedMethods the HTTP methods served by the resource
+     * @param matchedPath the request path relative to the application path
+     * @return the {@link ResteasyRoute}
+     */
+    public static ResteasyRoute methodNotAllowed(final Set<String> allowedMethods, final String matchedPath) {
+        return new ResteasyRoute(null, new MultivaluedHashMap<>(), matchedPath, allowedMethods);
+    }
+
+
+    /**
+     * Gets the cached {@link ResourceInvoker} of the resource method.
+     *
+     * @return the {@link ResourceInvoker} or null if the HTTP method is not allowed
+     */
+    public ResourceInvoker getInvoker() {
+        return invoker;
+    }
+
+
+    /**
+     * Gets the HTTP methods served by the resource if the HTTP method of the request is not.
+     *
+     * @return the allowed HTTP methods or null if the route has an invoker
+     */
+    public Set<String> getAllowedMethods() {
+        return allowedMethods;
+    }
+
+
+    /**
+     * Gets the encoded path parameters extracted from the request path.
+     *
+     * @return the path parameters
+     */
+    public MultivaluedMap<String, String> getPathParameters() {
+        return pathParameters;
+    }
+
+
+    /**
+     * Gets the request path relative to the application path.
+     *
+     * @return the matched path
+     */
+    public String getMatchedPath() {
+        return matchedPath;
+    }
+
+
+    /**
+     * Populates the {@link ResteasyUriInfo} of the request with the path parameters and the matched
+     * path as the registry would do when matching the request.
+     *
+     * @param request the {@link HttpRequest}
+     */
+    public void applyTo(final HttpRequest request) {
+        final ResteasyUriInfo uriInfo = request.getUri();
+
+        pathParameters.forEach((name, values) -> values.forEach(value -> uriInfo.addEncodedPathParameter(name, value)));
+        uriInfo.pushMatchedPath(matchedPath);
+        uriInfo.pushMatchedURI(matchedPath);
+    }
+}
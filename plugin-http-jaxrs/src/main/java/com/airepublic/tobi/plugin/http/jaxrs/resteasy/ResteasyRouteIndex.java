@@ -0,0 +1,361 @@
+package com.airepublic.tobi.plugin.http.jaxrs.resteasy;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.core.ResourceInvoker;
+import org.jboss.resteasy.core.ResourceMethodInvoker;
+import org.jboss.resteasy.core.ResourceMethodRegistry;
+
+/**
+ * Precompiled index of the resource methods registered in the {@link ResourceMethodRegistry}. The
+ * path templates are split into segments and stored in a trie where literal segments are looked up
+ * by hash and template segments are matched by their compiled pattern. Each node caches the
+ * {@link ResourceInvoker} per HTTP method.
+ * <p>
+ * Routes which cannot be represented in the trie, i.e. sub-resource locators, templates with
+ * custom regular expressions and resource methods which only differ in their media types, are not
+ * indexed and must be resolved by the registry (see {@link #hasUnindexedRoutes()}).
+ * <p>
+ * As in the JAX-RS request matching the path is matched before the HTTP method, so a path which
+ * matches a resource none of whose methods serves the HTTP method results in a route with the
+ * allowed methods instead of trying other, less specific resources.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class ResteasyRouteIndex {
+    private static final Pattern CUSTOM_REGEX = Pattern.compile("\\{\\s*[^}\\s:]+\\s*:");
+    private static final Pattern PARAM = Pattern.compile("\\{\\s*([^}\\s]+)\\s*\\}");
+    private final Node root = new Node();
+    private boolean unindexedRoutes = false;
+    private int size = 0;
+
+
+    /**
+     * Constructor which builds the index from the bound resource methods of the specified
+     * registry.
+     *
+     * @param registry the {@link ResourceMethodRegistry}
+     */
+    public ResteasyRouteIndex(final ResourceMethodRegistry registry) {
+        for (final Entry<String, List<ResourceInvoker>> entry : registry.getBounded().entrySet()) {
+            for (final ResourceInvoker invoker : entry.getValue()) {
+                if (!add(entry.getKey(), invoker)) {
+                    unindexedRoutes = true;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds the {@link ResourceInvoker} under the specified path template.
+     *
+     * @param template the path template relative to the application path
+     * @param invoker the {@link ResourceInvoker}
+     * @return true if the route could be indexed
+     */
+    boolean add(final String template, final ResourceInvoker invoker) {
+        if (!(invoker instanceof ResourceMethodInvoker) || CUSTOM_REGEX.matcher(template).find()) {
+            return false;
+        }
+
+        Node node = root;
+
+        for (final String segment : split(template, false)) {
+            if (segment.indexOf('{') < 0) {
+                node = node.literals.computeIfAbsent(segment, s -> new Node());
+            } else {
+                node = node.template(segment);
+            }
+        }
+
+        boolean indexed = true;
+
+        for (final String httpMethod : ((ResourceMethodInvoker) invoker).getHttpMethods()) {
+            if (node.invokers.containsKey(httpMethod)) {
+                // the registry decides by content negotiation
+                node.invokers.put(httpMethod, null);
+                indexed = false;
+            } else {
+                node.invokers.put(httpMethod, invoker);
+            }
+        }
+
+        size++;
+        return indexed;
+    }
+
+
+    /**
+     * Matches the HTTP method and request path against the index.
+     *
+     * @param httpMethod the HTTP method
+     * @param path the encoded request path relative to the application path
+     * @return the {@link ResteasyRoute}, a route without invoker if the HTTP method is not allowed
+     *         or null if no indexed route matches
+     */
+    public ResteasyRoute match(final String httpMethod, final String path) {
+        final List<String[]> params = new ArrayList<>();
+        final Node node = match(root, split(path, true), 0, params);
+
+        if (node == null) {
+            return null;
+        }
+
+        final ResourceInvoker invoker = node.find(httpMethod);
+
+        if (invoker == null) {
+            // unless the registry has to decide by content negotiation
+            return node.accepts(httpMethod) ? null : ResteasyRoute.methodNotAllowed(node.allowedMethods(), path);
+        }
+
+        final MultivaluedMap<String, String> pathParameters = new MultivaluedHashMap<>();
+        params.forEach(param -> pathParameters.add(param[0], param[1]));
+
+        return new ResteasyRoute(invoker, pathParameters, path);
+    }
+
+
+    /**
+     * Recursively matches the segments starting at the specified index. Literal segments are
+     * preferred over template segments and the template segments are tried from the most to the
+     * least specific. The first node terminating a route for the whole path matches regardless of
+     * the HTTP method.
+     *
+     * @param node the current {@link Node}
+     * @param segments the request path segments
+     * @param index the index of the segment to match
+     * @param params the collected path parameters
+     * @return the matching {@link Node} or null
+     */
+    private Node match(final Node node, final String[] segments, final int index, final List<String[]> params) {
+        if (index == segments.length) {
+            return node.invokers.isEmpty() ? null : node;
+        }
+
+        final String segment = segments[index];
+        final Node literal = node.literals.get(segment);
+
+        if (literal != null) {
+            final Node result = match(literal, segments, index + 1, params);
+
+            if (result != null) {
+                return result;
+            }
+        }
+
+        for (final TemplateSegment template : node.templates) {
+            final Matcher matcher = template.pattern.matcher(segment);
+
+            if (matcher.matches()) {
+                final int mark = params.size();
+
+                for (int i = 0; i < template.names.size(); i++) {
+                    params.add(new String[] { template.names.get(i), matcher.group(i + 1) });
+                }
+
+                final Node result = match(template.node, segments, index + 1, params);
+
+                if (result != null) {
+                    return result;
+                }
+
+                params.subList(mark, params.size()).clear();
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Splits the path into its non-empty segments.
+     *
+     * @param path the path
+     * @param stripMatrixParams whether to remove matrix parameters from the segments
+     * @return the segments
+     */
+    static String[] split(final String path, final boolean stripMatrixParams) {
+        final List<String> segments = new ArrayList<>();
+        int start = 0;
+
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+
+            if (end < 0) {
+                end = path.length();
+            }
+
+            String segment = path.substring(start, end);
+
+            if (stripMatrixParams) {
+                final int matrix = segment.indexOf(';');
+
+                if (matrix >= 0) {
+                    segment = segment.substring(0, matrix);
+                }
+            }
+
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+
+            start = end + 1;
+        }
+
+        return segments.toArray(new String[segments.size()]);
+    }
+
+
+    /**
+     * Gets whether the registry contains routes which could not be indexed.
+     *
+     * @return true if requests not matched by the index must be resolved by the registry
+     */
+    public boolean hasUnindexedRoutes() {
+        return unindexedRoutes;
+    }
+
+
+    /**
+     * Gets the number of indexed resource methods.
+     *
+     * @return the number of indexed resource methods
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * A node in the trie.
+     */
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<TemplateSegment> templates = new ArrayList<>();
+        private final Map<String, ResourceInvoker> invokers = new HashMap<>();
+
+
+        /**
+         * Gets or creates the child for the specified template segment.
+         *
+         * @param segment the template segment
+         * @return the child {@link Node}
+         */
+        Node template(final String segment) {
+            for (final TemplateSegment template : templates) {
+                if (template.segment.equals(segment)) {
+                    return template.node;
+                }
+            }
+
+            final TemplateSegment template = new TemplateSegment(segment);
+            templates.add(template);
+            templates.sort(Comparator.comparingInt((final TemplateSegment t) -> t.literalCharacters).thenComparingInt(t -> t.names.size()).reversed());
+
+            return template.node;
+        }
+
+
+        /**
+         * Checks whether this node terminates a route for the HTTP method. HEAD requests are
+         * served by GET resource methods if no HEAD resource method exists.
+         *
+         * @param httpMethod the HTTP method
+         * @return true if a route terminates here
+         */
+        boolean accepts(final String httpMethod) {
+            return invokers.containsKey(httpMethod) || "HEAD".equals(httpMethod) && invokers.containsKey("GET");
+        }
+
+
+        /**
+         * Finds the cached {@link ResourceInvoker} for the HTTP method.
+         *
+         * @param httpMethod the HTTP method
+         * @return the {@link ResourceInvoker} or null if the route must be resolved by the registry
+         */
+        ResourceInvoker find(final String httpMethod) {
+            if (invokers.containsKey(httpMethod)) {
+                return invokers.get(httpMethod);
+            }
+
+            return "HEAD".equals(httpMethod) ? invokers.get("GET") : null;
+        }
+
+
+        /**
+         * Gets the HTTP methods of the routes terminating here including HEAD for GET and OPTIONS,
+         * which are served by default.
+         *
+         * @return the allowed HTTP methods
+         */
+        Set<String> allowedMethods() {
+            final Set<String> methods = new TreeSet<>(invokers.keySet());
+
+            if (methods.contains("GET")) {
+                methods.add("HEAD");
+            }
+
+            methods.add("OPTIONS");
+            return methods;
+        }
+    }
+
+    /**
+     * A path segment containing path parameters compiled to a {@link Pattern}.
+     */
+    private static class TemplateSegment {
+        private final String segment;
+        private final Pattern pattern;
+        private final List<String> names = new ArrayList<>();
+        private final int literalCharacters;
+        private final Node node = new Node();
+
+
+        /**
+         * Constructor.
+         *
+         * @param segment the template segment
+         */
+        TemplateSegment(final String segment) {
+            this.segment = segment;
+
+            final StringBuilder regex = new StringBuilder();
+            final Matcher matcher = PARAM.matcher(segment);
+            int literals = 0;
+            int start = 0;
+
+            while (matcher.find()) {
+                if (matcher.start() > start) {
+                    regex.append(Pattern.quote(segment.substring(start, matcher.start())));
+                    literals += matcher.start() - start;
+                }
+
+                regex.append("([^/]+)");
+                names.add(matcher.group(1));
+                start = matcher.end();
+            }
+
+            if (start < segment.length()) {
+                regex.append(Pattern.quote(segment.substring(start)));
+                literals += segment.length() - start;
+            }
+
+            pattern = Pattern.compile(regex.toString());
+            literalCharacters = literals;
+        }
+    }
+}
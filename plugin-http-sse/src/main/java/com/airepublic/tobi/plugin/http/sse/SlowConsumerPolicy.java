@@ -0,0 +1,15 @@
+package com.airepublic.tobi.plugin.http.sse;
+
+/**
+ * Defines how the {@link SseBroadcaster} treats a subscriber whose queue of pending events is full
+ * because the client does not read the events as fast as they are produced.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public enum SlowConsumerPolicy {
+    /** Drops the oldest pending event of the subscriber to queue the new event. */
+    DROP_OLDEST,
+    /** Closes the connection of the subscriber. */
+    DISCONNECT;
+}
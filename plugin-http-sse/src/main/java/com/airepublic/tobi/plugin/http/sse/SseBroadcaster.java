@@ -0,0 +1,405 @@
+package com.airepublic.tobi.plugin.http.sse;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.airepublic.http.sse.api.ISseRegistry;
+import com.airepublic.http.sse.api.ISseService;
+import com.airepublic.http.sse.api.SseEvent;
+import com.airepublic.http.sse.api.SseProducer;
+import com.airepublic.logging.java.LogLevel;
+import com.airepublic.logging.java.LoggerConfig;
+import com.airepublic.tobi.core.spi.ConnectionContext;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
+import com.airepublic.tobi.core.spi.IServerContext;
+import com.airepublic.tobi.core.spi.TimingWheel;
+
+/**
+ * Fans out the events of the {@link SseProducer} methods registered in the {@link ISseRegistry} to
+ * all connections subscribed to the same path. The producer method of a path is scheduled on the
+ * shared {@link TimingWheel} of the server as long as the path has subscribers and each event is
+ * encoded once into a read-only {@link ByteBuffer} of which every {@link SseSubscriber} gets a
+ * duplicate.
+ * <p>
+ * The most recent events of each path are kept in a {@link SseReplayBuffer} so that a reconnecting
+ * client sending the <code>Last-Event-ID</code> header receives the events it missed before the
+ * live events. Events without an <code>id</code> field are assigned a sequence number of the path
+ * as id. A path without subscribers is removed together with its events once the replay retention
+ * (<code>sse.replay.retention</code> in milliseconds, default 30000) has elapsed.
+ * </p>
+ * <p>
+ * As the producer methods might block they are invoked on the handler executor of the
+ * {@link IServerContext} and not on the timer thread, in the request and session context of one of
+ * the subscribed connections. Producers are invoked at most every <code>sse.producer.minDelay</code>
+ * milliseconds (default 10) even if their delay is shorter. While a producer returns no event its
+ * delay is doubled up to <code>sse.producer.maxBackoff</code> milliseconds (default 1000) and reset
+ * with the next event.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ApplicationScoped
+public class SseBroadcaster {
+    public final static String QUEUE_SIZE = "sse.broadcast.queueSize";
+    public final static String SLOW_CONSUMER_POLICY = "sse.broadcast.slowConsumerPolicy";
+    public final static String REPLAY_MAX_EVENTS = "sse.replay.maxEvents";
+    public final static String REPLAY_MAX_BYTES = "sse.replay.maxBytes";
+    public final static String REPLAY_MAPPED = "sse.replay.mapped";
+    public final static String REPLAY_RETENTION = "sse.replay.retention";
+    public final static String PRODUCER_MIN_DELAY = "sse.producer.minDelay";
+    public final static String PRODUCER_MAX_BACKOFF = "sse.producer.maxBackoff";
+    @Inject
+    @LoggerConfig(level = LogLevel.INFO)
+    private Logger logger;
+    @Inject
+    private ISseService sseService;
+    @Inject
+    private IServerContext serverContext;
+    @Inject
+    @ConfigProperty(name = QUEUE_SIZE, defaultValue = "64")
+    private Integer queueSize;
+    @Inject
+    @ConfigProperty(name = SLOW_CONSUMER_POLICY, defaultValue = "DROP_OLDEST")
+    private String slowConsumerPolicyName;
+    @Inject
+    @ConfigProperty(name = REPLAY_MAX_EVENTS, defaultValue = "256")
+    private Integer replayMaxEvents;
+    @Inject
+    @ConfigProperty(name = REPLAY_MAX_BYTES, defaultValue = "1048576")
+    private Integer replayMaxBytes;
+    @Inject
+    @ConfigProperty(name = REPLAY_MAPPED, defaultValue = "false")
+    private Boolean replayMapped;
+    @Inject
+    @ConfigProperty(name = REPLAY_RETENTION, defaultValue = "30000")
+    private Long replayRetention;
+    @Inject
+    @ConfigProperty(name = PRODUCER_MIN_DELAY, defaultValue = "10")
+    private Long producerMinDelay;
+    @Inject
+    @ConfigProperty(name = PRODUCER_MAX_BACKOFF, defaultValue = "1000")
+    private Long producerMaxBackoff;
+    private SlowConsumerPolicy slowConsumerPolicy;
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+
+    /**
+     * Parses the configured {@link SlowConsumerPolicy}.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            slowConsumerPolicy = SlowConsumerPolicy.valueOf(slowConsumerPolicyName.trim().toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            logger.warning("Unknown SSE slow consumer policy '" + slowConsumerPolicyName + "' - using " + SlowConsumerPolicy.DROP_OLDEST);
+            slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+        }
+    }
+
+
+    /**
+     * Creates a new {@link SseSubscriber} with the configured queue size and
+     * {@link SlowConsumerPolicy}.
+     *
+     * @param processor the {@link IChannelProcessor} of the connection
+     * @return the {@link SseSubscriber}
+     */
+    public SseSubscriber createSubscriber(final IChannelProcessor processor) {
+        return new SseSubscriber(processor, queueSize, slowConsumerPolicy);
+    }
+
+
+    /**
+     * Subscribes to the events of the producer method of the path. The producer is started with the
+     * first subscriber. If the last event id of a reconnecting client is still buffered the events
+     * following it are queued before the live events.
+     *
+     * @param path the path of the producer
+     * @param serviceObject the object instance of the producer
+     * @param serviceMethod the method annotated with {@link SseProducer}
+     * @param subscriber the {@link SseSubscriber}
+     * @param lastEventId the value of the <code>Last-Event-ID</code> header or null
+     */
+    public void subscribe(final String path, final Object serviceObject, final Method serviceMethod, final SseSubscriber subscriber, final String lastEventId) {
+        // retry with a new topic if the topic has been removed concurrently
+        while (!topics.computeIfAbsent(path, p -> new Topic(p, serviceObject, serviceMethod)).subscribe(subscriber, lastEventId)) {
+        }
+    }
+
+
+    /**
+     * Removes the subscriber from the path. The producer stops with its next invocation when there
+     * are no subscribers left and the path is removed after the replay retention.
+     *
+     * @param path the path of the producer
+     * @param subscriber the {@link SseSubscriber}
+     */
+    public void unsubscribe(final String path, final SseSubscriber subscriber) {
+        final Topic topic = topics.get(path);
+
+        if (topic != null) {
+            topic.subscribers.remove(subscriber);
+        }
+    }
+
+
+    /**
+     * Sends the event to all current subscribers of the path in addition to the events of the
+     * producer method.
+     *
+     * @param path the path
+     * @param event the {@link SseEvent}
+     * @throws IOException if the event could not be encoded
+     */
+    public void broadcast(final String path, final SseEvent event) throws IOException {
+        final Topic topic = topics.get(path);
+
+        if (topic != null) {
+            topic.publish(sseService.encode(event));
+        }
+    }
+
+
+    /**
+     * Gets the number of subscribers of the path.
+     *
+     * @param path the path
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount(final String path) {
+        final Topic topic = topics.get(path);
+
+        return topic != null ? topic.subscribers.size() : 0;
+    }
+
+
+    /**
+     * Releases the {@link SseReplayBuffer}s.
+     */
+    @PreDestroy
+    public void close() {
+        topics.values().forEach(topic -> {
+            if (topic.replay != null) {
+                topic.replay.close();
+            }
+        });
+        topics.clear();
+    }
+
+    /**
+     * The subscribers and the producer of a path.
+     */
+    private class Topic {
+        private final String path;
+        private final Object serviceObject;
+        private final Method serviceMethod;
+        private final long delayInMs;
+        // the delay until the next invocation, increased while the producer returns no events
+        private long nextDelayInMs;
+        private final Set<SseSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private SseReplayBuffer replay;
+        private long sequence = 0L;
+        private boolean running = false;
+        private boolean removed = false;
+
+
+        /**
+         * Constructor.
+         *
+         * @param path the path
+         * @param serviceObject the object instance of the producer
+         * @param serviceMethod the method annotated with {@link SseProducer}
+         */
+        Topic(final String path, final Object serviceObject, final Method serviceMethod) {
+            this.path = path;
+            this.serviceObject = serviceObject;
+            this.serviceMethod = serviceMethod;
+
+            final SseProducer annotation = serviceMethod.getAnnotation(SseProducer.class);
+            delayInMs = Math.max(producerMinDelay, annotation != null ? annotation.unit().toMillis(annotation.delay()) : 0L);
+            nextDelayInMs = delayInMs;
+
+            if (replayMaxEvents > 0) {
+                try {
+                    replay = new SseReplayBuffer(replayMaxEvents, replayMaxBytes, replayMapped);
+                } catch (final IOException e) {
+                    logger.log(Level.WARNING, "Could not create SSE replay buffer for path " + path + " - events will not be replayed!", e);
+                }
+            }
+        }
+
+
+        /**
+         * Adds the subscriber and starts the producer if it is not running. The missed events are
+         * queued while no event can be published so that the subscriber neither misses nor repeats
+         * an event.
+         *
+         * @param subscriber the {@link SseSubscriber}
+         * @param lastEventId the value of the <code>Last-Event-ID</code> header or null
+         * @return false if the topic has already been removed
+         */
+        synchronized boolean subscribe(final SseSubscriber subscriber, final String lastEventId) {
+            if (removed) {
+                return false;
+            }
+
+            if (lastEventId != null && replay != null) {
+                final List<ByteBuffer> missed = replay.since(lastEventId);
+
+                if (missed != null && !missed.isEmpty()) {
+                    subscriber.replay(missed);
+                }
+            }
+
+            subscribers.add(subscriber);
+
+            if (!running) {
+                running = true;
+                nextDelayInMs = delayInMs;
+                schedule();
+            }
+
+            return true;
+        }
+
+
+        /**
+         * Schedules the next invocation of the producer method on the handler executor.
+         */
+        private void schedule() {
+            serverContext.getTimer().schedule(() -> {
+                try {
+                    serverContext.getHandlerExecutor().execute(this::produce);
+                } catch (final RejectedExecutionException e) {
+                    // skip this invocation while the handler executor is saturated
+                    schedule();
+                }
+            }, nextDelayInMs, TimeUnit.MILLISECONDS);
+        }
+
+
+        /**
+         * Invokes the producer method once, publishes the encoded event and schedules the next
+         * invocation while there are subscribers. Without subscribers the removal of the topic is
+         * scheduled after the replay retention.
+         */
+        private void produce() {
+            synchronized (this) {
+                if (subscribers.isEmpty()) {
+                    running = false;
+
+                    if (replay != null && replayRetention > 0) {
+                        serverContext.getTimer().schedule(this::expire, replayRetention, TimeUnit.MILLISECONDS);
+                    } else {
+                        expire();
+                    }
+
+                    return;
+                }
+            }
+
+            activateContext();
+
+            try {
+                final Object result = serviceMethod.invoke(serviceObject);
+
+                if (result instanceof SseEvent) {
+                    publish(sseService.encode((SseEvent) result));
+                    nextDelayInMs = delayInMs;
+                } else {
+                    // back off while there are no events
+                    nextDelayInMs = Math.min(Math.max(producerMaxBackoff, delayInMs), Math.max(1L, nextDelayInMs * 2));
+                }
+            } catch (final Exception e) {
+                logger.log(Level.SEVERE, "Could not invoke SSE outbound producer method for path " + path + ": " + serviceMethod, e);
+            } finally {
+                ConnectionContext.deactivate();
+            }
+
+            schedule();
+        }
+
+
+        /**
+         * Activates the {@link ConnectionContext} of a subscriber, so that the producer method can
+         * use request and session scoped beans.
+         */
+        private void activateContext() {
+            for (final SseSubscriber subscriber : subscribers) {
+                final ConnectionContext connectionContext = subscriber.getConnectionContext();
+
+                if (connectionContext != null) {
+                    connectionContext.activate();
+                    return;
+                }
+            }
+        }
+
+
+        /**
+         * Removes the topic and releases its {@link SseReplayBuffer} unless a subscriber has
+         * subscribed meanwhile.
+         */
+        private synchronized void expire() {
+            if (running || removed || !subscribers.isEmpty()) {
+                return;
+            }
+
+            removed = true;
+            topics.remove(path, this);
+
+            if (replay != null) {
+                replay.close();
+                replay = null;
+            }
+        }
+
+
+        /**
+         * Buffers the encoded event for replays and queues a duplicate of it for every subscriber.
+         *
+         * @param encoded the encoded event
+         */
+        synchronized void publish(final ByteBuffer encoded) {
+            ByteBuffer event = encoded;
+
+            if (replay != null) {
+                String id = SseReplayBuffer.findId(event);
+
+                if (id == null) {
+                    // assign an id so that the client reports it when reconnecting
+                    id = String.valueOf(++sequence);
+                    final byte[] field = ("id: " + id + "\n").getBytes(StandardCharsets.UTF_8);
+                    event = ByteBuffer.allocate(field.length + encoded.remaining()).put(field).put(encoded.duplicate()).flip();
+                }
+
+                event = event.asReadOnlyBuffer();
+                replay.add(id, event);
+            } else {
+                event = event.asReadOnlyBuffer();
+            }
+
+            for (final SseSubscriber subscriber : subscribers) {
+                subscriber.offer(event.duplicate());
+            }
+        }
+    }
+}
@@ -2,22 +2,21 @@ package com.airepublic.tobi.plugin.http.sse;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
-import java.nio.channels.SelectionKey;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 
 import com.airepublic.http.sse.api.ISseService;
-import com.airepublic.http.sse.api.SseEvent;
 import com.airepublic.http.sse.api.SseProducer;
 import com.airepublic.logging.java.LogLevel;
 import com.airepublic.logging.java.LoggerConfig;
 import com.airepublic.tobi.core.spi.ChannelAction;
 import com.airepublic.tobi.core.spi.IIOHandler;
+import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.Pair;
 import com.airepublic.tobi.module.http.AbstractHttpIOHandler;
 import com.airepublic.tobi.module.http.HttpRequest;
@@ -25,7 +24,11 @@ import com.airepublic.tobi.module.http.HttpResponse;
 
 /**
  * The {@link IIOHandler} implementation for outbound SSE. It handles the IO for the object which
- * has the method annotated with {@link SseProducer}.
+ * has the method annotated with {@link SseProducer}. After the handshake the connection subscribes
+ * to the path at the {@link SseBroadcaster} which invokes the producer method once for all
+ * subscribers. Between two events the connection is not registered for any operation and the
+ * {@link SseSubscriber} re-arms the write interest when the next event is queued, so no thread is
+ * blocked while the stream is waiting.
  * 
  * @author Torsten Oltmanns
  *
@@ -37,10 +40,14 @@ public class SseOutboundIOHandler extends AbstractHttpIOHandler {
     private Logger logger;
     @Inject
     private ISseService sseService;
+    @Inject
+    private SseBroadcaster broadcaster;
     private final AtomicBoolean isHandshakeRead = new AtomicBoolean(false);
     private Object serviceObject;
     private Method serviceMethod;
-    private long delayInMs = 0L;
+    private String path;
+    private String lastEventId;
+    private SseSubscriber subscriber;
     private long times = 0L;
     private long maxTimes = -1L;
 
@@ -65,10 +72,12 @@ public class SseOutboundIOHandler extends AbstractHttpIOHandler {
 
             if (serviceMethod.isAnnotationPresent(SseProducer.class)) {
                 final SseProducer annotation = serviceMethod.getAnnotation(SseProducer.class);
-                delayInMs = annotation.unit().toMillis(annotation.delay());
                 maxTimes = annotation.maxTimes();
             }
 
+            path = getHttpRequest().getPath();
+            lastEventId = getHttpRequest().getHeader("Last-Event-ID");
+
             // respond to the handshake request
             final com.airepublic.http.common.HttpResponse sseResponse = sseService.getHandshakeResponse();
             final HttpResponse response = new HttpResponse()
@@ -82,19 +91,13 @@ public class SseOutboundIOHandler extends AbstractHttpIOHandler {
             return new Pair<>(response, null);
         }
 
-        try {
-            final Object result = serviceMethod.invoke(serviceObject, new Object[0]);
-
-            if (result instanceof SseEvent) {
-                final SseEvent event = (SseEvent) result;
+        final ByteBuffer event = subscriber != null ? subscriber.poll() : null;
 
-                return new Pair<>(new HttpResponse().withBody(sseService.encode(event)), null);
-            } else {
-                return null;
-            }
-        } catch (final Exception e) {
-            throw new IOException("Could not invoke SSE outbound producer method: " + serviceMethod, e);
+        if (event == null) {
+            return null;
         }
+
+        return new Pair<>(new HttpResponse().withHeaderSent(true).withBody(event), null);
     }
 
 
@@ -105,23 +108,41 @@ public class SseOutboundIOHandler extends AbstractHttpIOHandler {
 
 
     @Override
-    public ChannelAction writeSuccessful(final CompletionHandler<?, ?> handler, final long length) {
+    protected boolean supportsKeepAlive() {
+        return false;
+    }
 
-        if (maxTimes == -1 || times < maxTimes) {
-            times++;
 
-            try {
-                Thread.sleep(delayInMs);
-                getSession().getChannel().keyFor(getSession().getChannelProcessor().getSelector()).interestOps(SelectionKey.OP_WRITE);
-                getSession().getChannelProcessor().getSelector().wakeup();
-                return ChannelAction.CLOSE_INPUT;
-            } catch (final InterruptedException e) {
-                logger.log(Level.WARNING, "SSE for outbound events was interrupted!", e);
+    @Override
+    public ChannelAction writeSuccessful(final CompletionHandler<?, ?> handler, final long length) {
+        if (subscriber == null) {
+            if (maxTimes == 0) {
                 return ChannelAction.CLOSE_ALL;
             }
-        } else {
+
+            // the handshake has been written - subscribe to the events of the path
+            subscriber = broadcaster.createSubscriber(getSession().getChannelProcessor());
+            broadcaster.subscribe(path, serviceObject, serviceMethod, subscriber, lastEventId);
+        } else if (maxTimes != -1 && ++times >= maxTimes) {
             return ChannelAction.CLOSE_ALL;
         }
+
+        // suspend the connection until the next event is queued
+        subscriber.suspend();
+
+        // the input has already been closed when the request was consumed and closing it again
+        // would re-arm the write interest immediately
+        return ChannelAction.KEEP_OPEN;
+    }
+
+
+    @Override
+    public void onSessionClose(final IServerSession session) {
+        if (subscriber != null) {
+            broadcaster.unsubscribe(path, subscriber);
+        }
+
+        super.onSessionClose(session);
     }
 
 
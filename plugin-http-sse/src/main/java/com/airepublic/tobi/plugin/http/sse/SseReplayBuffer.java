@@ -0,0 +1,268 @@
+package com.airepublic.tobi.plugin.http.sse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Ring buffer of the most recent encoded events of a path which are replayed to a reconnecting
+ * client sending the <code>Last-Event-ID</code> header. The buffer is bounded by the number of
+ * events and their total size. The events either reference the shared encoded buffers on the heap
+ * or are copied into a memory-mapped file of the maximum size to keep them off the heap.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class SseReplayBuffer implements AutoCloseable {
+    private final int maxEvents;
+    private final long maxBytes;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long bytes = 0L;
+    private FileChannel file;
+    private MappedByteBuffer region;
+    private int writePosition = 0;
+
+
+    /**
+     * Constructor.
+     *
+     * @param maxEvents the maximum number of events
+     * @param maxBytes the maximum total size of the events
+     * @param mapped whether to copy the events into a memory-mapped file
+     * @throws IOException if the memory-mapped file could not be created
+     */
+    public SseReplayBuffer(final int maxEvents, final int maxBytes, final boolean mapped) throws IOException {
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+
+        if (mapped) {
+            file = FileChannel.open(Files.createTempFile("tobi-sse-", ".ring"), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            region = file.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+        }
+    }
+
+
+    /**
+     * Adds the encoded event with the specified id and evicts the oldest events exceeding the
+     * limits. An event exceeding the size limit clears the buffer as a replay would otherwise miss
+     * it.
+     *
+     * @param id the event id
+     * @param event the encoded event
+     */
+    public synchronized void add(final String id, final ByteBuffer event) {
+        final int length = event.remaining();
+
+        if (length > maxBytes || maxEvents <= 0) {
+            clear();
+            return;
+        }
+
+        ByteBuffer data = event;
+        int offset = 0;
+
+        if (region != null) {
+            if (writePosition + length > region.capacity()) {
+                writePosition = 0;
+            }
+
+            evictOverlapping(writePosition, writePosition + length);
+            offset = writePosition;
+            data = region.duplicate().position(writePosition).limit(writePosition + length).slice();
+            data.put(event.duplicate()).flip();
+            writePosition += length;
+        }
+
+        entries.add(new Entry(id, data, offset));
+        bytes += length;
+
+        while (entries.size() > maxEvents || bytes > maxBytes) {
+            evict();
+        }
+    }
+
+
+    /**
+     * Gets copies of the events following the event with the specified id.
+     *
+     * @param lastEventId the id of the last event received by the client
+     * @return the events in the order they were sent or null if the id is not buffered anymore
+     */
+    public synchronized List<ByteBuffer> since(final String lastEventId) {
+        final List<ByteBuffer> events = new ArrayList<>();
+        final Iterator<Entry> it = entries.descendingIterator();
+
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+
+            if (entry.id.equals(lastEventId)) {
+                final List<ByteBuffer> result = new ArrayList<>(events.size());
+
+                for (int i = events.size() - 1; i >= 0; i--) {
+                    result.add(events.get(i));
+                }
+
+                return result;
+            }
+
+            events.add(copy(entry.data));
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Copies the event so that it is not affected when the region of a memory-mapped event is
+     * reused.
+     *
+     * @param data the buffered event
+     * @return the event to send
+     */
+    private ByteBuffer copy(final ByteBuffer data) {
+        if (region == null) {
+            return data.duplicate();
+        }
+
+        final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate()).flip();
+
+        return copy.asReadOnlyBuffer();
+    }
+
+
+    /**
+     * Evicts the events up to the last one which overlaps the specified range of the
+     * memory-mapped file.
+     *
+     * @param start the start of the range
+     * @param end the end of the range (exclusive)
+     */
+    private void evictOverlapping(final int start, final int end) {
+        int overlapping = 0;
+        int index = 0;
+
+        for (final Entry entry : entries) {
+            index++;
+
+            if (entry.offset < end && entry.offset + entry.data.remaining() > start) {
+                overlapping = index;
+            }
+        }
+
+        for (int i = 0; i < overlapping; i++) {
+            evict();
+        }
+    }
+
+
+    /**
+     * Evicts the oldest event.
+     */
+    private void evict() {
+        final Entry entry = entries.poll();
+
+        if (entry != null) {
+            bytes -= entry.data.remaining();
+        }
+    }
+
+
+    /**
+     * Removes all events.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0L;
+        writePosition = 0;
+    }
+
+
+    /**
+     * Gets the number of buffered events.
+     *
+     * @return the number of events
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Finds the value of the <code>id</code> field of the encoded event.
+     *
+     * @param event the encoded event
+     * @return the id or null if the event has no id
+     */
+    public static String findId(final ByteBuffer event) {
+        final String text = StandardCharsets.UTF_8.decode(event.duplicate()).toString();
+        int start = 0;
+
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+
+            if (end < 0) {
+                end = text.length();
+            }
+
+            final String line = text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end);
+
+            if (line.isEmpty()) {
+                break;
+            } else if (line.startsWith("id:")) {
+                return line.startsWith("id: ") ? line.substring(4) : line.substring(3);
+            }
+
+            start = end + 1;
+        }
+
+        return null;
+    }
+
+
+    @Override
+    public synchronized void close() {
+        clear();
+
+        if (file != null) {
+            try {
+                file.close();
+            } catch (final IOException e) {
+            }
+
+            file = null;
+            region = null;
+        }
+    }
+
+    /**
+     * A buffered event.
+     */
+    private static class Entry {
+        private final String id;
+        private final ByteBuffer data;
+        private final int offset;
+
+
+        /**
+         * Constructor.
+         *
+         * @param id the event id
+         * @param data the encoded event
+         * @param offset the offset in the memory-mapped file
+         */
+        Entry(final String id, final ByteBuffer data, final int offset) {
+            this.id = id;
+            this.data = data;
+            this.offset = offset;
+        }
+    }
+}
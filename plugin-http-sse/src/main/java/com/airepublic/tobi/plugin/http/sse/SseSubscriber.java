@@ -0,0 +1,216 @@
+package com.airepublic.tobi.plugin.http.sse;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.airepublic.tobi.core.spi.ConnectionContext;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
+
+/**
+ * A connection subscribed to the events of a path of the {@link SseBroadcaster}. The encoded events
+ * are queued in a bounded queue and the write interest of the connection is re-armed on its
+ * event-loop when an event is queued while the connection is idle.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class SseSubscriber {
+    private final IChannelProcessor processor;
+    // the generation of the subscribed connection in case the processor is reused
+    private final long generation;
+    // the request and session context of the connection
+    private final ConnectionContext connectionContext;
+    private final int queueSize;
+    private final SlowConsumerPolicy policy;
+    private final ArrayDeque<ByteBuffer> queue;
+    // true while the connection is registered for writing
+    private final AtomicBoolean writeArmed = new AtomicBoolean(true);
+    private long dropped = 0L;
+    // replayed events at the head of the queue which do not count against the queue size
+    private int replayed = 0;
+    // true once the subscriber has been disconnected as a slow consumer
+    private boolean disconnected = false;
+
+
+    /**
+     * Constructor. Must be called while the {@link ConnectionContext} of the connection is active.
+     *
+     * @param processor the {@link IChannelProcessor} of the connection
+     * @param queueSize the maximum number of pending events
+     * @param policy the {@link SlowConsumerPolicy} applied when the queue is full
+     */
+    public SseSubscriber(final IChannelProcessor processor, final int queueSize, final SlowConsumerPolicy policy) {
+        this.processor = processor;
+        generation = processor.getGeneration();
+        connectionContext = ConnectionContext.current();
+        this.queueSize = Math.max(1, queueSize);
+        this.policy = policy;
+        queue = new ArrayDeque<>(this.queueSize);
+    }
+
+
+    /**
+     * Gets the request and session context of the connection.
+     *
+     * @return the {@link ConnectionContext} or null if none was active when subscribing
+     */
+    ConnectionContext getConnectionContext() {
+        return connectionContext;
+    }
+
+
+    /**
+     * Queues the encoded event and wakes up the connection. A slow consumer which is disconnected
+     * is closed on its event-loop.
+     *
+     * @param event the encoded event
+     */
+    void offer(final ByteBuffer event) {
+        final boolean disconnect;
+
+        synchronized (queue) {
+            if (disconnected) {
+                return;
+            }
+
+            if (queue.size() - replayed >= queueSize) {
+                if (policy == SlowConsumerPolicy.DISCONNECT) {
+                    queue.clear();
+                    replayed = 0;
+                    disconnected = true;
+                } else {
+                    queue.poll();
+                    replayed = Math.max(0, replayed - 1);
+                    dropped++;
+                }
+            }
+
+            disconnect = disconnected;
+
+            if (!disconnect) {
+                queue.add(event);
+            }
+        }
+
+        // close outside of the lock as the event-loop might be draining the queue
+        if (disconnect) {
+            processor.close(generation);
+        } else {
+            wakeup();
+        }
+    }
+
+
+    /**
+     * Queues the missed events for a reconnecting client before any live event.
+     *
+     * @param events the encoded events to replay
+     */
+    void replay(final List<ByteBuffer> events) {
+        synchronized (queue) {
+            queue.addAll(events);
+            replayed += events.size();
+        }
+
+        wakeup();
+    }
+
+
+    /**
+     * Gets the next pending event.
+     *
+     * @return the encoded event or null if no event is pending
+     */
+    public ByteBuffer poll() {
+        synchronized (queue) {
+            final ByteBuffer event = queue.poll();
+
+            if (event != null && replayed > 0) {
+                replayed--;
+            }
+
+            return event;
+        }
+    }
+
+
+    /**
+     * Suspends the connection until the next event is queued. Must be called on the event-loop
+     * thread of the connection after an event has been written.
+     */
+    public void suspend() {
+        try {
+            processor.getChannel().keyFor(processor.getSelector()).interestOps(0);
+        } catch (final CancelledKeyException e) {
+            return;
+        }
+
+        writeArmed.set(false);
+
+        // an event might have been queued before the write interest was cleared
+        synchronized (queue) {
+            if (queue.isEmpty()) {
+                return;
+            }
+        }
+
+        wakeup();
+    }
+
+
+    /**
+     * Re-arms the write interest of the connection on its event-loop if it is idle.
+     */
+    private void wakeup() {
+        if (writeArmed.compareAndSet(false, true)) {
+            if (processor.inEventLoop()) {
+                armWrite();
+                return;
+            }
+
+            try {
+                processor.execute(this::armWrite);
+            } catch (final RejectedExecutionException e) {
+                // the event-loop has been stopped and closes its connections
+            }
+        }
+    }
+
+
+    /**
+     * Registers the connection for writing unless it has been closed or the processor has been
+     * reused meanwhile. Must be called on the event-loop thread of the connection.
+     */
+    private void armWrite() {
+        if (processor.getGeneration() != generation || processor.isClosed()) {
+            return;
+        }
+
+        try {
+            final SelectionKey key = processor.getChannel().keyFor(processor.getSelector());
+
+            if (key != null && key.isValid()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            }
+        } catch (final CancelledKeyException e) {
+            // the connection has been closed meanwhile
+        }
+    }
+
+
+    /**
+     * Gets the number of events dropped because the queue was full.
+     *
+     * @return the number of dropped events
+     */
+    public long getDropped() {
+        synchronized (queue) {
+            return dropped;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.airepublic.tobi.plugin.http.staticfiles;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * The cached meta-data of a static file with its precomputed entity-tag and, for small files, the
+ * file content.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class StaticFile {
+    private final Path path;
+    private final long length;
+    private final long lastModified;
+    private final String etag;
+    private final String contentType;
+    private final ByteBuffer content;
+
+    /**
+     * Constructor.
+     *
+     * @param path the {@link Path} of the file
+     * @param length the file size
+     * @param lastModified the last modification time in milliseconds
+     * @param contentType the content type
+     * @param content the read-only file content or null if the file is not cached in memory
+     */
+    public StaticFile(final Path path, final long length, final long lastModified, final String contentType, final ByteBuffer content) {
+        this.path = path;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.content = content;
+        etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+
+    /**
+     * Gets the {@link Path} of the file.
+     *
+     * @return the {@link Path}
+     */
+    public Path getPath() {
+        return path;
+    }
+
+
+    /**
+     * Gets the file size.
+     *
+     * @return the length in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+
+    /**
+     * Gets the last modification time.
+     *
+     * @return the last modification time in milliseconds
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+
+    /**
+     * Gets the strong entity-tag derived from the file size and last modification time.
+     *
+     * @return the quoted entity-tag
+     */
+    public String getETag() {
+        return etag;
+    }
+
+
+    /**
+     * Gets the content type.
+     *
+     * @return the content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+
+    /**
+     * Gets a new view of the cached file content.
+     *
+     * @return the read-only content or null if the file is not cached in memory
+     */
+    public ByteBuffer getContent() {
+        return content != null ? content.duplicate() : null;
+    }
+
+
+    /**
+     * Checks whether this entry still matches the file.
+     *
+     * @param length the current file size
+     * @param lastModified the current last modification time in milliseconds
+     * @return true if the file has not changed
+     */
+    boolean isValid(final long length, final long lastModified) {
+        return this.length == length && this.lastModified == lastModified;
+    }
+}
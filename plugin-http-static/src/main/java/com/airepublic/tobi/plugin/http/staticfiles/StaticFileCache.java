@@ -0,0 +1,124 @@
+package com.airepublic.tobi.plugin.http.staticfiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of {@link StaticFile}s. Every lookup checks the file's size and last
+ * modification time so changed files are reloaded. The content of files up to the configured
+ * maximum file size is held in memory, larger files only keep their meta-data.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class StaticFileCache {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private final int maxFileSize;
+    private final Map<Path, StaticFile> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries the maximum number of cached files
+     * @param maxFileSize the maximum size of files whose content is held in memory
+     */
+    public StaticFileCache(final int maxEntries, final int maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Path, StaticFile> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+
+    /**
+     * Gets the {@link StaticFile} for the path, loading it if it is not cached or has changed.
+     *
+     * @param path the {@link Path} of the file
+     * @return the {@link StaticFile} or null if the path does not denote a regular file
+     * @throws IOException if the file could not be read
+     */
+    public StaticFile get(final Path path) throws IOException {
+        final BasicFileAttributes attributes;
+
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return null;
+        }
+
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        final long length = attributes.size();
+        final long lastModified = attributes.lastModifiedTime().toMillis();
+        StaticFile file;
+
+        synchronized (entries) {
+            file = entries.get(path);
+        }
+
+        if (file == null || !file.isValid(length, lastModified)) {
+            file = load(path, length, lastModified);
+
+            synchronized (entries) {
+                entries.put(path, file);
+            }
+        }
+
+        return file;
+    }
+
+
+    /**
+     * Loads the {@link StaticFile} and its content if it is small enough.
+     *
+     * @param path the {@link Path} of the file
+     * @param length the file size
+     * @param lastModified the last modification time in milliseconds
+     * @return the {@link StaticFile}
+     * @throws IOException if the file could not be read
+     */
+    private StaticFile load(final Path path, final long length, final long lastModified) throws IOException {
+        String contentType = null;
+
+        try {
+            contentType = Files.probeContentType(path);
+        } catch (final IOException e) {
+        }
+
+        ByteBuffer content = null;
+
+        if (length <= maxFileSize) {
+            final byte[] bytes = Files.readAllBytes(path);
+
+            // the file has been modified meanwhile - don't keep stale content
+            if (bytes.length == length) {
+                content = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+            }
+        }
+
+        return new StaticFile(path, length, lastModified, contentType != null ? contentType : DEFAULT_CONTENT_TYPE, content);
+    }
+
+
+    /**
+     * Removes all cached files.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.airepublic.tobi.plugin.http.staticfiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import com.airepublic.http.common.HttpStatus;
+import com.airepublic.tobi.core.spi.FileRegion;
+import com.airepublic.tobi.core.spi.Pair;
+import com.airepublic.tobi.module.http.AbstractHttpIOHandler;
+import com.airepublic.tobi.module.http.HttpRequest;
+import com.airepublic.tobi.module.http.HttpResponse;
+
+/**
+ * The {@link AbstractHttpIOHandler} serving a {@link StaticFile}. It supports conditional requests
+ * (<code>If-None-Match</code>, <code>If-Modified-Since</code>) and single byte ranges
+ * (<code>Range</code>, <code>If-Range</code>).
+ * <p>
+ * Files cached in memory are sent from the cached content. Other files are sent as a
+ * {@link FileRegion} which is transferred directly from the file to the connection if the
+ * connection is not encrypted.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class StaticFileIOHandler extends AbstractHttpIOHandler {
+    private static final long serialVersionUID = 1L;
+    private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+    private StaticFile file;
+    private boolean produced;
+
+
+    /**
+     * Sets the {@link StaticFile} to serve.
+     *
+     * @param file the {@link StaticFile}
+     */
+    void setStaticFile(final StaticFile file) {
+        this.file = file;
+    }
+
+
+    @Override
+    protected Pair<HttpResponse, CompletionHandler<?, ?>> getHttpResponse() throws IOException {
+        if (produced) {
+            return null;
+        }
+
+        produced = true;
+
+        final HttpRequest request = getHttpRequest();
+        final String lastModified = HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(file.getLastModified()));
+        final HttpResponse response = new HttpResponse(HttpStatus.OK);
+        response.withHeader("ETag", file.getETag());
+        response.withHeader("Last-Modified", lastModified);
+        response.withHeader("Accept-Ranges", "bytes");
+
+        if (isNotModified(request)) {
+            return new Pair<>(response.withStatus(HttpStatus.forCode(304)).withHeader("Content-Length", String.valueOf(file.getLength())), null);
+        }
+
+        response.withHeader("Content-Type", file.getContentType());
+
+        long start = 0;
+        long count = file.getLength();
+        final long[] range = getRange(request);
+
+        if (range != null) {
+            if (range.length == 0) {
+                response.withStatus(HttpStatus.forCode(416));
+                response.withHeader("Content-Range", "bytes */" + file.getLength());
+                response.withHeader("Content-Length", "0");
+                return new Pair<>(response, null);
+            }
+
+            start = range[0];
+            count = range[1] - range[0] + 1;
+            response.withStatus(HttpStatus.forCode(206));
+            response.withHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + file.getLength());
+        }
+
+        response.withHeader("Content-Length", String.valueOf(count));
+
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || count == 0) {
+            return new Pair<>(response, null);
+        }
+
+        final ByteBuffer content = file.getContent();
+
+        if (content != null) {
+            content.position((int) start).limit((int) (start + count));
+            response.withBody(content);
+        } else {
+            final FileChannel fileChannel = FileChannel.open(file.getPath(), StandardOpenOption.READ);
+            response.withFileRegion(new FileRegion(fileChannel, start, count));
+        }
+
+        return new Pair<>(response, null);
+    }
+
+
+    /**
+     * Evaluates the conditional request headers. <code>If-None-Match</code> takes precedence over
+     * <code>If-Modified-Since</code>.
+     *
+     * @param request the {@link HttpRequest}
+     * @return true if the client's representation is still current
+     */
+    boolean isNotModified(final HttpRequest request) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.strip();
+
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+
+                if (tag.equals("*") || tag.equals(file.getETag())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        final String ifModifiedSince = request.getHeader("If-Modified-Since");
+
+        if (ifModifiedSince != null) {
+            final long since = parseDate(ifModifiedSince);
+
+            // HTTP dates have a resolution of seconds
+            return since >= 0 && file.getLastModified() / 1000 <= since / 1000;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Parses the <code>Range</code> header of a GET request. Only a single byte range is
+     * supported, otherwise the whole file is sent. The range is ignored if the
+     * <code>If-Range</code> header does not match the file.
+     *
+     * @param request the {@link HttpRequest}
+     * @return the first and last byte position, an empty array if the range is not satisfiable
+     *         or null if the whole file should be sent
+     */
+    long[] getRange(final HttpRequest request) {
+        final String range = request.getHeader("Range");
+
+        if (range == null || !"GET".equalsIgnoreCase(request.getMethod()) || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+
+        final String ifRange = request.getHeader("If-Range");
+
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (!ifRange.equals(file.getETag())) {
+                    return null;
+                }
+            } else if (parseDate(ifRange) / 1000 != file.getLastModified() / 1000) {
+                return null;
+            }
+        }
+
+        final String spec = range.substring(6).strip();
+        final int dash = spec.indexOf('-');
+
+        if (dash < 0) {
+            return null;
+        }
+
+        final long length = file.getLength();
+        long first;
+        long last;
+
+        try {
+            if (dash == 0) {
+                // suffix range - the last n bytes
+                final long suffix = Long.parseLong(spec.substring(1));
+
+                if (suffix == 0) {
+                    return new long[0];
+                }
+
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+
+                if (last < first) {
+                    return dash == spec.length() - 1 || first >= length ? new long[0] : null;
+                }
+            }
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+
+        if (first >= length) {
+            return new long[0];
+        }
+
+        return new long[] { first, last };
+    }
+
+
+    /**
+     * Parses a HTTP date.
+     *
+     * @param date the date string
+     * @return the time in milliseconds or -1 if the date is invalid
+     */
+    private static long parseDate(final String date) {
+        try {
+            return ZonedDateTime.parse(date.strip(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
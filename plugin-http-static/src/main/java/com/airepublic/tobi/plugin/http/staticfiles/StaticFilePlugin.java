@@ -0,0 +1,196 @@
+package com.airepublic.tobi.plugin.http.staticfiles;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.inject.spi.CDI;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.airepublic.logging.java.LogLevel;
+import com.airepublic.logging.java.LoggerConfig;
+import com.airepublic.tobi.core.spi.IIOHandler;
+import com.airepublic.tobi.core.spi.IRequest;
+import com.airepublic.tobi.core.spi.IServerModule;
+import com.airepublic.tobi.core.spi.IServicePlugin;
+import com.airepublic.tobi.module.http.HttpRequest;
+
+/**
+ * The {@link IServicePlugin} implementation serving static files from a document root. The plugin
+ * can be configured with following properties using the microprofile configuration:
+ * <ul>
+ * <li><code>http.static.root</code> - the document root directory (the plugin is disabled if not
+ * set)</li>
+ * <li><code>http.static.path</code> - the URL path prefix mapped to the document root (default
+ * <code>/</code>)</li>
+ * <li><code>http.static.index</code> - the file served for directory requests (default
+ * <code>index.html</code>)</li>
+ * <li><code>http.static.cache.maxEntries</code> - the maximum number of cached files (default
+ * 256)</li>
+ * <li><code>http.static.cache.maxFileSize</code> - the maximum size in bytes of files whose content
+ * is cached in memory (default 65536)</li>
+ * </ul>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@Named
+public class StaticFilePlugin implements IServicePlugin {
+    public final static String ROOT = "http.static.root";
+    public final static String PATH = "http.static.path";
+    public final static String INDEX = "http.static.index";
+    public final static String CACHE_MAX_ENTRIES = "http.static.cache.maxEntries";
+    public final static String CACHE_MAX_FILE_SIZE = "http.static.cache.maxFileSize";
+    @Inject
+    @LoggerConfig(level = LogLevel.INFO)
+    private Logger logger;
+    @Inject
+    @ConfigProperty(name = ROOT, defaultValue = "")
+    private String root;
+    @Inject
+    @ConfigProperty(name = PATH, defaultValue = "/")
+    private String contextPath;
+    @Inject
+    @ConfigProperty(name = INDEX, defaultValue = "index.html")
+    private String indexFile;
+    @Inject
+    @ConfigProperty(name = CACHE_MAX_ENTRIES, defaultValue = "256")
+    private int cacheMaxEntries;
+    @Inject
+    @ConfigProperty(name = CACHE_MAX_FILE_SIZE, defaultValue = "65536")
+    private int cacheMaxFileSize;
+    private Path rootPath;
+    private StaticFileCache cache;
+
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+
+    @Override
+    public Set<String> getSupportedProtocols() {
+        return Set.of("HTTP");
+    }
+
+
+    @Override
+    public int getPriority() {
+        return 400;
+    }
+
+
+    @Override
+    public IIOHandler determineIoHandler(final IRequest request) {
+        if (rootPath == null) {
+            return null;
+        }
+
+        final HttpRequest httpRequest = (HttpRequest) request;
+        final String method = httpRequest.getMethod();
+
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+            return null;
+        }
+
+        try {
+            final Path path = resolve(httpRequest.getPath());
+
+            if (path == null) {
+                return null;
+            }
+
+            final StaticFile file = cache.get(path);
+
+            if (file != null) {
+                final StaticFileIOHandler handler = CDI.current().select(StaticFileIOHandler.class).get();
+                handler.setStaticFile(file);
+
+                return handler;
+            }
+        } catch (final Exception e) {
+            logger.log(Level.SEVERE, "Could not serve static file for: " + httpRequest.getPath(), e);
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Resolves the request path against the document root. Paths which would escape the document
+     * root are rejected and directories are resolved to their index file.
+     *
+     * @param requestPath the request path
+     * @return the {@link Path} of the file or null if the request path is not mapped
+     */
+    Path resolve(final String requestPath) {
+        if (requestPath == null || !requestPath.startsWith(contextPath)) {
+            return null;
+        }
+
+        String relative = requestPath.substring(contextPath.length());
+
+        if (relative.indexOf('%') >= 0) {
+            try {
+                relative = URI.create(relative).getPath();
+            } catch (final IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+
+        if (relative.indexOf('\0') >= 0) {
+            return null;
+        }
+
+        Path path = rootPath.resolve(relative).normalize();
+
+        if (!path.startsWith(rootPath)) {
+            return null;
+        }
+
+        if (Files.isDirectory(path)) {
+            path = path.resolve(indexFile).normalize();
+        }
+
+        return path;
+    }
+
+
+    @Override
+    public void initPlugin(final IServerModule module) {
+        if (root == null || root.isBlank()) {
+            logger.info("No document root configured for static files (" + ROOT + ")!");
+            return;
+        }
+
+        rootPath = Paths.get(root).toAbsolutePath().normalize();
+
+        if (!contextPath.endsWith("/")) {
+            contextPath = contextPath + "/";
+        }
+
+        cache = new StaticFileCache(cacheMaxEntries, cacheMaxFileSize);
+
+        logger.info("Serving static files from '" + rootPath + "' on path '" + contextPath + "'");
+    }
+
+
+    @Override
+    public void close() throws Exception {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
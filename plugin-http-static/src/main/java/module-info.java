@@ -0,0 +1,23 @@
+import com.airepublic.tobi.core.spi.IServicePlugin;
+import com.airepublic.tobi.plugin.http.staticfiles.StaticFilePlugin;
+
+module com.airepublic.tobi.plugin.http.staticfiles {
+    exports com.airepublic.tobi.plugin.http.staticfiles;
+
+    requires transitive com.airepublic.tobi.core.spi;
+    requires com.airepublic.tobi.module.http;
+    requires com.airepublic.tobi.feature.mp.config;
+    requires com.airepublic.logging.java;
+    requires com.airepublic.http.common;
+
+    requires jakarta.enterprise.cdi.api;
+    requires jakarta.inject;
+    requires java.annotation;
+    requires java.logging;
+    requires microprofile.config.api;
+
+    provides IServicePlugin with StaticFilePlugin;
+
+    opens com.airepublic.tobi.plugin.http.staticfiles;
+
+}
\ No newline at end of file
@@ -39,6 +39,8 @@ public class Constants {
     // RFC 6455 limits OP Codes to 4 bits so these should never clash
     // Always set bit 4 so these will be treated as control codes
     static final byte INTERNAL_OPCODE_FLUSH = 0x18;
+    // A complete message which has already been framed, e.g. for a broadcast
+    static final byte INTERNAL_OPCODE_PREPARED = 0x19;
 
     // Buffers
     static final int DEFAULT_BUFFER_SIZE = Integer.getInteger(
@@ -114,11 +116,6 @@ public class Constants {
     // Milliseconds so this is 20 seconds
     public static final long DEFAULT_BLOCKING_SEND_TIMEOUT = 20 * 1000;
 
-    // Configuration for background processing checks intervals
-    static final int DEFAULT_PROCESS_PERIOD = Integer.getInteger(
-            "org.apache.tomcat.websocket.DEFAULT_PROCESS_PERIOD", 10)
-            .intValue();
-
     public static final String WS_AUTHENTICATION_USER_NAME = "org.apache.tomcat.websocket.WS_AUTHENTICATION_USER_NAME";
     public static final String WS_AUTHENTICATION_PASSWORD = "org.apache.tomcat.websocket.WS_AUTHENTICATION_PASSWORD";
 
@@ -133,6 +130,24 @@ public class Constants {
     static final boolean ALLOW_UNSUPPORTED_EXTENSIONS =
             Boolean.getBoolean("org.apache.tomcat.websocket.ALLOW_UNSUPPORTED_EXTENSIONS");
 
+    // Configuration for permessage-deflate
+    static final int DEFLATE_COMPRESSION_LEVEL = Integer.getInteger(
+            "websocket.deflate.compressionLevel", -1)
+            .intValue();
+    // Messages smaller than this are sent uncompressed
+    static final int DEFLATE_MIN_MESSAGE_SIZE = Integer.getInteger(
+            "websocket.deflate.minMessageSize", 0)
+            .intValue();
+    // Maximum number of idle deflaters and inflaters kept for reuse
+    static final int DEFLATE_POOL_SIZE = Integer.getInteger(
+            "websocket.deflate.poolSize", 256)
+            .intValue();
+
+    // Deliver single frame binary messages as a view of the read buffer which
+    // is only valid until the message handler returns
+    static final boolean READ_ZERO_COPY =
+            Boolean.getBoolean("websocket.read.zeroCopy");
+
     public static final boolean STRICT_SPEC_COMPLIANCE =
             Boolean.getBoolean("org.apache.tomcat.websocket.STRICT_SPEC_COMPLIANCE");
 
@@ -0,0 +1,280 @@
+package com.airepublic.tobi.plugin.http.websocket;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Provides the {@link Deflater}s and {@link Inflater}s of the {@link PerMessageDeflate} sessions
+ * and collects compression metrics. Sessions which reset their compression context after each
+ * message (negotiated with <code>server_no_context_takeover</code> or
+ * <code>client_no_context_takeover</code>) only borrow a deflater or inflater while a message is
+ * processed, so that the native zlib state is shared by all sessions instead of being held by
+ * every idle connection.
+ * <p>
+ * The following system properties are supported:
+ * <ul>
+ * <li><code>websocket.deflate.compressionLevel</code> - the compression level from 0 to 9 or -1
+ * for the default level (default -1)</li>
+ * <li><code>websocket.deflate.minMessageSize</code> - the size in bytes below which messages are
+ * sent uncompressed (default 0)</li>
+ * <li><code>websocket.deflate.poolSize</code> - the maximum number of idle deflaters and
+ * inflaters kept for reuse (default 256)</li>
+ * </ul>
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class DeflateEngine {
+    private static final DeflateEngine engine = new DeflateEngine(Constants.DEFLATE_COMPRESSION_LEVEL, Constants.DEFLATE_MIN_MESSAGE_SIZE, Constants.DEFLATE_POOL_SIZE);
+    private final int compressionLevel;
+    private final int minMessageSize;
+    private final ArrayBlockingQueue<Deflater> deflaters;
+    private final ArrayBlockingQueue<Inflater> inflaters;
+    private final LongAdder compressedMessages = new LongAdder();
+    private final LongAdder uncompressedMessages = new LongAdder();
+    private final LongAdder deflateIn = new LongAdder();
+    private final LongAdder deflateOut = new LongAdder();
+    private final LongAdder deflateNanos = new LongAdder();
+    private final LongAdder inflateIn = new LongAdder();
+    private final LongAdder inflateOut = new LongAdder();
+    private final LongAdder inflateNanos = new LongAdder();
+
+
+    /**
+     * Constructor.
+     *
+     * @param compressionLevel the compression level
+     * @param minMessageSize the size below which messages are sent uncompressed
+     * @param poolSize the maximum number of idle deflaters and inflaters
+     */
+    public DeflateEngine(final int compressionLevel, final int minMessageSize, final int poolSize) {
+        this.compressionLevel = compressionLevel;
+        this.minMessageSize = minMessageSize;
+        deflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        inflaters = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+
+    /**
+     * Gets the engine configured by the system properties.
+     *
+     * @return the {@link DeflateEngine}
+     */
+    public static DeflateEngine getInstance() {
+        return engine;
+    }
+
+
+    /**
+     * Creates a new {@link Deflater} owned by a session which keeps its compression context.
+     *
+     * @return the {@link Deflater}
+     */
+    public Deflater createDeflater() {
+        return new Deflater(compressionLevel, true);
+    }
+
+
+    /**
+     * Borrows a {@link Deflater} from the pool or creates a new one.
+     *
+     * @return the {@link Deflater}
+     */
+    public Deflater borrowDeflater() {
+        final Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : createDeflater();
+    }
+
+
+    /**
+     * Resets the {@link Deflater} and returns it to the pool or releases it if the pool is full.
+     *
+     * @param deflater the {@link Deflater}
+     */
+    public void releaseDeflater(final Deflater deflater) {
+        deflater.reset();
+
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+
+    /**
+     * Creates a new {@link Inflater} owned by a session which keeps its decompression context.
+     *
+     * @return the {@link Inflater}
+     */
+    public Inflater createInflater() {
+        return new Inflater(true);
+    }
+
+
+    /**
+     * Borrows an {@link Inflater} from the pool or creates a new one.
+     *
+     * @return the {@link Inflater}
+     */
+    public Inflater borrowInflater() {
+        final Inflater inflater = inflaters.poll();
+        return inflater != null ? inflater : createInflater();
+    }
+
+
+    /**
+     * Resets the {@link Inflater} and returns it to the pool or releases it if the pool is full.
+     *
+     * @param inflater the {@link Inflater}
+     */
+    public void releaseInflater(final Inflater inflater) {
+        inflater.reset();
+
+        if (!inflaters.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+
+    /**
+     * Checks whether a message of the specified size should be compressed.
+     *
+     * @param size the size of the message in bytes
+     * @return true if the message should be compressed
+     */
+    public boolean isCompressible(final int size) {
+        return size >= minMessageSize;
+    }
+
+
+    /**
+     * Records a message which has been sent uncompressed because it was too small.
+     */
+    void recordUncompressed() {
+        uncompressedMessages.increment();
+    }
+
+
+    /**
+     * Records a message which has been compressed.
+     */
+    void recordCompressed() {
+        compressedMessages.increment();
+    }
+
+
+    /**
+     * Records the compression of a message part.
+     *
+     * @param in the uncompressed bytes
+     * @param out the compressed bytes
+     * @param nanos the time spent compressing
+     */
+    void recordDeflate(final long in, final long out, final long nanos) {
+        deflateIn.add(in);
+        deflateOut.add(out);
+        deflateNanos.add(nanos);
+    }
+
+
+    /**
+     * Records the decompression of frame data.
+     *
+     * @param in the compressed bytes
+     * @param out the decompressed bytes
+     * @param nanos the time spent decompressing
+     */
+    void recordInflate(final long in, final long out, final long nanos) {
+        inflateIn.add(in);
+        inflateOut.add(out);
+        inflateNanos.add(nanos);
+    }
+
+
+    /**
+     * Gets the number of messages which have been compressed.
+     *
+     * @return the number of compressed messages
+     */
+    public long getCompressedMessages() {
+        return compressedMessages.sum();
+    }
+
+
+    /**
+     * Gets the number of messages which have been sent uncompressed because they were smaller than
+     * the minimum message size.
+     *
+     * @return the number of uncompressed messages
+     */
+    public long getUncompressedMessages() {
+        return uncompressedMessages.sum();
+    }
+
+
+    /**
+     * Gets the ratio of the compressed to the uncompressed size of all sent messages.
+     *
+     * @return the compression ratio or 1 if nothing has been compressed
+     */
+    public double getCompressionRatio() {
+        final long in = deflateIn.sum();
+        return in == 0L ? 1d : (double) deflateOut.sum() / in;
+    }
+
+
+    /**
+     * Gets the ratio of the compressed to the decompressed size of all received messages.
+     *
+     * @return the decompression ratio or 1 if nothing has been decompressed
+     */
+    public double getDecompressionRatio() {
+        final long out = inflateOut.sum();
+        return out == 0L ? 1d : (double) inflateIn.sum() / out;
+    }
+
+
+    /**
+     * Gets the time spent compressing.
+     *
+     * @param unit the {@link TimeUnit}
+     * @return the time in the specified unit
+     */
+    public long getDeflateTime(final TimeUnit unit) {
+        return unit.convert(deflateNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Gets the time spent decompressing.
+     *
+     * @param unit the {@link TimeUnit}
+     * @return the time in the specified unit
+     */
+    public long getInflateTime(final TimeUnit unit) {
+        return unit.convert(inflateNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Gets the number of idle pooled deflaters.
+     *
+     * @return the number of pooled deflaters
+     */
+    public int getPooledDeflaters() {
+        return deflaters.size();
+    }
+
+
+    /**
+     * Gets the number of idle pooled inflaters.
+     *
+     * @return the number of pooled inflaters
+     */
+    public int getPooledInflaters() {
+        return inflaters.size();
+    }
+}
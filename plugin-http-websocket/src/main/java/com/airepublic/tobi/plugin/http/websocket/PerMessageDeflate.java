@@ -49,14 +49,21 @@ public class PerMessageDeflate implements Transformation {
     private final boolean clientContextTakeover;
     private final int clientMaxWindowBits;
     private final boolean isServer;
-    private final Inflater inflater = new Inflater(true);
-    private final ByteBuffer readBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
-    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final DeflateEngine engine = DeflateEngine.getInstance();
+    // Without context takeover the (de)compression context is reset after
+    // each message so the deflater/inflater is only borrowed from the pool
+    // while a message is processed
+    private final boolean pooledDeflater;
+    private final boolean pooledInflater;
+    private Inflater inflater;
+    private ByteBuffer readBuffer;
+    private Deflater deflater;
     private final byte[] EOM_BUFFER = new byte[EOM_BYTES.length + 1];
 
     private volatile Transformation next;
     private volatile boolean skipDecompression = false;
-    private volatile ByteBuffer writeBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
+    // Allocated when the next compressed part is started
+    private volatile ByteBuffer writeBuffer;
     private volatile boolean firstCompressedFrameWritten = false;
     // Flag to track if a message is completely empty
     private volatile boolean emptyMessage = true;
@@ -172,6 +179,8 @@ public class PerMessageDeflate implements Transformation {
         this.clientContextTakeover = clientContextTakeover;
         this.clientMaxWindowBits = clientMaxWindowBits;
         this.isServer = isServer;
+        pooledDeflater = isServer && !serverContextTakeover || !isServer && !clientContextTakeover;
+        pooledInflater = isServer && !clientContextTakeover || !isServer && !serverContextTakeover;
     }
 
 
@@ -194,45 +203,65 @@ public class PerMessageDeflate implements Transformation {
             return next.getMoreData(opCode, fin, rsv, dest);
         }
 
+        if (inflater == null) {
+            inflater = pooledInflater ? engine.borrowInflater() : engine.createInflater();
+        }
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
+        }
+
         int written;
         boolean usedEomBytes = false;
-
-        while (dest.remaining() > 0) {
-            // Space available in destination. Try and fill it.
-            try {
-                written = inflater.inflate(
-                        dest.array(), dest.arrayOffset() + dest.position(), dest.remaining());
-            } catch (DataFormatException e) {
-                throw new IOException(sm.getString("perMessageDeflate.deflateFailed"), e);
-            }
-            dest.position(dest.position() + written);
-
-            if (inflater.needsInput() && !usedEomBytes ) {
-                if (dest.hasRemaining()) {
-                    readBuffer.clear();
-                    TransformationResult nextResult =
-                            next.getMoreData(opCode, fin, (rsv ^ RSV_BITMASK), readBuffer);
-                    inflater.setInput(
-                            readBuffer.array(), readBuffer.arrayOffset(), readBuffer.position());
-                    if (TransformationResult.UNDERFLOW.equals(nextResult)) {
-                        return nextResult;
-                    } else if (TransformationResult.END_OF_FRAME.equals(nextResult) &&
-                            readBuffer.position() == 0) {
-                        if (fin) {
-                            inflater.setInput(EOM_BYTES);
-                            usedEomBytes = true;
-                        } else {
-                            return TransformationResult.END_OF_FRAME;
+        long compressedBytes = 0;
+        long inflatedBytes = 0;
+        long inflateNanos = 0;
+
+        try {
+            while (dest.remaining() > 0) {
+                // Space available in destination. Try and fill it.
+                long start = System.nanoTime();
+                try {
+                    written = inflater.inflate(
+                            dest.array(), dest.arrayOffset() + dest.position(), dest.remaining());
+                } catch (DataFormatException e) {
+                    throw new IOException(sm.getString("perMessageDeflate.deflateFailed"), e);
+                } finally {
+                    inflateNanos += System.nanoTime() - start;
+                }
+                dest.position(dest.position() + written);
+                inflatedBytes += written;
+
+                if (inflater.needsInput() && !usedEomBytes ) {
+                    if (dest.hasRemaining()) {
+                        readBuffer.clear();
+                        TransformationResult nextResult =
+                                next.getMoreData(opCode, fin, (rsv ^ RSV_BITMASK), readBuffer);
+                        inflater.setInput(
+                                readBuffer.array(), readBuffer.arrayOffset(), readBuffer.position());
+                        compressedBytes += readBuffer.position();
+                        if (TransformationResult.UNDERFLOW.equals(nextResult)) {
+                            return nextResult;
+                        } else if (TransformationResult.END_OF_FRAME.equals(nextResult) &&
+                                readBuffer.position() == 0) {
+                            if (fin) {
+                                inflater.setInput(EOM_BYTES);
+                                usedEomBytes = true;
+                            } else {
+                                return TransformationResult.END_OF_FRAME;
+                            }
                         }
                     }
+                } else if (written == 0) {
+                    if (fin && pooledInflater) {
+                        // Context is reset so return the inflater to the pool
+                        engine.releaseInflater(inflater);
+                        inflater = null;
+                    }
+                    return TransformationResult.END_OF_FRAME;
                 }
-            } else if (written == 0) {
-                if (fin && (isServer && !clientContextTakeover ||
-                        !isServer && !serverContextTakeover)) {
-                    inflater.reset();
-                }
-                return TransformationResult.END_OF_FRAME;
             }
+        } finally {
+            engine.recordInflate(compressedBytes, inflatedBytes, inflateNanos);
         }
 
         return TransformationResult.OVERFLOW;
@@ -329,11 +358,24 @@ public class PerMessageDeflate implements Transformation {
                 // Zero length messages can't be compressed so pass the
                 // final (empty) part straight through.
                 allCompressedParts.add(uncompressedPart);
+            } else if (!Util.isContinuation(opCode) && uncompressedPart.isFin() &&
+                    !engine.isCompressible(uncompressedPart.getPayload().remaining())) {
+                // Complete message which is too small to be worth
+                // compressing. Send it uncompressed (RSV1 not set).
+                allCompressedParts.add(uncompressedPart);
+                emptyMessage = true;
+                engine.recordUncompressed();
             } else {
                 List<MessagePart> compressedParts = new ArrayList<>();
                 ByteBuffer uncompressedPayload = uncompressedPart.getPayload();
                 SendHandler uncompressedIntermediateHandler =
                         uncompressedPart.getIntermediateHandler();
+                long compressedBytes = 0;
+                long deflateNanos = 0;
+
+                if (deflater == null) {
+                    deflater = pooledDeflater ? engine.borrowDeflater() : engine.createDeflater();
+                }
 
                 deflater.setInput(uncompressedPayload.array(),
                         uncompressedPayload.arrayOffset() + uncompressedPayload.position(),
@@ -343,11 +385,16 @@ public class PerMessageDeflate implements Transformation {
                 boolean deflateRequired = true;
 
                 while (deflateRequired) {
+                    if (writeBuffer == null) {
+                        writeBuffer = allocateWriteBuffer(uncompressedPayload.remaining());
+                    }
                     ByteBuffer compressedPayload = writeBuffer;
 
+                    long start = System.nanoTime();
                     int written = deflater.deflate(compressedPayload.array(),
                             compressedPayload.arrayOffset() + compressedPayload.position(),
                             compressedPayload.remaining(), flush);
+                    deflateNanos += System.nanoTime() - start;
                     compressedPayload.position(compressedPayload.position() + written);
 
                     if (!uncompressedPart.isFin() && compressedPayload.hasRemaining() && deflater.needsInput()) {
@@ -362,7 +409,7 @@ public class PerMessageDeflate implements Transformation {
                     MessagePart compressedPart;
 
                     // .. and a new writeBuffer will be required.
-                    writeBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
+                    writeBuffer = null;
 
                     // Flip the compressed payload ready for writing
                     compressedPayload.flip();
@@ -375,6 +422,7 @@ public class PerMessageDeflate implements Transformation {
                     if (fin && !full && needsInput) {
                         // End of compressed message. Drop EOM bytes and output.
                         compressedPayload.limit(compressedPayload.limit() - EOM_BYTES.length);
+                        compressedBytes += compressedPayload.remaining();
                         compressedPart = new MessagePart(true, getRsv(uncompressedPart),
                                 opCode, compressedPayload, uncompressedIntermediateHandler,
                                 uncompressedIntermediateHandler, blockingWriteTimeoutExpiry);
@@ -383,12 +431,14 @@ public class PerMessageDeflate implements Transformation {
                     } else if (full && !needsInput) {
                         // Write buffer full and input message not fully read.
                         // Output and start new compressed part.
+                        compressedBytes += compressedPayload.remaining();
                         compressedPart = new MessagePart(false, getRsv(uncompressedPart),
                                 opCode, compressedPayload, uncompressedIntermediateHandler,
                                 uncompressedIntermediateHandler, blockingWriteTimeoutExpiry);
                     } else if (!fin && full && needsInput) {
                         // Write buffer full and input message not fully read.
                         // Output and get more data.
+                        compressedBytes += compressedPayload.remaining();
                         compressedPart = new MessagePart(false, getRsv(uncompressedPart),
                                 opCode, compressedPayload, uncompressedIntermediateHandler,
                                 uncompressedIntermediateHandler, blockingWriteTimeoutExpiry);
@@ -401,10 +451,13 @@ public class PerMessageDeflate implements Transformation {
                         // - in middle of EOM bytes
                         // - about to write EOM bytes
                         // - more data to write
+                        long eomStart = System.nanoTime();
                         int eomBufferWritten = deflater.deflate(EOM_BUFFER, 0, EOM_BUFFER.length, Deflater.SYNC_FLUSH);
+                        deflateNanos += System.nanoTime() - eomStart;
                         if (eomBufferWritten < EOM_BUFFER.length) {
                             // EOM has just been completed
                             compressedPayload.limit(compressedPayload.limit() - EOM_BYTES.length + eomBufferWritten);
+                            compressedBytes += compressedPayload.remaining();
                             compressedPart = new MessagePart(true,
                                     getRsv(uncompressedPart), opCode, compressedPayload,
                                     uncompressedIntermediateHandler, uncompressedIntermediateHandler,
@@ -414,6 +467,8 @@ public class PerMessageDeflate implements Transformation {
                         } else {
                             // More data to write
                             // Copy bytes to new write buffer
+                            compressedBytes += compressedPayload.remaining();
+                            writeBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
                             writeBuffer.put(EOM_BUFFER, 0, eomBufferWritten);
                             compressedPart = new MessagePart(false,
                                     getRsv(uncompressedPart), opCode, compressedPayload,
@@ -436,6 +491,7 @@ public class PerMessageDeflate implements Transformation {
                 }
 
                 allCompressedParts.addAll(compressedParts);
+                engine.recordDeflate(uncompressedPayload.remaining(), compressedBytes, deflateNanos);
             }
         }
 
@@ -450,12 +506,25 @@ public class PerMessageDeflate implements Transformation {
     private void startNewMessage() {
         firstCompressedFrameWritten = false;
         emptyMessage = true;
-        if (isServer && !serverContextTakeover || !isServer && !clientContextTakeover) {
-            deflater.reset();
+        engine.recordCompressed();
+        if (pooledDeflater) {
+            // Context is reset so return the deflater to the pool
+            engine.releaseDeflater(deflater);
+            deflater = null;
         }
     }
 
 
+    /**
+     * Allocates the buffer for the next compressed part. Small messages
+     * don't need a buffer of the default size.
+     */
+    private ByteBuffer allocateWriteBuffer(int uncompressedSize) {
+        return ByteBuffer.allocate(Math.min(Constants.DEFAULT_BUFFER_SIZE,
+                Math.max(uncompressedSize + EOM_BYTES.length + 64, 128)));
+    }
+
+
     private int getRsv(MessagePart uncompressedMessagePart) {
         int result = uncompressedMessagePart.getRsv();
         if (!firstCompressedFrameWritten) {
@@ -470,7 +539,21 @@ public class PerMessageDeflate implements Transformation {
     public void close() {
         // There will always be a next transformation
         next.close();
-        inflater.end();
-        deflater.end();
+        if (inflater != null) {
+            if (pooledInflater) {
+                engine.releaseInflater(inflater);
+            } else {
+                inflater.end();
+            }
+            inflater = null;
+        }
+        if (deflater != null) {
+            if (pooledDeflater) {
+                engine.releaseDeflater(deflater);
+            } else {
+                deflater.end();
+            }
+            deflater = null;
+        }
     }
 }
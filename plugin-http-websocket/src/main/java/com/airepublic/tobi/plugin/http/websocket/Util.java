@@ -24,6 +24,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
@@ -165,6 +166,45 @@ public class Util {
     }
 
 
+    /**
+     * Applies the mask to the bytes of the buffer in place. The bytes are processed eight at a
+     * time by XOR-ing them with the mask repeated to a long and the remaining bytes one at a time.
+     * The position and limit of the buffer are not changed.
+     *
+     * @param buffer the buffer
+     * @param offset the index of the first byte to unmask
+     * @param length the number of bytes to unmask
+     * @param mask the mask
+     * @param maskIndex the index of the mask byte to apply to the first byte
+     * @return the index of the mask byte to apply to the byte following the unmasked bytes
+     */
+    public static int unmask(final ByteBuffer buffer, final int offset, final int length, final byte[] mask, final int maskIndex) {
+        final int end = offset + length;
+        int i = offset;
+
+        if (length >= 8) {
+            // the mask bytes in the order they are applied from the first byte
+            long rotated = (mask[maskIndex & 3] & 0xFFL) << 24 | (mask[maskIndex + 1 & 3] & 0xFFL) << 16
+                    | (mask[maskIndex + 2 & 3] & 0xFFL) << 8 | mask[maskIndex + 3 & 3] & 0xFFL;
+            rotated |= rotated << 32;
+
+            if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+                rotated = Long.reverseBytes(rotated);
+            }
+
+            for (; i <= end - 8; i += 8) {
+                buffer.putLong(i, buffer.getLong(i) ^ rotated);
+            }
+        }
+
+        for (; i < end; i++) {
+            buffer.put(i, (byte) (buffer.get(i) ^ mask[maskIndex + i - offset & 3]));
+        }
+
+        return maskIndex + length & 3;
+    }
+
+
     static Class<?> getMessageType(final MessageHandler listener) {
         return Util.getGenericType(MessageHandler.class,
                 listener.getClass()).getClazz();
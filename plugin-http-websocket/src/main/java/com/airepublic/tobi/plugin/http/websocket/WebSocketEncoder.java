@@ -4,18 +4,19 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import javax.inject.Inject;
-import javax.net.ssl.SSLEngine;
 
-import com.airepublic.http.common.SslSupport;
 import com.airepublic.tobi.core.spi.IChannelEncoder;
 import com.airepublic.tobi.core.spi.IRequest;
 import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.Pair;
 import com.airepublic.tobi.module.http.HttpRequest;
 import com.airepublic.tobi.module.http.SessionConstants;
+import com.airepublic.tobi.module.http.SslCodec;
 
 /**
  * The {@link IChannelEncoder} implementation for the websocket requests/responses supporting SSL.
+ * The decoded payload of a secure connection is a pooled buffer which stays valid until the next
+ * call to {@link #decode(ByteBuffer)}.
  * 
  * @author Torsten Oltmanns
  *
@@ -23,26 +24,87 @@ import com.airepublic.tobi.module.http.SessionConstants;
 public class WebSocketEncoder implements IChannelEncoder {
     @Inject
     private IServerSession session;
+    private ByteBuffer decoded;
 
 
     @Override
     public Pair<Status, IRequest> decode(final ByteBuffer buffer) throws IOException {
-        final SSLEngine sslEngine = session.getAttribute(SessionConstants.SESSION_SSL_ENGINE, SSLEngine.class);
-        final ByteBuffer unwrappedBuffer = SslSupport.unwrap(sslEngine, session.getChannel(), buffer);
-        return new Pair<>(Status.FULLY_READ, new HttpRequest(session, null, null, unwrappedBuffer));
+        final SslCodec sslCodec = getSslCodec();
+
+        if (sslCodec == null) {
+            return new Pair<>(Status.FULLY_READ, new HttpRequest(session, null, null, buffer));
+        }
+
+        releaseDecoded(sslCodec);
+        decoded = sslCodec.unwrap(buffer);
+
+        if (decoded == null) {
+            return new Pair<>(Status.CLOSED, null);
+        }
+
+        return new Pair<>(Status.FULLY_READ, new HttpRequest(session, null, null, decoded));
     }
 
 
     @Override
     public ByteBuffer[] encode(final ByteBuffer... buffers) throws IOException {
-        final SSLEngine sslEngine = session.getAttribute(SessionConstants.SESSION_SSL_ENGINE, SSLEngine.class);
+        final SslCodec sslCodec = getSslCodec();
+
+        if (sslCodec == null) {
+            return buffers;
+        }
 
-        return SslSupport.wrap(sslEngine, session.getChannel(), buffers);
+        return sslCodec.wrap(buffers);
+    }
+
+
+    @Override
+    public void release(final ByteBuffer... buffers) {
+        final SslCodec sslCodec = getSslCodec();
+
+        if (sslCodec != null) {
+            sslCodec.release(buffers);
+        }
+    }
+
+
+    @Override
+    public boolean isPassThrough() {
+        return getSslCodec() == null;
+    }
+
+
+    /**
+     * Gets the {@link SslCodec} of the session.
+     * 
+     * @return the {@link SslCodec} or null if the connection is not secure
+     */
+    private SslCodec getSslCodec() {
+        return session.getAttribute(SessionConstants.SESSION_SSL_CODEC, SslCodec.class);
+    }
+
+
+    /**
+     * Releases the payload buffer of the previous decoding.
+     * 
+     * @param sslCodec the {@link SslCodec}
+     */
+    private void releaseDecoded(final SslCodec sslCodec) {
+        if (decoded != null) {
+            sslCodec.release(decoded);
+            decoded = null;
+        }
     }
 
 
     @Override
     public void close() throws Exception {
+        final SslCodec sslCodec = getSslCodec();
+
+        if (sslCodec != null) {
+            releaseDecoded(sslCodec);
+            sslCodec.close();
+        }
     }
 
 }
@@ -2,23 +2,25 @@ package com.airepublic.tobi.plugin.http.websocket;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,20 +29,23 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
 import javax.websocket.DeploymentException;
-import javax.websocket.Session;
 import javax.websocket.server.HandshakeRequest;
 import javax.websocket.server.ServerEndpoint;
 import javax.websocket.server.ServerEndpointConfig;
 import javax.websocket.server.ServerEndpointConfig.Configurator;
 
-import com.airepublic.http.common.BufferUtil;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import com.airepublic.http.common.pathmatcher.MappingResult;
 import com.airepublic.logging.java.LogLevel;
 import com.airepublic.logging.java.LoggerConfig;
 import com.airepublic.tobi.core.spi.ChannelAction;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
 import com.airepublic.tobi.core.spi.IIOHandler;
 import com.airepublic.tobi.core.spi.IRequest;
+import com.airepublic.tobi.core.spi.IResponse;
 import com.airepublic.tobi.core.spi.IServerContext;
+import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.Pair;
 import com.airepublic.tobi.module.http.AbstractHttpIOHandler;
 import com.airepublic.tobi.module.http.HttpRequest;
@@ -53,23 +58,58 @@ import com.airepublic.tobi.plugin.http.websocket.server.WsServerContainer;
 
 /**
  * The {@link IIOHandler} implementation for websocket IO.
+ * <p>
+ * Outbound frames are queued in a {@link WsFrameQueue} and written in batches with a single
+ * gathering write per writable event. Blocking sends wait until the event-loop has written the
+ * frame or the send timeout of the {@link WsSession} has expired. As the event-loop cannot wait for
+ * its own writes, blocking sends from the event-loop thread (e.g. from a message handler) queue a
+ * copy of the frame and return immediately. Application threads never modify the connection
+ * directly but queue the write interest and the close to the event-loop.
+ * </p>
+ * <p>
+ * The message handlers of the endpoints are invoked on the event-loop in the order the messages
+ * are received and therefore must not block. Long running work should be handed off, e.g. to the
+ * handler executor of the {@link IServerContext}.
+ * </p>
+ * <p>
+ * The following configuration properties are supported:
+ * <ul>
+ * <li><code>websocket.write.maxBatchBytes</code> - the number of bytes up to which queued frames
+ * are written together (default 65536)</li>
+ * <li><code>websocket.write.maxQueuedBytes</code> - the maximum number of bytes queued per
+ * connection after which sends fail (default 1048576)</li>
+ * </ul>
+ * </p>
  * 
  * @author Torsten Oltmanns
  *
  */
 public class WebSocketIOHandler extends AbstractHttpIOHandler {
     private static final long serialVersionUID = 1L;
+    public final static String WRITE_MAX_BATCH_BYTES = "websocket.write.maxBatchBytes";
+    public final static String WRITE_MAX_QUEUED_BYTES = "websocket.write.maxQueuedBytes";
     @Inject
     @LoggerConfig(level = LogLevel.INFO)
     private Logger logger;
     @Inject
     private IServerContext serverContext;
+    @Inject
+    @ConfigProperty(name = WRITE_MAX_BATCH_BYTES, defaultValue = "65536")
+    private Integer maxBatchBytes;
+    @Inject
+    @ConfigProperty(name = WRITE_MAX_QUEUED_BYTES, defaultValue = "1048576")
+    private Long maxQueuedBytes;
     private static WsServerContainer webSocketContainer;
     private final AtomicBoolean handshakeDone = new AtomicBoolean(false);
     private final AtomicBoolean initWebSocketDone = new AtomicBoolean(false);
     private ServerEndpointConfig serverEndpointConfig;
     private final WsHttpUpgradeHandler upgradeHandler = new WsHttpUpgradeHandler();
-    private final Queue<Pair<HttpResponse, CompletionHandler<?, ?>>> out = new ConcurrentLinkedQueue<>();
+    // the processor, session and frame of this connection bound when the websocket is initialized
+    private IChannelProcessor processor;
+    private long generation;
+    private WsSession wsSession;
+    private WsFrameServer wsFrame;
+    private WsFrameQueue frames;
 
     /**
      * Initializes the websocket container.
@@ -79,6 +119,26 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
     public void init() {
         super.init();
         webSocketContainer = (WsServerContainer) serverContext.getAttribute("websocket.container");
+        frames = new WsFrameQueue(maxBatchBytes, maxQueuedBytes);
+    }
+
+
+    /**
+     * Produces the handshake response and after the handshake the next batch of queued frames.
+     */
+    @Override
+    public Pair<? extends IResponse, CompletionHandler<?, ?>> produce() throws IOException {
+        if (handshakeDone.get() && initWebSocketDone.get()) {
+            return frames.poll();
+        }
+
+        return super.produce();
+    }
+
+
+    @Override
+    public boolean hasPendingResponses() {
+        return handshakeDone.get() && initWebSocketDone.get() && !frames.isEmpty();
     }
 
 
@@ -91,13 +151,8 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
 
         if (handshakeDone.get()) {
             try {
-                if (serverEndpointConfig != null) {
-                    final Set<Session> sessions = webSocketContainer.getOpenSessions(serverEndpointConfig.getPath());
-
-                    if (!sessions.isEmpty()) {
-                        final WsSession wsSession = (WsSession) sessions.iterator().next();
-                        ((WsFrameServer) wsSession.getWsFrame()).onDataAvailable(httpRequest.getPayload());
-                    }
+                if (wsFrame != null) {
+                    wsFrame.onDataAvailable(httpRequest.getPayload());
                 }
             } catch (final Exception e) {
                 throw new IOException("Websocket request failed: " + httpRequest, e);
@@ -129,10 +184,6 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
             }
         }
 
-        if (!out.isEmpty()) {
-            return out.poll();
-        }
-
         return null;
     }
 
@@ -178,36 +229,40 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
         final Thread t = Thread.currentThread();
         final ClassLoader cl = t.getContextClassLoader();
         t.setContextClassLoader(Thread.currentThread().getContextClassLoader());
+        processor = getSession().getChannelProcessor();
+        generation = processor.getGeneration();
 
         try {
             final WsRemoteEndpointImplServer wsRemoteEndpointServer = new WsRemoteEndpointImplServer(webSocketContainer) {
 
                 @Override
+                @SuppressWarnings("unchecked")
                 protected void write(final boolean block, final long timeout, final TimeUnit unit, final CompletionHandler<?, ?> handler, final ByteBuffer... buffers) {
+                    if (block && !getSession().getChannelProcessor().inEventLoop()) {
+                        writeAndWait(timeout, unit, handler, buffers);
+                    } else if (block) {
+                        // the caller reuses the buffers when this method returns
+                        int length = 0;
+
+                        for (final ByteBuffer buffer : buffers) {
+                            length += buffer.remaining();
+                        }
 
-                    if (block) {
-                        try {
-                            final SocketChannel channel = getSession().getChannel();
-
-                            if (channel.isOpen()) {
-                                final long length = channel.write(buffers);
-                                writeSuccessful(handler, length);
-                            } else {
-                                writeFailed(handler, new EOFException("Write channel is already closed!"));
-                            }
-                        } catch (final Exception e) {
-                            writeFailed(handler, e);
+                        final ByteBuffer frame = ByteBuffer.allocate(length);
+
+                        for (final ByteBuffer buffer : buffers) {
+                            frame.put(buffer);
                         }
-                    } else {
-                        try {
-                            out.add(new Pair<>(new HttpResponse().withBody(BufferUtil.combineBuffers(buffers)), handler));
 
-                            getSession().getChannel().keyFor(getSession().getChannelProcessor().getSelector()).interestOpsOr(SelectionKey.OP_WRITE);
-                            getSession().getChannelProcessor().getSelector().wakeup();
+                        frame.flip();
 
-                        } catch (final Exception e) {
-                            writeFailed(handler, e);
+                        if (enqueue(null, frame)) {
+                            ((CompletionHandler<Long, Void>) handler).completed((long) length, null);
+                        } else {
+                            writeFailed(handler, queueFull());
                         }
+                    } else if (!enqueue(handler, buffers)) {
+                        writeFailed(handler, queueFull());
                     }
                 }
 
@@ -215,14 +270,14 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
                 @Override
                 protected void doClose() {
                     super.doClose();
-                    getSession().close();
+                    processor.close(generation);
                 }
             };
 
             final HandshakeRequest handshakeRequest = handler.getHandshakeRequest();
-            final WsSession wsSession = new WsSession(handler.getEp(), wsRemoteEndpointServer, webSocketContainer, handshakeRequest.getRequestURI(), handshakeRequest.getParameterMap(), handshakeRequest.getQueryString(), handshakeRequest.getUserPrincipal(), getSession().getId(), handler.getNegotiatedExtensions(), handler.getSubProtocol(), handler.getPathParameters(), handler.isSecure(),
+            wsSession = new WsSession(handler.getEp(), wsRemoteEndpointServer, webSocketContainer, handshakeRequest.getRequestURI(), handshakeRequest.getParameterMap(), handshakeRequest.getQueryString(), handshakeRequest.getUserPrincipal(), getSession().getId(), handler.getNegotiatedExtensions(), handler.getSubProtocol(), handler.getPathParameters(), handler.isSecure(),
                     handler.getServerEndpointConfig());
-            final WsFrameServer wsFrame = new WsFrameServer(wsSession, handler.getTransformation(), t.getContextClassLoader());
+            wsFrame = new WsFrameServer(wsSession, handler.getTransformation(), t.getContextClassLoader());
             // WsFrame adds the necessary final transformations. Copy the
             // completed transformation chain to the remote end point.
             wsRemoteEndpointServer.setTransformation(wsFrame.getTransformation());
@@ -237,6 +292,112 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
     }
 
 
+    /**
+     * Queues the frame and registers the connection for writing on the event-loop.
+     * 
+     * @param handler the {@link CompletionHandler} to notify when the frame has been written
+     * @param buffers the buffers of the frame
+     * @return false if the frame has not been queued because the queue is full
+     */
+    private boolean enqueue(final CompletionHandler<?, ?> handler, final ByteBuffer... buffers) {
+        if (!frames.add(handler, buffers)) {
+            return false;
+        }
+
+        if (processor.inEventLoop()) {
+            armWrite();
+            return true;
+        }
+
+        try {
+            processor.execute(this::armWrite);
+        } catch (final RejectedExecutionException e) {
+            frames.fail(new EOFException("Connection has been closed!"));
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Registers the connection for writing the queued frames. Must be called on the event-loop
+     * thread of the connection.
+     */
+    private void armWrite() {
+        if (processor.getGeneration() == generation && !processor.isClosed()) {
+            try {
+                final SelectionKey key = processor.getChannel().keyFor(processor.getSelector());
+
+                if (key != null && key.isValid()) {
+                    key.interestOpsOr(SelectionKey.OP_WRITE);
+                    return;
+                }
+            } catch (final CancelledKeyException e) {
+            }
+        }
+
+        // the connection has been closed meanwhile
+        frames.fail(new EOFException("Connection has been closed!"));
+    }
+
+
+    /**
+     * Creates the exception for a frame which has been rejected because the outbound queue is full.
+     * 
+     * @return the {@link IOException}
+     */
+    private IOException queueFull() {
+        return new IOException("Outbound websocket queue exceeds " + maxQueuedBytes + " bytes!");
+    }
+
+
+    /**
+     * Queues the frame and waits until the event-loop has written it or the timeout has expired.
+     * As a partially written frame cannot be recovered the connection is closed on its event-loop
+     * on timeout.
+     * 
+     * @param timeout the timeout
+     * @param unit the {@link TimeUnit} of the timeout
+     * @param handler the {@link CompletionHandler} to notify
+     * @param buffers the buffers of the frame
+     */
+    @SuppressWarnings("unchecked")
+    private void writeAndWait(final long timeout, final TimeUnit unit, final CompletionHandler<?, ?> handler, final ByteBuffer... buffers) {
+        final CompletableFuture<Long> written = new CompletableFuture<>();
+
+        final boolean queued = enqueue(new CompletionHandler<Long, Void>() {
+            @Override
+            public void completed(final Long length, final Void attachment) {
+                written.complete(length);
+            }
+
+
+            @Override
+            public void failed(final Throwable t, final Void attachment) {
+                written.completeExceptionally(t);
+            }
+        }, buffers);
+
+        if (!queued) {
+            writeFailed(handler, queueFull());
+            return;
+        }
+
+        try {
+            final long length = timeout > 0 ? written.get(timeout, unit) : written.get();
+            ((CompletionHandler<Long, Void>) handler).completed(length, null);
+        } catch (final TimeoutException e) {
+            writeFailed(handler, new SocketTimeoutException());
+            processor.close(generation);
+        } catch (final ExecutionException e) {
+            writeFailed(handler, e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeFailed(handler, e);
+        }
+    }
+
+
     /**
      * Creates a {@link Map} of the request query parameters.
      * 
@@ -329,7 +490,8 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
         if (handshakeDone.get() && !(getSession().getChannelProcessor().getChannelEncoder() instanceof WebSocketEncoder)) {
             final WebSocketEncoder encoder = CDI.current().select(WebSocketEncoder.class).get();
             getSession().getChannelProcessor().setChannelEncoder(encoder);
-            getSession().getChannelProcessor().getChannel().keyFor(getSession().getChannelProcessor().getSelector()).interestOps(SelectionKey.OP_READ);
+            // keep writing the frames which have been sent while the handshake was written, e.g. in onOpen
+            getSession().getChannelProcessor().getChannel().keyFor(getSession().getChannelProcessor().getSelector()).interestOps(SelectionKey.OP_READ | (frames.isEmpty() ? 0 : SelectionKey.OP_WRITE));
         }
 
         if (handler != null) {
@@ -370,4 +532,17 @@ public class WebSocketIOHandler extends AbstractHttpIOHandler {
     public void handleClosedInput() throws IOException {
     }
 
+
+    @Override
+    public void onSessionClose(final IServerSession session) {
+        frames.fail(new EOFException("Connection has been closed!"));
+        super.onSessionClose(session);
+    }
+
+
+    @Override
+    protected boolean supportsKeepAlive() {
+        return false;
+    }
+
 }
@@ -15,6 +15,7 @@ import javax.websocket.server.ServerEndpoint;
 import javax.websocket.server.ServerEndpointConfig;
 
 import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import com.airepublic.http.common.pathmatcher.MappingResult;
 import com.airepublic.logging.java.LogLevel;
@@ -30,12 +31,20 @@ import com.airepublic.tobi.plugin.http.websocket.server.WsSci;
 import com.airepublic.tobi.plugin.http.websocket.server.WsServerContainer;
 
 /**
- * The {@link IServicePlugin} implementation for websocket.
+ * The {@link IServicePlugin} implementation for websocket. The idle timeouts, keep-alive pings and
+ * write timeouts of the sessions are scheduled on the shared timer of the server. The plugin can be
+ * configured with following properties using the microprofile configuration:
+ * <ul>
+ * <li><code>websocket.ping.interval</code> - the time in milliseconds after which a ping is sent to
+ * a session from which no frame has been received, the session is closed if it does not answer
+ * within the same time (default 0 which disables keep-alive pings)</li>
+ * </ul>
  * 
  * @author Torsten Oltmanns
  *
  */
 public class WebSocketPlugin implements IServicePlugin {
+    public final static String PING_INTERVAL = "websocket.ping.interval";
     @Inject
     @LoggerConfig(level = LogLevel.INFO)
     private Logger logger;
@@ -44,6 +53,9 @@ public class WebSocketPlugin implements IServicePlugin {
     private Config config;
     @Inject
     private IServerContext serverContext;
+    @Inject
+    @ConfigProperty(name = PING_INTERVAL, defaultValue = "0")
+    private long pingInterval;
     private IServerModule module;
 
 
@@ -54,6 +66,8 @@ public class WebSocketPlugin implements IServicePlugin {
         try {
             final Set<Class<?>> endpointClasses = findWebSocketClasses();
             webSocketContainer = WsSci.onStartup(endpointClasses);
+            webSocketContainer.setTimer(serverContext.getTimer());
+            webSocketContainer.setDefaultPingInterval(pingInterval);
             serverContext.setAttribute("websocket.container", webSocketContainer);
         } catch (final IOException e) {
             throw new IllegalStateException("WebSocketContainer cound not be initialized!", e);
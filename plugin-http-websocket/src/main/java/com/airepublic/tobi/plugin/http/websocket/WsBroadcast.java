@@ -0,0 +1,171 @@
+package com.airepublic.tobi.plugin.http.websocket;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+
+/**
+ * The delivery statistics of a broadcast of a {@link WsPreparedMessage}. The counters are updated
+ * while the message is written to the sessions and {@link #getCompletion()} completes once the
+ * message has been delivered to or failed for every recipient.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class WsBroadcast {
+    private final WsPreparedMessage message;
+    private final AtomicInteger recipients = new AtomicInteger();
+    private final AtomicInteger shared = new AtomicInteger();
+    private final AtomicInteger delivered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    // starts with one to not complete before all recipients have been added
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final CompletableFuture<WsBroadcast> completion = new CompletableFuture<>();
+
+
+    /**
+     * Constructor.
+     *
+     * @param message the broadcasted {@link WsPreparedMessage}
+     */
+    public WsBroadcast(final WsPreparedMessage message) {
+        this.message = message;
+    }
+
+
+    /**
+     * Sends the message to the session.
+     *
+     * @param wsSession the {@link WsSession}
+     */
+    public void send(final WsSession wsSession) {
+        recipients.incrementAndGet();
+        pending.incrementAndGet();
+        final RecipientSendHandler handler = new RecipientSendHandler();
+
+        try {
+            if (wsSession.sendPrepared(message, handler)) {
+                shared.incrementAndGet();
+            }
+        } catch (final RuntimeException e) {
+            // e.g. the session is closed or is sending a partial message
+            handler.onResult(new SendResult(e));
+        }
+    }
+
+
+    /**
+     * Marks that all recipients have been added.
+     *
+     * @return this {@link WsBroadcast}
+     */
+    public WsBroadcast sent() {
+        done();
+        return this;
+    }
+
+
+    /**
+     * Counts the result of a recipient.
+     *
+     * @param ok whether the message has been delivered
+     */
+    private void onResult(final boolean ok) {
+        if (ok) {
+            delivered.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+
+        done();
+    }
+
+
+    /**
+     * Completes the broadcast when no recipient is pending anymore.
+     */
+    private void done() {
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(this);
+        }
+    }
+
+
+    /**
+     * Gets the number of sessions the message has been sent to.
+     *
+     * @return the number of recipients
+     */
+    public int getRecipients() {
+        return recipients.get();
+    }
+
+
+    /**
+     * Gets the number of recipients which were sent the shared frame. The others had to encode the
+     * message themselves, e.g. because of negotiated extensions.
+     *
+     * @return the number of recipients sharing the frame
+     */
+    public int getShared() {
+        return shared.get();
+    }
+
+
+    /**
+     * Gets the number of recipients the message has been delivered to.
+     *
+     * @return the number of successful deliveries
+     */
+    public int getDelivered() {
+        return delivered.get();
+    }
+
+
+    /**
+     * Gets the number of recipients the message could not be delivered to.
+     *
+     * @return the number of failed deliveries
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+
+    /**
+     * Gets the size of the shared frame in bytes.
+     *
+     * @return the frame size
+     */
+    public int getFrameSize() {
+        return message.getFrameSize();
+    }
+
+
+    /**
+     * Gets the {@link CompletableFuture} which completes once all recipients have been served.
+     *
+     * @return the completion
+     */
+    public CompletableFuture<WsBroadcast> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Counts the {@link SendResult} of a recipient.
+     */
+    private class RecipientSendHandler implements SendHandler {
+        private final AtomicInteger calls = new AtomicInteger();
+
+
+        @Override
+        public void onResult(final SendResult result) {
+            // count each recipient once even if the result is reported again on failure
+            if (calls.getAndIncrement() == 0) {
+                WsBroadcast.this.onResult(result.isOK());
+            }
+        }
+    }
+}
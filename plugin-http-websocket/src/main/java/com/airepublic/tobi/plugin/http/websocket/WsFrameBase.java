@@ -48,8 +48,14 @@ public abstract class WsFrameBase {
 
     // Connection level attributes
     protected final WsSession wsSession;
-    protected final ByteBuffer inputBuffer;
+    // Grows beyond its default size if data is left unprocessed while suspended
+    protected ByteBuffer inputBuffer;
+    // The buffer the frames are parsed from, either the input buffer or the
+    // read buffer while it is processed without copying
+    private ByteBuffer input;
     private final Transformation transformation;
+    // No extension transforms the payload
+    private final boolean terminal;
 
     // Attributes for control messages
     // Control messages can appear in the middle of other messages so need
@@ -63,6 +69,8 @@ public abstract class WsFrameBase {
     private boolean continuationExpected = false;
     private boolean textMessage = false;
     private ByteBuffer messageBufferBinary;
+    // Receives the payload of a single frame binary message
+    private ByteBuffer singleFrameBuffer = null;
     private CharBuffer messageBufferText;
     // Cache the message handler in force when the message starts so it is used
     // consistently for the entire message
@@ -89,6 +97,7 @@ public abstract class WsFrameBase {
     public WsFrameBase(final WsSession wsSession, final Transformation transformation) {
         inputBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
         inputBuffer.position(0).limit(0);
+        input = inputBuffer;
         messageBufferBinary = ByteBuffer.allocate(wsSession.getMaxBinaryMessageBufferSize());
         messageBufferText = CharBuffer.allocate(wsSession.getMaxTextMessageBufferSize());
         wsSession.setWsFrame(this);
@@ -100,8 +109,10 @@ public abstract class WsFrameBase {
             finalTransformation = new NoopTransformation();
         }
         if (transformation == null) {
+            terminal = true;
             this.transformation = finalTransformation;
         } else {
+            terminal = false;
             transformation.setNext(finalTransformation);
             this.transformation = transformation;
         }
@@ -110,7 +121,7 @@ public abstract class WsFrameBase {
 
     protected void processInputBuffer() throws IOException {
         while (!isSuspended()) {
-            wsSession.updateLastActive();
+            wsSession.updateLastReceived();
 
             if (state == State.NEW_FRAME) {
                 if (!processInitialHeader()) {
@@ -138,15 +149,67 @@ public abstract class WsFrameBase {
     }
 
 
+    /**
+     * Processes the frames directly from the read buffer without copying them to the input buffer
+     * first. Must only be called while the input buffer is empty. The bytes of an incomplete frame
+     * remaining in the read buffer are moved to the input buffer to be completed by the next read.
+     *
+     * @param buffer the read buffer
+     * @throws IOException if the frames could not be processed
+     */
+    protected void processInputBuffer(final ByteBuffer buffer) throws IOException {
+        input = buffer;
+
+        try {
+            processInputBuffer();
+        } finally {
+            input = inputBuffer;
+        }
+
+        // Unless suspended this is at most the header of the next frame
+        stash(buffer);
+    }
+
+
+    /**
+     * Appends the remaining bytes of the read buffer to the unprocessed bytes of the input buffer,
+     * so that they are processed by the next read. If processing has been suspended this may be
+     * more than the input buffer can hold, in which case it is enlarged until the next frame starts
+     * with an empty input buffer.
+     *
+     * @param buffer the read buffer
+     */
+    protected void stash(final ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+
+        if (inputBuffer.remaining() + buffer.remaining() > inputBuffer.capacity()) {
+            final ByteBuffer enlarged = ByteBuffer.allocate(inputBuffer.remaining() + buffer.remaining());
+            enlarged.put(inputBuffer);
+            enlarged.flip();
+            inputBuffer = enlarged;
+            input = inputBuffer;
+        } else if (inputBuffer.limit() + buffer.remaining() > inputBuffer.capacity()) {
+            makeRoom();
+        }
+
+        final int position = inputBuffer.position();
+        inputBuffer.position(inputBuffer.limit()).limit(inputBuffer.limit() + buffer.remaining());
+        inputBuffer.put(buffer);
+        inputBuffer.position(position);
+    }
+
+
     /**
      * @return <code>true</code> if sufficient data was present to process all of the initial header
      */
     private boolean processInitialHeader() throws IOException {
         // Need at least two bytes of data to do this
-        if (inputBuffer.remaining() < 2) {
+        if (input.remaining() < 2) {
             return false;
         }
-        int b = inputBuffer.get();
+        int b = input.get();
         fin = (b & 0x80) != 0;
         rsv = (b & 0x70) >>> 4;
         opCode = (byte) (b & 0x0F);
@@ -210,7 +273,7 @@ public abstract class WsFrameBase {
             }
             continuationExpected = !fin;
         }
-        b = inputBuffer.get();
+        b = input.get();
         // Client data must be masked
         if ((b & 0x80) == 0 && isMasked()) {
             throw new WsIOException(new CloseReason(
@@ -251,18 +314,20 @@ public abstract class WsFrameBase {
         } else if (payloadLength == 127) {
             headerLength += 8;
         }
-        if (inputBuffer.remaining() < headerLength) {
+        if (input.remaining() < headerLength) {
             return false;
         }
         // Calculate new payload length if necessary
+        // Read with the buffer methods as the read buffer may be direct
         if (payloadLength == 126) {
-            payloadLength = byteArrayToLong(inputBuffer.array(),
-                    inputBuffer.arrayOffset() + inputBuffer.position(), 2);
-            inputBuffer.position(inputBuffer.position() + 2);
+            payloadLength = input.getShort() & 0xFFFF;
         } else if (payloadLength == 127) {
-            payloadLength = byteArrayToLong(inputBuffer.array(),
-                    inputBuffer.arrayOffset() + inputBuffer.position(), 8);
-            inputBuffer.position(inputBuffer.position() + 8);
+            payloadLength = input.getLong();
+            if (payloadLength < 0) {
+                throw new WsIOException(new CloseReason(
+                        CloseCodes.PROTOCOL_ERROR,
+                        sm.getString("wsFrame.payloadMsbInvalid")));
+            }
         }
         if (Util.isControl(opCode)) {
             if (payloadLength > 125) {
@@ -277,7 +342,7 @@ public abstract class WsFrameBase {
             }
         }
         if (isMasked()) {
-            inputBuffer.get(mask, 0, 4);
+            input.get(mask, 0, 4);
         }
         state = State.DATA;
         return true;
@@ -495,6 +560,11 @@ public abstract class WsFrameBase {
 
 
     private boolean processDataBinary() throws IOException {
+        if (terminal && opCode == Constants.OPCODE_BINARY && !continuationExpected &&
+                payloadLength <= messageBufferBinary.capacity()) {
+            return processDataSingleFrameBinary();
+        }
+
         // Copy the available data to the buffer
         TransformationResult tr = transformation.getMoreData(opCode, fin, rsv, messageBufferBinary);
         while (!TransformationResult.END_OF_FRAME.equals(tr)) {
@@ -547,6 +617,48 @@ public abstract class WsFrameBase {
     }
 
 
+    /*
+     * A message consisting of a single frame does not need to be aggregated.
+     * The payload is unmasked into a buffer of its size which is passed to
+     * the message handler as is or, if enabled, unmasked in place and passed
+     * as a view of the read buffer.
+     */
+    private boolean processDataSingleFrameBinary() throws IOException {
+        if (singleFrameBuffer == null) {
+            if (Constants.READ_ZERO_COPY && payloadWritten == 0 && input.remaining() >= payloadLength) {
+                final int start = input.position();
+                final int length = (int) payloadLength;
+
+                if (isMasked()) {
+                    Util.unmask(input, start, length, mask, 0);
+                }
+
+                final ByteBuffer msg = input.slice();
+                msg.limit(length);
+                input.position(start + length);
+                payloadWritten = payloadLength;
+                sendMessageBinary(msg, true);
+                newMessage();
+                return true;
+            }
+
+            singleFrameBuffer = ByteBuffer.allocate((int) payloadLength);
+        }
+
+        if (TransformationResult.UNDERFLOW.equals(transformation.getMoreData(opCode, fin, rsv, singleFrameBuffer))) {
+            return false;
+        }
+
+        // The buffer has the size of the payload so the frame is complete
+        final ByteBuffer msg = singleFrameBuffer;
+        singleFrameBuffer = null;
+        msg.flip();
+        sendMessageBinary(msg, true);
+        newMessage();
+        return true;
+    }
+
+
     private void handleThrowableOnSend(final Throwable t) throws WsIOException {
         ExceptionUtils.handleThrowable(t);
         wsSession.getLocal().onError(wsSession, t);
@@ -579,6 +691,7 @@ public abstract class WsFrameBase {
 
 
     private void newMessage() {
+        singleFrameBuffer = null;
         messageBufferBinary.clear();
         messageBufferText.clear();
         utf8DecoderMessage.reset();
@@ -589,7 +702,18 @@ public abstract class WsFrameBase {
 
     private void newFrame() {
         if (inputBuffer.remaining() == 0) {
-            inputBuffer.position(0).limit(0);
+            if (inputBuffer.capacity() > Constants.DEFAULT_BUFFER_SIZE) {
+                // Release the input buffer which has been enlarged while suspended
+                final boolean usingInputBuffer = input == inputBuffer;
+                inputBuffer = ByteBuffer.allocate(Constants.DEFAULT_BUFFER_SIZE);
+                inputBuffer.position(0).limit(0);
+
+                if (usingInputBuffer) {
+                    input = inputBuffer;
+                }
+            } else {
+                inputBuffer.position(0).limit(0);
+            }
         }
 
         maskIndex = 0;
@@ -606,7 +730,7 @@ public abstract class WsFrameBase {
     private void checkRoomHeaders() {
         // Is the start of the current frame too near the end of the input
         // buffer?
-        if (inputBuffer.capacity() - inputBuffer.position() < 131) {
+        if (input == inputBuffer && inputBuffer.capacity() - inputBuffer.position() < 131) {
             // Limit based on a control frame with a full payload
             makeRoom();
         }
@@ -614,7 +738,7 @@ public abstract class WsFrameBase {
 
 
     private void checkRoomPayload() {
-        if (inputBuffer.capacity() - inputBuffer.position() - payloadLength + payloadWritten < 0) {
+        if (input == inputBuffer && inputBuffer.capacity() - inputBuffer.position() - payloadLength + payloadWritten < 0) {
             makeRoom();
         }
     }
@@ -639,8 +763,8 @@ public abstract class WsFrameBase {
 
 
     private boolean swallowInput() {
-        final long toSkip = Math.min(payloadLength - payloadWritten, inputBuffer.remaining());
-        inputBuffer.position(inputBuffer.position() + (int) toSkip);
+        final long toSkip = Math.min(payloadLength - payloadWritten, input.remaining());
+        input.position(input.position() + (int) toSkip);
         payloadWritten += toSkip;
         if (payloadWritten == payloadLength) {
             if (continuationExpected) {
@@ -907,18 +1031,18 @@ public abstract class WsFrameBase {
             // opCode is ignored as the transformation is the same for all
             // opCodes
             // rsv is ignored as it known to be zero at this point
-            long toWrite = Math.min(payloadLength - payloadWritten, inputBuffer.remaining());
+            long toWrite = Math.min(payloadLength - payloadWritten, input.remaining());
             toWrite = Math.min(toWrite, dest.remaining());
 
-            final int orgLimit = inputBuffer.limit();
-            inputBuffer.limit(inputBuffer.position() + (int) toWrite);
-            dest.put(inputBuffer);
-            inputBuffer.limit(orgLimit);
+            final int orgLimit = input.limit();
+            input.limit(input.position() + (int) toWrite);
+            dest.put(input);
+            input.limit(orgLimit);
             payloadWritten += toWrite;
 
             if (payloadWritten == payloadLength) {
                 return TransformationResult.END_OF_FRAME;
-            } else if (inputBuffer.remaining() == 0) {
+            } else if (input.remaining() == 0) {
                 return TransformationResult.UNDERFLOW;
             } else {
                 // !dest.hasRemaining()
@@ -947,19 +1071,22 @@ public abstract class WsFrameBase {
             // opCode is ignored as the transformation is the same for all
             // opCodes
             // rsv is ignored as it known to be zero at this point
-            while (payloadWritten < payloadLength && inputBuffer.remaining() > 0 &&
-                    dest.hasRemaining()) {
-                final byte b = (byte) ((inputBuffer.get() ^ mask[maskIndex]) & 0xFF);
-                maskIndex++;
-                if (maskIndex == 4) {
-                    maskIndex = 0;
-                }
-                payloadWritten++;
-                dest.put(b);
-            }
+            // Unmask in place and copy the unmasked bytes in bulk
+            long toWrite = Math.min(payloadLength - payloadWritten, input.remaining());
+            toWrite = Math.min(toWrite, dest.remaining());
+
+            final int start = input.position();
+            maskIndex = Util.unmask(input, start, (int) toWrite, mask, maskIndex);
+
+            final int orgLimit = input.limit();
+            input.limit(start + (int) toWrite);
+            dest.put(input);
+            input.limit(orgLimit);
+            payloadWritten += toWrite;
+
             if (payloadWritten == payloadLength) {
                 return TransformationResult.END_OF_FRAME;
-            } else if (inputBuffer.remaining() == 0) {
+            } else if (input.remaining() == 0) {
                 return TransformationResult.UNDERFLOW;
             } else {
                 // !dest.hasRemaining()
@@ -0,0 +1,255 @@
+package com.airepublic.tobi.plugin.http.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.airepublic.tobi.core.spi.IResponse;
+import com.airepublic.tobi.core.spi.Pair;
+
+/**
+ * The outbound frames of a websocket connection which have not been written yet. The header and
+ * payload buffers of a frame are kept separate and the queued frames are drained in batches up to
+ * a byte budget which are written with a single gathering write. Once a batch has been written the
+ * {@link CompletionHandler} of each frame is notified with the length of the frame.
+ * <p>
+ * The number of queued bytes is limited by a watermark. A frame exceeding it is rejected unless
+ * the queue is empty so that a single large frame can always be sent.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class WsFrameQueue {
+    private final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+    private final int maxBatchBytes;
+    private final long maxQueuedBytes;
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+
+    /**
+     * Constructor.
+     *
+     * @param maxBatchBytes the number of bytes up to which queued frames are written together
+     * @param maxQueuedBytes the maximum number of queued bytes
+     */
+    public WsFrameQueue(final int maxBatchBytes, final long maxQueuedBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+
+    /**
+     * Queues the buffers of a frame if the watermark is not exceeded.
+     *
+     * @param handler the {@link CompletionHandler} to notify when the frame has been written
+     * @param buffers the buffers of the frame
+     * @return true if the frame has been queued, false if the watermark would be exceeded
+     */
+    public boolean add(final CompletionHandler<?, ?> handler, final ByteBuffer... buffers) {
+        long length = 0L;
+
+        for (final ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+
+        final long queued = queuedBytes.addAndGet(length);
+
+        if (queued > maxQueuedBytes && queued != length) {
+            queuedBytes.addAndGet(-length);
+            return false;
+        }
+
+        frames.add(new Frame(handler, buffers, length));
+
+        return true;
+    }
+
+
+    /**
+     * Gets the number of bytes queued but not yet handed over for writing.
+     *
+     * @return the number of queued bytes
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+
+    /**
+     * Checks whether no frame is queued.
+     *
+     * @return true if no frame is queued
+     */
+    public boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+
+    /**
+     * Drains the next batch of frames. The batch contains at least one frame and further frames
+     * as long as the byte budget is not exceeded.
+     *
+     * @return the batch as response and its {@link CompletionHandler} or null if no frame is queued
+     */
+    public Pair<IResponse, CompletionHandler<?, ?>> poll() {
+        Frame frame = frames.poll();
+
+        if (frame == null) {
+            return null;
+        }
+
+        final List<Frame> batch = new ArrayList<>();
+        long length = 0L;
+        int count = 0;
+
+        do {
+            batch.add(frame);
+            queuedBytes.addAndGet(-frame.length);
+            length += frame.length;
+            count += frame.buffers.length;
+            final Frame next = frames.peek();
+
+            if (next == null || length + next.length > maxBatchBytes) {
+                break;
+            }
+
+            frame = frames.poll();
+        } while (frame != null);
+
+        final ByteBuffer[] buffers = new ByteBuffer[count];
+        int index = 0;
+
+        for (final Frame f : batch) {
+            System.arraycopy(f.buffers, 0, buffers, index, f.buffers.length);
+            index += f.buffers.length;
+        }
+
+        final FrameBatch response = new FrameBatch(batch, buffers);
+
+        return new Pair<>(response, response);
+    }
+
+
+    /**
+     * Fails all queued frames, e.g. when the connection has been closed.
+     *
+     * @param t the cause
+     */
+    public void fail(final Throwable t) {
+        Frame frame;
+
+        while ((frame = frames.poll()) != null) {
+            queuedBytes.addAndGet(-frame.length);
+            frame.failed(t);
+        }
+    }
+
+    /**
+     * A queued frame.
+     */
+    private static class Frame {
+        private final CompletionHandler<?, ?> handler;
+        private final ByteBuffer[] buffers;
+        private final long length;
+
+
+        /**
+         * Constructor.
+         *
+         * @param handler the {@link CompletionHandler}
+         * @param buffers the buffers of the frame
+         * @param length the length of the frame
+         */
+        Frame(final CompletionHandler<?, ?> handler, final ByteBuffer[] buffers, final long length) {
+            this.handler = handler;
+            this.buffers = buffers;
+            this.length = length;
+        }
+
+
+        @SuppressWarnings("unchecked")
+        void completed() {
+            if (handler != null) {
+                ((CompletionHandler<Long, Void>) handler).completed(length, null);
+            }
+        }
+
+
+        @SuppressWarnings("unchecked")
+        void failed(final Throwable t) {
+            if (handler != null) {
+                ((CompletionHandler<Long, Void>) handler).failed(t, null);
+            }
+        }
+    }
+
+    /**
+     * A batch of frames written with a single gathering write which notifies the
+     * {@link CompletionHandler} of each frame once the batch has been written.
+     */
+    private static class FrameBatch implements IResponse, CompletionHandler<Long, Void> {
+        private final List<Frame> frames;
+        private final ByteBuffer[] buffers;
+
+
+        /**
+         * Constructor.
+         *
+         * @param frames the frames
+         * @param buffers the buffers of all frames
+         */
+        FrameBatch(final List<Frame> frames, final ByteBuffer[] buffers) {
+            this.frames = frames;
+            this.buffers = buffers;
+        }
+
+
+        @Override
+        public <T> T getAttribute(final String key) {
+            return null;
+        }
+
+
+        @Override
+        public <T> void setAttribute(final String key, final T value) {
+        }
+
+
+        @Override
+        public ByteBuffer getAttributesBuffer() {
+            return null;
+        }
+
+
+        @Override
+        public ByteBuffer getPayload() {
+            return null;
+        }
+
+
+        @Override
+        public ByteBuffer[] getBuffers() {
+            return buffers;
+        }
+
+
+        @Override
+        public void completed(final Long length, final Void attachment) {
+            for (final Frame frame : frames) {
+                frame.completed();
+            }
+        }
+
+
+        @Override
+        public void failed(final Throwable t, final Void attachment) {
+            for (final Frame frame : frames) {
+                frame.failed(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.airepublic.tobi.plugin.http.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A complete text or binary message which is encoded and framed once to be sent to many sessions.
+ * The unmasked frame is shared read-only by all sessions which send it without transformation,
+ * other sessions (e.g. with negotiated extensions) send the payload through their usual send path.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class WsPreparedMessage {
+    private final boolean text;
+    private final String textPayload;
+    private final ByteBuffer payload;
+    private final ByteBuffer frame;
+
+
+    /**
+     * Constructor.
+     *
+     * @param text whether this is a text message
+     * @param textPayload the text or null for binary messages
+     * @param payload the encoded payload
+     */
+    private WsPreparedMessage(final boolean text, final String textPayload, final ByteBuffer payload) {
+        this.text = text;
+        this.textPayload = textPayload;
+        this.payload = payload.asReadOnlyBuffer();
+
+        final ByteBuffer header = ByteBuffer.allocate(14);
+        WsRemoteEndpointImplBase.writeHeader(header, true, 0, text ? Constants.OPCODE_TEXT : Constants.OPCODE_BINARY, false, payload, null, true);
+        header.flip();
+
+        final ByteBuffer frame = ByteBuffer.allocate(header.remaining() + payload.remaining());
+        frame.put(header).put(payload.duplicate()).flip();
+        this.frame = frame.asReadOnlyBuffer();
+    }
+
+
+    /**
+     * Creates a prepared text message.
+     *
+     * @param text the text
+     * @return the {@link WsPreparedMessage}
+     */
+    public static WsPreparedMessage text(final String text) {
+        return new WsPreparedMessage(true, text, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    /**
+     * Creates a prepared binary message.
+     *
+     * @param data the binary data
+     * @return the {@link WsPreparedMessage}
+     */
+    public static WsPreparedMessage binary(final ByteBuffer data) {
+        final ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data.duplicate()).flip();
+
+        return new WsPreparedMessage(false, null, copy);
+    }
+
+
+    /**
+     * Checks whether this is a text message.
+     *
+     * @return true for text messages, false for binary messages
+     */
+    public boolean isText() {
+        return text;
+    }
+
+
+    /**
+     * Gets the text of a text message.
+     *
+     * @return the text or null for binary messages
+     */
+    public String getText() {
+        return textPayload;
+    }
+
+
+    /**
+     * Gets a read-only view of the encoded payload.
+     *
+     * @return the payload
+     */
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+
+    /**
+     * Gets a read-only view of the complete frame including the header.
+     *
+     * @return the frame
+     */
+    public ByteBuffer getFrame() {
+        return frame.duplicate();
+    }
+
+
+    /**
+     * Gets the size of the frame in bytes.
+     *
+     * @return the frame size
+     */
+    public int getFrameSize() {
+        return frame.remaining();
+    }
+}
@@ -26,6 +26,7 @@ import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.Future;
@@ -352,6 +353,51 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
 
         final MessagePart mp = messageParts.remove(0);
 
+        queueMessagePart(mp, messageParts);
+    }
+
+
+    /**
+     * Sends a complete message which has already been framed and is shared with other sessions.
+     * The frame bypasses the transformation and is written as is, so this must only be used if
+     * {@link #isPreparedSupported()} returns true.
+     *
+     * @param message the {@link WsPreparedMessage}
+     * @param handler the {@link SendHandler}
+     */
+    void sendPreparedMessage(final WsPreparedMessage message, final SendHandler handler) {
+        final StateUpdateSendHandler sush = new StateUpdateSendHandler(handler, stateMachine);
+
+        if (message.isText()) {
+            stateMachine.textStart();
+        } else {
+            stateMachine.binaryStart();
+        }
+
+        wsSession.updateLastActive();
+
+        queueMessagePart(new MessagePart(true, 0, Constants.INTERNAL_OPCODE_PREPARED, message.getFrame(), intermediateMessageHandler, new EndMessageHandler(this, sush), -1), Collections.emptyList());
+    }
+
+
+    /**
+     * Checks whether a shared unmasked frame can be written as is, i.e. the frames are not masked
+     * and not batched.
+     *
+     * @return true if prepared messages can be sent
+     */
+    boolean isPreparedSupported() {
+        return !isMasked() && !getBatchingAllowed();
+    }
+
+
+    /**
+     * Writes the message part or queues it if another message part is in progress.
+     *
+     * @param mp the {@link MessagePart} to write
+     * @param messageParts further message parts to queue
+     */
+    private void queueMessagePart(final MessagePart mp, final List<MessagePart> messageParts) {
         boolean doWrite = false;
         synchronized (messagePartLock) {
             if (Constants.OPCODE_CLOSE == mp.getOpCode() && getBatchingAllowed()) {
@@ -437,6 +483,14 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
             return;
         }
 
+        if (Constants.INTERNAL_OPCODE_PREPARED == mp.getOpCode()) {
+            // a complete unfragmented message which is already framed
+            nextFragmented = fragmented;
+            nextText = text;
+            doWrite(mp.getEndHandler(), mp.getBlockingWriteTimeoutExpiry(), mp.getPayload());
+            return;
+        }
+
         // Control messages may be sent in the middle of fragmented message
         // so they have no effect on the fragmented or text flags
         boolean first;
@@ -712,7 +766,7 @@ public abstract class WsRemoteEndpointImplBase implements RemoteEndpoint {
     protected abstract void doClose();
 
 
-    private static void writeHeader(final ByteBuffer headerBuffer, final boolean fin,
+    static void writeHeader(final ByteBuffer headerBuffer, final boolean fin,
             final int rsv, final byte opCode, final boolean masked, final ByteBuffer payload,
             final byte[] mask, final boolean first) {
 
@@ -28,6 +28,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,12 +46,14 @@ import javax.websocket.MessageHandler.Partial;
 import javax.websocket.MessageHandler.Whole;
 import javax.websocket.PongMessage;
 import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
 import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 import javax.websocket.server.ServerEndpointConfig;
 
 import com.airepublic.logging.java.SerializableLogger;
+import com.airepublic.tobi.core.spi.TimingWheel;
 import com.airepublic.tobi.plugin.http.websocket.util.ExceptionUtils;
 import com.airepublic.tobi.plugin.http.websocket.util.res.StringManager;
 
@@ -97,6 +101,11 @@ public class WsSession implements Session {
     private volatile int maxTextMessageBufferSize = Constants.DEFAULT_BUFFER_SIZE;
     private volatile long maxIdleTimeout = 0;
     private volatile long lastActive = System.currentTimeMillis();
+    private volatile long lastReceived = System.currentTimeMillis();
+    // The time the unanswered keep-alive ping has been sent or 0
+    private volatile long pingSent = 0;
+    private TimingWheel.Timeout keepAlive = null;
+    private final Object keepAliveLock = new Object();
     private final Map<FutureToSendHandler, FutureToSendHandler> futures = new ConcurrentHashMap<>();
 
 
@@ -343,6 +352,33 @@ public class WsSession implements Session {
     }
 
 
+    /**
+     * Sends a {@link WsPreparedMessage}. The shared frame is written if the session has no
+     * negotiated extensions and writes unmasked frames without batching, otherwise the payload is
+     * sent through the usual asynchronous send path.
+     *
+     * @param message the {@link WsPreparedMessage}
+     * @param handler the {@link SendHandler} notified about the result
+     * @return true if the shared frame has been sent
+     */
+    public boolean sendPrepared(final WsPreparedMessage message, final SendHandler handler) {
+        checkState();
+
+        if (negotiatedExtensions.isEmpty() && wsRemoteEndpoint.isPreparedSupported()) {
+            wsRemoteEndpoint.sendPreparedMessage(message, handler);
+            return true;
+        }
+
+        if (message.isText()) {
+            wsRemoteEndpoint.sendStringByCompletion(message.getText(), handler);
+        } else {
+            wsRemoteEndpoint.sendBytesByCompletion(message.getPayload(), handler);
+        }
+
+        return false;
+    }
+
+
     @Override
     public List<Extension> getNegotiatedExtensions() {
         checkState();
@@ -374,6 +410,7 @@ public class WsSession implements Session {
     public void setMaxIdleTimeout(final long timeout) {
         checkState();
         maxIdleTimeout = timeout;
+        scheduleKeepAlive();
     }
 
 
@@ -804,6 +841,120 @@ public class WsSession implements Session {
     }
 
 
+    protected void updateLastReceived() {
+        final long now = System.currentTimeMillis();
+        lastActive = now;
+        lastReceived = now;
+        // Any frame proves that the peer is alive
+        pingSent = 0;
+    }
+
+
+    /**
+     * Schedules the next check of the idle timeout and the keep-alive ping of this session on the
+     * timer of the container, replacing the previously scheduled check.
+     */
+    void scheduleKeepAlive() {
+        final long timeout = maxIdleTimeout;
+        final long pingInterval = webSocketContainer.getDefaultPingInterval();
+        long next = Long.MAX_VALUE;
+
+        if (timeout > 0) {
+            next = lastActive + timeout;
+        }
+
+        if (pingInterval > 0) {
+            final long sent = pingSent;
+            next = Math.min(next, (sent != 0 ? sent : lastReceived) + pingInterval);
+        }
+
+        synchronized (keepAliveLock) {
+            if (keepAlive != null) {
+                keepAlive.cancel();
+                keepAlive = null;
+            }
+
+            if (next != Long.MAX_VALUE && isOpen()) {
+                // The idle timeout must be exceeded, not only reached
+                final long delay = next - System.currentTimeMillis() + 1;
+                keepAlive = webSocketContainer.getTimer().schedule(this::keepAlive, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+
+    void cancelKeepAlive() {
+        synchronized (keepAliveLock) {
+            if (keepAlive != null) {
+                keepAlive.cancel();
+                keepAlive = null;
+            }
+        }
+    }
+
+
+    /*
+     * Runs on the timer thread. Closing sends the close message blocking so
+     * it is dispatched to not delay the other tasks of the timer.
+     */
+    private void keepAlive() {
+        if (!isOpen()) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final long timeout = maxIdleTimeout;
+        final long pingInterval = webSocketContainer.getDefaultPingInterval();
+
+        if (timeout > 0 && now - lastActive > timeout) {
+            ForkJoinPool.commonPool().execute(() -> {
+                checkExpiration();
+                scheduleKeepAlive();
+            });
+            return;
+        }
+
+        if (pingInterval > 0) {
+            final long sent = pingSent;
+
+            if (sent != 0 && now - sent >= pingInterval) {
+                final String msg = sm.getString("wsSession.pingTimeout", getId());
+                if (log.isLoggable(Level.FINEST)) {
+                    log.log(Level.FINEST, msg);
+                }
+                ForkJoinPool.commonPool().execute(() -> doClose(new CloseReason(CloseCodes.GOING_AWAY, msg),
+                        new CloseReason(CloseCodes.CLOSED_ABNORMALLY, msg), true));
+                return;
+            }
+
+            if (sent == 0 && now - lastReceived >= pingInterval) {
+                sendKeepAlivePing(now);
+            }
+        }
+
+        scheduleKeepAlive();
+    }
+
+
+    private void sendKeepAlivePing(final long now) {
+        pingSent = now;
+
+        try {
+            wsRemoteEndpoint.startMessage(Constants.OPCODE_PING, ByteBuffer.allocate(0), true, result -> {
+                if (!result.isOK() && log.isLoggable(Level.FINEST)) {
+                    log.log(Level.FINEST, sm.getString("wsSession.pingFail", id), result.getException());
+                }
+            });
+        } catch (final RuntimeException e) {
+            // The session is closed by the next check if the ping could not
+            // be sent
+            if (log.isLoggable(Level.FINEST)) {
+                log.log(Level.FINEST, sm.getString("wsSession.pingFail", id), e);
+            }
+        }
+    }
+
+
     protected void checkExpiration() {
         final long timeout = maxIdleTimeout;
         if (timeout < 1) {
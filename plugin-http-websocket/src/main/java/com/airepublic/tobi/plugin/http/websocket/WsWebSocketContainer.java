@@ -68,6 +68,7 @@ import javax.websocket.Session;
 import javax.websocket.WebSocketContainer;
 
 import com.airepublic.logging.java.SerializableLogger;
+import com.airepublic.tobi.core.spi.TimingWheel;
 import com.airepublic.tobi.plugin.http.websocket.pojo.PojoEndpointClient;
 import com.airepublic.tobi.plugin.http.websocket.util.buf.StringUtils;
 import com.airepublic.tobi.plugin.http.websocket.util.codec.binary.Base64;
@@ -75,7 +76,7 @@ import com.airepublic.tobi.plugin.http.websocket.util.collections.CaseInsensitiv
 import com.airepublic.tobi.plugin.http.websocket.util.res.StringManager;
 import com.airepublic.tobi.plugin.http.websocket.util.security.KeyStoreUtil;
 
-public class WsWebSocketContainer implements WebSocketContainer, BackgroundProcess {
+public class WsWebSocketContainer implements WebSocketContainer {
 
     private static final StringManager sm = StringManager.getManager(WsWebSocketContainer.class);
     private static final Random RANDOM = new Random();
@@ -93,16 +94,19 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
     // static
     // Server side uses the endpoint path as the key
     // Client side uses the client endpoint instance
-    private final Map<Object, Set<WsSession>> endpointSessionMap = new HashMap<>();
+    private final Map<Object, Set<WsSession>> endpointSessionMap = new ConcurrentHashMap<>();
     private final Map<WsSession, WsSession> sessions = new ConcurrentHashMap<>();
-    private final Object endPointSessionMapLock = new Object();
+    // Idle timeouts and keep-alive pings are scheduled on the shared timer
+    // of the server or on a timer of this container if none has been set
+    private volatile TimingWheel timer = null;
+    private boolean ownTimer = false;
+    private final Object timerLock = new Object();
 
     private long defaultAsyncTimeout = -1;
     private int maxBinaryMessageBufferSize = Constants.DEFAULT_BUFFER_SIZE;
     private int maxTextMessageBufferSize = Constants.DEFAULT_BUFFER_SIZE;
     private volatile long defaultMaxSessionIdleTimeout = 0;
-    private int backgroundProcessCount = 0;
-    private int processPeriod = Constants.DEFAULT_PROCESS_PERIOD;
+    private volatile long defaultPingInterval = 0;
 
     private InstanceManager instanceManager;
 
@@ -582,51 +586,94 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
             // The session was closed during onOpen. No need to register it.
             return;
         }
-        synchronized (endPointSessionMapLock) {
-            if (endpointSessionMap.size() == 0) {
-                BackgroundProcessManager.getInstance().register(this);
-            }
-            Set<WsSession> wsSessions = endpointSessionMap.get(key);
+        endpointSessionMap.compute(key, (k, wsSessions) -> {
             if (wsSessions == null) {
-                wsSessions = new HashSet<>();
-                endpointSessionMap.put(key, wsSessions);
+                wsSessions = ConcurrentHashMap.newKeySet();
             }
             wsSessions.add(wsSession);
+            return wsSessions;
+        });
+        if (sessions.put(wsSession, wsSession) == null) {
+            wsSession.scheduleKeepAlive();
         }
-        sessions.put(wsSession, wsSession);
     }
 
 
     protected void unregisterSession(final Object key, final WsSession wsSession) {
 
-        synchronized (endPointSessionMapLock) {
-            final Set<WsSession> wsSessions = endpointSessionMap.get(key);
-            if (wsSessions != null) {
-                wsSessions.remove(wsSession);
-                if (wsSessions.size() == 0) {
-                    endpointSessionMap.remove(key);
-                }
-            }
-            if (endpointSessionMap.size() == 0) {
-                BackgroundProcessManager.getInstance().unregister(this);
+        endpointSessionMap.computeIfPresent(key, (k, wsSessions) -> {
+            wsSessions.remove(wsSession);
+            return wsSessions.isEmpty() ? null : wsSessions;
+        });
+        if (sessions.remove(wsSession) != null) {
+            wsSession.cancelKeepAlive();
+        }
+    }
+
+
+    /**
+     * Sets the timer on which the idle timeouts, keep-alive pings and write timeouts of the
+     * sessions are scheduled, e.g. the shared timer of the server.
+     *
+     * @param timer the {@link TimingWheel}
+     */
+    public void setTimer(final TimingWheel timer) {
+        synchronized (timerLock) {
+            if (ownTimer) {
+                this.timer.close();
+                ownTimer = false;
             }
+
+            this.timer = timer;
         }
-        sessions.remove(wsSession);
     }
 
 
-    public Set<Session> getOpenSessions(final Object key) {
-        final HashSet<Session> result = new HashSet<>();
-        synchronized (endPointSessionMapLock) {
-            final Set<WsSession> sessions = endpointSessionMap.get(key);
-            if (sessions != null) {
-                result.addAll(sessions);
+    /**
+     * Gets the timer of the sessions. If no timer has been set, e.g. for clients, a timer owned by
+     * this container is created on first use and stopped by {@link #destroy()}.
+     *
+     * @return the {@link TimingWheel}
+     */
+    public TimingWheel getTimer() {
+        TimingWheel result = timer;
+        if (result == null) {
+            synchronized (timerLock) {
+                if (timer == null) {
+                    timer = new TimingWheel("WebSocket timer", 10, 512);
+                    ownTimer = true;
+                }
+                result = timer;
             }
         }
         return result;
     }
 
 
+    /**
+     * Gets a live read-only view of the sessions registered under the key without copying them.
+     *
+     * @param key the endpoint path on the server side
+     * @return the sessions
+     */
+    protected Set<WsSession> getSessions(final Object key) {
+        final Set<WsSession> sessions = endpointSessionMap.get(key);
+        if (sessions == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(sessions);
+    }
+
+
+    public Set<Session> getOpenSessions(final Object key) {
+        final Set<WsSession> sessions = endpointSessionMap.get(key);
+        if (sessions == null) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(sessions);
+    }
+
+
     private static Map<String, List<String>> createRequestHeaders(final String host, final int port,
             final ClientEndpointConfig clientEndpointConfiguration) {
 
@@ -959,6 +1006,29 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
     }
 
 
+    /**
+     * Gets the interval in milliseconds after which a ping is sent to a session from which no
+     * frame has been received. A session which does not send any frame within the same interval
+     * after the ping is closed.
+     *
+     * @return the ping interval or 0 if keep-alive pings are disabled
+     */
+    public long getDefaultPingInterval() {
+        return defaultPingInterval;
+    }
+
+
+    /**
+     * Sets the interval in milliseconds after which a ping is sent to an inactive session. Applies
+     * to sessions registered afterwards.
+     *
+     * @param interval the ping interval or 0 to disable keep-alive pings
+     */
+    public void setDefaultPingInterval(final long interval) {
+        defaultPingInterval = interval;
+    }
+
+
     @Override
     public int getDefaultMaxBinaryMessageBufferSize() {
         return maxBinaryMessageBufferSize;
@@ -1043,6 +1113,15 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
                 }
             }
         }
+
+        // Only stop the timer if this instance created it
+        synchronized (timerLock) {
+            if (ownTimer) {
+                timer.close();
+                timer = null;
+                ownTimer = false;
+            }
+        }
     }
 
 
@@ -1062,39 +1141,6 @@ public class WsWebSocketContainer implements WebSocketContainer, BackgroundProce
     }
 
 
-    // ----------------------------------------------- BackgroundProcess methods
-
-    @Override
-    public void backgroundProcess() {
-        // This method gets called once a second.
-        backgroundProcessCount++;
-        if (backgroundProcessCount >= processPeriod) {
-            backgroundProcessCount = 0;
-
-            for (final WsSession wsSession : sessions.keySet()) {
-                wsSession.checkExpiration();
-            }
-        }
-
-    }
-
-
-    @Override
-    public void setProcessPeriod(final int period) {
-        processPeriod = period;
-    }
-
-
-    /**
-     * {@inheritDoc}
-     *
-     * The default value is 10 which means session expirations are processed every 10 seconds.
-     */
-    @Override
-    public int getProcessPeriod() {
-        return processPeriod;
-    }
-
     private static class HttpResponse {
         private final int status;
         private final HandshakeResponse handshakeResponse;
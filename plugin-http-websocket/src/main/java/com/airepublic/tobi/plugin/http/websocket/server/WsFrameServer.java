@@ -16,7 +16,6 @@
  */
 package com.airepublic.tobi.plugin.http.websocket.server;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
@@ -61,25 +60,27 @@ public class WsFrameServer extends WsFrameBase {
             processInputBuffer();
         }
 
-        while (isOpen() && !isSuspended()) {
-            // Fill up the input buffer with as much data as we can
+        while (isOpen() && !isSuspended() && buffer.hasRemaining()) {
+            if (!inputBuffer.hasRemaining()) {
+                // No incomplete frame is pending so the frames are processed
+                // directly from the read buffer
+                processInputBuffer(buffer);
+                return;
+            }
+
+            // Complete the pending frame in the input buffer
             inputBuffer.mark();
             inputBuffer.position(inputBuffer.limit()).limit(inputBuffer.capacity());
 
-            // TODO block write buffer
-            int read = 0;
-
-            while (buffer.hasRemaining() && inputBuffer.position() < inputBuffer.capacity()) {
-                final byte value = buffer.get();
-                inputBuffer.put(value);
-                read++;
-            }
+            final int read = Math.min(buffer.remaining(), inputBuffer.remaining());
+            final int limit = buffer.limit();
+            buffer.limit(buffer.position() + read);
+            inputBuffer.put(buffer);
+            buffer.limit(limit);
 
             inputBuffer.limit(inputBuffer.position()).reset();
 
-            if (read < 0) {
-                throw new EOFException();
-            } else if (read == 0) {
+            if (read == 0) {
                 return;
             }
             if (log.isLoggable(Level.FINEST)) {
@@ -87,6 +88,11 @@ public class WsFrameServer extends WsFrameBase {
             }
             processInputBuffer();
         }
+
+        if (isSuspended()) {
+            // Keep the data which has not been processed until reading is resumed
+            stash(buffer);
+        }
     }
 
 
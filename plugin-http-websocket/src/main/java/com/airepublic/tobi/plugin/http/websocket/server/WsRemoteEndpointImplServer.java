@@ -66,14 +66,13 @@ public abstract class WsRemoteEndpointImplServer extends WsRemoteEndpointImplBas
             }
         } else {
             this.handler = handler;
+            timeout = getSendTimeout();
 
             if (timeout > 0) {
                 // Register with timeout thread
                 timeoutExpiry = timeout + System.currentTimeMillis();
                 wsWriteTimeout.register(this);
             }
-
-            timeout = getSendTimeout();
         }
 
         write(block, timeout, TimeUnit.MILLISECONDS, new CompletionHandler<Long, Void>() {
@@ -135,7 +134,7 @@ public abstract class WsRemoteEndpointImplServer extends WsRemoteEndpointImplBas
 
 
     /*
-     * Currently this is only called from the background thread so we could just call clearHandler()
+     * Currently this is only called from the timer thread so we could just call clearHandler()
      * with useDispatch == false but the method parameter was added in case other callers started to
      * use this method to make sure that those callers think through what the correct value of
      * useDispatch is for them.
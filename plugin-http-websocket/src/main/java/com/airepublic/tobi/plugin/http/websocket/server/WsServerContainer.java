@@ -17,7 +17,9 @@
 package com.airepublic.tobi.plugin.http.websocket.server;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -28,6 +30,7 @@ import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.DeploymentException;
 import javax.websocket.Encoder;
+import javax.websocket.Session;
 import javax.websocket.server.ServerContainer;
 import javax.websocket.server.ServerEndpoint;
 import javax.websocket.server.ServerEndpointConfig;
@@ -36,6 +39,8 @@ import javax.websocket.server.ServerEndpointConfig.Configurator;
 import com.airepublic.http.common.pathmatcher.PathMapping;
 import com.airepublic.http.common.pathmatcher.TemplatePathMatch;
 import com.airepublic.tobi.plugin.http.websocket.SimpleInstanceManager;
+import com.airepublic.tobi.plugin.http.websocket.WsBroadcast;
+import com.airepublic.tobi.plugin.http.websocket.WsPreparedMessage;
 import com.airepublic.tobi.plugin.http.websocket.WsSession;
 import com.airepublic.tobi.plugin.http.websocket.WsWebSocketContainer;
 import com.airepublic.tobi.plugin.http.websocket.pojo.PojoMethodMapping;
@@ -56,7 +61,7 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
 
     private static final CloseReason AUTHENTICATED_HTTP_SESSION_CLOSED = new CloseReason(CloseCodes.VIOLATED_POLICY, "This connection was established under an authenticated HTTP session that has ended.");
 
-    private final WsWriteTimeout wsWriteTimeout = new WsWriteTimeout();
+    private final WsWriteTimeout wsWriteTimeout = new WsWriteTimeout(this);
 
     private final Map<String, ServerEndpointConfig> configExactMatchMap = new ConcurrentHashMap<>();
     private final Map<Integer, SortedSet<TemplatePathMatch<ServerEndpointConfig>>> configTemplateMatchMap = new ConcurrentHashMap<>();
@@ -205,6 +210,65 @@ public class WsServerContainer extends WsWebSocketContainer implements ServerCon
     }
 
 
+    /**
+     * Broadcasts the text to all open sessions of the endpoint path. The text is encoded and framed
+     * once and the frame is shared by the sessions.
+     *
+     * @param path the endpoint path
+     * @param text the text message
+     * @return the {@link WsBroadcast} with the delivery statistics
+     */
+    public WsBroadcast broadcast(final String path, final String text) {
+        return broadcast(getSessions(path), WsPreparedMessage.text(text));
+    }
+
+
+    /**
+     * Broadcasts the binary data to all open sessions of the endpoint path. The data is framed once
+     * and the frame is shared by the sessions.
+     *
+     * @param path the endpoint path
+     * @param data the binary message
+     * @return the {@link WsBroadcast} with the delivery statistics
+     */
+    public WsBroadcast broadcast(final String path, final ByteBuffer data) {
+        return broadcast(getSessions(path), WsPreparedMessage.binary(data));
+    }
+
+
+    /**
+     * Broadcasts the {@link WsPreparedMessage} to all open sessions of the endpoint path.
+     *
+     * @param path the endpoint path
+     * @param message the {@link WsPreparedMessage}
+     * @return the {@link WsBroadcast} with the delivery statistics
+     */
+    public WsBroadcast broadcast(final String path, final WsPreparedMessage message) {
+        return broadcast(getSessions(path), message);
+    }
+
+
+    /**
+     * Broadcasts the {@link WsPreparedMessage} to a group of sessions, e.g. the
+     * {@link Session#getOpenSessions()} of a session.
+     *
+     * @param sessions the sessions
+     * @param message the {@link WsPreparedMessage}
+     * @return the {@link WsBroadcast} with the delivery statistics
+     */
+    public WsBroadcast broadcast(final Collection<? extends Session> sessions, final WsPreparedMessage message) {
+        final WsBroadcast broadcast = new WsBroadcast(message);
+
+        for (final Session session : sessions) {
+            if (session instanceof WsSession && session.isOpen()) {
+                broadcast.send((WsSession) session);
+            }
+        }
+
+        return broadcast.sent();
+    }
+
+
     protected WsWriteTimeout getTimeout() {
         return wsWriteTimeout;
     }
@@ -16,110 +16,51 @@
  */
 package com.airepublic.tobi.plugin.http.websocket.server;
 
-import java.util.Comparator;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
-import com.airepublic.tobi.plugin.http.websocket.BackgroundProcess;
-import com.airepublic.tobi.plugin.http.websocket.BackgroundProcessManager;
+import com.airepublic.tobi.core.spi.TimingWheel;
+import com.airepublic.tobi.plugin.http.websocket.WsWebSocketContainer;
 
 /**
- * Provides timeouts for asynchronous web socket writes. On the server side we only have access to
- * javax.servlet.ServletOutputStream and javax.servlet.ServletInputStream so there is no way to set
- * a timeout for writes to the client.
+ * Provides timeouts for asynchronous web socket writes. Each pending write schedules its timeout
+ * on the timer of the container which is cancelled when the write completes.
  */
-public class WsWriteTimeout implements BackgroundProcess {
+public class WsWriteTimeout {
 
-    private final Set<WsRemoteEndpointImplServer> endpoints = new ConcurrentSkipListSet<>(new EndpointComparator());
-    private final AtomicInteger count = new AtomicInteger(0);
-    private int backgroundProcessCount = 0;
-    private volatile int processPeriod = 1;
+    private final WsWebSocketContainer container;
+    private final Map<WsRemoteEndpointImplServer, TimingWheel.Timeout> timeouts = new ConcurrentHashMap<>();
 
 
-    @Override
-    public void backgroundProcess() {
-        // This method gets called once a second.
-        backgroundProcessCount++;
-
-        if (backgroundProcessCount >= processPeriod) {
-            backgroundProcessCount = 0;
-
-            final long now = System.currentTimeMillis();
-            for (final WsRemoteEndpointImplServer endpoint : endpoints) {
-                if (endpoint.getTimeoutExpiry() < now) {
-                    // Background thread, not the thread that triggered the
-                    // write so no need to use a dispatch
-                    endpoint.onTimeout(false);
-                } else {
-                    // Endpoints are ordered by timeout expiry so if this point
-                    // is reached there is no need to check the remaining
-                    // endpoints
-                    break;
-                }
-            }
-        }
-    }
-
-
-    @Override
-    public void setProcessPeriod(final int period) {
-        processPeriod = period;
-    }
-
-
-    /**
-     * {@inheritDoc}
-     *
-     * The default value is 1 which means asynchronous write timeouts are processed every 1 second.
-     */
-    @Override
-    public int getProcessPeriod() {
-        return processPeriod;
+    public WsWriteTimeout(final WsWebSocketContainer container) {
+        this.container = container;
     }
 
 
     public void register(final WsRemoteEndpointImplServer endpoint) {
-        final boolean result = endpoints.add(endpoint);
-        if (result) {
-            final int newCount = count.incrementAndGet();
-            if (newCount == 1) {
-                BackgroundProcessManager.getInstance().register(this);
+        final long delay = endpoint.getTimeoutExpiry() - System.currentTimeMillis();
+        final TimingWheel.Timeout timeout = container.getTimer().schedule(() -> {
+            if (timeouts.remove(endpoint) != null) {
+                // Timer thread, not the thread that triggered the write so
+                // no need to use a dispatch
+                endpoint.onTimeout(false);
             }
-        }
-    }
+        }, delay, TimeUnit.MILLISECONDS);
 
+        final TimingWheel.Timeout previous = timeouts.put(endpoint, timeout);
 
-    public void unregister(final WsRemoteEndpointImplServer endpoint) {
-        final boolean result = endpoints.remove(endpoint);
-        if (result) {
-            final int newCount = count.decrementAndGet();
-            if (newCount == 0) {
-                BackgroundProcessManager.getInstance().unregister(this);
-            }
+        if (previous != null) {
+            previous.cancel();
         }
     }
 
-    /**
-     * Note: this comparator imposes orderings that are inconsistent with equals
-     */
-    private static class EndpointComparator implements
-            Comparator<WsRemoteEndpointImplServer> {
-
-        @Override
-        public int compare(final WsRemoteEndpointImplServer o1,
-                final WsRemoteEndpointImplServer o2) {
 
-            final long t1 = o1.getTimeoutExpiry();
-            final long t2 = o2.getTimeoutExpiry();
+    public void unregister(final WsRemoteEndpointImplServer endpoint) {
+        final TimingWheel.Timeout timeout = timeouts.remove(endpoint);
 
-            if (t1 < t2) {
-                return -1;
-            } else if (t1 == t2) {
-                return 0;
-            } else {
-                return 1;
-            }
+        if (timeout != null) {
+            timeout.cancel();
         }
     }
 }
@@ -0,0 +1,298 @@
+package com.airepublic.tobi.core.spi;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether connections and requests are admitted so that the server can shed load before
+ * it runs out of threads and file descriptors. Connections are limited by the number of open
+ * connections of the server and of each {@link IServerModule} and by the rate at which a remote
+ * address connects. Requests are limited by the rate at which a remote address sends them.
+ * <p>
+ * The rates are enforced with a token bucket per remote address which allows bursts up to a
+ * configured size. Each bucket is a single value updated without locks. A bucket which has been
+ * idle long enough to be full again is equivalent to a new one, so such buckets are evicted when
+ * the number of tracked addresses exceeds its maximum. That way a flood from many addresses cannot
+ * grow the state beyond the maximum. Addresses which cannot be tracked while all buckets are in
+ * use share a single overflow bucket until idle buckets can be evicted.
+ * </p>
+ * <p>
+ * A limit of 0 disables the respective check. Every admitted connection must be released when it
+ * is closed.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class AdmissionControl {
+    private final int maxConnections;
+    private final Map<String, Integer> moduleMaxConnections;
+    private final RateLimiter connectionRateLimiter;
+    private final RateLimiter requestRateLimiter;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Map<String, AtomicInteger> moduleConnections = new ConcurrentHashMap<>();
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedByConnectionLimit = new LongAdder();
+    private final LongAdder rejectedByConnectionRate = new LongAdder();
+    private final LongAdder acceptedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+
+    /**
+     * Constructor.
+     *
+     * @param maxConnections the maximum number of open connections of the server
+     * @param moduleMaxConnections the maximum number of open connections per module name
+     * @param connectionRate the number of connections per second allowed from a remote address
+     * @param connectionBurst the number of connections a remote address may open at once
+     * @param requestRate the number of requests per second allowed from a remote address
+     * @param requestBurst the number of requests a remote address may send at once
+     * @param maxAddresses the maximum number of remote addresses tracked per rate
+     */
+    public AdmissionControl(final int maxConnections, final Map<String, Integer> moduleMaxConnections, final int connectionRate, final int connectionBurst, final int requestRate, final int requestBurst, final int maxAddresses) {
+        this.maxConnections = maxConnections;
+        this.moduleMaxConnections = Map.copyOf(moduleMaxConnections);
+        connectionRateLimiter = connectionRate > 0 ? new RateLimiter(connectionRate, connectionBurst, maxAddresses) : null;
+        requestRateLimiter = requestRate > 0 ? new RateLimiter(requestRate, requestBurst, maxAddresses) : null;
+    }
+
+
+    /**
+     * Tries to admit a new connection for the module from the remote address. If the connection
+     * is admitted it is counted as open until {@link #releaseConnection(String)} is called.
+     *
+     * @param moduleName the name of the {@link IServerModule}
+     * @param address the remote address or null if unknown
+     * @return true if the connection is admitted, false if it should be rejected
+     */
+    public boolean acquireConnection(final String moduleName, final InetAddress address) {
+        if (connectionRateLimiter != null && address != null && !connectionRateLimiter.tryAcquire(address)) {
+            rejectedByConnectionRate.increment();
+            return false;
+        }
+
+        final int open = connections.incrementAndGet();
+
+        if (maxConnections > 0 && open > maxConnections) {
+            connections.decrementAndGet();
+            rejectedByConnectionLimit.increment();
+            return false;
+        }
+
+        final AtomicInteger moduleCounter = getModuleCounter(moduleName);
+        final int moduleOpen = moduleCounter.incrementAndGet();
+        final Integer moduleMax = moduleMaxConnections.get(moduleName);
+
+        if (moduleMax != null && moduleMax.intValue() > 0 && moduleOpen > moduleMax.intValue()) {
+            moduleCounter.decrementAndGet();
+            connections.decrementAndGet();
+            rejectedByConnectionLimit.increment();
+            return false;
+        }
+
+        acceptedConnections.increment();
+        return true;
+    }
+
+
+    /**
+     * Releases a connection which has been admitted with
+     * {@link #acquireConnection(String, InetAddress)}.
+     *
+     * @param moduleName the name of the {@link IServerModule}
+     */
+    public void releaseConnection(final String moduleName) {
+        getModuleCounter(moduleName).decrementAndGet();
+        connections.decrementAndGet();
+    }
+
+
+    /**
+     * Tries to admit a new request from the remote address.
+     *
+     * @param address the remote address or null if unknown
+     * @return true if the request is admitted, false if it should be rejected
+     */
+    public boolean acquireRequest(final InetAddress address) {
+        if (requestRateLimiter != null && address != null && !requestRateLimiter.tryAcquire(address)) {
+            rejectedRequests.increment();
+            return false;
+        }
+
+        acceptedRequests.increment();
+        return true;
+    }
+
+
+    /**
+     * Gets the open connection counter of the module.
+     *
+     * @param moduleName the name of the {@link IServerModule}
+     * @return the counter
+     */
+    private AtomicInteger getModuleCounter(final String moduleName) {
+        final AtomicInteger counter = moduleConnections.get(moduleName);
+        return counter != null ? counter : moduleConnections.computeIfAbsent(moduleName, name -> new AtomicInteger());
+    }
+
+
+    /**
+     * Gets the number of open connections.
+     *
+     * @return the number of open connections
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+
+    /**
+     * Gets the number of open connections of the module.
+     *
+     * @param moduleName the name of the {@link IServerModule}
+     * @return the number of open connections
+     */
+    public int getConnections(final String moduleName) {
+        final AtomicInteger counter = moduleConnections.get(moduleName);
+        return counter != null ? counter.get() : 0;
+    }
+
+
+    /**
+     * Gets the number of connections which have been admitted.
+     *
+     * @return the number of admitted connections
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+
+    /**
+     * Gets the number of connections which have been rejected because the maximum number of open
+     * connections of the server or the module was reached.
+     *
+     * @return the number of rejected connections
+     */
+    public long getRejectedByConnectionLimit() {
+        return rejectedByConnectionLimit.sum();
+    }
+
+
+    /**
+     * Gets the number of connections which have been rejected because the remote address exceeded
+     * the connection rate.
+     *
+     * @return the number of rejected connections
+     */
+    public long getRejectedByConnectionRate() {
+        return rejectedByConnectionRate.sum();
+    }
+
+
+    /**
+     * Gets the number of requests which have been admitted.
+     *
+     * @return the number of admitted requests
+     */
+    public long getAcceptedRequests() {
+        return acceptedRequests.sum();
+    }
+
+
+    /**
+     * Gets the number of requests which have been rejected because the remote address exceeded
+     * the request rate.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * Token buckets per remote address. The state of a bucket is the time at which it will be full
+     * again, so taking a token advances this time by the interval of one token and is rejected if
+     * the time would be further ahead than the burst allows.
+     */
+    private static class RateLimiter {
+        private final long interval;
+        private final long tolerance;
+        private final int maxAddresses;
+        private final Map<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong overflow = new AtomicLong();
+        private final AtomicLong nextEviction = new AtomicLong();
+        private final long startTime = System.nanoTime();
+
+
+        /**
+         * Constructor.
+         *
+         * @param rate the number of tokens per second
+         * @param burst the size of the bucket
+         * @param maxAddresses the maximum number of tracked addresses
+         */
+        RateLimiter(final int rate, final int burst, final int maxAddresses) {
+            interval = TimeUnit.SECONDS.toNanos(1L) / rate;
+            tolerance = interval * (Math.max(1, burst) - 1);
+            this.maxAddresses = Math.max(1, maxAddresses);
+        }
+
+
+        /**
+         * Tries to take a token from the bucket of the address.
+         *
+         * @param address the remote address
+         * @return true if a token was available
+         */
+        boolean tryAcquire(final InetAddress address) {
+            final long now = System.nanoTime() - startTime;
+            AtomicLong bucket = buckets.get(address);
+
+            if (bucket == null) {
+                if (buckets.size() >= maxAddresses && !evictIdle(now)) {
+                    bucket = overflow;
+                } else {
+                    bucket = buckets.computeIfAbsent(address, a -> new AtomicLong());
+                }
+            }
+
+            while (true) {
+                final long full = bucket.get();
+                final long start = Math.max(full, now);
+
+                if (start - now > tolerance) {
+                    return false;
+                }
+
+                if (bucket.compareAndSet(full, start + interval)) {
+                    return true;
+                }
+            }
+        }
+
+
+        /**
+         * Evicts the buckets which are full again, as they are equivalent to new buckets. As every
+         * bucket is full again at the latest after the interval of a whole burst, the buckets are
+         * scanned at most once per such period.
+         *
+         * @param now the current time
+         * @return true if there is room for another address
+         */
+        private boolean evictIdle(final long now) {
+            final long next = nextEviction.get();
+
+            if (now >= next && nextEviction.compareAndSet(next, now + tolerance + interval)) {
+                buckets.values().removeIf(bucket -> bucket.get() <= now);
+            }
+
+            return buckets.size() < maxAddresses;
+        }
+    }
+}
@@ -13,15 +13,16 @@ import javax.enterprise.context.spi.CreationalContext;
 import com.airepublic.logging.java.SerializableLogger;
 
 /**
- * The CDI context bean storage.
+ * The CDI context bean storage. The maps holding the beans are only created when the first bean
+ * is added and the storage can be reused after it has been destroyed.
  * 
  * @author Torsten Oltmanns
  *
  */
 public class BeanContextStorage {
     private final static Logger LOG = new SerializableLogger(BeanContextStorage.class.getName());
-    private final Map<Contextual<Object>, Object> beans = new HashMap<>();
-    private final Map<Contextual<Object>, CreationalContext<Object>> creationalContexts = new HashMap<>();
+    private Map<Contextual<Object>, Object> beans;
+    private Map<Contextual<Object>, CreationalContext<Object>> creationalContexts;
 
 
     /**
@@ -30,8 +31,28 @@ public class BeanContextStorage {
      * @param contextual the {@link Contextual}
      * @return the bean instance
      */
-    public Object getBean(final Contextual<Object> contextual) {
-        return beans.get(contextual);
+    public synchronized Object getBean(final Contextual<Object> contextual) {
+        return beans != null ? beans.get(contextual) : null;
+    }
+
+
+    /**
+     * Gets the bean associated with the {@link Contextual} or creates it if it does not exist
+     * yet.
+     * 
+     * @param contextual the {@link Contextual}
+     * @param creationalContext the {@link CreationalContext} to create the bean
+     * @return the bean instance
+     */
+    public synchronized Object getOrCreateBean(final Contextual<Object> contextual, final CreationalContext<Object> creationalContext) {
+        Object bean = getBean(contextual);
+
+        if (bean == null) {
+            bean = contextual.create(creationalContext);
+            addBean(contextual, creationalContext, bean);
+        }
+
+        return bean;
     }
 
 
@@ -42,7 +63,12 @@ public class BeanContextStorage {
      * @param creationalContext the {@link CreationalContext}
      * @param bean the bean instance
      */
-    public void addBean(final Contextual<Object> contextual, final CreationalContext<Object> creationalContext, final Object bean) {
+    public synchronized void addBean(final Contextual<Object> contextual, final CreationalContext<Object> creationalContext, final Object bean) {
+        if (beans == null) {
+            beans = new HashMap<>();
+            creationalContexts = new HashMap<>();
+        }
+
         beans.put(contextual, bean);
         creationalContexts.put(contextual, creationalContext);
     }
@@ -53,15 +79,19 @@ public class BeanContextStorage {
      * 
      * @return the set of all {@link Contextual}s
      */
-    public Set<Contextual<Object>> getContextuals() {
-        return new HashSet<>(beans.keySet());
+    public synchronized Set<Contextual<Object>> getContextuals() {
+        return beans != null ? new HashSet<>(beans.keySet()) : new HashSet<>();
     }
 
 
     /**
-     * Destroys this context bean storage and destroys all beans associated with this context.
+     * Destroys all beans associated with this context. The storage can be used again afterwards.
      */
-    public void destroy() {
+    public synchronized void destroy() {
+        if (beans == null || beans.isEmpty()) {
+            return;
+        }
+
         getContextuals().forEach(c -> destroy(c));
         beans.clear();
         creationalContexts.clear();
@@ -73,7 +103,11 @@ public class BeanContextStorage {
      * 
      * @param contextual the {@link Contextual}
      */
-    public void destroy(final Contextual<Object> contextual) {
+    public synchronized void destroy(final Contextual<Object> contextual) {
+        if (beans == null || !beans.containsKey(contextual)) {
+            return;
+        }
+
         try {
 
             final CreationalContext<Object> creationalContext = creationalContexts.remove(contextual);
@@ -0,0 +1,500 @@
+package com.airepublic.tobi.core.spi;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of reusable {@link ByteBuffer}s organized in power-of-two size classes. Buffers can
+ * either be allocated on the heap or off-heap (direct).
+ * <p>
+ * Threads which have called {@link #enableThreadCache()}, i.e. the event-loop threads which
+ * acquire and release buffers on every read and write, keep a small cache of buffers per size
+ * class so that they mostly do not have to touch the shared queues. The cache is returned to the
+ * shared queues by {@link #disableThreadCache()}. All other threads and buffers exceeding the cache
+ * use a shared, bounded queue per size class. Requests larger than the maximum buffer size are
+ * allocated unpooled.
+ * </p>
+ * <p>
+ * A buffer must not be used after it has been released. Each size class keeps a registry of the
+ * buffers it has allocated, which is only modified when a buffer is allocated or discarded. On
+ * release the buffer is looked up by identity without locking or allocating, so buffers which have
+ * not been acquired from this pool, unpooled buffers and buffers which have already been released
+ * are ignored.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class BufferPool {
+    private final boolean direct;
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final int maxPooledPerSize;
+    private final int threadCacheSize;
+    private final Queue<PooledBuffer>[] pools;
+    private final AtomicInteger[] pooledCounts;
+    private final Registry[] registries;
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder outstanding = new LongAdder();
+
+    /**
+     * A buffer allocated by the pool and whether it is currently handed out.
+     */
+    private final static class PooledBuffer {
+        private final ByteBuffer buffer;
+        private final AtomicBoolean acquired = new AtomicBoolean();
+
+
+        /**
+         * Constructor.
+         *
+         * @param buffer the buffer
+         */
+        PooledBuffer(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Open addressing table of the {@link PooledBuffer}s of a size class keyed by the identity of
+     * their buffer, as {@link ByteBuffer#hashCode()} depends on the content. Lookups are lock-free,
+     * whereas adding and removing is synchronized and only happens when a buffer is allocated or
+     * discarded.
+     */
+    private final static class Registry {
+        private final static PooledBuffer REMOVED = new PooledBuffer(null);
+        private volatile AtomicReferenceArray<PooledBuffer> table = new AtomicReferenceArray<>(64);
+        private int size;
+        private int used;
+
+
+        /**
+         * Finds the {@link PooledBuffer} of the buffer.
+         *
+         * @param buffer the buffer
+         * @return the {@link PooledBuffer} or null if the buffer is not registered
+         */
+        PooledBuffer get(final ByteBuffer buffer) {
+            final AtomicReferenceArray<PooledBuffer> table = this.table;
+            final int mask = table.length() - 1;
+
+            for (int i = System.identityHashCode(buffer) & mask, probes = 0; probes <= mask; i = i + 1 & mask, probes++) {
+                final PooledBuffer pooled = table.get(i);
+
+                if (pooled == null) {
+                    return null;
+                } else if (pooled.buffer == buffer) {
+                    return pooled;
+                }
+            }
+
+            return null;
+        }
+
+
+        /**
+         * Adds the {@link PooledBuffer}.
+         *
+         * @param pooled the {@link PooledBuffer}
+         */
+        synchronized void add(final PooledBuffer pooled) {
+            if (used + 1 > table.length() * 3 / 4) {
+                // grow if more than half are in use, otherwise just drop the removed slots
+                final int capacity = (size + 1) * 2 > table.length() * 3 / 4 ? table.length() * 2 : table.length();
+                final AtomicReferenceArray<PooledBuffer> rehashed = new AtomicReferenceArray<>(capacity);
+
+                for (int i = 0; i < table.length(); i++) {
+                    final PooledBuffer existing = table.get(i);
+
+                    if (existing != null && existing != REMOVED) {
+                        insert(rehashed, existing);
+                    }
+                }
+
+                table = rehashed;
+                used = size;
+            }
+
+            insert(table, pooled);
+            size++;
+            used++;
+        }
+
+
+        /**
+         * Removes the {@link PooledBuffer}.
+         *
+         * @param pooled the {@link PooledBuffer}
+         */
+        synchronized void remove(final PooledBuffer pooled) {
+            final int mask = table.length() - 1;
+
+            for (int i = System.identityHashCode(pooled.buffer) & mask;; i = i + 1 & mask) {
+                final PooledBuffer existing = table.get(i);
+
+                if (existing == null) {
+                    return;
+                } else if (existing == pooled) {
+                    table.set(i, REMOVED);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+
+        /**
+         * Inserts the {@link PooledBuffer} into the first free slot of its probe sequence.
+         *
+         * @param table the table
+         * @param pooled the {@link PooledBuffer}
+         */
+        private static void insert(final AtomicReferenceArray<PooledBuffer> table, final PooledBuffer pooled) {
+            final int mask = table.length() - 1;
+            int i = System.identityHashCode(pooled.buffer) & mask;
+
+            while (table.get(i) != null) {
+                i = i + 1 & mask;
+            }
+
+            table.set(i, pooled);
+        }
+    }
+
+    /**
+     * Cache of buffers per size class for a single thread.
+     */
+    private final static class ThreadCache {
+        private final PooledBuffer[][] buffers;
+        private final int[] counts;
+
+
+        /**
+         * Constructor.
+         *
+         * @param sizeClasses the number of size classes
+         * @param cacheSize the maximum number of buffers per size class
+         */
+        ThreadCache(final int sizeClasses, final int cacheSize) {
+            buffers = new PooledBuffer[sizeClasses][cacheSize];
+            counts = new int[sizeClasses];
+        }
+
+
+        /**
+         * Takes a buffer of the size class from the cache.
+         *
+         * @param index the size class index
+         * @return the buffer or null if none is cached
+         */
+        PooledBuffer poll(final int index) {
+            if (counts[index] == 0) {
+                return null;
+            }
+
+            final int count = --counts[index];
+            final PooledBuffer buffer = buffers[index][count];
+            buffers[index][count] = null;
+            return buffer;
+        }
+
+
+        /**
+         * Puts the buffer of the size class into the cache.
+         *
+         * @param index the size class index
+         * @param buffer the buffer
+         * @return true if it was cached, false if the cache is full
+         */
+        boolean offer(final int index, final PooledBuffer buffer) {
+            if (counts[index] == buffers[index].length) {
+                return false;
+            }
+
+            buffers[index][counts[index]++] = buffer;
+            return true;
+        }
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param direct whether to allocate direct (off-heap) buffers
+     * @param minBufferSize the smallest size class (rounded up to a power of two)
+     * @param maxBufferSize the largest size class (rounded up to a power of two)
+     * @param maxPooledPerSize the maximum number of buffers kept in the shared queue per size
+     *        class
+     * @param threadCacheSize the maximum number of buffers cached per size class by threads which
+     *        have enabled the thread cache
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(final boolean direct, final int minBufferSize, final int maxBufferSize, final int maxPooledPerSize, final int threadCacheSize) {
+        if (minBufferSize <= 0 || maxBufferSize < minBufferSize) {
+            throw new IllegalArgumentException("Invalid buffer sizes: min=" + minBufferSize + ", max=" + maxBufferSize);
+        }
+
+        this.direct = direct;
+        this.minBufferSize = roundUp(minBufferSize);
+        this.maxBufferSize = roundUp(maxBufferSize);
+        this.maxPooledPerSize = maxPooledPerSize;
+        this.threadCacheSize = Math.max(0, threadCacheSize);
+
+        final int sizeClasses = Integer.numberOfTrailingZeros(this.maxBufferSize) - Integer.numberOfTrailingZeros(this.minBufferSize) + 1;
+        pools = new Queue[sizeClasses];
+        pooledCounts = new AtomicInteger[sizeClasses];
+        registries = new Registry[sizeClasses];
+
+        for (int i = 0; i < sizeClasses; i++) {
+            pools[i] = new ConcurrentLinkedQueue<>();
+            pooledCounts[i] = new AtomicInteger();
+            registries[i] = new Registry();
+        }
+    }
+
+
+    /**
+     * Enables the cache of buffers for the current thread. This should only be called by
+     * long-living threads which acquire and release buffers frequently, e.g. the event-loops, and
+     * which call {@link #disableThreadCache()} before they terminate.
+     */
+    public void enableThreadCache() {
+        if (threadCacheSize > 0 && threadCache.get() == null) {
+            threadCache.set(new ThreadCache(pools.length, threadCacheSize));
+        }
+    }
+
+
+    /**
+     * Disables the cache of buffers for the current thread and returns the cached buffers to the
+     * shared queues.
+     */
+    public void disableThreadCache() {
+        final ThreadCache cache = threadCache.get();
+
+        if (cache == null) {
+            return;
+        }
+
+        threadCache.remove();
+
+        for (int index = 0; index < pools.length; index++) {
+            PooledBuffer buffer;
+
+            while ((buffer = cache.poll(index)) != null) {
+                offer(index, buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Acquires a cleared buffer with a capacity of at least the specified size. The buffer should
+     * be returned by calling {@link #release(ByteBuffer)} when it is not used anymore.
+     *
+     * @param size the minimum capacity
+     * @return the {@link ByteBuffer}
+     */
+    public ByteBuffer acquire(final int size) {
+        if (size > maxBufferSize) {
+            misses.increment();
+            return allocate(size);
+        }
+
+        final int index = indexFor(size);
+        final ThreadCache cache = threadCache.get();
+        PooledBuffer pooled = cache != null ? cache.poll(index) : null;
+
+        if (pooled == null) {
+            pooled = pools[index].poll();
+
+            if (pooled != null) {
+                pooledCounts[index].decrementAndGet();
+            }
+        }
+
+        if (pooled != null) {
+            hits.increment();
+            pooled.buffer.clear();
+        } else {
+            misses.increment();
+            pooled = new PooledBuffer(allocate(minBufferSize << index));
+            registries[index].add(pooled);
+        }
+
+        pooled.acquired.set(true);
+        outstanding.increment();
+        return pooled.buffer;
+    }
+
+
+    /**
+     * Releases the buffer back to the pool.
+     *
+     * @param buffer the {@link ByteBuffer}
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() > maxBufferSize || buffer.capacity() < minBufferSize || Integer.bitCount(buffer.capacity()) != 1) {
+            return;
+        }
+
+        final int index = indexFor(buffer.capacity());
+        final PooledBuffer pooled = registries[index].get(buffer);
+
+        if (pooled == null || !pooled.acquired.compareAndSet(true, false)) {
+            return;
+        }
+
+        outstanding.decrement();
+        final ThreadCache cache = threadCache.get();
+        buffer.clear();
+
+        if (cache == null || !cache.offer(index, pooled)) {
+            offer(index, pooled);
+        }
+    }
+
+
+    /**
+     * Returns the buffer to the shared queue of the size class unless the queue is full, in which
+     * case it is discarded.
+     *
+     * @param index the size class index
+     * @param pooled the {@link PooledBuffer}
+     */
+    private void offer(final int index, final PooledBuffer pooled) {
+        if (pooledCounts[index].incrementAndGet() <= maxPooledPerSize) {
+            pools[index].offer(pooled);
+        } else {
+            pooledCounts[index].decrementAndGet();
+            registries[index].remove(pooled);
+        }
+    }
+
+
+    /**
+     * Releases the buffers back to the pool.
+     *
+     * @param buffers the {@link ByteBuffer}s
+     */
+    public void release(final ByteBuffer... buffers) {
+        if (buffers != null) {
+            for (final ByteBuffer buffer : buffers) {
+                release(buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of acquisitions served from the pool.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Gets the number of acquisitions which required a new allocation.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Gets the number of pooled buffers currently acquired and not yet released.
+     *
+     * @return the outstanding buffer count
+     */
+    public long getOutstandingCount() {
+        return outstanding.sum();
+    }
+
+
+    /**
+     * Gets the number of buffers held in the shared queues (not counting the thread caches).
+     *
+     * @return the pooled buffer count
+     */
+    public int getPooledCount() {
+        int count = 0;
+
+        for (final AtomicInteger pooledCount : pooledCounts) {
+            count += pooledCount.get();
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Checks whether this pool allocates direct buffers.
+     *
+     * @return true if buffers are allocated off-heap
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+
+    /**
+     * Gets the capacity of the largest pooled size class.
+     *
+     * @return the maximum pooled buffer size
+     */
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+
+    /**
+     * Allocates a new buffer.
+     *
+     * @param capacity the capacity
+     * @return the {@link ByteBuffer}
+     */
+    private ByteBuffer allocate(final int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+
+    /**
+     * Gets the size class index for the specified size.
+     *
+     * @param size the size
+     * @return the index
+     */
+    private int indexFor(final int size) {
+        final int capacity = Math.max(minBufferSize, roundUp(size));
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(minBufferSize);
+    }
+
+
+    /**
+     * Rounds the value up to the next power of two.
+     *
+     * @param value the value
+     * @return the power of two
+     */
+    private static int roundUp(final int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+
+    @Override
+    public String toString() {
+        return "BufferPool [direct=" + direct + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", outstanding=" + getOutstandingCount() + ", pooled=" + getPooledCount() + "]";
+    }
+}
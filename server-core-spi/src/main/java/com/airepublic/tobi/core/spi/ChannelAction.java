@@ -1,11 +1,13 @@
 package com.airepublic.tobi.core.spi;
 
 /**
- * An enumeration of actions to be performed on the channel connection.
+ * An enumeration of actions to be performed on the channel connection. {@link #KEEP_ALIVE} signals
+ * that the exchange on a persistent connection has completed, so the {@link IIOHandler} is released
+ * and the connection waits for the next request.
  * 
  * @author Torsten Oltmanns
  *
  */
 public enum ChannelAction {
-    KEEP_OPEN, CLOSE_INPUT, CLOSE_OUTPUT, CLOSE_ALL;
+    KEEP_OPEN, CLOSE_INPUT, CLOSE_OUTPUT, CLOSE_ALL, KEEP_ALIVE;
 }
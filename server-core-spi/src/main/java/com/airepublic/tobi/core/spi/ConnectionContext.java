@@ -0,0 +1,89 @@
+package com.airepublic.tobi.core.spi;
+
+import javax.enterprise.context.RequestScoped;
+import javax.enterprise.context.SessionScoped;
+
+/**
+ * The {@link RequestScoped} and {@link SessionScoped} bean storages of a connection. The storages
+ * belong to the connection and not to a thread: a thread processing the connection, e.g. the
+ * event-loop or a worker the request has been handed off to, only activates the
+ * {@link ConnectionContext} which makes the same beans visible to all of them. Activation does not
+ * allocate and beans are only created when a scoped bean is used.
+ * <p>
+ * The request scoped beans are destroyed at the end of each exchange while the storage is reused
+ * for the next request on a persistent connection.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class ConnectionContext {
+    private final static ThreadLocal<ConnectionContext> current = new ThreadLocal<>();
+    private final BeanContextStorage requestStorage = new BeanContextStorage();
+    private final BeanContextStorage sessionStorage = new BeanContextStorage();
+
+
+    /**
+     * Gets the {@link ConnectionContext} active on the current thread.
+     *
+     * @return the {@link ConnectionContext} or null if none is active
+     */
+    public static ConnectionContext current() {
+        return current.get();
+    }
+
+
+    /**
+     * Activates this {@link ConnectionContext} on the current thread unless it is already active.
+     */
+    public void activate() {
+        if (current.get() != this) {
+            current.set(this);
+        }
+    }
+
+
+    /**
+     * Deactivates the {@link ConnectionContext} active on the current thread.
+     */
+    public static void deactivate() {
+        current.remove();
+    }
+
+
+    /**
+     * Gets the storage of the {@link RequestScoped} beans.
+     *
+     * @return the {@link BeanContextStorage}
+     */
+    public BeanContextStorage getRequestStorage() {
+        return requestStorage;
+    }
+
+
+    /**
+     * Gets the storage of the {@link SessionScoped} beans.
+     *
+     * @return the {@link BeanContextStorage}
+     */
+    public BeanContextStorage getSessionStorage() {
+        return sessionStorage;
+    }
+
+
+    /**
+     * Destroys the {@link RequestScoped} beans at the end of an exchange.
+     */
+    public void endRequest() {
+        requestStorage.destroy();
+    }
+
+
+    /**
+     * Destroys all beans when the connection is closed.
+     */
+    public void destroy() {
+        requestStorage.destroy();
+        sessionStorage.destroy();
+    }
+}
@@ -3,8 +3,8 @@ package com.airepublic.tobi.core.spi;
 import javax.inject.Inject;
 
 /**
- * The {@link ContextActivator} is used to activate the session scoped context if coming from
- * another thread.
+ * The {@link ContextActivator} is used to activate the {@link ConnectionContext} of a session if
+ * coming from another thread.
  * 
  * @author Torsten Oltmanns
  *
@@ -12,19 +12,20 @@ import javax.inject.Inject;
 public class ContextActivator {
     @Inject
     private IServerContext serverContext;
-    @Inject
-    private RequestScopedContext requestScopedContext;
-    @Inject
-    private SessionScopedContext sessionScopedContext;
 
     /**
-     * Activate the {@link IServerSession} with the specified session-id.
+     * Activate the {@link IServerSession} with the specified session-id. If the session has
+     * already been closed and its context released an empty context is activated.
      * 
      * @param sessionId the session-id
      */
     public void activate(final String sessionId) {
-        final BeanContextStorage store = serverContext.getSessionContext(sessionId);
-        requestScopedContext.activate(new BeanContextStorage());
-        sessionScopedContext.activate(store);
+        final ConnectionContext context = serverContext.getSessionContext(sessionId);
+
+        if (context == null) {
+            new ConnectionContext().activate();
+        } else {
+            context.activate();
+        }
     }
 }
@@ -0,0 +1,105 @@
+package com.airepublic.tobi.core.spi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A region of a file to be written to the connection after the {@link ByteBuffer}s of an
+ * {@link IResponse}. If the {@link IChannelEncoder} passes buffers through unchanged the region is
+ * transferred directly from the {@link FileChannel} to the connection (see
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}), otherwise it is memory-mapped
+ * in chunks which are passed through the {@link IChannelEncoder}.
+ * <p>
+ * The {@link FileRegion} owns the {@link FileChannel} and closes it when it is closed.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class FileRegion implements AutoCloseable {
+    private final FileChannel fileChannel;
+    private final long position;
+    private final long count;
+    private long transferred;
+
+    /**
+     * Constructor.
+     *
+     * @param fileChannel the {@link FileChannel}
+     * @param position the position of the region in the file
+     * @param count the number of bytes of the region
+     */
+    public FileRegion(final FileChannel fileChannel, final long position, final long count) {
+        this.fileChannel = fileChannel;
+        this.position = position;
+        this.count = count;
+    }
+
+
+    /**
+     * Transfers the next bytes of the region directly to the target channel.
+     *
+     * @param target the target {@link WritableByteChannel}
+     * @return the number of bytes transferred
+     * @throws IOException if the transfer fails
+     */
+    public long transferTo(final WritableByteChannel target) throws IOException {
+        final long written = fileChannel.transferTo(position + transferred, count - transferred, target);
+        transferred += written;
+        return written;
+    }
+
+
+    /**
+     * Maps the next chunk of the region into memory.
+     *
+     * @param maxSize the maximum size of the chunk
+     * @return the read-only memory-mapped chunk
+     * @throws IOException if mapping fails
+     */
+    public ByteBuffer map(final int maxSize) throws IOException {
+        final long size = Math.min(maxSize, count - transferred);
+        final ByteBuffer chunk = fileChannel.map(MapMode.READ_ONLY, position + transferred, size);
+        transferred += size;
+        return chunk;
+    }
+
+
+    /**
+     * Checks whether the whole region has been transferred or mapped.
+     *
+     * @return true if done
+     */
+    public boolean isDone() {
+        return transferred >= count;
+    }
+
+
+    /**
+     * Gets the number of bytes of the region.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+
+    /**
+     * Gets the number of bytes which have been transferred or mapped so far.
+     *
+     * @return the transferred bytes
+     */
+    public long getTransferred() {
+        return transferred;
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -36,7 +36,9 @@ public interface IChannelEncoder {
 
 
     /**
-     * Decodes the incoming {@link ByteBuffer} to a {@link IRequest} object.
+     * Decodes the incoming {@link ByteBuffer} to a {@link IRequest} object. The buffer is only
+     * valid for the duration of this call as it will be returned to the {@link BufferPool}
+     * afterwards, so any data retained beyond the call must be copied.
      * 
      * @param buffer the {@link ByteBuffer}
      * @return a {@link Pair} of {@link Status} and {@link IRequest} giving information if the
@@ -46,6 +48,20 @@ public interface IChannelEncoder {
     Pair<Status, IRequest> decode(ByteBuffer buffer) throws IOException;
 
 
+    /**
+     * Called when the connection becomes writable before an {@link IIOHandler} has been
+     * determined, e.g. to continue a handshake which is waiting to write the rest of a message or
+     * for a task running on another thread.
+     * 
+     * @return the {@link Status} and {@link IRequest} of the data received with the handshake like
+     *         {@link #decode(ByteBuffer)} or null if the encoder does not wait for the connection
+     * @throws IOException if the handshake fails
+     */
+    default Pair<Status, IRequest> onWritable() throws IOException {
+        return null;
+    }
+
+
     /**
      * Encodes the {@link ByteBuffer}s to be written to the connection.
      * 
@@ -56,6 +72,29 @@ public interface IChannelEncoder {
     ByteBuffer[] encode(ByteBuffer... buffers) throws IOException;
 
 
+    /**
+     * Releases the {@link ByteBuffer}s returned by {@link #encode(ByteBuffer...)} after they have
+     * been written to the connection. Encoders which draw their buffers from the
+     * {@link BufferPool} return them here.
+     * 
+     * @param buffers the encoded {@link ByteBuffer}s
+     */
+    default void release(final ByteBuffer... buffers) {
+    }
+
+
+    /**
+     * Whether {@link #encode(ByteBuffer...)} passes the buffers through unchanged. In that case
+     * file content can be transferred directly to the connection without copying it into memory
+     * (see {@link FileRegion}).
+     * 
+     * @return true if encoding does not modify the data
+     */
+    default boolean isPassThrough() {
+        return false;
+    }
+
+
     /**
      * Closes the encoder and frees all resources.
      * 
@@ -1,30 +1,90 @@
 package com.airepublic.tobi.core.spi;
 
 import java.io.IOException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The interface to provide the central functionality to process the {@link SocketChannel} IO.
+ * <p>
+ * An {@link IChannelProcessor} holds the state of a single connection. It does not own a thread
+ * or a {@link Selector} but is attached to the {@link SelectionKey} of its {@link SocketChannel}
+ * on the {@link Selector} of the event-loop that multiplexes the connection. The event-loop calls
+ * {@link IChannelProcessor#process(SelectionKey)} whenever the channel is ready for IO.
+ * </p>
+ * <p>
+ * The state of the connection must only be modified on the event-loop thread. Other threads, e.g.
+ * timers or application threads, queue their work with {@link #execute(Runnable)}. As processors
+ * are reused for new connections code which outlives a connection must close it with
+ * {@link #close(long)} and the generation the code has been bound to.
+ * </p>
  * 
  * @author Torsten Oltmanns
  *
  */
-public interface IChannelProcessor extends Runnable, AutoCloseable {
+public interface IChannelProcessor extends AutoCloseable {
 
     /**
      * Prepare the {@link IChannelProcessor} to be reused for a new connection.
      * 
      * @param module the {@link IServerModule}
      * @param channel the {@link SocketChannel}
+     * @param selector the {@link Selector} of the event-loop which multiplexes the
+     *        {@link SocketChannel}
+     * @param eventLoop the {@link Executor} running tasks on the event-loop thread
      * @param ioHandler the {@link IIOHandler} (optional)
      * @throws IOException if something goes wrong
      */
-    void prepare(final IServerModule module, final SocketChannel channel, final IIOHandler ioHandler) throws IOException;
+    void prepare(final IServerModule module, final SocketChannel channel, final Selector selector, final Executor eventLoop, final IIOHandler ioHandler) throws IOException;
 
 
-    @Override
-    void run();
+    /**
+     * Processes the ready operations of the {@link SelectionKey} of the associated
+     * {@link SocketChannel}. This method is called by the event-loop thread owning the
+     * {@link Selector}.
+     * 
+     * @param key the selected {@link SelectionKey}
+     */
+    void process(SelectionKey key);
+
+
+    /**
+     * Checks whether the current thread is the event-loop thread processing the
+     * {@link SocketChannel}. Code running on the event-loop must never wait for the completion of a
+     * write as the write is performed by the same thread.
+     * 
+     * @return true if called from the event-loop thread
+     */
+    boolean inEventLoop();
+
+
+    /**
+     * Queues the task to be executed on the event-loop thread processing the {@link SocketChannel}.
+     * 
+     * @param task the task
+     * @throws RejectedExecutionException if the event-loop has been stopped
+     */
+    void execute(Runnable task);
+
+
+    /**
+     * Gets the generation of the connection currently served by the {@link IChannelProcessor}. The
+     * generation changes whenever the processor is prepared for a new connection.
+     * 
+     * @return the generation
+     */
+    long getGeneration();
+
+
+    /**
+     * Checks whether the {@link IChannelProcessor} has been closed.
+     * 
+     * @return true if it has been closed
+     */
+    boolean isClosed();
 
 
     /**
@@ -76,10 +136,23 @@ public interface IChannelProcessor extends Runnable, AutoCloseable {
     // */
     // void addToWriteBuffer(CompletionHandler<?, ?> handler, ByteBuffer... buffer);
 
+    /**
+     * Closes the connection. If called from another thread than the event-loop the close is queued
+     * to the event-loop.
+     */
     @Override
     void close();
 
 
+    /**
+     * Closes the connection of the specified generation on the event-loop thread. The call is
+     * ignored if the connection has been closed and the processor has been reused meanwhile.
+     * 
+     * @param generation the generation of the connection (see {@link #getGeneration()})
+     */
+    void close(long generation);
+
+
     /**
      * Gets the associated {@link IServerModule}.
      * 
@@ -89,7 +162,7 @@ public interface IChannelProcessor extends Runnable, AutoCloseable {
 
 
     /**
-     * Gets the {@link Selector} used to listen on the {@link SocketChannel}.
+     * Gets the {@link Selector} of the event-loop used to listen on the {@link SocketChannel}.
      * 
      * @return the {@link Selector}
      */
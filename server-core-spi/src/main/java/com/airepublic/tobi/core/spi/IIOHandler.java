@@ -36,6 +36,31 @@ public interface IIOHandler extends Serializable {
     Pair<? extends IResponse, CompletionHandler<?, ?>> produce() throws IOException;
 
 
+    /**
+     * Checks whether responses are pending which have been queued by another thread after
+     * {@link IIOHandler#produce()} returned none. The {@link IChannelProcessor} calls this after it
+     * has cleared the write interest so that such a response is not missed.
+     * 
+     * @return true if the connection should be registered for writing again
+     */
+    default boolean hasPendingResponses() {
+        return false;
+    }
+
+
+    /**
+     * Checks whether the request is being processed by another thread, e.g. a handler which might
+     * block has been dispatched to the handler executor of the {@link IServerContext}. The
+     * {@link IChannelProcessor} neither reads nor writes the connection meanwhile until a response
+     * is pending (see {@link #hasPendingResponses()}).
+     * 
+     * @return true if the request is processed by another thread
+     */
+    default boolean isProcessing() {
+        return false;
+    }
+
+
     /**
      * This method is called by the {@link IChannelProcessor} if there is an exception while reading
      * from the incoming stream. In this case {@link IIOHandler#consume(IRequest)} will not be
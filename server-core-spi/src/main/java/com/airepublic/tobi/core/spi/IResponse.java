@@ -46,4 +46,37 @@ public interface IResponse {
      * @return the payload {@link ByteBuffer}
      */
     ByteBuffer getPayload();
+
+
+    /**
+     * Gets the buffers which are written with a single gathering write. The default returns the
+     * attributes buffer followed by the payload. Responses consisting of more parts, e.g. a batch
+     * of frames, can return them without combining them into one buffer.
+     * 
+     * @return the buffers to write
+     */
+    default ByteBuffer[] getBuffers() {
+        final ByteBuffer attributes = getAttributesBuffer();
+        final ByteBuffer payload = getPayload();
+
+        if (attributes != null && payload != null) {
+            return new ByteBuffer[] { attributes, payload };
+        } else if (attributes != null) {
+            return new ByteBuffer[] { attributes };
+        } else if (payload != null) {
+            return new ByteBuffer[] { payload };
+        }
+
+        return new ByteBuffer[] {};
+    }
+
+
+    /**
+     * Gets an optional {@link FileRegion} which is written after the attributes and payload.
+     * 
+     * @return the {@link FileRegion} or null
+     */
+    default FileRegion getFileRegion() {
+        return null;
+    }
 }
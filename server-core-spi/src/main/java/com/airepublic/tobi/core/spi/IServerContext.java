@@ -1,6 +1,7 @@
 package com.airepublic.tobi.core.spi;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The context storage for the server information such as host, sessions and custom application
@@ -85,7 +86,8 @@ public interface IServerContext {
 
 
     /**
-     * Gets the configured worker count.
+     * Gets the configured worker count, i.e. the number of event-loop threads which multiplex the
+     * connections.
      * 
      * @return the worker count
      */
@@ -93,7 +95,17 @@ public interface IServerContext {
 
 
     /**
-     * Adds the {@link IServerSession}.
+     * Gets the maximum number of pending connections queued by the server sockets.
+     * 
+     * @return the accept backlog or 0 for the default of the system
+     */
+    int getAcceptBacklog();
+
+
+    /**
+     * Adds the {@link IServerSession}. If the maximum number of open sessions is exceeded the
+     * eldest session is closed on the event-loop of its connection. The {@link IChannelProcessor}
+     * of the session must have been set before it is added.
      * 
      * @param session the {@link IServerSession}
      */
@@ -104,7 +116,7 @@ public interface IServerContext {
      * Gets the {@link IServerSession} for the session id.
      * 
      * @param sessionId the session id
-     * @return the {@link IServerSession}
+     * @return the {@link IServerSession} or null if the session is not open
      */
     IServerSession getServerSession(final String sessionId);
 
@@ -119,28 +131,99 @@ public interface IServerContext {
 
 
     /**
-     * Gets the {@link BeanContextStorage} for the session id.
+     * Gets the {@link ConnectionContext} for the session id.
      * 
      * @param sessionId the session id
-     * @return the {@link BeanContextStorage}
+     * @return the {@link ConnectionContext} or null if it has been released
      */
-    BeanContextStorage getSessionContext(String sessionId);
+    ConnectionContext getSessionContext(String sessionId);
 
 
     /**
-     * Adds the {@link BeanContextStorage} for the session id.
+     * Adds the {@link ConnectionContext} for the session id.
      * 
      * @param sessionId the session id
-     * @param sessionContext the {@link BeanContextStorage}
+     * @param sessionContext the {@link ConnectionContext}
      */
-    void addSessionContext(String sessionId, BeanContextStorage sessionContext);
+    void addSessionContext(String sessionId, ConnectionContext sessionContext);
 
 
     /**
-     * Removes the {@link BeanContextStorage} for the session id.
+     * Removes the {@link ConnectionContext} for the session id.
      * 
      * @param sessionId the session id
      */
     void removeSessionContext(String sessionId);
 
+
+    /**
+     * Gets the number of open {@link IServerSession}s.
+     * 
+     * @return the number of open sessions
+     */
+    int getOpenSessions();
+
+
+    /**
+     * Gets the number of {@link ConnectionContext}s retained for sessions.
+     * 
+     * @return the number of session contexts
+     */
+    int getRetainedSessionContexts();
+
+
+    /**
+     * Gets the {@link BufferPool} used to acquire and release IO buffers.
+     * 
+     * @return the {@link BufferPool}
+     */
+    BufferPool getBufferPool();
+
+
+    /**
+     * Gets the {@link TimingWheel} shared by all connections to schedule timeouts and periodic
+     * tasks.
+     * 
+     * @return the {@link TimingWheel}
+     */
+    TimingWheel getTimer();
+
+
+    /**
+     * Gets the {@link ExecutorService} which runs request handlers which might block, e.g. JAX-RS
+     * resources or event producers, so that they do not hold up the event-loops. The event-loop
+     * threads themselves only run non-blocking code.
+     * 
+     * @return the {@link ExecutorService}
+     */
+    ExecutorService getHandlerExecutor();
+
+
+    /**
+     * Gets the {@link ObjectPool} of {@link IChannelProcessor}s which are reused for new
+     * connections once they have been closed.
+     * 
+     * @return the {@link ObjectPool}
+     */
+    ObjectPool<IChannelProcessor> getChannelProcessorPool();
+
+
+    /**
+     * Gets the {@link AdmissionControl} which limits the connections and requests and counts
+     * admitted and rejected ones.
+     * 
+     * @return the {@link AdmissionControl}
+     */
+    AdmissionControl getAdmissionControl();
+
+
+    /**
+     * Gets the {@link WireTrace} for the {@link IServerModule} with the specified name.
+     * 
+     * @param moduleName the name of the {@link IServerModule}
+     * @return the {@link WireTrace} or {@link WireTrace#DISABLED} if tracing is not enabled for
+     *         the module
+     */
+    WireTrace getWireTrace(String moduleName);
+
 }
\ No newline at end of file
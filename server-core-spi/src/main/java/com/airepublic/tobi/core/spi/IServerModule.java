@@ -2,6 +2,7 @@ package com.airepublic.tobi.core.spi;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.Set;
 
@@ -72,6 +73,16 @@ public interface IServerModule extends Closeable {
     void accept(final IChannelProcessor processor) throws IOException;
 
 
+    /**
+     * Called when a connection accepted by this module has been closed to release the resources
+     * kept for it. The {@link IChannelProcessor} may be reused for another connection afterwards.
+     * 
+     * @param processor the {@link IChannelProcessor}
+     */
+    default void onChannelClose(final IChannelProcessor processor) {
+    }
+
+
     /**
      * Tries to determine which registered {@link IIOHandler} can handle the {@link IRequest}.
      *
@@ -89,4 +100,30 @@ public interface IServerModule extends Closeable {
      */
     int getReadBufferSize();
 
+
+    /**
+     * Gets the data written to a connection on the specified port before it is closed because it
+     * was not admitted, e.g. a protocol specific error response. The data is written without
+     * waiting, so it should fit into the socket send buffer.
+     * 
+     * @param port the local port of the connection
+     * @return the data or null to close the connection without a response
+     */
+    default ByteBuffer getRejectResponse(final int port) {
+        return null;
+    }
+
+
+    /**
+     * Gets the {@link IIOHandler} which responds to a request that was not admitted, e.g. because
+     * the client exceeded the request rate. The connection is closed after the response.
+     * 
+     * @param request the {@link IRequest}
+     * @return the {@link IIOHandler} or null to close the connection without a response
+     * @throws IOException if something goes wrong
+     */
+    default IIOHandler getRejectHandler(final IRequest request) throws IOException {
+        return null;
+    }
+
 }
@@ -0,0 +1,107 @@
+package com.airepublic.tobi.core.spi;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of reusable per-connection objects, e.g. {@link IChannelProcessor}s, which are
+ * expensive to create. Objects are created by the factory if the pool is empty and released
+ * objects are dropped if the pool is full. The pool does not lock.
+ * <p>
+ * An object must be reset before it is released, must only be released once and must not be used
+ * by its previous owner after it has been released.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ * @param <T> the type of the pooled objects
+ */
+public class ObjectPool<T> {
+    private final Supplier<T> factory;
+    private final int maxPooled;
+    private final Queue<T> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+
+    /**
+     * Constructor.
+     *
+     * @param factory the factory to create new objects
+     * @param maxPooled the maximum number of idle objects kept, 0 disables pooling
+     */
+    public ObjectPool(final Supplier<T> factory, final int maxPooled) {
+        this.factory = factory;
+        this.maxPooled = maxPooled;
+    }
+
+
+    /**
+     * Takes an idle object from the pool or creates a new one.
+     *
+     * @return the object
+     */
+    public T acquire() {
+        final T object = pool.poll();
+
+        if (object != null) {
+            pooled.decrementAndGet();
+            hits.increment();
+            return object;
+        }
+
+        misses.increment();
+        return factory.get();
+    }
+
+
+    /**
+     * Returns the object to the pool unless the pool is full.
+     *
+     * @param object the reset object
+     * @return true if the object has been pooled
+     */
+    public boolean release(final T object) {
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return false;
+        }
+
+        pool.add(object);
+        return true;
+    }
+
+
+    /**
+     * Gets the number of idle objects in the pool.
+     *
+     * @return the number of pooled objects
+     */
+    public int getPooled() {
+        return pooled.get();
+    }
+
+
+    /**
+     * Gets the number of acquisitions which were served from the pool.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+
+    /**
+     * Gets the number of acquisitions which had to create a new object.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
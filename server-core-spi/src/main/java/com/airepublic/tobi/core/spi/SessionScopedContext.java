@@ -8,13 +8,13 @@ import javax.enterprise.context.spi.Contextual;
 import javax.enterprise.context.spi.CreationalContext;
 
 /**
- * The {@link SessionScoped} CDI context.
+ * The {@link SessionScoped} CDI context. The beans are stored in the {@link ConnectionContext} which
+ * is active on the current thread.
  * 
  * @author Torsten Oltmanns
  *
  */
 public class SessionScopedContext implements AlterableContext {
-    private final static ThreadLocal<BeanContextStorage> sessionContext = new ThreadLocal<>();
 
     @Override
     public Class<? extends Annotation> getScope() {
@@ -25,68 +25,43 @@ public class SessionScopedContext implements AlterableContext {
     @Override
     @SuppressWarnings("unchecked")
     public <T> T get(final Contextual<T> contextual, final CreationalContext<T> creationalContext) {
-        validateContext();
-
-        final T bean = contextual.create(creationalContext);
-        sessionContext.get().addBean((Contextual<Object>) contextual, (CreationalContext<Object>) creationalContext, bean);
-        creationalContext.push(bean);
-
-        return bean;
+        return (T) getStorage().getOrCreateBean((Contextual<Object>) contextual, (CreationalContext<Object>) creationalContext);
     }
 
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> T get(final Contextual<T> contextual) {
-        validateContext();
-        return (T) sessionContext.get().getBean((Contextual<Object>) contextual);
-    }
-
-
-    /**
-     * Activate this context.
-     * 
-     * @param contextStore the {@link BeanContextStorage}
-     */
-    public void activate(final BeanContextStorage contextStore) {
-        sessionContext.set(contextStore);
-        validateContext();
-    }
-
-
-    /**
-     * Deactivates this context and destroys all the associated beans.
-     */
-    public void deactivate() {
-        validateContext();
-
-        sessionContext.get().destroy();
-        sessionContext.remove();
+        return (T) getStorage().getBean((Contextual<Object>) contextual);
     }
 
 
     @Override
     public boolean isActive() {
-        return sessionContext.get() != null;
+        return ConnectionContext.current() != null;
     }
 
 
     @Override
     @SuppressWarnings("unchecked")
     public void destroy(final Contextual<?> contextual) {
-        validateContext();
-
-        sessionContext.get().destroy((Contextual<Object>) contextual);
+        getStorage().destroy((Contextual<Object>) contextual);
     }
 
 
     /**
-     * Validates this context.
+     * Gets the {@link BeanContextStorage} of the active {@link ConnectionContext}.
+     * 
+     * @return the {@link BeanContextStorage}
      */
-    private void validateContext() {
-        if (sessionContext.get() == null) {
+    private BeanContextStorage getStorage() {
+        final ConnectionContext connectionContext = ConnectionContext.current();
+
+        if (connectionContext == null) {
             throw new IllegalStateException(getClass().getSimpleName() + " has not been activated!");
         }
+
+        return connectionContext.getSessionStorage();
     }
 
 }
@@ -0,0 +1,381 @@
+package com.airepublic.tobi.core.spi;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shared timer for the timeouts and periodic tasks of all connections, e.g. idle timeouts,
+ * keep-alive pings or the ticks of event streams.
+ * <p>
+ * The timer is a hierarchical timing wheel: the first wheel has one bucket per tick and each
+ * further wheel has buckets spanning a whole turn of the previous wheel. A single thread advances
+ * the first wheel by one bucket per tick and runs the due tasks of that bucket. Whenever a wheel
+ * completes a turn the next bucket of the following wheel is cascaded, i.e. its tasks are moved to
+ * the buckets of the lower wheels matching their deadline. Scheduling and cancelling are constant
+ * time operations and a tick only touches the tasks of the current bucket instead of all scheduled
+ * tasks. The precision is one tick.
+ * </p>
+ * <p>
+ * Tasks are run on the timer thread and must therefore not block.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class TimingWheel implements AutoCloseable {
+    private final static Logger logger = Logger.getLogger(TimingWheel.class.getName());
+    private final static int LEVELS = 4;
+    private final long tickNanos;
+    private final int bits;
+    private final int mask;
+    private final Bucket[][] wheels;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    // the tick whose bucket is expired next, only accessed by the timer thread
+    private long tick = 0;
+
+
+    /**
+     * Constructor which starts the timer thread.
+     *
+     * @param name the name of the timer thread
+     * @param tickDuration the duration of a tick in milliseconds
+     * @param wheelSize the number of buckets per wheel, rounded up to a power of two
+     */
+    public TimingWheel(final String name, final long tickDuration, final int wheelSize) {
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, tickDuration));
+        bits = Math.min(15, 32 - Integer.numberOfLeadingZeros(Math.max(2, wheelSize) - 1));
+        mask = (1 << bits) - 1;
+        wheels = new Bucket[LEVELS][1 << bits];
+
+        for (final Bucket[] wheel : wheels) {
+            for (int i = 0; i < wheel.length; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+
+        startTime = System.nanoTime();
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+
+    /**
+     * Schedules the task to run once after the specified delay.
+     *
+     * @param task the task
+     * @param delay the delay
+     * @param unit the {@link TimeUnit} of the delay
+     * @return the {@link Timeout} to cancel the task
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0L, delay));
+        // round up so that the task does not run before its delay has elapsed
+        final Timeout timeout = new Timeout(this, task, (deadline + tickNanos - 1) / tickNanos);
+
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+
+        return timeout;
+    }
+
+
+    /**
+     * Gets the number of scheduled tasks which have neither run nor been cancelled.
+     *
+     * @return the number of pending tasks
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+
+    /**
+     * Gets the duration of a tick.
+     *
+     * @param unit the {@link TimeUnit}
+     * @return the tick duration in the specified unit
+     */
+    public long getTickDuration(final TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * The loop of the timer thread which advances the wheels every tick.
+     */
+    private void run() {
+        while (running) {
+            final long sleep = tick * tickNanos - (System.nanoTime() - startTime);
+
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (final InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+
+                continue;
+            }
+
+            removeCancelled();
+            cascade();
+            transferScheduled();
+            expire(wheels[0][(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+
+    /**
+     * Cascades the tasks of the higher wheels which have completed a turn.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            // the lower wheel starts a new turn
+            if ((tick & (1L << bits * level) - 1) != 0) {
+                break;
+            }
+
+            final Bucket bucket = wheels[level][(int) (tick >>> bits * level & mask)];
+            Timeout timeout;
+
+            while ((timeout = bucket.poll()) != null) {
+                place(timeout);
+            }
+        }
+    }
+
+
+    /**
+     * Moves the newly scheduled tasks into the bucket of their deadline.
+     */
+    private void transferScheduled() {
+        Timeout timeout;
+
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() == Timeout.SCHEDULED) {
+                place(timeout);
+            }
+        }
+    }
+
+
+    /**
+     * Removes the cancelled tasks from their buckets.
+     */
+    private void removeCancelled() {
+        Timeout timeout;
+
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+
+    /**
+     * Adds the task to the bucket of the lowest wheel which covers its deadline. Tasks which are
+     * already due are added to the bucket of the current tick and tasks beyond the range of the
+     * highest wheel are added to its last bucket and placed again when it is cascaded.
+     *
+     * @param timeout the {@link Timeout}
+     */
+    private void place(final Timeout timeout) {
+        final long deadline = Math.max(tick, timeout.deadline);
+        final long delta = deadline - tick;
+
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << bits * (level + 1)) {
+                wheels[level][(int) (deadline >>> bits * level & mask)].add(timeout);
+                return;
+            }
+        }
+
+        wheels[LEVELS - 1][(int) ((tick >>> bits * (LEVELS - 1)) - 1 & mask)].add(timeout);
+    }
+
+
+    /**
+     * Runs the due tasks of the bucket.
+     *
+     * @param bucket the bucket of the current tick
+     */
+    private void expire(final Bucket bucket) {
+        Timeout timeout;
+
+        while ((timeout = bucket.poll()) != null) {
+            if (timeout.deadline > tick) {
+                // may only happen for tasks added while cascading
+                place(timeout);
+            } else if (timeout.state.compareAndSet(Timeout.SCHEDULED, Timeout.EXPIRED)) {
+                pending.decrementAndGet();
+
+                try {
+                    timeout.task.run();
+                } catch (final Throwable t) {
+                    logger.log(Level.WARNING, "Error running scheduled task!", t);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Stops the timer thread and discards the scheduled tasks.
+     */
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        scheduled.clear();
+        cancelled.clear();
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public static class Timeout {
+        private final static int SCHEDULED = 0;
+        private final static int CANCELLED = 1;
+        private final static int EXPIRED = 2;
+        private final TimingWheel timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+        // the links of the bucket, only accessed by the timer thread
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+
+        /**
+         * Constructor.
+         *
+         * @param timer the {@link TimingWheel}
+         * @param task the task
+         * @param deadline the deadline in ticks
+         */
+        Timeout(final TimingWheel timer, final Runnable task, final long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+
+        /**
+         * Cancels the task if it has not run yet.
+         *
+         * @return true if the task has been cancelled, false if it has already run or been
+         *         cancelled before
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(SCHEDULED, CANCELLED)) {
+                timer.pending.decrementAndGet();
+                timer.cancelled.add(this);
+                return true;
+            }
+
+            return false;
+        }
+
+
+        /**
+         * Checks whether the task has been cancelled.
+         *
+         * @return true if the task has been cancelled
+         */
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+
+        /**
+         * Checks whether the task has run.
+         *
+         * @return true if the task has run
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /**
+     * A doubly linked list of {@link Timeout}s which supports removing any element in constant
+     * time.
+     */
+    private static class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+
+        /**
+         * Appends the {@link Timeout}.
+         *
+         * @param timeout the {@link Timeout}
+         */
+        void add(final Timeout timeout) {
+            timeout.bucket = this;
+
+            if (tail == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+
+        /**
+         * Removes and returns the first {@link Timeout}.
+         *
+         * @return the {@link Timeout} or null if the bucket is empty
+         */
+        Timeout poll() {
+            final Timeout timeout = head;
+
+            if (timeout != null) {
+                remove(timeout);
+            }
+
+            return timeout;
+        }
+
+
+        /**
+         * Removes the {@link Timeout}.
+         *
+         * @param timeout the {@link Timeout}
+         */
+        void remove(final Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
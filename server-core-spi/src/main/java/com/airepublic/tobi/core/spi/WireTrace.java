@@ -0,0 +1,154 @@
+package com.airepublic.tobi.core.spi;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Traces the raw bytes read from and written to the connections of a {@link IServerModule}. A
+ * disabled trace returns immediately without touching the buffers, so the hot path does not copy
+ * or format anything unless tracing has been turned on for the module.
+ * <p>
+ * If enabled only every n-th message is traced (sampling) and at most the configured number of
+ * bytes of each message is formatted. Formatting only happens if the {@link Logger} accepts the
+ * trace level. The traced buffers are never modified.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class WireTrace {
+    /** A {@link WireTrace} which never traces. */
+    public final static WireTrace DISABLED = new WireTrace(null, null, 0, 0);
+    private final Logger logger;
+    private final String name;
+    private final boolean enabled;
+    private final int sampleRate;
+    private final int maxBytes;
+    private final AtomicLong counter = new AtomicLong();
+
+    /**
+     * The direction of the traced data.
+     */
+    public enum Direction {
+        READ,
+        WRITE
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param logger the {@link Logger} to trace to or null to disable tracing
+     * @param name the name of the traced module
+     * @param sampleRate trace every n-th message (values below 1 disable tracing)
+     * @param maxBytes the maximum number of bytes formatted per message
+     */
+    public WireTrace(final Logger logger, final String name, final int sampleRate, final int maxBytes) {
+        this.logger = logger;
+        this.name = name;
+        this.sampleRate = sampleRate;
+        this.maxBytes = Math.max(0, maxBytes);
+        enabled = logger != null && sampleRate > 0;
+    }
+
+
+    /**
+     * Checks whether tracing is enabled.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Traces the remaining bytes of the buffer if tracing is enabled and the message is sampled.
+     *
+     * @param direction the {@link Direction}
+     * @param sessionId the id of the session
+     * @param buffer the {@link ByteBuffer} (not modified)
+     */
+    public void trace(final Direction direction, final String sessionId, final ByteBuffer buffer) {
+        // avoid creating the varargs array if tracing is disabled
+        if (enabled) {
+            trace(direction, sessionId, new ByteBuffer[] { buffer });
+        }
+    }
+
+
+    /**
+     * Traces the remaining bytes of the buffers if tracing is enabled and the message is sampled.
+     *
+     * @param direction the {@link Direction}
+     * @param sessionId the id of the session
+     * @param buffers the {@link ByteBuffer}s (not modified)
+     */
+    public void trace(final Direction direction, final String sessionId, final ByteBuffer... buffers) {
+        if (!enabled || buffers == null) {
+            return;
+        }
+
+        if (sampleRate > 1 && counter.getAndIncrement() % sampleRate != 0) {
+            return;
+        }
+
+        if (!logger.isLoggable(Level.INFO)) {
+            return;
+        }
+
+        logger.log(Level.INFO, () -> format(direction, sessionId, buffers));
+    }
+
+
+    /**
+     * Formats the message as escaped text truncated to the maximum number of bytes.
+     *
+     * @param direction the {@link Direction}
+     * @param sessionId the id of the session
+     * @param buffers the {@link ByteBuffer}s
+     * @return the formatted message
+     */
+    String format(final Direction direction, final String sessionId, final ByteBuffer... buffers) {
+        long length = 0;
+
+        for (final ByteBuffer buffer : buffers) {
+            if (buffer != null) {
+                length += buffer.remaining();
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder(64 + (int) Math.min(length, maxBytes) * 2);
+        sb.append('[').append(name).append("] #").append(sessionId).append(' ').append(direction).append(' ').append(length).append(" bytes: ");
+
+        int count = 0;
+
+        for (final ByteBuffer buffer : buffers) {
+            if (buffer == null) {
+                continue;
+            }
+
+            for (int i = buffer.position(); i < buffer.limit() && count < maxBytes; i++, count++) {
+                final int b = buffer.get(i) & 0xFF;
+
+                if (b == '\r') {
+                    sb.append("\\r");
+                } else if (b == '\n') {
+                    sb.append("\\n");
+                } else if (b >= 0x20 && b < 0x7F) {
+                    sb.append((char) b);
+                } else {
+                    sb.append('.');
+                }
+            }
+        }
+
+        if (count < length) {
+            sb.append("...(").append(length - count).append(" more)");
+        }
+
+        return sb.toString();
+    }
+}
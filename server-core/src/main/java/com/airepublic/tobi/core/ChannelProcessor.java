@@ -1,13 +1,15 @@
 package com.airepublic.tobi.core;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.CompletionHandler;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
@@ -18,8 +20,10 @@ import javax.inject.Inject;
 
 import com.airepublic.logging.java.LogLevel;
 import com.airepublic.logging.java.LoggerConfig;
-import com.airepublic.tobi.core.spi.BeanContextStorage;
+import com.airepublic.tobi.core.spi.BufferPool;
 import com.airepublic.tobi.core.spi.ChannelAction;
+import com.airepublic.tobi.core.spi.ConnectionContext;
+import com.airepublic.tobi.core.spi.FileRegion;
 import com.airepublic.tobi.core.spi.IChannelEncoder;
 import com.airepublic.tobi.core.spi.IChannelEncoder.Status;
 import com.airepublic.tobi.core.spi.IChannelProcessor;
@@ -30,8 +34,8 @@ import com.airepublic.tobi.core.spi.IServerContext;
 import com.airepublic.tobi.core.spi.IServerModule;
 import com.airepublic.tobi.core.spi.IServerSession;
 import com.airepublic.tobi.core.spi.Pair;
-import com.airepublic.tobi.core.spi.RequestScopedContext;
-import com.airepublic.tobi.core.spi.SessionScopedContext;
+import com.airepublic.tobi.core.spi.WireTrace;
+import com.airepublic.tobi.core.spi.WireTrace.Direction;
 
 /**
  * The {@link IChannelProcessor} implementation.
@@ -41,62 +45,91 @@ import com.airepublic.tobi.core.spi.SessionScopedContext;
  */
 public class ChannelProcessor implements IChannelProcessor {
     private static AtomicLong SESSION_ID_GENERATOR = new AtomicLong();
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    private static final int FILE_CHUNK_SIZE = 256 * 1024;
     @Inject
     @LoggerConfig(level = LogLevel.INFO)
     private Logger logger;
     private IServerModule module;
     private SocketChannel channel;
-    private final Selector selector;
+    private Selector selector;
+    private volatile Executor eventLoop;
+    // the event-loop thread which prepared and processes this connection
+    private volatile Thread eventLoopThread;
+    // changes with every connection to recognize closes of a previous connection
+    private final AtomicLong generation = new AtomicLong();
     private IIOHandler ioHandler;
     private final AtomicBoolean closing = new AtomicBoolean(false);
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private IChannelEncoder channelEncoder;
     private IServerSession session;
+    private ConnectionContext connectionContext;
+    private WireTrace wireTrace = WireTrace.DISABLED;
+    // state of a response which could not be written completely
+    private ByteBuffer[] pendingBuffers;
+    private IChannelEncoder pendingEncoder;
+    private FileRegion pendingRegion;
+    private CompletionHandler<?, ?> pendingCompletionHandler;
+    private long pendingLength;
     @Inject
     private IServerContext serverContext;
-    @Inject
-    private RequestScopedContext requestScopedContext;
-    @Inject
-    private SessionScopedContext sessionScopedContext;
-
-    /**
-     * Constructor.
-     * 
-     * @throws IOException if a {@link Selector} could not be opened
-     */
-    public ChannelProcessor() throws IOException {
-        selector = Selector.open();
-    }
-
 
     /**
-     * Re-initializes the {@link ChannelProcessor} to be reused.
+     * Re-initializes the {@link ChannelProcessor} for a new connection. A processor which has been
+     * closed is released to the pool of the {@link IServerContext} and prepared again when it is
+     * reused.
      * 
      * @param module the {@link IServerModule}
      * @param channel the {@link SocketChannel}
+     * @param selector the {@link Selector} of the event-loop
+     * @param eventLoop the {@link Executor} of the event-loop
      * @param ioHandler the {@link IIOHandler}
      * @throws IOException if the channel is already closed
      */
     @Override
-    public void prepare(final IServerModule module, final SocketChannel channel, final IIOHandler ioHandler) throws IOException {
-        final BeanContextStorage sessionContext = new BeanContextStorage();
-        requestScopedContext.activate(new BeanContextStorage());
-        sessionScopedContext.activate(sessionContext);
+    public void prepare(final IServerModule module, final SocketChannel channel, final Selector selector, final Executor eventLoop, final IIOHandler ioHandler) throws IOException {
+        // reset
+        synchronized (closed) {
+            generation.incrementAndGet();
+            closing.set(false);
+            closed.set(false);
+        }
+
+        // the connection is owned by the processor from now on and released when it is closed
+        this.module = module;
+        this.channel = channel;
+        this.selector = selector;
+        this.ioHandler = ioHandler;
+        this.eventLoop = eventLoop;
+        eventLoopThread = Thread.currentThread();
+        connectionContext = new ConnectionContext();
+        activateContexts();
+
+        // the client proxy resolves the session of the active context, so it can be reused
+        if (session == null) {
+            session = CDI.current().select(IServerSession.class).get();
+        }
 
-        session = CDI.current().select(IServerSession.class).get();
         session.setId("" + SESSION_ID_GENERATOR.incrementAndGet());
+        session.setChannelProcessor(this);
         serverContext.addServerSession(session);
-        serverContext.addSessionContext(session.getId(), sessionContext);
+        serverContext.addSessionContext(session.getId(), connectionContext);
+        wireTrace = serverContext.getWireTrace(module.getName());
 
-        // reset
-        closing.set(false);
-        closed.set(false);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Starting channel processing for module '" + module.getName() + "' session #" + session.getId());
+        }
+    }
 
-        session.setChannelProcessor(this);
 
-        this.module = module;
-        this.channel = channel;
-        this.ioHandler = ioHandler;
+    /**
+     * Activates the request and session scoped contexts of this connection on the current thread.
+     * As the event-loop thread multiplexes many connections the contexts need to be activated
+     * before each connection is processed. This only binds the {@link ConnectionContext} to the
+     * thread and does not allocate.
+     */
+    protected void activateContexts() {
+        connectionContext.activate();
     }
 
 
@@ -119,46 +152,62 @@ public class ChannelProcessor implements IChannelProcessor {
 
 
     @Override
-    public void run() {
+    public void process(final SelectionKey key) {
+        if (closed.get()) {
+            return;
+        }
 
-        logger.info("Starting channel processing for module '" + module.getName() + "' session #" + session.getId());
+        activateContexts();
 
-        while (getSelector().isOpen() && !closing.get() && !closed.get()) {
-            try {
-                getSelector().select();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                handleRead();
+            }
 
-                if (getSelector().isOpen()) {
-                    final Set<SelectionKey> selectedKeys = getSelector().selectedKeys();
-                    final Iterator<SelectionKey> it = selectedKeys.iterator();
+            if (key.isValid() && key.isWritable() && !closing.get()) {
+                handleWrite();
+            }
 
-                    while (it.hasNext()) {
-                        final SelectionKey key = it.next();
-                        it.remove();
+            if (!key.isValid()) {
+                handleAction(ChannelAction.CLOSE_ALL);
+            }
+        } catch (final Exception e) {
+            logger.log(Level.SEVERE, "Error processing request for session #" + session.getId(), e);
+        }
 
-                        if (key == null) {
-                            continue;
-                        }
+        if (closing.get()) {
+            close();
+        }
+    }
 
-                        if (key.isValid() && key.isReadable()) {
-                            handleRead();
-                        }
 
-                        if (key.isValid() && key.isWritable()) {
-                            handleWrite();
-                        }
+    @Override
+    public boolean inEventLoop() {
+        return Thread.currentThread() == eventLoopThread;
+    }
 
-                        if (!key.isValid()) {
-                            handleAction(ChannelAction.CLOSE_ALL);
-                        }
-                    }
-                }
-            } catch (final Exception e) {
-                logger.log(Level.SEVERE, "Error processing request for session #" + session.getId(), e);
-            }
+
+    @Override
+    public void execute(final Runnable task) {
+        final Executor executor = eventLoop;
+
+        if (executor == null) {
+            throw new RejectedExecutionException("Channel processor has not been prepared!");
         }
 
-        close();
+        executor.execute(task);
+    }
+
 
+    @Override
+    public long getGeneration() {
+        return generation.get();
+    }
+
+
+    @Override
+    public boolean isClosed() {
+        return closed.get();
     }
 
 
@@ -176,6 +225,8 @@ public class ChannelProcessor implements IChannelProcessor {
             break;
             case CLOSE_INPUT:
                 channel.shutdownInput();
+                // the shut down input must not be mistaken for the peer closing the connection
+                channel.keyFor(getSelector()).interestOpsAnd(~SelectionKey.OP_READ);
 
                 if (getIoHandler() != null) {
                     getIoHandler().handleClosedInput();
@@ -187,6 +238,16 @@ public class ChannelProcessor implements IChannelProcessor {
             case CLOSE_ALL:
                 closing.set(true);
             break;
+            case KEEP_ALIVE:
+                // the exchange has completed - wait for the next request
+                setIoHandler(null);
+                // the request scoped beans of the exchange are destroyed but the storage is kept
+                connectionContext.endRequest();
+                channel.keyFor(getSelector()).interestOps(SelectionKey.OP_READ);
+
+                // process a pipelined request which has already been received
+                handleDecoded(channelEncoder.decode(EMPTY_BUFFER), true);
+            break;
         }
     }
 
@@ -197,9 +258,10 @@ public class ChannelProcessor implements IChannelProcessor {
      * @throws IOException if something goes wrong
      */
     protected void handleRead() throws IOException {
+        final BufferPool bufferPool = serverContext.getBufferPool();
+        final ByteBuffer buffer = bufferPool.acquire(module.getReadBufferSize());
+
         try {
-            ChannelAction action = ChannelAction.KEEP_OPEN;
-            final ByteBuffer buffer = ByteBuffer.allocate(module.getReadBufferSize());
             final SocketChannel channel = getChannel();
 
             if (channel.isOpen()) {
@@ -212,43 +274,9 @@ public class ChannelProcessor implements IChannelProcessor {
                     return;
                 }
 
-                buffer.mark();
-                final byte[] bytes = new byte[buffer.remaining()];
-                buffer.get(bytes);
-                logger.info("read raw --> " + new String(bytes));
-                buffer.reset();
-                // Thread.sleep(3000);
-
-                final Pair<Status, IRequest> result = channelEncoder.decode(buffer);
+                wireTrace.trace(Direction.READ, session.getId(), buffer);
 
-                if (result.getValue1() == Status.FULLY_READ) {
-                    final IRequest request = result.getValue2();
-                    session.setRequest(request);
-
-                    module.checkAuthorization(session);
-
-                    if (getIoHandler() == null) {
-                        setIoHandler(module.determineIoHandler(request));
-                        logger.info("Using '" + getIoHandler().getClass().getSimpleName() + "' to process session #" + session.getId());
-                    }
-
-                    if (len > 0) {
-                        try {
-                            action = getIoHandler().consume(request);
-                        } catch (final Exception e) {
-                            action = getIoHandler().onReadError(e);
-                        }
-                    } else {
-                        action = ChannelAction.KEEP_OPEN;
-                    }
-
-                    handleAction(action);
-                } else if (result.getValue1() == Status.NEED_MORE_DATA) {
-                    // need more data to receive request
-                    handleAction(ChannelAction.KEEP_OPEN);
-                } else if (result.getValue1() == Status.CLOSED) {
-                    handleAction(ChannelAction.CLOSE_ALL);
-                }
+                handleDecoded(channelEncoder.decode(buffer), len > 0);
             } else {
                 handleAction(ChannelAction.CLOSE_ALL);
             }
@@ -259,6 +287,103 @@ public class ChannelProcessor implements IChannelProcessor {
             logger.log(Level.WARNING, "Exception during read processing in session #" + session.getId() + ". Closing connection: " + e.getLocalizedMessage(), e);
 
             handleAction(ChannelAction.CLOSE_ALL);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+
+    /**
+     * Handles the result of decoding received data.
+     * 
+     * @param result the {@link Status} and the decoded {@link IRequest}
+     * @param consume whether a fully read request should be passed to the {@link IIOHandler}
+     * @throws IOException if something goes wrong
+     */
+    protected void handleDecoded(final Pair<Status, IRequest> result, final boolean consume) throws IOException {
+        ChannelAction action = ChannelAction.KEEP_OPEN;
+
+        if (result.getValue1() == Status.FULLY_READ) {
+            final IRequest request = result.getValue2();
+            session.setRequest(request);
+
+            // a new exchange starts unless the handler keeps the connection, e.g. after an upgrade
+            if (getIoHandler() == null && !serverContext.getAdmissionControl().acquireRequest(getRemoteAddress())) {
+                rejectRequest(request, consume);
+                return;
+            }
+
+            module.checkAuthorization(session);
+
+            if (getIoHandler() == null) {
+                setIoHandler(module.determineIoHandler(request));
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Using '" + getIoHandler().getClass().getSimpleName() + "' to process session #" + session.getId());
+                }
+            }
+
+            if (consume) {
+                try {
+                    action = getIoHandler().consume(request);
+                } catch (final Exception e) {
+                    action = getIoHandler().onReadError(e);
+                }
+            }
+
+            handleAction(action);
+        } else if (result.getValue1() == Status.NEED_MORE_DATA) {
+            // need more data to receive request
+            handleAction(ChannelAction.KEEP_OPEN);
+        } else if (result.getValue1() == Status.CLOSED) {
+            handleAction(ChannelAction.CLOSE_ALL);
+        }
+    }
+
+
+    /**
+     * Responds to a request which has not been admitted with the reject {@link IIOHandler} of the
+     * module or closes the connection if the module has none.
+     * 
+     * @param request the {@link IRequest}
+     * @param consume whether the request should be passed to the {@link IIOHandler}
+     * @throws IOException if something goes wrong
+     */
+    protected void rejectRequest(final IRequest request, final boolean consume) throws IOException {
+        final IIOHandler rejectHandler = consume ? module.getRejectHandler(request) : null;
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Rejecting request of session #" + session.getId());
+        }
+
+        if (rejectHandler == null) {
+            handleAction(ChannelAction.CLOSE_ALL);
+            return;
+        }
+
+        setIoHandler(rejectHandler);
+        ChannelAction action;
+
+        try {
+            action = rejectHandler.consume(request);
+        } catch (final Exception e) {
+            action = rejectHandler.onReadError(e);
+        }
+
+        handleAction(action);
+    }
+
+
+    /**
+     * Gets the address of the remote peer.
+     * 
+     * @return the {@link InetAddress} or null if the channel is not connected anymore
+     */
+    private InetAddress getRemoteAddress() {
+        try {
+            return ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+        } catch (final IOException e) {
+            return null;
         }
     }
 
@@ -270,18 +395,51 @@ public class ChannelProcessor implements IChannelProcessor {
      */
     protected void handleWrite() throws IOException {
         if (getIoHandler() == null) {
+            Pair<Status, IRequest> decoded;
+
+            // e.g. a TLS handshake waiting for the connection to become writable
+            try {
+                decoded = channelEncoder.onWritable();
+            } catch (final Exception e) {
+                logger.log(Level.WARNING, "Exception during write processing in session #" + session.getId() + ". Closing connection: " + e.getLocalizedMessage(), e);
+                handleAction(ChannelAction.CLOSE_ALL);
+                return;
+            }
+
+            if (decoded != null) {
+                handleDecoded(decoded, true);
+                return;
+            }
+
             handleAction(ChannelAction.CLOSE_ALL);
             throw new IOException("IOHandler has not been set/found!");
         }
 
         try {
+            // finish writing the previous response before producing the next
+            if (isWritePending()) {
+                synchronized (closed) {
+                    if (!closed.get()) {
+                        flushPending();
+                    }
+                }
+
+                return;
+            }
 
             final Pair<? extends IResponse, CompletionHandler<?, ?>> pair = getIoHandler().produce();
 
             if (pair != null && pair.getValue1() != null) {
                 flush(pair);
             } else {
-                getChannel().keyFor(getSelector()).interestOps(SelectionKey.OP_READ);
+                final SelectionKey key = getChannel().keyFor(getSelector());
+                // suspend the connection while the request is processed by another thread
+                key.interestOps(getIoHandler().isProcessing() ? 0 : SelectionKey.OP_READ);
+
+                // a response might have been queued before the write interest was cleared
+                if (getIoHandler().hasPendingResponses()) {
+                    key.interestOpsOr(SelectionKey.OP_WRITE);
+                }
             }
         } catch (final Exception e) {
             logger.log(Level.SEVERE, "Exception during write processing in module '" + module.getName() + "' session #" + session.getId() + ": ", e);
@@ -291,7 +449,8 @@ public class ChannelProcessor implements IChannelProcessor {
 
 
     /**
-     * Flushes the write buffers to the connection.
+     * Flushes the write buffers to the connection. If the response cannot be written completely
+     * the rest is written when the connection becomes writable again (see {@link #flushPending()}).
      * 
      * @throws IOException if something goes wrong
      */
@@ -304,98 +463,284 @@ public class ChannelProcessor implements IChannelProcessor {
                     throw new IOException("Handler has not been initialized!");
                 }
 
-                // Pair<ByteBuffer[], CompletionHandler<?, ?>> pair = getNextWriteBuffer();
-                ChannelAction action = ChannelAction.KEEP_OPEN;
-
                 if (pair.getValue1() != null) {
-                    try {
-                        final SocketChannel channel = getChannel();
-                        final IResponse response = pair.getValue1();
-                        ByteBuffer[] buffers = null;
-
-                        if (response.getAttributesBuffer() != null && response.getPayload() != null) {
-                            buffers = new ByteBuffer[] { pair.getValue1().getAttributesBuffer(), pair.getValue1().getPayload() };
-                        } else if (response.getAttributesBuffer() != null) {
-                            buffers = new ByteBuffer[] { response.getAttributesBuffer() };
-                        } else if (response.getPayload() != null) {
-                            buffers = new ByteBuffer[] { response.getPayload() };
-                        } else {
-                            buffers = new ByteBuffer[] {};
-                        }
-
-                        long length = -1;
+                    final IResponse response = pair.getValue1();
+                    pendingCompletionHandler = pair.getValue2();
+                    pendingRegion = response.getFileRegion();
+                    pendingLength = 0;
 
-                        buffers = channelEncoder.encode(buffers);
-
-                        if (channel.isOpen()) {
-                            length = channel.write(buffers);
-                        }
+                    try {
+                        final ByteBuffer[] buffers = response.getBuffers();
 
-                        action = handler.writeSuccessful(pair.getValue2(), length);
+                        // keep the encoder as the handler might switch it after the write
+                        pendingEncoder = channelEncoder;
+                        pendingBuffers = pendingEncoder.encode(buffers);
+                        wireTrace.trace(Direction.WRITE, session.getId(), pendingBuffers);
                     } catch (final Throwable t) {
-                        logger.log(Level.SEVERE, "Error writing buffers in module '" + module.getName() + "' session #" + session.getId() + ": " + t.getLocalizedMessage());
-                        action = handler.writeFailed(pair.getValue2(), t);
+                        failPending(t);
+                        return;
                     }
 
-                    handleAction(action);
+                    flushPending();
                 }
             }
         }
     }
 
 
-    @Override
-    public void close() {
+    /**
+     * Checks whether a response has not been written completely yet.
+     * 
+     * @return true if a write is pending
+     */
+    protected boolean isWritePending() {
+        return pendingEncoder != null;
+    }
 
-        synchronized (closed) {
-            if (closed.compareAndSet(false, true)) {
-                logger.info("Closing channel for module '" + module.getName() + "' session #" + session.getId() + " !");
 
-                session.close();
+    /**
+     * Writes as much of the pending response as the connection accepts. The pending buffers are
+     * written first followed by the {@link FileRegion} which is either transferred directly from
+     * the file if the {@link IChannelEncoder} passes buffers through unchanged or otherwise mapped
+     * in chunks and encoded. If the connection does not accept more bytes the processor waits for
+     * the connection to become writable again. Once everything has been written the
+     * {@link IIOHandler} is notified.
+     * 
+     * @throws IOException if something goes wrong
+     */
+    protected void flushPending() throws IOException {
+        final IIOHandler handler = getIoHandler();
+        final SocketChannel channel = getChannel();
 
-                try {
-                    serverContext.removeServerSession(session);
-                } catch (final IOException e) {
-                }
+        try {
+            while (true) {
+                if (pendingBuffers != null) {
+                    if (!channel.isOpen()) {
+                        throw new IOException("Channel has been closed!");
+                    }
 
-                if (ioHandler != null) {
-                    ioHandler.onSessionClose(session);
-                    ioHandler = null;
-                }
+                    pendingLength += channel.write(pendingBuffers);
 
-                if (sessionScopedContext.isActive()) {
-                    sessionScopedContext.deactivate();
+                    if (hasRemaining(pendingBuffers)) {
+                        awaitWritable();
+                        return;
+                    }
+
+                    pendingEncoder.release(pendingBuffers);
+                    pendingBuffers = null;
                 }
 
-                if (requestScopedContext.isActive()) {
-                    requestScopedContext.deactivate();
+                if (pendingRegion == null || pendingRegion.isDone()) {
+                    break;
                 }
 
-                getChannel().keyFor(getSelector()).cancel();
+                if (pendingEncoder.isPassThrough()) {
+                    final long written = pendingRegion.transferTo(channel);
+                    pendingLength += written;
 
-                try {
-                    channelEncoder.close();
-                } catch (final Exception e1) {
+                    if (written == 0 && !pendingRegion.isDone()) {
+                        awaitWritable();
+                        return;
+                    }
+                } else {
+                    pendingBuffers = pendingEncoder.encode(pendingRegion.map(FILE_CHUNK_SIZE));
                 }
+            }
+        } catch (final Throwable t) {
+            failPending(t);
+            return;
+        }
+
+        final CompletionHandler<?, ?> completionHandler = pendingCompletionHandler;
+        final long length = pendingLength;
+        clearPending();
+
+        handleAction(handler.writeSuccessful(completionHandler, length));
+    }
+
+
+    /**
+     * Waits for the connection to become writable to continue writing the pending response. Reads
+     * are suspended meanwhile so that no further request is consumed before the response has been
+     * written.
+     */
+    private void awaitWritable() {
+        getChannel().keyFor(getSelector()).interestOps(SelectionKey.OP_WRITE);
+    }
+
+
+    /**
+     * Discards the pending response and notifies the {@link IIOHandler} about the failed write.
+     * 
+     * @param t the cause
+     * @throws IOException if something goes wrong
+     */
+    private void failPending(final Throwable t) throws IOException {
+        logger.log(Level.SEVERE, "Error writing buffers in module '" + module.getName() + "' session #" + session.getId() + ": " + t.getLocalizedMessage());
+        final CompletionHandler<?, ?> completionHandler = pendingCompletionHandler;
+        clearPending();
+
+        handleAction(getIoHandler().writeFailed(completionHandler, t));
+    }
+
+
+    /**
+     * Releases the pending buffers and closes the pending {@link FileRegion}.
+     */
+    private void clearPending() {
+        if (pendingBuffers != null && pendingEncoder != null) {
+            pendingEncoder.release(pendingBuffers);
+        }
+
+        if (pendingRegion != null) {
+            try {
+                pendingRegion.close();
+            } catch (final IOException e) {
+            }
+        }
 
+        pendingBuffers = null;
+        pendingEncoder = null;
+        pendingRegion = null;
+        pendingCompletionHandler = null;
+        pendingLength = 0;
+    }
+
+
+    /**
+     * Checks whether any of the buffers has remaining bytes.
+     * 
+     * @param buffers the buffers
+     * @return true if there are remaining bytes
+     */
+    private static boolean hasRemaining(final ByteBuffer[] buffers) {
+        for (final ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public void close() {
+        close(getGeneration());
+    }
+
+
+    @Override
+    public void close(final long generation) {
+        if (inEventLoop()) {
+            closeConnection(generation);
+            return;
+        }
+
+        try {
+            execute(() -> closeConnection(generation));
+        } catch (final RejectedExecutionException e) {
+            // the event-loop has been stopped and will not process the connection anymore
+            closeConnection(generation);
+        }
+    }
+
+
+    /**
+     * Closes the connection and releases the {@link ChannelProcessor} to the pool if it still
+     * serves the connection of the specified generation.
+     * 
+     * @param generation the generation of the connection
+     */
+    private void closeConnection(final long generation) {
+        boolean released = false;
+
+        synchronized (closed) {
+            if (this.generation.get() == generation && closed.compareAndSet(false, true)) {
                 try {
-                    if (getChannel().isOpen()) {
-                        getChannel().close();
+                    releaseSession();
+                } catch (final Exception e) {
+                    logger.log(Level.WARNING, "Error releasing the session of module '" + module.getName() + "': " + e.getLocalizedMessage(), e);
+                } finally {
+                    // the admission and the channel are released even if the processor has not been prepared completely
+                    serverContext.getAdmissionControl().releaseConnection(module.getName());
+                    ConnectionContext.deactivate();
+
+                    final SelectionKey key = selector != null ? channel.keyFor(selector) : null;
+
+                    if (key != null) {
+                        key.cancel();
                     }
-                } catch (final IOException e) {
-                }
 
-                try {
-                    getSelector().close();
-                } catch (final IOException e) {
+                    try {
+                        if (channel.isOpen()) {
+                            channel.close();
+                        }
+                    } catch (final IOException e) {
+                    }
+
+                    // drop the per-connection state which is not overwritten by prepare
+                    channelEncoder = null;
+                    connectionContext = null;
+                    released = true;
                 }
+            }
+        }
+
+        if (released) {
+            serverContext.getChannelProcessorPool().release(this);
+        }
+    }
+
+
+    /**
+     * Closes the session of the connection and releases its CDI contexts, {@link IIOHandler} and
+     * {@link IChannelEncoder}. Parts of the session which have not been set up because the
+     * preparation of the processor failed are skipped.
+     */
+    private void releaseSession() {
+        if (connectionContext != null) {
+            activateContexts();
+        }
 
-                // out.clear();
-                // in.clear();
+        final String sessionId = session != null ? session.getId() : null;
 
-                selector.wakeup();
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Closing channel for module '" + module.getName() + "' session #" + sessionId + " !");
+        }
+
+        if (session != null) {
+            session.close();
+
+            try {
+                serverContext.removeServerSession(session);
+            } catch (final IOException e) {
             }
         }
+
+        if (ioHandler != null) {
+            ioHandler.onSessionClose(session);
+            ioHandler = null;
+        }
+
+        module.onChannelClose(this);
+        clearPending();
+
+        // the encoder might still need the session scoped beans
+        if (channelEncoder != null) {
+            try {
+                channelEncoder.close();
+            } catch (final Exception e1) {
+            }
+        }
+
+        if (connectionContext != null) {
+            connectionContext.destroy();
+        }
+
+        if (sessionId != null) {
+            serverContext.removeSessionContext(sessionId);
+        }
     }
 
 
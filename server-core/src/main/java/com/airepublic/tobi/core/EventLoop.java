@@ -0,0 +1,237 @@
+package com.airepublic.tobi.core;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.airepublic.tobi.core.spi.IChannelProcessor;
+import com.airepublic.tobi.core.spi.IServerContext;
+import com.airepublic.tobi.core.spi.IServerModule;
+
+/**
+ * A reactor thread which owns one {@link Selector} and multiplexes the IO of many
+ * {@link SocketChannel}s. Each registered {@link SocketChannel} is represented by its
+ * {@link IChannelProcessor} which is attached to the channel's {@link SelectionKey}.
+ * <p>
+ * Tasks which must run on the reactor thread, e.g. the registration of new channels or the close
+ * of a connection requested by another thread, are queued and the {@link Selector} is woken up to
+ * process them.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class EventLoop implements Executor, Runnable, AutoCloseable {
+    private final Logger logger;
+    private final IServerContext serverContext;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the reactor thread
+     * @param logger the {@link Logger}
+     * @param serverContext the {@link IServerContext}
+     * @throws IOException if the {@link Selector} could not be opened
+     */
+    public EventLoop(final String name, final Logger logger, final IServerContext serverContext) throws IOException {
+        this.logger = logger;
+        this.serverContext = serverContext;
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+
+    /**
+     * Starts the reactor thread.
+     */
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            thread.start();
+        }
+    }
+
+
+    /**
+     * Registers the accepted {@link SocketChannel} with this event-loop. The
+     * {@link IChannelProcessor} for the channel will be taken from the pool or created and prepared
+     * on the reactor thread and the {@link IServerModule} will be asked to accept it. Once the
+     * {@link IChannelProcessor} is prepared it owns the channel and its admission and releases
+     * both when it is closed, even if the preparation fails.
+     *
+     * @param module the {@link IServerModule}
+     * @param channel the accepted {@link SocketChannel}
+     */
+    public void register(final IServerModule module, final SocketChannel channel) {
+        execute(() -> {
+            final IChannelProcessor processor;
+
+            try {
+                processor = serverContext.getChannelProcessorPool().acquire();
+            } catch (final Exception e) {
+                logger.log(Level.SEVERE, "Error creating session", e);
+                serverContext.getAdmissionControl().releaseConnection(module.getName());
+
+                try {
+                    channel.close();
+                } catch (final IOException e1) {
+                }
+
+                return;
+            }
+
+            try {
+                processor.prepare(module, channel, selector, this, null);
+                module.accept(processor);
+
+                final SelectionKey key = channel.keyFor(selector);
+
+                if (key != null && key.attachment() == null) {
+                    key.attach(processor);
+                }
+            } catch (final Exception e) {
+                logger.log(Level.SEVERE, "Error creating session", e);
+                processor.close();
+            }
+        });
+    }
+
+
+    /**
+     * Queues the task to be executed on the reactor thread.
+     *
+     * @param task the task
+     * @throws RejectedExecutionException if the event-loop has been stopped
+     */
+    @Override
+    public void execute(final Runnable task) {
+        if (!running.get()) {
+            throw new RejectedExecutionException("Event-loop " + thread.getName() + " has been stopped!");
+        }
+
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Checks whether the current thread is the reactor thread of this event-loop.
+     *
+     * @return true if called from the reactor thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+
+    /**
+     * Gets the {@link Selector} owned by this event-loop.
+     *
+     * @return the {@link Selector}
+     */
+    public Selector getSelector() {
+        return selector;
+    }
+
+
+    @Override
+    public void run() {
+        logger.info("Starting event-loop " + thread.getName());
+        serverContext.getBufferPool().enableThreadCache();
+
+        while (running.get()) {
+            try {
+                selector.select();
+
+                runTasks();
+
+                if (!selector.isOpen()) {
+                    break;
+                }
+
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+
+                    final IChannelProcessor processor = (IChannelProcessor) key.attachment();
+
+                    if (processor != null) {
+                        processor.process(key);
+                    }
+                }
+            } catch (final ClosedSelectorException e) {
+                break;
+            } catch (final Exception e) {
+                logger.log(Level.SEVERE, "Error processing selected keys in event-loop " + thread.getName(), e);
+            }
+        }
+
+        closeProcessors();
+        serverContext.getBufferPool().disableThreadCache();
+    }
+
+
+    /**
+     * Runs all queued tasks.
+     */
+    private void runTasks() {
+        Runnable task;
+
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (final Exception e) {
+                logger.log(Level.SEVERE, "Error running task in event-loop " + thread.getName(), e);
+            }
+        }
+    }
+
+
+    /**
+     * Closes all {@link IChannelProcessor}s registered with the {@link Selector}.
+     */
+    private void closeProcessors() {
+        try {
+            for (final SelectionKey key : selector.keys()) {
+                final IChannelProcessor processor = (IChannelProcessor) key.attachment();
+
+                if (processor != null) {
+                    processor.close();
+                }
+            }
+        } catch (final ClosedSelectorException e) {
+        }
+
+        try {
+            selector.close();
+        } catch (final IOException e) {
+        }
+    }
+
+
+    @Override
+    public void close() {
+        if (running.compareAndSet(true, false)) {
+            selector.wakeup();
+        } else {
+            closeProcessors();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.airepublic.tobi.core;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import com.airepublic.logging.java.LogLevel;
+import com.airepublic.logging.java.LoggerConfig;
+import com.airepublic.tobi.core.spi.IServerContext;
+import com.airepublic.tobi.core.spi.IServerModule;
+
+/**
+ * A fixed group of {@link EventLoop}s sized by the configured worker count (see
+ * {@link IServerContext#getWorkerCount()}). Accepted {@link SocketChannel}s are distributed
+ * round-robin over the {@link EventLoop}s.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ApplicationScoped
+public class EventLoopGroup implements AutoCloseable {
+    @Inject
+    @LoggerConfig(level = LogLevel.INFO)
+    private Logger logger;
+    @Inject
+    private IServerContext serverContext;
+    private EventLoop[] eventLoops;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+
+    /**
+     * Starts the {@link EventLoop}s.
+     *
+     * @throws IOException if a {@link EventLoop} could not be created
+     */
+    public void start() throws IOException {
+        if (started.compareAndSet(false, true)) {
+            final int workerCount = Math.max(1, serverContext.getWorkerCount());
+            eventLoops = new EventLoop[workerCount];
+
+            for (int i = 0; i < workerCount; i++) {
+                eventLoops[i] = new EventLoop("tobi-eventloop-" + i, logger, serverContext);
+                eventLoops[i].start();
+            }
+
+            logger.info("Started " + workerCount + " event-loops");
+        }
+    }
+
+
+    /**
+     * Registers the accepted {@link SocketChannel} with the next {@link EventLoop}.
+     *
+     * @param module the {@link IServerModule} which should accept the channel
+     * @param channel the {@link SocketChannel}
+     */
+    public void register(final IServerModule module, final SocketChannel channel) {
+        next().register(module, channel);
+    }
+
+
+    /**
+     * Gets the next {@link EventLoop} in round-robin order.
+     *
+     * @return the {@link EventLoop}
+     */
+    public EventLoop next() {
+        if (eventLoops == null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " has not been started!");
+        }
+
+        return eventLoops[Math.floorMod(next.getAndIncrement(), eventLoops.length)];
+    }
+
+
+    @Override
+    public void close() {
+        if (started.compareAndSet(true, false)) {
+            for (final EventLoop eventLoop : eventLoops) {
+                eventLoop.close();
+            }
+        }
+    }
+}
@@ -1,21 +1,100 @@
 package com.airepublic.tobi.core;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import com.airepublic.logging.java.LogLevel;
+import com.airepublic.logging.java.LoggerConfig;
+import com.airepublic.tobi.core.spi.AdmissionControl;
 import com.airepublic.tobi.core.spi.Attributes;
-import com.airepublic.tobi.core.spi.BeanContextStorage;
+import com.airepublic.tobi.core.spi.BufferPool;
+import com.airepublic.tobi.core.spi.ConnectionContext;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
 import com.airepublic.tobi.core.spi.IServerContext;
 import com.airepublic.tobi.core.spi.IServerSession;
+import com.airepublic.tobi.core.spi.ObjectPool;
+import com.airepublic.tobi.core.spi.TimingWheel;
+import com.airepublic.tobi.core.spi.WireTrace;
 
 /**
  * Context information of the server such as host, open sessions and other application attributes.
+ * <p>
+ * Wire tracing of the raw connection data can be enabled per module with following properties
+ * using the microprofile configuration:
+ * <ul>
+ * <li><code>wireTrace.modules</code> - comma-separated names of the modules to trace or
+ * <code>*</code> for all modules (default none)</li>
+ * <li><code>wireTrace.sampleRate</code> - trace every n-th message (default 1)</li>
+ * <li><code>wireTrace.maxBytes</code> - the maximum number of bytes logged per message (default
+ * 256)</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The shared {@link TimingWheel} for the timeouts of all connections is configured with:
+ * <ul>
+ * <li><code>timer.tickDuration</code> - the duration of a tick in milliseconds (default 10)</li>
+ * <li><code>timer.wheelSize</code> - the number of buckets per wheel (default 512)</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The {@link AdmissionControl} and the server sockets are configured with (0 disables a limit):
+ * <ul>
+ * <li><code>acceptBacklog</code> - the maximum number of pending connections queued by the server
+ * sockets (default 0 for the default of the system)</li>
+ * <li><code>admission.maxConnections</code> - the maximum number of open connections (default
+ * 0)</li>
+ * <li><code>admission.moduleMaxConnections</code> - comma-separated maximum numbers of open
+ * connections per module, e.g. <code>HTTP=1000</code> (default none)</li>
+ * <li><code>admission.connectionRate</code> - the number of connections per second allowed from a
+ * remote address (default 0)</li>
+ * <li><code>admission.connectionBurst</code> - the number of connections a remote address may
+ * open at once (default 20)</li>
+ * <li><code>admission.requestRate</code> - the number of requests per second allowed from a
+ * remote address (default 0)</li>
+ * <li><code>admission.requestBurst</code> - the number of requests a remote address may send at
+ * once (default 100)</li>
+ * <li><code>admission.maxAddresses</code> - the maximum number of remote addresses whose rates are
+ * tracked, idle addresses are evicted beyond (default 65536)</li>
+ * <li><code>session.maxSessions</code> - the maximum number of open sessions, the eldest session
+ * is closed if it is exceeded (default 0)</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Request handlers which might block run on the handler executor instead of the event-loops:
+ * <ul>
+ * <li><code>handler.threads</code> - the maximum number of handler threads (default 64)</li>
+ * <li><code>handler.queueSize</code> - the number of requests queued when all handler threads are
+ * busy, further requests are rejected (default 1024)</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Closed {@link IChannelProcessor}s can be reused for new connections with:
+ * <ul>
+ * <li><code>pool.channelProcessors</code> - the maximum number of idle channel processors kept
+ * for reuse (default 0). A reused processor serves a new generation, so that closes requested for
+ * its previous connection, e.g. by a late timeout, are ignored (see
+ * {@link IChannelProcessor#close(long)}).</li>
+ * </ul>
+ * </p>
  * 
  * @author Torsten Oltmanns
  *
@@ -24,15 +103,164 @@ import com.airepublic.tobi.core.spi.IServerSession;
 public class ServerContext extends Attributes implements IServerContext {
     public final static String HOST = "host";
     public final static String WORKER_COUNT = "workerCount";
+    public final static String BUFFER_POOL_DIRECT = "bufferPool.direct";
+    public final static String BUFFER_POOL_MIN_BUFFER_SIZE = "bufferPool.minBufferSize";
+    public final static String BUFFER_POOL_MAX_BUFFER_SIZE = "bufferPool.maxBufferSize";
+    public final static String BUFFER_POOL_MAX_POOLED_PER_SIZE = "bufferPool.maxPooledPerSize";
+    public final static String BUFFER_POOL_THREAD_CACHE_SIZE = "bufferPool.threadCacheSize";
+    public final static String WIRE_TRACE_MODULES = "wireTrace.modules";
+    public final static String WIRE_TRACE_SAMPLE_RATE = "wireTrace.sampleRate";
+    public final static String WIRE_TRACE_MAX_BYTES = "wireTrace.maxBytes";
+    public final static String TIMER_TICK_DURATION = "timer.tickDuration";
+    public final static String TIMER_WHEEL_SIZE = "timer.wheelSize";
+    public final static String ACCEPT_BACKLOG = "acceptBacklog";
+    public final static String ADMISSION_MAX_CONNECTIONS = "admission.maxConnections";
+    public final static String ADMISSION_MODULE_MAX_CONNECTIONS = "admission.moduleMaxConnections";
+    public final static String ADMISSION_CONNECTION_RATE = "admission.connectionRate";
+    public final static String ADMISSION_CONNECTION_BURST = "admission.connectionBurst";
+    public final static String ADMISSION_REQUEST_RATE = "admission.requestRate";
+    public final static String ADMISSION_REQUEST_BURST = "admission.requestBurst";
+    public final static String ADMISSION_MAX_ADDRESSES = "admission.maxAddresses";
+    public final static String SESSION_MAX_SESSIONS = "session.maxSessions";
+    public final static String POOL_CHANNEL_PROCESSORS = "pool.channelProcessors";
+    public final static String HANDLER_THREADS = "handler.threads";
+    public final static String HANDLER_QUEUE_SIZE = "handler.queueSize";
     private final static String DEFAULT_WORKER_COUNT = "10";
     @Inject
+    @LoggerConfig(level = LogLevel.INFO)
+    private Logger logger;
+    @Inject
     @ConfigProperty(name = HOST, defaultValue = "localhost")
     private String host;
     @Inject
     @ConfigProperty(name = WORKER_COUNT, defaultValue = DEFAULT_WORKER_COUNT)
     private int workerCount;
-    private final Map<String, IServerSession> openSessions = new ConcurrentHashMap<>();
-    private final Map<String, BeanContextStorage> sessionContexts = new ConcurrentHashMap<>();
+    @Inject
+    @ConfigProperty(name = BUFFER_POOL_DIRECT, defaultValue = "false")
+    private boolean bufferPoolDirect;
+    @Inject
+    @ConfigProperty(name = BUFFER_POOL_MIN_BUFFER_SIZE, defaultValue = "512")
+    private int bufferPoolMinBufferSize;
+    @Inject
+    @ConfigProperty(name = BUFFER_POOL_MAX_BUFFER_SIZE, defaultValue = "1048576")
+    private int bufferPoolMaxBufferSize;
+    @Inject
+    @ConfigProperty(name = BUFFER_POOL_MAX_POOLED_PER_SIZE, defaultValue = "1024")
+    private int bufferPoolMaxPooledPerSize;
+    @Inject
+    @ConfigProperty(name = BUFFER_POOL_THREAD_CACHE_SIZE, defaultValue = "16")
+    private int bufferPoolThreadCacheSize;
+    @Inject
+    @ConfigProperty(name = WIRE_TRACE_MODULES, defaultValue = "")
+    private String wireTraceModules;
+    @Inject
+    @ConfigProperty(name = WIRE_TRACE_SAMPLE_RATE, defaultValue = "1")
+    private int wireTraceSampleRate;
+    @Inject
+    @ConfigProperty(name = WIRE_TRACE_MAX_BYTES, defaultValue = "256")
+    private int wireTraceMaxBytes;
+    @Inject
+    @ConfigProperty(name = TIMER_TICK_DURATION, defaultValue = "10")
+    private long timerTickDuration;
+    @Inject
+    @ConfigProperty(name = TIMER_WHEEL_SIZE, defaultValue = "512")
+    private int timerWheelSize;
+    @Inject
+    @ConfigProperty(name = ACCEPT_BACKLOG, defaultValue = "0")
+    private int acceptBacklog;
+    @Inject
+    @ConfigProperty(name = ADMISSION_MAX_CONNECTIONS, defaultValue = "0")
+    private int admissionMaxConnections;
+    @Inject
+    @ConfigProperty(name = ADMISSION_MODULE_MAX_CONNECTIONS, defaultValue = "")
+    private String admissionModuleMaxConnections;
+    @Inject
+    @ConfigProperty(name = ADMISSION_CONNECTION_RATE, defaultValue = "0")
+    private int admissionConnectionRate;
+    @Inject
+    @ConfigProperty(name = ADMISSION_CONNECTION_BURST, defaultValue = "20")
+    private int admissionConnectionBurst;
+    @Inject
+    @ConfigProperty(name = ADMISSION_REQUEST_RATE, defaultValue = "0")
+    private int admissionRequestRate;
+    @Inject
+    @ConfigProperty(name = ADMISSION_REQUEST_BURST, defaultValue = "100")
+    private int admissionRequestBurst;
+    @Inject
+    @ConfigProperty(name = ADMISSION_MAX_ADDRESSES, defaultValue = "65536")
+    private int admissionMaxAddresses;
+    @Inject
+    @ConfigProperty(name = SESSION_MAX_SESSIONS, defaultValue = "0")
+    private int maxSessions;
+    @Inject
+    @ConfigProperty(name = POOL_CHANNEL_PROCESSORS, defaultValue = "0")
+    private int channelProcessorPoolSize;
+    @Inject
+    @ConfigProperty(name = HANDLER_THREADS, defaultValue = "64")
+    private int handlerThreads;
+    @Inject
+    @ConfigProperty(name = HANDLER_QUEUE_SIZE, defaultValue = "1024")
+    private int handlerQueueSize;
+    private BufferPool bufferPool;
+    private TimingWheel timer;
+    private AdmissionControl admissionControl;
+    private SessionRegistry sessionRegistry;
+    private ObjectPool<IChannelProcessor> channelProcessorPool;
+    private ExecutorService handlerExecutor;
+    private Set<String> tracedModules;
+    private final Map<String, WireTrace> wireTraces = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the {@link BufferPool}, the {@link TimingWheel}, the {@link AdmissionControl}, the
+     * {@link SessionRegistry}, the pool of {@link IChannelProcessor}s and the handler executor and
+     * reads the wire trace configuration.
+     */
+    @PostConstruct
+    public void init() {
+        bufferPool = new BufferPool(bufferPoolDirect, bufferPoolMinBufferSize, bufferPoolMaxBufferSize, bufferPoolMaxPooledPerSize, bufferPoolThreadCacheSize);
+        tracedModules = Arrays.stream(wireTraceModules.split(",")).map(String::strip).filter(s -> !s.isEmpty()).collect(Collectors.toSet());
+        timer = new TimingWheel("tobi-timer", timerTickDuration, timerWheelSize);
+
+        final Map<String, Integer> moduleMaxConnections = new HashMap<>();
+
+        for (final String entry : admissionModuleMaxConnections.split(",")) {
+            final int idx = entry.indexOf('=');
+
+            if (idx > 0) {
+                moduleMaxConnections.put(entry.substring(0, idx).strip(), Integer.valueOf(entry.substring(idx + 1).strip()));
+            }
+        }
+
+        admissionControl = new AdmissionControl(admissionMaxConnections, moduleMaxConnections, admissionConnectionRate, admissionConnectionBurst, admissionRequestRate, admissionRequestBurst, admissionMaxAddresses);
+        sessionRegistry = new SessionRegistry(maxSessions);
+        channelProcessorPool = new ObjectPool<>(() -> CDI.current().select(IChannelProcessor.class).get(), channelProcessorPoolSize);
+
+        final int threads = Math.max(1, handlerThreads);
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, handlerQueueSize)), r -> {
+            final Thread thread = new Thread(r, "tobi-handler-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        handlerExecutor = executor;
+    }
+
+
+    /**
+     * Stops the {@link TimingWheel} and the handler executor.
+     */
+    @PreDestroy
+    public void close() {
+        if (timer != null) {
+            timer.close();
+        }
+
+        if (handlerExecutor != null) {
+            handlerExecutor.shutdownNow();
+        }
+    }
+
 
     @Override
     public String getHost() {
@@ -46,39 +274,112 @@ public class ServerContext extends Attributes implements IServerContext {
     }
 
 
+    @Override
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+
     @Override
     public void addServerSession(final IServerSession session) {
-        openSessions.put(session.getId(), session);
+        final SessionRegistry.Registration evicted = sessionRegistry.addSession(session, session.getChannelProcessor());
+
+        if (evicted != null) {
+            logger.warning("Maximum number of sessions reached - closing session #" + evicted.getSessionId());
+
+            // the evicted connection is closed by its own event-loop with its own contexts
+            if (evicted.getProcessor() != null) {
+                evicted.getProcessor().close(evicted.getGeneration());
+            }
+        }
     }
 
 
     @Override
     public void removeServerSession(final IServerSession session) throws IOException {
-        openSessions.remove(session.getChannel().getRemoteAddress());
+        sessionRegistry.removeSession(session.getId());
     }
 
 
     @Override
     public IServerSession getServerSession(final String sessionId) {
-        return openSessions.get(sessionId);
+        return sessionRegistry.getSession(sessionId);
     }
 
 
     @Override
-    public void addSessionContext(final String sessionId, final BeanContextStorage sessionContext) {
-        sessionContexts.put(sessionId, sessionContext);
+    public void addSessionContext(final String sessionId, final ConnectionContext sessionContext) {
+        sessionRegistry.addSessionContext(sessionId, sessionContext);
     }
 
 
     @Override
-    public BeanContextStorage getSessionContext(final String sessionId) {
-        return sessionContexts.get(sessionId);
+    public ConnectionContext getSessionContext(final String sessionId) {
+        return sessionRegistry.getSessionContext(sessionId);
     }
 
 
     @Override
     public void removeSessionContext(final String sessionId) {
-        sessionContexts.remove(sessionId);
+        sessionRegistry.removeSessionContext(sessionId);
+    }
+
+
+    @Override
+    public int getOpenSessions() {
+        return sessionRegistry.getOpenSessions();
+    }
+
+
+    @Override
+    public int getRetainedSessionContexts() {
+        return sessionRegistry.getRetainedSessionContexts();
+    }
+
+
+    @Override
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+
+    @Override
+    public TimingWheel getTimer() {
+        return timer;
+    }
+
+
+    @Override
+    public ExecutorService getHandlerExecutor() {
+        return handlerExecutor;
+    }
+
+
+    @Override
+    public ObjectPool<IChannelProcessor> getChannelProcessorPool() {
+        return channelProcessorPool;
+    }
+
+
+    @Override
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+
+    @Override
+    public WireTrace getWireTrace(final String moduleName) {
+        if (tracedModules.isEmpty()) {
+            return WireTrace.DISABLED;
+        }
+
+        return wireTraces.computeIfAbsent(moduleName, name -> {
+            if (tracedModules.contains("*") || tracedModules.contains(name)) {
+                return new WireTrace(logger, name, wireTraceSampleRate, wireTraceMaxBytes);
+            }
+
+            return WireTrace.DISABLED;
+        });
     }
 
 }
@@ -0,0 +1,262 @@
+package com.airepublic.tobi.core;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.airepublic.tobi.core.spi.ConnectionContext;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
+import com.airepublic.tobi.core.spi.IServerSession;
+
+/**
+ * The registry of the open {@link IServerSession}s and the CDI
+ * {@link ConnectionContext}s keyed by the session id.
+ * <p>
+ * Sessions and their contexts are released explicitly when the connection is closed. The contexts
+ * are additionally only weakly referenced, so that a context which was not released is removed
+ * once it is not used by its connection anymore instead of being retained forever.
+ * </p>
+ * <p>
+ * The number of open sessions can be limited. If a new session exceeds the limit the session
+ * which has been registered first is evicted. The registration of a session keeps the
+ * {@link IChannelProcessor} and the generation of its connection, so that the evicted connection
+ * can be closed without resolving the session in its CDI context.
+ * </p>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class SessionRegistry {
+    private final int maxSessions;
+    // sessions in the order of their registration to find the eldest to evict
+    private final LinkedHashMap<String, Registration> sessions = new LinkedHashMap<>();
+    private final Map<String, ContextReference> sessionContexts = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ConnectionContext> collectedContexts = new ReferenceQueue<>();
+
+
+    /**
+     * Constructor.
+     *
+     * @param maxSessions the maximum number of open sessions or 0 for unlimited
+     */
+    public SessionRegistry(final int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+
+    /**
+     * Registers the {@link IServerSession}.
+     *
+     * @param session the {@link IServerSession}
+     * @param processor the {@link IChannelProcessor} of the session's connection
+     * @return the {@link Registration} of the session which has been evicted to stay within the
+     *         limit or null
+     */
+    public Registration addSession(final IServerSession session, final IChannelProcessor processor) {
+        final String sessionId = session.getId();
+        final Registration registration = new Registration(sessionId, session, processor, processor != null ? processor.getGeneration() : 0L);
+
+        synchronized (sessions) {
+            sessions.put(sessionId, registration);
+
+            if (maxSessions > 0 && sessions.size() > maxSessions) {
+                final Iterator<Registration> it = sessions.values().iterator();
+                final Registration eldest = it.next();
+                it.remove();
+
+                return eldest;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Gets the {@link IServerSession} for the session id.
+     *
+     * @param sessionId the session id
+     * @return the {@link IServerSession} or null if it is not registered
+     */
+    public IServerSession getSession(final String sessionId) {
+        synchronized (sessions) {
+            final Registration registration = sessions.get(sessionId);
+            return registration != null ? registration.getSession() : null;
+        }
+    }
+
+
+    /**
+     * Removes the {@link IServerSession}.
+     *
+     * @param sessionId the session id
+     */
+    public void removeSession(final String sessionId) {
+        synchronized (sessions) {
+            sessions.remove(sessionId);
+        }
+    }
+
+
+    /**
+     * Registers the {@link ConnectionContext} for the session id.
+     *
+     * @param sessionId the session id
+     * @param sessionContext the {@link ConnectionContext}
+     */
+    public void addSessionContext(final String sessionId, final ConnectionContext sessionContext) {
+        expungeCollectedContexts();
+        sessionContexts.put(sessionId, new ContextReference(sessionId, sessionContext, collectedContexts));
+    }
+
+
+    /**
+     * Gets the {@link ConnectionContext} for the session id.
+     *
+     * @param sessionId the session id
+     * @return the {@link ConnectionContext} or null if it has been released
+     */
+    public ConnectionContext getSessionContext(final String sessionId) {
+        final ContextReference ref = sessionContexts.get(sessionId);
+        return ref != null ? ref.get() : null;
+    }
+
+
+    /**
+     * Removes the {@link ConnectionContext} for the session id.
+     *
+     * @param sessionId the session id
+     */
+    public void removeSessionContext(final String sessionId) {
+        final ContextReference ref = sessionContexts.remove(sessionId);
+
+        if (ref != null) {
+            ref.clear();
+        }
+    }
+
+
+    /**
+     * Removes the entries of the contexts which have been garbage collected.
+     */
+    private void expungeCollectedContexts() {
+        ContextReference ref;
+
+        while ((ref = (ContextReference) collectedContexts.poll()) != null) {
+            sessionContexts.remove(ref.sessionId, ref);
+        }
+    }
+
+
+    /**
+     * Gets the number of open sessions.
+     *
+     * @return the number of open sessions
+     */
+    public int getOpenSessions() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+
+    /**
+     * Gets the number of retained session contexts.
+     *
+     * @return the number of session contexts
+     */
+    public int getRetainedSessionContexts() {
+        expungeCollectedContexts();
+        return sessionContexts.size();
+    }
+
+    /**
+     * The registration of an open {@link IServerSession} with the {@link IChannelProcessor} and
+     * the generation of its connection.
+     */
+    public static class Registration {
+        private final String sessionId;
+        private final IServerSession session;
+        private final IChannelProcessor processor;
+        private final long generation;
+
+
+        /**
+         * Constructor.
+         *
+         * @param sessionId the session id
+         * @param session the {@link IServerSession}
+         * @param processor the {@link IChannelProcessor}
+         * @param generation the generation of the connection
+         */
+        Registration(final String sessionId, final IServerSession session, final IChannelProcessor processor, final long generation) {
+            this.sessionId = sessionId;
+            this.session = session;
+            this.processor = processor;
+            this.generation = generation;
+        }
+
+
+        /**
+         * Gets the session id.
+         *
+         * @return the session id
+         */
+        public String getSessionId() {
+            return sessionId;
+        }
+
+
+        /**
+         * Gets the {@link IServerSession}.
+         *
+         * @return the {@link IServerSession}
+         */
+        public IServerSession getSession() {
+            return session;
+        }
+
+
+        /**
+         * Gets the {@link IChannelProcessor} of the session's connection.
+         *
+         * @return the {@link IChannelProcessor} or null
+         */
+        public IChannelProcessor getProcessor() {
+            return processor;
+        }
+
+
+        /**
+         * Gets the generation of the session's connection.
+         *
+         * @return the generation
+         */
+        public long getGeneration() {
+            return generation;
+        }
+    }
+
+    /**
+     * A weak reference to a {@link ConnectionContext} which knows its session id.
+     */
+    private static class ContextReference extends WeakReference<ConnectionContext> {
+        private final String sessionId;
+
+
+        /**
+         * Constructor.
+         *
+         * @param sessionId the session id
+         * @param sessionContext the {@link ConnectionContext}
+         * @param queue the {@link ReferenceQueue}
+         */
+        ContextReference(final String sessionId, final ConnectionContext sessionContext, final ReferenceQueue<ConnectionContext> queue) {
+            super(sessionContext, queue);
+            this.sessionId = sessionId;
+        }
+    }
+}
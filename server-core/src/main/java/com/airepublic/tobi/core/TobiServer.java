@@ -1,7 +1,9 @@
 package com.airepublic.tobi.core;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
@@ -25,6 +27,7 @@ import javax.inject.Inject;
 
 import com.airepublic.logging.java.LogLevel;
 import com.airepublic.logging.java.LoggerConfig;
+import com.airepublic.tobi.core.spi.AdmissionControl;
 import com.airepublic.tobi.core.spi.IChannelProcessor;
 import com.airepublic.tobi.core.spi.IServerModule;
 import com.airepublic.tobi.core.spi.IServicePlugin;
@@ -32,7 +35,9 @@ import com.airepublic.tobi.core.spi.IServicePlugin;
 /**
  * The Tobi server implementation which will accept and process incoming connections. Initially it
  * will scan for {@link IServerModule}s and {@link IServicePlugin}s and configure the server
- * accordingly. Incoming connections will be processed by the {@link IChannelProcessor}.
+ * accordingly. Incoming connections are distributed over the {@link EventLoopGroup} and processed by
+ * an {@link IChannelProcessor}. Connections which are not admitted by the {@link AdmissionControl}
+ * are closed right after they have been accepted.
  * 
  * @author Torsten Oltmanns
  *
@@ -45,6 +50,8 @@ public class TobiServer {
     private Selector selector;
     @Inject
     private ServerContext serverContext;
+    @Inject
+    private EventLoopGroup eventLoopGroup;
     private final AtomicBoolean initialized = new AtomicBoolean(false);
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final Map<SelectionKey, IServerModule> moduleForKey = new HashMap<>();
@@ -67,6 +74,7 @@ public class TobiServer {
 
                     try {
                         selector = Selector.open();
+                        eventLoopGroup.start();
                         final String host = serverContext.getHost();
                         final List<Integer> openPorts = new ArrayList<>();
 
@@ -112,7 +120,7 @@ public class TobiServer {
                                         if (!openPorts.contains(Integer.valueOf(port))) {
                                             final ServerSocketChannel serverSocket = ServerSocketChannel.open();
                                             serverSocket.configureBlocking(false);
-                                            serverSocket.bind(new InetSocketAddress(host, port));
+                                            serverSocket.bind(new InetSocketAddress(host, port), serverContext.getAcceptBacklog());
 
                                             final SelectionKey key = serverSocket.register(selector, SelectionKey.OP_ACCEPT);
 
@@ -224,6 +232,8 @@ public class TobiServer {
             }
         }
 
+        eventLoopGroup.close();
+
         for (final IServerModule module : moduleForKey.values()) {
             try {
                 module.close();
@@ -240,11 +250,6 @@ public class TobiServer {
      * @throws IOException if something goes wrong
      */
     void accept(final SelectionKey connectionKey) throws IOException {
-        if (!shouldAllowConnect(connectionKey)) {
-            connectionKey.cancel();
-            throw new IOException("Should not connect!");
-        }
-
         final ServerSocketChannel serverSocket = serverSocketChannels.get(connectionKey);
         final SocketChannel channel = serverSocket.accept();
 
@@ -252,35 +257,74 @@ public class TobiServer {
             throw new IOException("Failed to accept connection (channel is null)!");
         }
 
-        try {
-            final IServerModule module = moduleForKey.get(connectionKey);
+        final IServerModule module = moduleForKey.get(connectionKey);
 
-            final IChannelProcessor processor = CDI.current().select(IChannelProcessor.class).get();
+        if (!shouldAllowConnect(module, channel)) {
+            reject(module, channel);
+            return;
+        }
 
-            ForkJoinPool.commonPool().submit(() -> {
-                try {
-                    processor.prepare(module, channel, null);
-                    module.accept(processor);
-                    processor.run();
-                } catch (final IOException e) {
-                    logger.log(Level.SEVERE, "Error creating session", e);
-                }
-            });
+        try {
+            eventLoopGroup.register(module, channel);
         } catch (final Exception e) {
             logger.log(Level.SEVERE, "Error accepting socket!", e);
-        } finally {
+            serverContext.getAdmissionControl().releaseConnection(module.getName());
+
+            try {
+                channel.close();
+            } catch (final IOException e1) {
+            }
+        }
+    }
+
+
+    /**
+     * Verifies whether the connection should be allowed by the {@link AdmissionControl}. An allowed
+     * connection is counted as open until its {@link IChannelProcessor} is closed.
+     * 
+     * @param module the {@link IServerModule} of the connection
+     * @param channel the accepted {@link SocketChannel}
+     * @return true if it should be allowed
+     */
+    boolean shouldAllowConnect(final IServerModule module, final SocketChannel channel) {
+        InetAddress address = null;
+
+        try {
+            address = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+        } catch (final IOException e) {
         }
+
+        return serverContext.getAdmissionControl().acquireConnection(module.getName(), address);
     }
 
 
     /**
-     * Verifies whether the connection should be allowed.
+     * Closes a connection which has not been admitted after writing the reject response of the
+     * {@link IServerModule} without waiting for the connection to accept it.
      * 
-     * @param connectionKey the {@link SelectionKey} for the connection
-     * @return true if if should be allowed
+     * @param module the {@link IServerModule} of the connection
+     * @param channel the accepted {@link SocketChannel}
      */
-    boolean shouldAllowConnect(final SelectionKey connectionKey) {
-        return true;
+    private void reject(final IServerModule module, final SocketChannel channel) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Rejecting connection for module '" + module.getName() + "'");
+        }
+
+        try {
+            final ByteBuffer response = module.getRejectResponse(((InetSocketAddress) channel.getLocalAddress()).getPort());
+
+            if (response != null) {
+                channel.configureBlocking(false);
+                channel.write(response);
+                channel.shutdownOutput();
+            }
+        } catch (final IOException e) {
+        } finally {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+            }
+        }
     }
 
 }
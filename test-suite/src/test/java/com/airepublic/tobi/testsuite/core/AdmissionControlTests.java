@@ -0,0 +1,186 @@
+package com.airepublic.tobi.testsuite.core;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.core.spi.AdmissionControl;
+
+/**
+ * Unit tests for the token buckets of the {@link AdmissionControl}.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class AdmissionControlTests {
+    private static final InetAddress ADDRESS = InetAddress.getLoopbackAddress();
+
+
+    /**
+     * Creates an {@link AdmissionControl} which only limits the request rate.
+     *
+     * @param rate the number of requests per second
+     * @param burst the number of requests at once
+     * @param maxAddresses the maximum number of tracked addresses
+     * @return the {@link AdmissionControl}
+     */
+    private static AdmissionControl requestRate(final int rate, final int burst, final int maxAddresses) {
+        return new AdmissionControl(0, Map.of(), 0, 0, rate, burst, maxAddresses);
+    }
+
+
+    /**
+     * Creates an IPv4 address.
+     *
+     * @param last the last byte of the address
+     * @return the address
+     * @throws Exception if the address cannot be created
+     */
+    private static InetAddress address(final int last) throws Exception {
+        return InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) last });
+    }
+
+
+    /**
+     * Test that a full bucket admits exactly the burst size.
+     */
+    @Test
+    public void testBurst() {
+        final AdmissionControl admissionControl = requestRate(1, 5, 1);
+
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(admissionControl.acquireRequest(ADDRESS), "Request " + i + " of the burst was rejected");
+        }
+
+        Assertions.assertFalse(admissionControl.acquireRequest(ADDRESS));
+        Assertions.assertEquals(5, admissionControl.getAcceptedRequests());
+        Assertions.assertEquals(1, admissionControl.getRejectedRequests());
+    }
+
+
+    /**
+     * Test that an empty bucket admits again once the interval of a token has elapsed.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testRefill() throws InterruptedException {
+        final AdmissionControl admissionControl = requestRate(100, 1, 1);
+
+        Assertions.assertTrue(admissionControl.acquireRequest(ADDRESS));
+        Assertions.assertFalse(admissionControl.acquireRequest(ADDRESS));
+
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        Assertions.assertTrue(admissionControl.acquireRequest(ADDRESS));
+        Assertions.assertFalse(admissionControl.acquireRequest(ADDRESS));
+    }
+
+
+    /**
+     * Test that concurrent threads taking tokens from the same bucket are admitted the burst size
+     * plus at most the tokens refilled while the threads were running.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testConcurrentAcquire() throws InterruptedException {
+        final AdmissionControl admissionControl = requestRate(1, 100, 1);
+        final long startTime = System.nanoTime();
+        final AtomicInteger admitted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < 50; j++) {
+                    if (admissionControl.acquireRequest(ADDRESS)) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final long refilled = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime);
+
+        Assertions.assertTrue(admitted.get() >= 100 && admitted.get() <= 100 + refilled, "Admitted " + admitted.get() + " requests");
+        Assertions.assertEquals(admitted.get(), admissionControl.getAcceptedRequests());
+        Assertions.assertEquals(400 - admitted.get(), admissionControl.getRejectedRequests());
+    }
+
+
+    /**
+     * Test that every address has its own bucket.
+     *
+     * @throws Exception if the address cannot be created
+     */
+    @Test
+    public void testPerAddress() throws Exception {
+        final AdmissionControl admissionControl = requestRate(1, 2, 1024);
+
+        for (int i = 1; i <= 100; i++) {
+            Assertions.assertTrue(admissionControl.acquireRequest(address(i)));
+            Assertions.assertTrue(admissionControl.acquireRequest(address(i)));
+            Assertions.assertFalse(admissionControl.acquireRequest(address(i)), "Address " + i + " exceeded its burst");
+        }
+    }
+
+
+    /**
+     * Test that addresses beyond the maximum share the overflow bucket until the bucket of an idle
+     * address is full again and can be evicted.
+     *
+     * @throws Exception if the address cannot be created
+     */
+    @Test
+    public void testIdleEviction() throws Exception {
+        final AdmissionControl admissionControl = requestRate(100, 1, 1);
+
+        Assertions.assertTrue(admissionControl.acquireRequest(address(1)));
+        Assertions.assertTrue(admissionControl.acquireRequest(address(2)));
+        Assertions.assertFalse(admissionControl.acquireRequest(address(3)), "The overflow bucket is not shared");
+
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        // the bucket of address 1 is full again and is evicted for address 4
+        Assertions.assertTrue(admissionControl.acquireRequest(address(4)));
+        Assertions.assertFalse(admissionControl.acquireRequest(address(4)));
+    }
+
+
+    /**
+     * Test that the connection rate is enforced independently of the request rate and that a rate
+     * of 0 disables the check.
+     */
+    @Test
+    public void testConnectionRate() {
+        final AdmissionControl admissionControl = new AdmissionControl(0, Map.of(), 1, 1, 0, 0, 1);
+
+        Assertions.assertTrue(admissionControl.acquireConnection("http", ADDRESS));
+        Assertions.assertFalse(admissionControl.acquireConnection("http", ADDRESS));
+        Assertions.assertEquals(1, admissionControl.getRejectedByConnectionRate());
+        Assertions.assertEquals(1, admissionControl.getConnections("http"));
+
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertTrue(admissionControl.acquireRequest(ADDRESS));
+        }
+    }
+}
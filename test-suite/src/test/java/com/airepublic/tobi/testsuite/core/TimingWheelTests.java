@@ -0,0 +1,104 @@
+package com.airepublic.tobi.testsuite.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.core.spi.TimingWheel;
+import com.airepublic.tobi.core.spi.TimingWheel.Timeout;
+
+/**
+ * Unit tests for the {@link TimingWheel}. The wheels are created with 2 buckets each, so that the
+ * 4 levels cover 2, 4, 8 and 16 ticks and short delays already have to be cascaded through all of
+ * them.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class TimingWheelTests {
+    private TimingWheel timer;
+
+
+    /**
+     * Setup.
+     */
+    @BeforeEach
+    public void setUp() {
+        timer = new TimingWheel("test-timer", 1, 2);
+    }
+
+
+    /**
+     * Tear down.
+     */
+    @AfterEach
+    public void tearDown() {
+        timer.close();
+    }
+
+
+    /**
+     * Test that tasks placed on each level and beyond the range of the highest level are cascaded
+     * down and run in the order of their deadlines but not before their delay.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testCascadeThroughAllLevels() throws InterruptedException {
+        final long[] delays = { 0, 1, 3, 6, 12, 15, 18, 27, 40 };
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        final long[] elapsed = new long[delays.length];
+        final CountDownLatch latch = new CountDownLatch(delays.length);
+        final long start = System.nanoTime();
+
+        for (int i = 0; i < delays.length; i++) {
+            final int index = i;
+
+            timer.schedule(() -> {
+                elapsed[index] = System.nanoTime() - start;
+                order.add(index);
+                latch.countDown();
+            }, delays[i], TimeUnit.MILLISECONDS);
+        }
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS), "Not all tasks have run");
+        Assertions.assertEquals(0, timer.getPending());
+
+        for (int i = 0; i < delays.length; i++) {
+            Assertions.assertEquals(i, order.get(i).intValue(), "Tasks have not run in the order of their deadlines");
+            Assertions.assertTrue(elapsed[i] >= TimeUnit.MILLISECONDS.toNanos(delays[i]), "Task " + i + " has run before its delay");
+        }
+    }
+
+
+    /**
+     * Test that a cancelled task placed on a higher level does not run when it is cascaded.
+     *
+     * @throws InterruptedException if interrupted
+     */
+    @Test
+    public void testCancelOnHigherLevel() throws InterruptedException {
+        final CountDownLatch cancelledRun = new CountDownLatch(1);
+        final CountDownLatch laterRun = new CountDownLatch(1);
+        final Timeout cancelled = timer.schedule(cancelledRun::countDown, 12, TimeUnit.MILLISECONDS);
+        final Timeout later = timer.schedule(laterRun::countDown, 20, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(cancelled.cancel());
+        Assertions.assertFalse(cancelled.cancel());
+        Assertions.assertTrue(cancelled.isCancelled());
+        Assertions.assertEquals(1, timer.getPending());
+
+        Assertions.assertTrue(laterRun.await(5, TimeUnit.SECONDS), "Task has not run");
+        Assertions.assertEquals(1, cancelledRun.getCount(), "Cancelled task has run");
+        Assertions.assertTrue(later.isExpired());
+        Assertions.assertFalse(later.cancel());
+        Assertions.assertEquals(0, timer.getPending());
+    }
+}
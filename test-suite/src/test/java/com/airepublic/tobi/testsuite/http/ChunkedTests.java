@@ -0,0 +1,105 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.testsuite.http.TestServer.Response;
+
+/**
+ * Tests for streaming large JAX-RS entities with <code>Transfer-Encoding: chunked</code>.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class ChunkedTests {
+    private static TestServer server;
+
+
+    /**
+     * Starts the server.
+     *
+     * @throws Exception if the server could not be started
+     */
+    @BeforeAll
+    public static void setUp() throws Exception {
+        server = TestServer.start();
+    }
+
+
+    /**
+     * Test that an entity exceeding the response buffer is streamed in chunks which add up to the
+     * complete entity.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testLargeEntityIsChunked() throws Exception {
+        final int size = 1024 * 1024;
+
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            socket.getOutputStream().write(TestServer.get("/api/test/bytes?size=" + size));
+            socket.getOutputStream().flush();
+
+            final Response response = TestServer.readResponse(socket.getInputStream());
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("chunked", response.getHeader("Transfer-Encoding"));
+            Assertions.assertNull(response.getHeader("Content-Length"));
+            Assertions.assertArrayEquals(TestResource.expectedBytes(size), response.getBody());
+        }
+    }
+
+
+    /**
+     * Test that an entity fitting into the response buffer is sent with a
+     * <code>Content-Length</code>.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSmallEntityHasContentLength() throws Exception {
+        final int size = 1000;
+
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            socket.getOutputStream().write(TestServer.get("/api/test/bytes?size=" + size));
+            socket.getOutputStream().flush();
+
+            final Response response = TestServer.readResponse(socket.getInputStream());
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertNull(response.getHeader("Transfer-Encoding"));
+            Assertions.assertEquals(String.valueOf(size), response.getHeader("Content-Length"));
+            Assertions.assertArrayEquals(TestResource.expectedBytes(size), response.getBody());
+        }
+    }
+
+
+    /**
+     * Test that the connection can be reused after a chunked response and that chunked and
+     * buffered responses are not mixed up.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testKeepAliveAfterChunkedResponse() throws Exception {
+        final int[] sizes = { 256 * 1024, 10, 100 * 1024 };
+
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            final OutputStream out = socket.getOutputStream();
+            final InputStream in = socket.getInputStream();
+
+            for (final int size : sizes) {
+                out.write(TestServer.get("/api/test/bytes?size=" + size));
+                out.flush();
+
+                final Response response = TestServer.readResponse(in);
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals("keep-alive", response.getHeader("Connection"));
+                Assertions.assertArrayEquals(TestResource.expectedBytes(size), response.getBody());
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.core.ServerContext;
+import com.airepublic.tobi.core.spi.IChannelProcessor;
+import com.airepublic.tobi.core.spi.ObjectPool;
+import com.airepublic.tobi.testsuite.http.TestServer.Response;
+
+/**
+ * Tests that pooled channel processors and encoders serve new connections without any state of
+ * their previous connection.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class ConnectionReuseTests {
+    private static TestServer server;
+    private static ObjectPool<IChannelProcessor> pool;
+
+
+    /**
+     * Starts the server.
+     *
+     * @throws Exception if the server could not be started
+     */
+    @BeforeAll
+    public static void setUp() throws Exception {
+        server = TestServer.start();
+        pool = server.getContainer().select(ServerContext.class).get().getChannelProcessorPool();
+    }
+
+
+    /**
+     * Test that sequential connections are served by reused processors.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSequentialConnections() throws Exception {
+        final long hits = pool.getHits();
+
+        for (int i = 0; i < 50; i++) {
+            Assertions.assertEquals("seq" + i, request(server.getPort(), "seq" + i, 2));
+        }
+
+        Assertions.assertTrue(pool.getHits() > hits, "No channel processor has been reused");
+        Assertions.assertTrue(pool.getPooled() <= TestServer.POOLED_PROCESSORS);
+    }
+
+
+    /**
+     * Test that concurrent connections closed by either side do not see each other's requests.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testConcurrentConnections() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            final List<Future<Void>> results = new ArrayList<>();
+
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        final String value = thread + "-" + i;
+                        // every third connection is closed by the server after the maximum number
+                        // of requests
+                        final int requests = i % 3 == 0 ? TestServer.MAX_REQUESTS : 1 + i % 3;
+                        Assertions.assertEquals(value, request(server.getPort(), value, requests));
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (final Future<Void> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Test that alternating plain and TLS connections are served correctly by reused processors.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testAlternatingPlainAndTlsConnections() throws Exception {
+        final SSLContext sslContext = server.createClientSslContext();
+
+        for (int i = 0; i < 20; i++) {
+            if (i % 2 == 0) {
+                Assertions.assertEquals("plain" + i, request(server.getPort(), "plain" + i, 1));
+            } else {
+                try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory().createSocket(TestServer.HOST, server.getSslPort())) {
+                    socket.setSoTimeout(30000);
+                    socket.getOutputStream().write(TestServer.get("/api/test/echo?value=tls" + i));
+                    socket.getOutputStream().flush();
+
+                    Assertions.assertEquals("tls" + i, TestServer.readResponse(socket.getInputStream()).getBodyAsString());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Sends the specified number of requests echoing the value on one connection and checks that
+     * each is answered with the value.
+     *
+     * @param port the port
+     * @param value the value to echo
+     * @param requests the number of requests
+     * @return the value echoed by the last response
+     * @throws Exception if the connection failed
+     */
+    private static String request(final int port, final String value, final int requests) throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, port)) {
+            socket.setSoTimeout(30000);
+            final OutputStream out = socket.getOutputStream();
+            final InputStream in = socket.getInputStream();
+            String body = null;
+
+            for (int i = 0; i < requests; i++) {
+                out.write(TestServer.get("/api/test/echo?value=" + value));
+                out.flush();
+
+                final Response response = TestServer.readResponse(in);
+                Assertions.assertEquals(200, response.getStatus());
+                body = response.getBodyAsString();
+                Assertions.assertEquals(value, body);
+            }
+
+            return body;
+        }
+    }
+}
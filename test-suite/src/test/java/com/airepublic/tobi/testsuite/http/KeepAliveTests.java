@@ -0,0 +1,136 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.testsuite.http.TestServer.Response;
+
+/**
+ * Tests for persistent HTTP/1.1 connections and pipelined requests.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class KeepAliveTests {
+    private static TestServer server;
+
+
+    /**
+     * Starts the server.
+     *
+     * @throws Exception if the server could not be started
+     */
+    @BeforeAll
+    public static void setUp() throws Exception {
+        server = TestServer.start();
+    }
+
+
+    /**
+     * Test that consecutive requests are answered on the same connection.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testKeepAlive() throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            final OutputStream out = socket.getOutputStream();
+            final InputStream in = socket.getInputStream();
+
+            for (int i = 0; i < 3; i++) {
+                out.write(TestServer.get("/api/test/echo?value=" + i));
+                out.flush();
+
+                final Response response = TestServer.readResponse(in);
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals("keep-alive", response.getHeader("Connection"));
+                Assertions.assertEquals(String.valueOf(i), response.getBodyAsString());
+            }
+        }
+    }
+
+
+    /**
+     * Test that pipelined requests sent at once are answered in the order they have been sent.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testPipelining() throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+
+            for (int i = 0; i < 3; i++) {
+                requests.write(TestServer.get("/api/test/echo?value=" + i));
+            }
+
+            socket.getOutputStream().write(requests.toByteArray());
+            socket.getOutputStream().flush();
+
+            final InputStream in = socket.getInputStream();
+
+            for (int i = 0; i < 3; i++) {
+                final Response response = TestServer.readResponse(in);
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals(String.valueOf(i), response.getBodyAsString());
+            }
+        }
+    }
+
+
+    /**
+     * Test that the connection is closed after the response if the client requests it.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testConnectionClose() throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            socket.getOutputStream().write(TestServer.get("/api/test/echo?value=close", "Connection: close"));
+            socket.getOutputStream().flush();
+
+            final InputStream in = socket.getInputStream();
+            final Response response = TestServer.readResponse(in);
+            Assertions.assertEquals("close", response.getHeader("Connection"));
+            Assertions.assertEquals("close", response.getBodyAsString());
+            Assertions.assertEquals(-1, in.read());
+        }
+    }
+
+
+    /**
+     * Test that the connection is closed after the maximum number of requests.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testMaxRequests() throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            final ByteArrayOutputStream requests = new ByteArrayOutputStream();
+
+            for (int i = 0; i < TestServer.MAX_REQUESTS + 1; i++) {
+                requests.write(TestServer.get("/api/test/echo?value=" + i));
+            }
+
+            socket.getOutputStream().write(requests.toByteArray());
+            socket.getOutputStream().flush();
+
+            final InputStream in = socket.getInputStream();
+
+            for (int i = 0; i < TestServer.MAX_REQUESTS; i++) {
+                final Response response = TestServer.readResponse(in);
+                Assertions.assertEquals(String.valueOf(i), response.getBodyAsString());
+                Assertions.assertEquals(i < TestServer.MAX_REQUESTS - 1 ? "keep-alive" : "close", response.getHeader("Connection"));
+            }
+
+            // the pipelined request exceeding the limit is not answered
+            Assertions.assertEquals(-1, in.read());
+        }
+    }
+}
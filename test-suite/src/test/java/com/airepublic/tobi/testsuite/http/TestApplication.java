@@ -0,0 +1,22 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.util.Set;
+
+import javax.ws.rs.ApplicationPath;
+import javax.ws.rs.core.Application;
+
+/**
+ * The JAX-RS {@link Application} served by the {@link TestServer}.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ApplicationPath("/api")
+public class TestApplication extends Application {
+
+    @Override
+    public Set<Class<?>> getClasses() {
+        return Set.of(TestResource.class);
+    }
+
+}
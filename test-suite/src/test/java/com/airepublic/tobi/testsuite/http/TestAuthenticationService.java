@@ -0,0 +1,33 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.nio.channels.CompletionHandler;
+
+import com.airepublic.http.common.HttpStatus;
+import com.airepublic.tobi.core.spi.Attributes;
+import com.airepublic.tobi.core.spi.IAuthenticationService;
+import com.airepublic.tobi.core.spi.IResponse;
+import com.airepublic.tobi.core.spi.IServerSession;
+import com.airepublic.tobi.core.spi.Pair;
+import com.airepublic.tobi.module.http.HttpResponse;
+
+/**
+ * {@link IAuthenticationService} for the {@link TestServer}. The test resources do not require
+ * authentication, so a login will only be requested if a resource demands it.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class TestAuthenticationService implements IAuthenticationService {
+
+    @Override
+    public Pair<IResponse, CompletionHandler<?, ?>> login(final IServerSession session, final IResponse response) {
+        return new Pair<>(((HttpResponse) response).withStatus(HttpStatus.UNAUTHORIZED), null);
+    }
+
+
+    @Override
+    public Attributes authenticate(final String username, final String password) {
+        return new Attributes();
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.airepublic.tobi.testsuite.http;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * JAX-RS resource used by the HTTP tests.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@Path("/test")
+public class TestResource {
+
+    /**
+     * Returns the specified value.
+     *
+     * @param value the value
+     * @return the value
+     */
+    @GET
+    @Path("/echo")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String echo(@QueryParam("value") final String value) {
+        return value;
+    }
+
+
+    /**
+     * Streams the specified number of bytes. Byte <code>i</code> is <code>i % 251</code> so that
+     * misplaced chunks are detected.
+     *
+     * @param size the number of bytes
+     * @return the {@link StreamingOutput}
+     */
+    @GET
+    @Path("/bytes")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public StreamingOutput bytes(@QueryParam("size") final int size) {
+        return out -> {
+            final byte[] block = new byte[4096];
+            int written = 0;
+
+            while (written < size) {
+                final int length = Math.min(block.length, size - written);
+
+                for (int i = 0; i < length; i++) {
+                    block[i] = (byte) ((written + i) % 251);
+                }
+
+                out.write(block, 0, length);
+                written += length;
+            }
+        };
+    }
+
+
+    /**
+     * Creates the bytes expected from {@link #bytes(int)}.
+     *
+     * @param size the number of bytes
+     * @return the bytes
+     */
+    static byte[] expectedBytes(final int size) {
+        final byte[] bytes = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,399 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.se.SeContainer;
+import javax.enterprise.inject.se.SeContainerInitializer;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.airepublic.tobi.core.ServerContext;
+import com.airepublic.tobi.core.TobiServer;
+import com.airepublic.tobi.core.spi.ICDIServiceProvider;
+import com.airepublic.tobi.module.http.HttpModule;
+
+/**
+ * The loopback server shared by the tests of one JVM. On first use it creates a self-signed
+ * keystore in a temporary directory, configures the server via system properties on free ports with
+ * pooled channel processors and starts it. Also reads raw HTTP responses so that the tests can
+ * check what has been sent on the wire.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class TestServer {
+    public final static String HOST = "localhost";
+    public final static String PASSWORD = "changeit";
+    /** The handshake timeout of the server in milliseconds. */
+    public final static long HANDSHAKE_TIMEOUT = 2000L;
+    /** The maximum number of requests per connection. */
+    public final static int MAX_REQUESTS = 5;
+    /** The maximum number of idle channel processors kept for reuse. */
+    public final static int POOLED_PROCESSORS = 8;
+    private static TestServer instance;
+    private final Path keystore;
+    private final int port;
+    private final int sslPort;
+    private SeContainer container;
+
+    /**
+     * The status, headers and body of a received HTTP response.
+     */
+    public static class Response {
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+
+        /**
+         * Constructor.
+         *
+         * @param status the status code
+         * @param headers the headers
+         * @param body the (de-chunked) body
+         */
+        Response(final int status, final Map<String, String> headers, final byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+
+        /**
+         * Gets the status code.
+         *
+         * @return the status code
+         */
+        public int getStatus() {
+            return status;
+        }
+
+
+        /**
+         * Gets the value of the header ignoring the case of the name.
+         *
+         * @param name the header name
+         * @return the value or null
+         */
+        public String getHeader(final String name) {
+            return headers.get(name);
+        }
+
+
+        /**
+         * Gets the body.
+         *
+         * @return the body
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+
+        /**
+         * Gets the body as UTF-8 string.
+         *
+         * @return the body
+         */
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @throws IOException if the keystore could not be created
+     */
+    private TestServer() throws IOException {
+        keystore = createKeystore(Files.createTempDirectory("tobi-test-suite").resolve("keystore.jks"));
+        port = findFreePort();
+        sslPort = findFreePort();
+
+        System.setProperty(ServerContext.HOST, HOST);
+        System.setProperty(HttpModule.PORT, String.valueOf(port));
+        System.setProperty(HttpModule.SSL_PORT, String.valueOf(sslPort));
+        System.setProperty(HttpModule.KEYSTORE_FILE, keystore.toString());
+        System.setProperty(HttpModule.KEYSTORE_PASSWORD, PASSWORD);
+        System.setProperty(HttpModule.TRUSTSTORE_FILE, keystore.toString());
+        System.setProperty(HttpModule.TRUSTSTORE_PASSWORD, PASSWORD);
+        System.setProperty(HttpModule.SSL_HANDSHAKE_TIMEOUT, String.valueOf(HANDSHAKE_TIMEOUT));
+        System.setProperty(HttpModule.KEEPALIVE_MAX_REQUESTS, String.valueOf(MAX_REQUESTS));
+        System.setProperty(ServerContext.POOL_CHANNEL_PROCESSORS, String.valueOf(POOLED_PROCESSORS));
+    }
+
+
+    /**
+     * Starts the {@link TobiServer} if not already started and waits until it accepts
+     * connections.
+     *
+     * @return the {@link TestServer}
+     * @throws IOException if the server could not be started
+     */
+    public static synchronized TestServer start() throws IOException {
+        if (instance == null) {
+            final TestServer server = new TestServer();
+            final ServiceLoader<ICDIServiceProvider> providers = ServiceLoader.load(ICDIServiceProvider.class);
+            server.container = providers.findFirst().map(ICDIServiceProvider::getSeContainer).orElseGet(() -> SeContainerInitializer.newInstance().initialize());
+
+            final TobiServer tobiServer = server.container.select(TobiServer.class).get();
+            final CountDownLatch latch = new CountDownLatch(1);
+            final Thread thread = new Thread(() -> {
+                try {
+                    tobiServer.start(latch::countDown);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }, "test-server");
+            thread.setDaemon(true);
+            thread.start();
+
+            try {
+                if (!latch.await(30, TimeUnit.SECONDS)) {
+                    throw new IOException("Server did not start in time!");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting the server!", e);
+            }
+
+            instance = server;
+        }
+
+        return instance;
+    }
+
+
+    /**
+     * Gets the CDI {@link SeContainer} of the server.
+     *
+     * @return the {@link SeContainer}
+     */
+    public SeContainer getContainer() {
+        return container;
+    }
+
+
+    /**
+     * Gets the plain HTTP port.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+
+    /**
+     * Gets the HTTPS port.
+     *
+     * @return the port
+     */
+    public int getSslPort() {
+        return sslPort;
+    }
+
+
+    /**
+     * Creates a client {@link SSLContext} trusting the self-signed certificate of the server.
+     *
+     * @return the {@link SSLContext}
+     * @throws IOException if the {@link SSLContext} could not be created
+     */
+    public SSLContext createClientSslContext() throws IOException {
+        try (InputStream in = Files.newInputStream(keystore)) {
+            final KeyStore trustStore = KeyStore.getInstance("JKS");
+            trustStore.load(in, PASSWORD.toCharArray());
+
+            final TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(trustStore);
+
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, tmf.getTrustManagers(), null);
+
+            return sslContext;
+        } catch (final IOException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException("Could not create client SSL context!", e);
+        }
+    }
+
+
+    /**
+     * Creates a GET request for the specified path.
+     *
+     * @param path the path
+     * @param headers additional header lines
+     * @return the request bytes
+     */
+    public static byte[] get(final String path, final String... headers) {
+        final StringBuilder request = new StringBuilder("GET " + path + " HTTP/1.1\r\nHost: " + HOST + "\r\n");
+
+        for (final String header : headers) {
+            request.append(header).append("\r\n");
+        }
+
+        return request.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+
+    /**
+     * Reads the next HTTP response from the stream. The body is read according to the
+     * <code>Content-Length</code>, the chunks of a <code>Transfer-Encoding: chunked</code> response
+     * or until the connection is closed.
+     *
+     * @param in the {@link InputStream}
+     * @return the {@link Response}
+     * @throws IOException if the stream ended before the response was complete
+     */
+    public static Response readResponse(final InputStream in) throws IOException {
+        final Response header = readResponseHeader(in);
+        final Map<String, String> headers = header.headers;
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+            int size;
+
+            while ((size = Integer.parseInt(readLine(in).split(";")[0].trim(), 16)) > 0) {
+                body.write(readFully(in, size));
+                readLine(in);
+            }
+
+            // skip the trailer
+            while (!readLine(in).isEmpty()) {
+            }
+        } else if (headers.containsKey("Content-Length")) {
+            body.write(readFully(in, Integer.parseInt(headers.get("Content-Length"))));
+        } else {
+            // the body is delimited by closing the connection
+            body.write(in.readAllBytes());
+        }
+
+        return new Response(header.status, headers, body.toByteArray());
+    }
+
+
+    /**
+     * Reads the status line and the headers of the next HTTP response from the stream, e.g. of a
+     * websocket upgrade after which no HTTP body follows.
+     *
+     * @param in the {@link InputStream}
+     * @return the {@link Response} without body
+     * @throws IOException if the stream ended before the header was complete
+     */
+    public static Response readResponseHeader(final InputStream in) throws IOException {
+        final String statusLine = readLine(in);
+        final int status = Integer.parseInt(statusLine.split(" ")[1]);
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+
+        while (!(line = readLine(in)).isEmpty()) {
+            final int idx = line.indexOf(':');
+            headers.put(line.substring(0, idx).trim(), line.substring(idx + 1).trim());
+        }
+
+        return new Response(status, headers, new byte[0]);
+    }
+
+
+    /**
+     * Reads a CRLF terminated line.
+     *
+     * @param in the {@link InputStream}
+     * @return the line without the CRLF
+     * @throws IOException if the stream ended
+     */
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int b;
+
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Connection closed after: " + line);
+            }
+
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+
+        return line.toString();
+    }
+
+
+    /**
+     * Reads the specified number of bytes.
+     *
+     * @param in the {@link InputStream}
+     * @param length the number of bytes
+     * @return the bytes
+     * @throws IOException if the stream ended
+     */
+    private static byte[] readFully(final InputStream in, final int length) throws IOException {
+        final byte[] bytes = in.readNBytes(length);
+
+        if (bytes.length < length) {
+            throw new EOFException("Connection closed after " + bytes.length + " of " + length + " bytes");
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Creates a keystore with a self-signed certificate for <code>localhost</code> using the
+     * <code>keytool</code> of the running JDK.
+     *
+     * @param file the keystore file
+     * @return the keystore file
+     * @throws IOException if the keystore could not be created
+     */
+    private static Path createKeystore(final Path file) throws IOException {
+        final String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        final Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "tobi", "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=" + HOST, "-validity", "365", "-storetype", "JKS", "-keystore", file.toString(), "-storepass", PASSWORD, "-keypass", PASSWORD).redirectErrorStream(true).start();
+
+        try {
+            final String output = new String(process.getInputStream().readAllBytes());
+
+            if (process.waitFor() != 0) {
+                throw new IOException("Could not create keystore: " + output);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating the keystore!", e);
+        }
+
+        return file;
+    }
+
+
+    /**
+     * Finds a free port on the loopback interface.
+     *
+     * @return the port
+     * @throws IOException if no port could be found
+     */
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(HOST, 0));
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.airepublic.tobi.testsuite.http;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.module.http.HttpModule;
+import com.airepublic.tobi.module.http.TlsStatistics;
+import com.airepublic.tobi.testsuite.http.TestServer.Response;
+
+/**
+ * Tests for the non-blocking TLS handshake and HTTPS requests.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class TlsTests {
+    private static TestServer server;
+    private static SSLContext sslContext;
+
+
+    /**
+     * Starts the server and creates the client {@link SSLContext}.
+     *
+     * @throws Exception if the server could not be started
+     */
+    @BeforeAll
+    public static void setUp() throws Exception {
+        server = TestServer.start();
+        sslContext = server.createClientSslContext();
+    }
+
+
+    /**
+     * Test that requests are answered after the handshake on a kept alive connection.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testHttpsRequests() throws Exception {
+        try (SSLSocket socket = connect(sslContext)) {
+            final OutputStream out = socket.getOutputStream();
+            final InputStream in = socket.getInputStream();
+
+            for (int i = 0; i < 3; i++) {
+                out.write(TestServer.get("/api/test/echo?value=" + i));
+                out.flush();
+
+                final Response response = TestServer.readResponse(in);
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals(String.valueOf(i), response.getBodyAsString());
+            }
+        }
+    }
+
+
+    /**
+     * Test that a chunked entity larger than a TLS record arrives intact.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testHttpsChunkedEntity() throws Exception {
+        final int size = 1024 * 1024;
+
+        try (SSLSocket socket = connect(sslContext)) {
+            socket.getOutputStream().write(TestServer.get("/api/test/bytes?size=" + size));
+            socket.getOutputStream().flush();
+
+            final Response response = TestServer.readResponse(socket.getInputStream());
+            Assertions.assertEquals(200, response.getStatus());
+            Assertions.assertEquals("chunked", response.getHeader("Transfer-Encoding"));
+            Assertions.assertArrayEquals(TestResource.expectedBytes(size), response.getBody());
+        }
+    }
+
+
+    /**
+     * Test that concurrent handshakes all complete.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testConcurrentHandshakes() throws Exception {
+        final int connections = 32;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            final List<Future<Response>> responses = new ArrayList<>();
+
+            for (int i = 0; i < connections; i++) {
+                final String value = String.valueOf(i);
+
+                responses.add(executor.submit(() -> {
+                    // a new context for each connection forces a full handshake
+                    try (SSLSocket socket = connect(server.createClientSslContext())) {
+                        socket.getOutputStream().write(TestServer.get("/api/test/echo?value=" + value));
+                        socket.getOutputStream().flush();
+
+                        return TestServer.readResponse(socket.getInputStream());
+                    }
+                }));
+            }
+
+            for (int i = 0; i < connections; i++) {
+                final Response response = responses.get(i).get(30, TimeUnit.SECONDS);
+                Assertions.assertEquals(200, response.getStatus());
+                Assertions.assertEquals(String.valueOf(i), response.getBodyAsString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Test that a client reconnecting with the same {@link SSLContext} resumes its session.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSessionResumption() throws Exception {
+        final TlsStatistics statistics = server.getContainer().select(HttpModule.class).get().getTlsStatistics();
+        final SSLContext context = server.createClientSslContext();
+
+        for (int i = 0; i < 2; i++) {
+            final long resumed = statistics.getResumedHandshakes();
+
+            try (SSLSocket socket = connect(context)) {
+                socket.getOutputStream().write(TestServer.get("/api/test/echo?value=" + i));
+                socket.getOutputStream().flush();
+
+                Assertions.assertEquals(String.valueOf(i), TestServer.readResponse(socket.getInputStream()).getBodyAsString());
+            }
+
+            if (i > 0) {
+                Assertions.assertTrue(statistics.getResumedHandshakes() > resumed);
+            }
+        }
+    }
+
+
+    /**
+     * Test that a connection which never starts the handshake is closed after the handshake
+     * timeout.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testHandshakeTimeout() throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, server.getSslPort())) {
+            socket.setSoTimeout((int) TestServer.HANDSHAKE_TIMEOUT * 5);
+
+            Assertions.assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+
+    /**
+     * Connects to the HTTPS port and completes the handshake.
+     *
+     * @param context the client {@link SSLContext}
+     * @return the {@link SSLSocket}
+     * @throws Exception if the handshake failed
+     */
+    private static SSLSocket connect(final SSLContext context) throws Exception {
+        final SSLSocket socket = (SSLSocket) context.getSocketFactory().createSocket(TestServer.HOST, server.getSslPort());
+        socket.setSoTimeout(30000);
+        socket.startHandshake();
+
+        return socket;
+    }
+}
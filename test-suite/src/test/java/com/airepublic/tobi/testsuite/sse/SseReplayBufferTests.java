@@ -0,0 +1,142 @@
+package com.airepublic.tobi.testsuite.sse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.plugin.http.sse.SseReplayBuffer;
+
+/**
+ * Unit tests for the {@link SseReplayBuffer}.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class SseReplayBufferTests {
+
+    /**
+     * Encodes an event with the specified id. Ids of the same length result in events of the same
+     * size (10 bytes for single digit ids).
+     *
+     * @param id the event id
+     * @return the encoded event
+     */
+    private static ByteBuffer event(final String id) {
+        return ByteBuffer.wrap(("id:" + id + "\nd:x\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Asserts that the events have the specified ids.
+     *
+     * @param events the events
+     * @param ids the expected ids
+     */
+    private static void assertIds(final List<ByteBuffer> events, final String... ids) {
+        Assertions.assertNotNull(events);
+        Assertions.assertEquals(ids.length, events.size());
+
+        for (int i = 0; i < ids.length; i++) {
+            Assertions.assertEquals(event(ids[i]), events.get(i));
+        }
+    }
+
+
+    /**
+     * Test that the oldest events are evicted beyond the maximum number of events.
+     *
+     * @throws IOException if the buffer cannot be created
+     */
+    @Test
+    public void testMaxEvents() throws IOException {
+        try (final SseReplayBuffer buffer = new SseReplayBuffer(3, 1024, false)) {
+            for (int i = 1; i <= 5; i++) {
+                buffer.add(String.valueOf(i), event(String.valueOf(i)));
+            }
+
+            Assertions.assertEquals(3, buffer.size());
+            assertIds(buffer.since("3"), "4", "5");
+            assertIds(buffer.since("4"), "5");
+            assertIds(buffer.since("5"));
+            Assertions.assertNull(buffer.since("2"));
+        }
+    }
+
+
+    /**
+     * Test that the oldest events are evicted beyond the maximum total size and that an event
+     * exceeding the size clears the buffer.
+     *
+     * @throws IOException if the buffer cannot be created
+     */
+    @Test
+    public void testMaxBytes() throws IOException {
+        try (final SseReplayBuffer buffer = new SseReplayBuffer(100, 25, false)) {
+            for (int i = 1; i <= 3; i++) {
+                buffer.add(String.valueOf(i), event(String.valueOf(i)));
+            }
+
+            Assertions.assertEquals(2, buffer.size());
+            assertIds(buffer.since("2"), "3");
+            Assertions.assertNull(buffer.since("1"));
+
+            buffer.add("large", ByteBuffer.allocate(26));
+            Assertions.assertEquals(0, buffer.size());
+        }
+    }
+
+
+    /**
+     * Test that the memory-mapped ring wraps around and evicts the events whose region is
+     * overwritten, while previously replayed copies are not affected.
+     *
+     * @throws IOException if the buffer cannot be created
+     */
+    @Test
+    public void testMappedWrapAround() throws IOException {
+        try (final SseReplayBuffer buffer = new SseReplayBuffer(100, 32, true)) {
+            buffer.add("1", event("1"));
+            buffer.add("2", event("2"));
+            buffer.add("3", event("3"));
+            Assertions.assertEquals(3, buffer.size());
+
+            // does not fit behind event 3 and overwrites event 1 at the start of the ring
+            buffer.add("4", event("4"));
+            Assertions.assertEquals(3, buffer.size());
+            Assertions.assertNull(buffer.since("1"));
+            final List<ByteBuffer> replayed = buffer.since("2");
+            assertIds(replayed, "3", "4");
+
+            // overwrites event 2 and then event 3
+            buffer.add("5", event("5"));
+            buffer.add("6", event("6"));
+            Assertions.assertEquals(3, buffer.size());
+            Assertions.assertNull(buffer.since("3"));
+            assertIds(buffer.since("4"), "5", "6");
+
+            assertIds(replayed, "3", "4");
+        }
+    }
+
+
+    /**
+     * Test finding the id of encoded events.
+     */
+    @Test
+    public void testFindId() {
+        Assertions.assertEquals("42", SseReplayBuffer.findId(ByteBuffer.wrap("id: 42\ndata: x\n\n".getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertEquals("7", SseReplayBuffer.findId(ByteBuffer.wrap("event: e\r\nid:7\r\ndata: x\r\n\r\n".getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertEquals("", SseReplayBuffer.findId(ByteBuffer.wrap("id:\ndata: x\n\n".getBytes(StandardCharsets.UTF_8))));
+        Assertions.assertNull(SseReplayBuffer.findId(ByteBuffer.wrap("data: x\n\n".getBytes(StandardCharsets.UTF_8))));
+        // the id of the following event does not belong to this event
+        Assertions.assertNull(SseReplayBuffer.findId(ByteBuffer.wrap("data: x\n\nid: 9\n\n".getBytes(StandardCharsets.UTF_8))));
+
+        final ByteBuffer event = ByteBuffer.wrap("id: 1\n\n".getBytes(StandardCharsets.UTF_8));
+        SseReplayBuffer.findId(event);
+        Assertions.assertEquals(0, event.position(), "The position of the event has been changed");
+    }
+}
@@ -0,0 +1,103 @@
+package com.airepublic.tobi.testsuite.websocket;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.websocket.OnMessage;
+import javax.websocket.OnOpen;
+import javax.websocket.Session;
+import javax.websocket.server.ServerEndpoint;
+
+/**
+ * Websocket endpoint used by the {@link WebSocketTests}. It greets on open and answers the
+ * following messages:
+ * <ul>
+ * <li><code>queue:&lt;count&gt;:&lt;size&gt;</code> - sends the messages blocking from the
+ * event-loop, so that they are queued and written in batches</li>
+ * <li><code>thread:&lt;count&gt;:&lt;size&gt;</code> - sends the messages blocking from an
+ * application thread which waits for each message to be written</li>
+ * <li>any other message is echoed</li>
+ * </ul>
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+@ServerEndpoint("/ws/test")
+public class TestEndpoint {
+    public final static String GREETING = "open";
+
+
+    /**
+     * Sends the greeting while the handshake response has not yet been written.
+     *
+     * @param session the {@link Session}
+     * @throws IOException if the greeting could not be sent
+     */
+    @OnOpen
+    public void onOpen(final Session session) throws IOException {
+        session.getBasicRemote().sendText(GREETING);
+    }
+
+
+    /**
+     * Answers the message.
+     *
+     * @param session the {@link Session}
+     * @param message the message
+     * @throws IOException if the answer could not be sent
+     */
+    @OnMessage
+    public void onMessage(final Session session, final String message) throws IOException {
+        final String[] parts = message.split(":");
+
+        if (parts.length == 3 && parts[0].equals("queue")) {
+            send(session, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } else if (parts.length == 3 && parts[0].equals("thread")) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    send(session, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                } catch (final IOException e) {
+                    Logger.getLogger(TestEndpoint.class.getName()).log(Level.SEVERE, "Could not send messages!", e);
+                }
+            }, "websocket-sender");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            session.getBasicRemote().sendText(message);
+        }
+    }
+
+
+    /**
+     * Sends the specified number of messages blocking.
+     *
+     * @param session the {@link Session}
+     * @param count the number of messages
+     * @param size the size of each message
+     * @throws IOException if a message could not be sent
+     */
+    private static void send(final Session session, final int count, final int size) throws IOException {
+        for (int i = 0; i < count; i++) {
+            session.getBasicRemote().sendText(message(i, size));
+        }
+    }
+
+
+    /**
+     * Creates the message with the specified index which is padded to the specified size.
+     *
+     * @param index the index
+     * @param size the size
+     * @return the message
+     */
+    static String message(final int index, final int size) {
+        final StringBuilder message = new StringBuilder().append(index).append(':');
+
+        while (message.length() < size) {
+            message.append((char) ('a' + message.length() % 26));
+        }
+
+        return message.toString();
+    }
+}
@@ -0,0 +1,127 @@
+package com.airepublic.tobi.testsuite.websocket;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.plugin.http.websocket.Util;
+
+/**
+ * Unit tests for {@link Util#unmask(ByteBuffer, int, int, byte[], int)}.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class UtilTests {
+    private static final byte[] MASK = { (byte) 0x12, (byte) 0x9A, (byte) 0x5C, (byte) 0xF0 };
+
+
+    /**
+     * Creates a buffer with random content.
+     *
+     * @param random the {@link Random}
+     * @param size the size of the buffer
+     * @param direct whether to allocate a direct buffer
+     * @param order the {@link ByteOrder}
+     * @return the buffer
+     */
+    private static ByteBuffer createBuffer(final Random random, final int size, final boolean direct, final ByteOrder order) {
+        final byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        final ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        buffer.put(bytes).clear();
+
+        return buffer.order(order);
+    }
+
+
+    /**
+     * Unmasks the bytes one at a time.
+     *
+     * @param buffer the buffer
+     * @param offset the index of the first byte to unmask
+     * @param length the number of bytes to unmask
+     * @param maskIndex the index of the mask byte to apply to the first byte
+     * @return the unmasked content of the whole buffer
+     */
+    private static byte[] expected(final ByteBuffer buffer, final int offset, final int length, final int maskIndex) {
+        final byte[] bytes = content(buffer);
+
+        for (int i = 0; i < length; i++) {
+            bytes[offset + i] ^= MASK[(maskIndex + i) % 4];
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Gets the content of the whole buffer.
+     *
+     * @param buffer the buffer
+     * @return the content
+     */
+    private static byte[] content(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.capacity()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(i);
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Test unmasking at unaligned offsets with every mask index and lengths with and without an
+     * unaligned tail in heap and direct buffers of both byte orders.
+     */
+    @Test
+    public void testUnmask() {
+        final Random random = new Random(4711);
+
+        for (final boolean direct : new boolean[] { false, true }) {
+            for (final ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+                for (int offset = 0; offset < 8; offset++) {
+                    for (int length = 0; length <= 37; length++) {
+                        for (int maskIndex = 0; maskIndex < 4; maskIndex++) {
+                            final ByteBuffer buffer = createBuffer(random, offset + length + 5, direct, order);
+                            final byte[] expected = expected(buffer, offset, length, maskIndex);
+                            final String description = "direct=" + direct + ", order=" + order + ", offset=" + offset + ", length=" + length + ", maskIndex=" + maskIndex;
+
+                            final int next = Util.unmask(buffer, offset, length, MASK, maskIndex);
+
+                            Assertions.assertArrayEquals(expected, content(buffer), description);
+                            Assertions.assertEquals((maskIndex + length) % 4, next, description);
+                            Assertions.assertEquals(0, buffer.position(), description);
+                            Assertions.assertEquals(buffer.capacity(), buffer.limit(), description);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Test that unmasking a payload in parts, continuing with the returned mask index, equals
+     * unmasking it at once.
+     */
+    @Test
+    public void testUnmaskInParts() {
+        final Random random = new Random(815);
+
+        for (int split = 0; split <= 29; split++) {
+            final ByteBuffer buffer = createBuffer(random, 32, false, ByteOrder.BIG_ENDIAN);
+            final byte[] expected = expected(buffer, 3, 29, 0);
+
+            final int maskIndex = Util.unmask(buffer, 3, split, MASK, 0);
+            Util.unmask(buffer, 3 + split, 29 - split, MASK, maskIndex);
+
+            Assertions.assertArrayEquals(expected, content(buffer), "split=" + split);
+        }
+    }
+}
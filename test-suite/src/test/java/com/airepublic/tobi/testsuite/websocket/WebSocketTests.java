@@ -0,0 +1,221 @@
+package com.airepublic.tobi.testsuite.websocket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLSocket;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.airepublic.tobi.testsuite.http.TestServer;
+import com.airepublic.tobi.testsuite.http.TestServer.Response;
+
+/**
+ * Tests for sending websocket frames through the outbound frame queue of a connection.
+ *
+ * @author Torsten Oltmanns
+ *
+ */
+public class WebSocketTests {
+    private static TestServer server;
+
+
+    /**
+     * Starts the server.
+     *
+     * @throws Exception if the server could not be started
+     */
+    @BeforeAll
+    public static void setUp() throws Exception {
+        server = TestServer.start();
+    }
+
+
+    /**
+     * Test that a message sent from <code>onOpen</code> is written after the handshake response
+     * and that the connection is writable afterwards.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testSendFromOnOpen() throws Exception {
+        try (Socket socket = new Socket(TestServer.HOST, server.getPort())) {
+            socket.setSoTimeout(30000);
+            final InputStream in = upgrade(socket);
+            Assertions.assertEquals(TestEndpoint.GREETING, readText(in));
+
+            sendText(socket.getOutputStream(), "echo");
+            Assertions.assertEquals("echo", readText(in));
+        }
+    }
+
+
+    /**
+     * Test that the messages sent from the event-loop are queued and arrive complete and in order
+     * when written in batches.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testQueuedMessages() throws Exception {
+        // exceeds the batch size of a single gathering write
+        assertMessages(new Socket(TestServer.HOST, server.getPort()), "queue", 200, 1000);
+    }
+
+
+    /**
+     * Test that blocking sends from an application thread arrive complete and in order.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testBlockingSendsFromApplicationThread() throws Exception {
+        assertMessages(new Socket(TestServer.HOST, server.getPort()), "thread", 200, 1000);
+    }
+
+
+    /**
+     * Test that queued messages, including the one sent from <code>onOpen</code>, are encrypted
+     * on a TLS connection.
+     *
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void testMessagesOverTls() throws Exception {
+        final SSLSocket socket = (SSLSocket) server.createClientSslContext().getSocketFactory().createSocket(TestServer.HOST, server.getSslPort());
+        socket.startHandshake();
+
+        assertMessages(socket, "queue", 100, 5000);
+    }
+
+
+    /**
+     * Upgrades the connection, requests the messages and checks that they all arrive in order
+     * after the greeting.
+     *
+     * @param socket the connected {@link Socket}
+     * @param command the command of the {@link TestEndpoint}
+     * @param count the number of messages
+     * @param size the size of each message
+     * @throws Exception if the connection failed
+     */
+    private static void assertMessages(final Socket socket, final String command, final int count, final int size) throws Exception {
+        try (socket) {
+            socket.setSoTimeout(30000);
+            final InputStream in = upgrade(socket);
+            Assertions.assertEquals(TestEndpoint.GREETING, readText(in));
+
+            sendText(socket.getOutputStream(), command + ":" + count + ":" + size);
+
+            for (int i = 0; i < count; i++) {
+                Assertions.assertEquals(TestEndpoint.message(i, size), readText(in));
+            }
+        }
+    }
+
+
+    /**
+     * Performs the websocket upgrade handshake to the {@link TestEndpoint}.
+     *
+     * @param socket the connected {@link Socket}
+     * @return the {@link InputStream} positioned after the handshake response
+     * @throws IOException if the upgrade failed
+     */
+    private static InputStream upgrade(final Socket socket) throws IOException {
+        final byte[] key = new byte[16];
+        ThreadLocalRandom.current().nextBytes(key);
+
+        socket.getOutputStream().write(TestServer.get("/ws/test", "Upgrade: websocket", "Connection: Upgrade", "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key), "Sec-WebSocket-Version: 13"));
+        socket.getOutputStream().flush();
+
+        final InputStream in = socket.getInputStream();
+        final Response response = TestServer.readResponseHeader(in);
+        Assertions.assertEquals(101, response.getStatus());
+        Assertions.assertEquals("websocket", response.getHeader("Upgrade").toLowerCase());
+
+        return in;
+    }
+
+
+    /**
+     * Sends a masked text frame as required for clients.
+     *
+     * @param out the {@link OutputStream}
+     * @param text the text
+     * @throws IOException if the frame could not be sent
+     */
+    private static void sendText(final OutputStream out, final String text) throws IOException {
+        final byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        final byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        final ByteBuffer frame = ByteBuffer.allocate(payload.length + 14);
+        frame.put((byte) 0x81);
+
+        if (payload.length < 126) {
+            frame.put((byte) (0x80 | payload.length));
+        } else {
+            frame.put((byte) (0x80 | 126));
+            frame.putShort((short) payload.length);
+        }
+
+        frame.put(mask);
+
+        for (int i = 0; i < payload.length; i++) {
+            frame.put((byte) (payload[i] ^ mask[i % 4]));
+        }
+
+        out.write(frame.array(), 0, frame.position());
+        out.flush();
+    }
+
+
+    /**
+     * Reads an unmasked text frame.
+     *
+     * @param in the {@link InputStream}
+     * @return the text
+     * @throws IOException if the stream ended or the frame is no final text frame
+     */
+    private static String readText(final InputStream in) throws IOException {
+        final byte[] header = readFully(in, 2);
+        Assertions.assertEquals(0x81, header[0] & 0xFF, "Expected a final text frame");
+
+        long length = header[1] & 0x7F;
+
+        if (length == 126) {
+            length = ByteBuffer.wrap(readFully(in, 2)).getShort() & 0xFFFF;
+        } else if (length == 127) {
+            length = ByteBuffer.wrap(readFully(in, 8)).getLong();
+        }
+
+        return new String(readFully(in, (int) length), StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Reads the specified number of bytes.
+     *
+     * @param in the {@link InputStream}
+     * @param length the number of bytes
+     * @return the bytes
+     * @throws IOException if the stream ended
+     */
+    private static byte[] readFully(final InputStream in, final int length) throws IOException {
+        final byte[] bytes = in.readNBytes(length);
+
+        if (bytes.length < length) {
+            throw new EOFException("Connection closed after " + bytes.length + " of " + length + " bytes");
+        }
+
+        return bytes;
+    }
+}